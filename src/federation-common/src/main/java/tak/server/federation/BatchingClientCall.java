@@ -0,0 +1,73 @@
+package tak.server.federation;
+
+import com.atakmap.Tak.FederatedEvent;
+import com.atakmap.Tak.FederatedEventBatch;
+import com.atakmap.Tak.Subscription;
+
+import io.grpc.Attributes;
+import io.grpc.ClientCall;
+import io.grpc.Metadata;
+
+/*
+ *
+ * The client side of ServerEventBatchStream, seen as a call that sends single events, so that it can be used wherever a
+ * ServerEventStream call is. Events are batched by a FederatedEventBatcher.
+ *
+ */
+public class BatchingClientCall extends ClientCall<FederatedEvent, Subscription> {
+
+	private final ClientCall<FederatedEventBatch, Subscription> delegate;
+
+	private final FederatedEventBatcher batcher;
+
+	public BatchingClientCall(ClientCall<FederatedEventBatch, Subscription> delegate, int batchSize, long maxDelayMillis, String federateId, boolean isRunningInHub) {
+		this.delegate = delegate;
+		this.batcher = new FederatedEventBatcher(delegate::sendMessage, batchSize, maxDelayMillis, federateId, isRunningInHub);
+	}
+
+	@Override
+	public void start(Listener<Subscription> responseListener, Metadata headers) {
+		delegate.start(responseListener, headers);
+	}
+
+	@Override
+	public void request(int numMessages) {
+		delegate.request(numMessages);
+	}
+
+	@Override
+	public void cancel(String message, Throwable cause) {
+		synchronized (batcher) {
+			batcher.discard();
+			delegate.cancel(message, cause);
+		}
+	}
+
+	@Override
+	public void halfClose() {
+		synchronized (batcher) {
+			batcher.close();
+			delegate.halfClose();
+		}
+	}
+
+	@Override
+	public void sendMessage(FederatedEvent event) {
+		batcher.add(event);
+	}
+
+	@Override
+	public boolean isReady() {
+		return delegate.isReady();
+	}
+
+	@Override
+	public void setMessageCompression(boolean enabled) {
+		delegate.setMessageCompression(enabled);
+	}
+
+	@Override
+	public Attributes getAttributes() {
+		return delegate.getAttributes();
+	}
+}
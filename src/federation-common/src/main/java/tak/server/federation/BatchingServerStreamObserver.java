@@ -0,0 +1,100 @@
+package tak.server.federation;
+
+import com.atakmap.Tak.FederatedEvent;
+import com.atakmap.Tak.FederatedEventBatch;
+
+import io.grpc.stub.ServerCallStreamObserver;
+
+/*
+ *
+ * The server side of ClientEventBatchStream, seen as a stream of single events, so that it can be used wherever ClientEventStream is.
+ * Events are batched by a FederatedEventBatcher. Flow control, cancellation and compression are those of the batched stream.
+ *
+ * The stream is started with an empty batch, which tells the client that this server batches, and carries the response headers
+ * with the compression the server picked.
+ *
+ */
+public class BatchingServerStreamObserver extends ServerCallStreamObserver<FederatedEvent> {
+
+	private final ServerCallStreamObserver<FederatedEventBatch> delegate;
+
+	private final FederatedEventBatcher batcher;
+
+	/**
+	 * @param compression the encoding to compress the stream with, or null to not compress it
+	 */
+	public BatchingServerStreamObserver(ServerCallStreamObserver<FederatedEventBatch> delegate, int batchSize, long maxDelayMillis, String compression, String federateId, boolean isRunningInHub) {
+		this.delegate = delegate;
+		this.batcher = new FederatedEventBatcher(delegate::onNext, batchSize, maxDelayMillis, federateId, isRunningInHub);
+
+		if (compression != null) {
+			delegate.setCompression(compression);
+		}
+
+		delegate.onNext(FederatedEventBatch.getDefaultInstance());
+	}
+
+	@Override
+	public void onNext(FederatedEvent event) {
+		batcher.add(event);
+	}
+
+	@Override
+	public void onError(Throwable t) {
+		synchronized (batcher) {
+			batcher.discard();
+			delegate.onError(t);
+		}
+	}
+
+	@Override
+	public void onCompleted() {
+		synchronized (batcher) {
+			batcher.close();
+			delegate.onCompleted();
+		}
+	}
+
+	@Override
+	public boolean isReady() {
+		return delegate.isReady();
+	}
+
+	@Override
+	public void setOnReadyHandler(Runnable onReadyHandler) {
+		delegate.setOnReadyHandler(onReadyHandler);
+	}
+
+	@Override
+	public boolean isCancelled() {
+		return delegate.isCancelled();
+	}
+
+	@Override
+	public void setOnCancelHandler(Runnable onCancelHandler) {
+		delegate.setOnCancelHandler(() -> {
+			batcher.discard();
+			onCancelHandler.run();
+		});
+	}
+
+	@Override
+	public void setCompression(String compression) {
+		delegate.setCompression(compression);
+	}
+
+	@Override
+	public void setMessageCompression(boolean enable) {
+		delegate.setMessageCompression(enable);
+	}
+
+	@Override
+	public void disableAutoInboundFlowControl() {
+		delegate.disableAutoInboundFlowControl();
+	}
+
+	@Override
+	public void request(int count) {
+		delegate.request(count);
+	}
+}
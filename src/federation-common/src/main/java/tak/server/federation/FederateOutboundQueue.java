@@ -0,0 +1,216 @@
+package tak.server.federation;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.atakmap.Tak.FederatedEvent;
+import com.google.common.base.Strings;
+
+import io.micrometer.core.instrument.Metrics;
+import io.micrometer.core.instrument.Tags;
+import tak.server.Constants;
+
+/*
+ *
+ * Bounded queue of the events waiting to be written to the stream of one federate, while the stream isn't ready for more. When the
+ * queue is full an event is dropped according to the drop policy, so a slow federate costs at most capacity events of memory instead
+ * of letting gRPC buffer without bound.
+ *
+ * Not thread-safe. The GuardedStreamHolder that owns the queue guards it.
+ *
+ */
+public class FederateOutboundQueue<T> {
+
+    public enum DropPolicy {
+        // drop the oldest event
+        OLDEST,
+        // drop the oldest of the lowest priority events
+        PRIORITY,
+        // replace a queued event with a newer one for the same uid, otherwise drop the oldest
+        LATEST_PER_UID;
+
+        // the CoreConfig / federation hub config value, oldest, priority or latestPerUid. Defaults to OLDEST.
+        public static DropPolicy fromConfig(String value) {
+            if (Strings.isNullOrEmpty(value)) {
+                return OLDEST;
+            }
+
+            switch (value.toLowerCase(Locale.ENGLISH)) {
+            case "priority":
+                return PRIORITY;
+            case "latestperuid":
+            case "latest_per_uid":
+                return LATEST_PER_UID;
+            default:
+                return OLDEST;
+            }
+        }
+    }
+
+    private static final int PRIORITY_POSITION = 0;
+    private static final int PRIORITY_EVENT = 1;
+    private static final int PRIORITY_CONTROL = 2;
+
+    // one depth gauge per federate. Each queue adds the changes in its own size, so the gauge is the total over the federate's streams.
+    private static final Map<String, AtomicInteger> depths = new ConcurrentHashMap<>();
+
+    private final int capacity;
+    private final DropPolicy dropPolicy;
+    private final String federateId;
+    private final String process;
+
+    // keyed by uid for LATEST_PER_UID, so a newer event takes the place of the queued one. Otherwise each event is its own key.
+    private final LinkedHashMap<Object, T> events = new LinkedHashMap<>();
+
+    private final AtomicInteger depth;
+
+    // this queue's part of depth
+    private int reportedDepth = 0;
+
+    private long dropped = 0;
+
+    public FederateOutboundQueue(int capacity, DropPolicy dropPolicy, String federateId, boolean isRunningInHub) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("invalid outbound queue capacity " + capacity);
+        }
+
+        this.capacity = capacity;
+        this.dropPolicy = dropPolicy;
+        this.federateId = federateId;
+        this.process = isRunningInHub ? "federation-hub" : "messaging";
+
+        this.depth = depths.computeIfAbsent(federateId, id -> Metrics.gauge(Constants.METRIC_FED_OUTBOUND_QUEUE_DEPTH,
+                Tags.of("takserver", process, "federate", id), new AtomicInteger()));
+    }
+
+    // queue an event, dropping one if the queue is full
+    public void offer(T event) {
+        Object key = dropPolicy == DropPolicy.LATEST_PER_UID ? uidKey(event) : null;
+
+        if (key != null && events.containsKey(key)) {
+            events.put(key, event);
+            drop("replaced");
+            return;
+        }
+
+        if (events.size() >= capacity) {
+            if (dropPolicy == DropPolicy.PRIORITY) {
+                if (!dropLowestPriority(priority(event))) {
+                    drop("full");
+                    return;
+                }
+            } else {
+                Iterator<T> oldest = events.values().iterator();
+                oldest.next();
+                oldest.remove();
+            }
+
+            drop("full");
+        }
+
+        events.put(key != null ? key : new Object(), event);
+        updateDepth();
+    }
+
+    // the oldest queued event, or null
+    public T poll() {
+        Iterator<T> oldest = events.values().iterator();
+
+        if (!oldest.hasNext()) {
+            return null;
+        }
+
+        T event = oldest.next();
+        oldest.remove();
+        updateDepth();
+        return event;
+    }
+
+    public boolean isEmpty() {
+        return events.isEmpty();
+    }
+
+    public int size() {
+        return events.size();
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    public DropPolicy getDropPolicy() {
+        return dropPolicy;
+    }
+
+    // events dropped or replaced since the queue was created
+    public long getDropped() {
+        return dropped;
+    }
+
+    public void clear() {
+        events.clear();
+        updateDepth();
+    }
+
+    private void updateDepth() {
+        int size = events.size();
+        depth.addAndGet(size - reportedDepth);
+        reportedDepth = size;
+    }
+
+    // removes the oldest queued event with the lowest priority, if that is no higher than the priority of the new event
+    private boolean dropLowestPriority(int newPriority) {
+        Object lowestKey = null;
+        int lowest = Integer.MAX_VALUE;
+
+        for (Map.Entry<Object, T> entry : events.entrySet()) {
+            int priority = priority(entry.getValue());
+
+            if (priority < lowest) {
+                lowest = priority;
+                lowestKey = entry.getKey();
+
+                if (priority == PRIORITY_POSITION) {
+                    break;
+                }
+            }
+        }
+
+        if (lowestKey == null || lowest > newPriority) {
+            return false;
+        }
+
+        events.remove(lowestKey);
+        return true;
+    }
+
+    private void drop(String reason) {
+        dropped++;
+        Metrics.counter(Constants.METRIC_FED_OUTBOUND_QUEUE_DROP, "takserver", process, "federate", federateId,
+                "policy", dropPolicy.name().toLowerCase(Locale.ENGLISH), "reason", reason).increment();
+    }
+
+    // position reports are the most frequent and the soonest superseded, so they go first. Contacts, groups and ROL are kept.
+    private static int priority(Object event) {
+        if (event instanceof FederatedEvent && ((FederatedEvent) event).hasEvent()) {
+            String type = ((FederatedEvent) event).getEvent().getType();
+            return type.startsWith("a-") ? PRIORITY_POSITION : PRIORITY_EVENT;
+        }
+
+        return PRIORITY_CONTROL;
+    }
+
+    // only CoT events are replaced by uid. Contact operations and everything else are all delivered.
+    private static Object uidKey(Object event) {
+        if (event instanceof FederatedEvent && ((FederatedEvent) event).hasEvent()) {
+            String uid = ((FederatedEvent) event).getEvent().getUid();
+            return Strings.isNullOrEmpty(uid) ? null : uid;
+        }
+
+        return null;
+    }
+}
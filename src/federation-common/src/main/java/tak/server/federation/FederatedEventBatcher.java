@@ -0,0 +1,129 @@
+package tak.server.federation;
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.atakmap.Tak.FederatedEvent;
+import com.atakmap.Tak.FederatedEventBatch;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Metrics;
+import tak.server.Constants;
+
+/*
+ *
+ * Packs the events sent to one federate into batches. A batch is sent once it holds batchSize events, or maxDelayMillis after its
+ * first event, whichever comes first, so that a quiet link still delivers each event promptly.
+ *
+ * Thread-safe. Batches are passed to the sink one at a time, so the sink doesn't have to be.
+ *
+ */
+public class FederatedEventBatcher {
+
+	private static final Logger logger = LoggerFactory.getLogger(FederatedEventBatcher.class);
+
+	// One daemon thread runs the delayed flushes of every batcher. A flush only builds the batch and passes it to the sink, and the
+	// sinks are gRPC sendMessage / onNext, which queue the message on the transport without blocking, so a slow federate doesn't
+	// hold up the others. The executor of the stream isn't exposed to a ClientCall or StreamObserver, so it can't be used instead.
+	private static final ScheduledExecutorService flushScheduler = Executors.newSingleThreadScheduledExecutor(
+			new ThreadFactoryBuilder().setNameFormat("federation-batch-flush-%d").setDaemon(true).build());
+
+	private final Consumer<FederatedEventBatch> sink;
+	private final int batchSize;
+	private final long maxDelayMillis;
+
+	private final DistributionSummary batchSizes;
+
+	private FederatedEventBatch.Builder batch = FederatedEventBatch.newBuilder();
+
+	private ScheduledFuture<?> scheduledFlush = null;
+
+	private boolean closed = false;
+
+	public FederatedEventBatcher(Consumer<FederatedEventBatch> sink, int batchSize, long maxDelayMillis, String federateId, boolean isRunningInHub) {
+		this.sink = sink;
+		this.batchSize = Math.max(1, batchSize);
+		this.maxDelayMillis = Math.max(0, maxDelayMillis);
+		this.batchSizes = batchSizes(federateId, isRunningInHub);
+	}
+
+	// events per batch sent to a federate
+	public static DistributionSummary batchSizes(String federateId, boolean isRunningInHub) {
+		return DistributionSummary.builder(Constants.METRIC_FED_EVENT_BATCH_SIZE)
+				.tags("takserver", isRunningInHub ? "federation-hub" : "messaging", "federate", federateId)
+				.publishPercentileHistogram()
+				.register(Metrics.globalRegistry);
+	}
+
+	public synchronized void add(FederatedEvent event) {
+		if (closed) {
+			return;
+		}
+
+		batch.addEvents(event);
+
+		if (batch.getEventsCount() >= batchSize || maxDelayMillis == 0) {
+			flush();
+		} else if (scheduledFlush == null) {
+			scheduledFlush = flushScheduler.schedule(this::scheduledFlush, maxDelayMillis, TimeUnit.MILLISECONDS);
+		}
+	}
+
+	// send the events batched so far
+	public synchronized void flush() {
+		if (scheduledFlush != null) {
+			scheduledFlush.cancel(false);
+			scheduledFlush = null;
+		}
+
+		if (batch.getEventsCount() == 0) {
+			return;
+		}
+
+		FederatedEventBatch full = batch.build();
+		batch = FederatedEventBatch.newBuilder();
+
+		batchSizes.record(full.getEventsCount());
+
+		sink.accept(full);
+	}
+
+	// flush what is batched, and drop anything added later
+	public synchronized void close() {
+		try {
+			flush();
+		} finally {
+			closed = true;
+		}
+	}
+
+	// drop what is batched, without sending it
+	public synchronized void discard() {
+		if (scheduledFlush != null) {
+			scheduledFlush.cancel(false);
+			scheduledFlush = null;
+		}
+
+		batch.clear();
+		closed = true;
+	}
+
+	private synchronized void scheduledFlush() {
+		scheduledFlush = null;
+
+		try {
+			flush();
+		} catch (Exception e) {
+			if (logger.isDebugEnabled()) {
+				logger.debug("exception sending batch of federated events", e);
+			}
+		}
+	}
+}
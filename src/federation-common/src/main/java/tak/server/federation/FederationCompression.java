@@ -0,0 +1,128 @@
+package tak.server.federation;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Locale;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.github.luben.zstd.ZstdInputStream;
+import com.github.luben.zstd.ZstdOutputStream;
+import com.google.common.base.Splitter;
+import com.google.common.base.Strings;
+
+import io.grpc.Codec;
+import io.grpc.CompressorRegistry;
+import io.grpc.DecompressorRegistry;
+import io.grpc.Metadata;
+
+/*
+ *
+ * Compression of batched federation event streams. gRPC negotiates it: each side advertises the encodings it can decompress in the
+ * grpc-accept-encoding header, and a sender only compresses with an encoding the peer accepts. gzip is always available. zstd is
+ * added to the registries that federation channels and servers are built with, if the zstd native library can be loaded.
+ *
+ */
+public final class FederationCompression {
+
+	private static final Logger logger = LoggerFactory.getLogger(FederationCompression.class);
+
+	public static final String NONE = "none";
+	public static final String GZIP = "gzip";
+	public static final String ZSTD = "zstd";
+
+	public static final Metadata.Key<String> ACCEPT_ENCODING_KEY = Metadata.Key.of("grpc-accept-encoding", Metadata.ASCII_STRING_MARSHALLER);
+
+	private static final boolean zstdAvailable = loadZstd();
+
+	private static final CompressorRegistry compressorRegistry = CompressorRegistry.newEmptyInstance();
+
+	private static final DecompressorRegistry decompressorRegistry;
+
+	static {
+		compressorRegistry.register(Codec.Identity.NONE);
+		compressorRegistry.register(new Codec.Gzip());
+
+		if (zstdAvailable) {
+			compressorRegistry.register(ZstdCodec.INSTANCE);
+			decompressorRegistry = DecompressorRegistry.getDefaultInstance().with(ZstdCodec.INSTANCE, true);
+		} else {
+			decompressorRegistry = DecompressorRegistry.getDefaultInstance();
+		}
+	}
+
+	private FederationCompression() { }
+
+	public static CompressorRegistry compressorRegistry() {
+		return compressorRegistry;
+	}
+
+	public static DecompressorRegistry decompressorRegistry() {
+		return decompressorRegistry;
+	}
+
+	/**
+	 * The encoding to compress a stream to a peer with, or null to not compress it.
+	 *
+	 * @param preferred none, gzip or zstd, from the configuration
+	 * @param peerAcceptEncoding the grpc-accept-encoding header of the peer, or null if it isn't known
+	 */
+	public static String select(String preferred, String peerAcceptEncoding) {
+		if (Strings.isNullOrEmpty(preferred) || Strings.isNullOrEmpty(peerAcceptEncoding)) {
+			return null;
+		}
+
+		String encoding = preferred.trim().toLowerCase(Locale.ENGLISH);
+
+		if (NONE.equals(encoding)) {
+			return null;
+		}
+
+		boolean peerAcceptsGzip = false;
+
+		for (String accepted : Splitter.on(',').trimResults().omitEmptyStrings().split(peerAcceptEncoding)) {
+			if (accepted.equals(encoding) && compressorRegistry.lookupCompressor(encoding) != null) {
+				return encoding;
+			}
+
+			if (accepted.equals(GZIP)) {
+				peerAcceptsGzip = true;
+			}
+		}
+
+		// fall back to gzip, which every gRPC peer can decompress
+		return peerAcceptsGzip ? GZIP : null;
+	}
+
+	private static boolean loadZstd() {
+		try {
+			com.github.luben.zstd.util.Native.load();
+			return true;
+		} catch (Throwable t) {
+			logger.info("zstd is not available for federation streams: " + t);
+			return false;
+		}
+	}
+
+	private static final class ZstdCodec implements Codec {
+
+		static final ZstdCodec INSTANCE = new ZstdCodec();
+
+		@Override
+		public String getMessageEncoding() {
+			return ZSTD;
+		}
+
+		@Override
+		public OutputStream compress(OutputStream os) throws IOException {
+			return new ZstdOutputStream(os);
+		}
+
+		@Override
+		public InputStream decompress(InputStream is) throws IOException {
+			return new ZstdInputStream(is);
+		}
+	}
+}
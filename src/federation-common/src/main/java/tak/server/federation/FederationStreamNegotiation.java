@@ -0,0 +1,154 @@
+package tak.server.federation;
+
+import static io.grpc.MethodDescriptor.generateFullMethodName;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.atakmap.Tak.FederatedEvent;
+import com.atakmap.Tak.FederatedEventBatch;
+import com.atakmap.Tak.Subscription;
+import com.atakmap.Tak.FederatedChannelGrpc.FederatedChannelStub;
+
+import io.grpc.CallOptions;
+import io.grpc.Channel;
+import io.grpc.ClientCall;
+import io.grpc.Metadata;
+import io.grpc.MethodDescriptor;
+import io.grpc.MethodDescriptor.Marshaller;
+import io.grpc.Status;
+import io.grpc.protobuf.ProtoUtils;
+import io.grpc.stub.MetadataUtils;
+import io.grpc.stub.StreamObserver;
+
+/*
+ *
+ * Negotiates batching and compression of the event streams of one outgoing v2 federation connection.
+ *
+ * If batching is enabled here, the client subscribes with ClientEventBatchStream. A server that batches starts that stream with an
+ * empty batch, and its response headers list the encodings it can decompress. A server that doesn't batch, or doesn't know the
+ * method, fails the call with UNIMPLEMENTED, and the client subscribes with ClientEventStream instead. Once that is settled, the
+ * client opens the stream it sends events on, batched and compressed only if the server batches too.
+ *
+ */
+public class FederationStreamNegotiation {
+
+	private static final Logger logger = LoggerFactory.getLogger(FederationStreamNegotiation.class);
+
+	private static final Marshaller<Subscription> SUBSCRIPTION_MARSHALLER = ProtoUtils.marshaller(Subscription.getDefaultInstance());
+
+	private static final MethodDescriptor<FederatedEventBatch, Subscription> SERVER_EVENT_BATCH_STREAM = MethodDescriptor.create(
+			MethodDescriptor.MethodType.CLIENT_STREAMING,
+			generateFullMethodName("com.atakmap.FederatedChannel", "ServerEventBatchStream"),
+			ProtoUtils.marshaller(FederatedEventBatch.getDefaultInstance()),
+			SUBSCRIPTION_MARSHALLER);
+
+	// completed with whether the server batches
+	private final CompletableFuture<Boolean> batching = new CompletableFuture<>();
+
+	private volatile String peerAcceptEncoding = null;
+
+	/**
+	 * Subscribe to the events of the server, batched if tryBatching and the server batches too.
+	 */
+	public void subscribe(FederatedChannelStub stub, Subscription subscription, StreamObserver<FederatedEvent> observer, boolean tryBatching) {
+		if (!tryBatching) {
+			batching.complete(false);
+			stub.clientEventStream(subscription, observer);
+			return;
+		}
+
+		AtomicReference<Metadata> headers = new AtomicReference<>();
+
+		stub.withInterceptors(MetadataUtils.newCaptureMetadataInterceptor(headers, new AtomicReference<>()))
+			.clientEventBatchStream(subscription, new StreamObserver<FederatedEventBatch>() {
+
+			@Override
+			public void onNext(FederatedEventBatch batch) {
+				if (!batching.isDone()) {
+					Metadata responseHeaders = headers.get();
+
+					if (responseHeaders != null) {
+						peerAcceptEncoding = responseHeaders.get(FederationCompression.ACCEPT_ENCODING_KEY);
+					}
+
+					if (logger.isDebugEnabled()) {
+						logger.debug("batched event stream accepted by federation server, accepted encodings: " + peerAcceptEncoding);
+					}
+
+					batching.complete(true);
+				}
+
+				for (FederatedEvent event : batch.getEventsList()) {
+					observer.onNext(event);
+				}
+			}
+
+			@Override
+			public void onError(Throwable t) {
+				if (!batching.isDone() && Status.fromThrowable(t).getCode() == Status.Code.UNIMPLEMENTED) {
+					if (logger.isDebugEnabled()) {
+						logger.debug("federation server does not batch events, falling back to single event stream");
+					}
+
+					stub.clientEventStream(subscription, observer);
+					batching.complete(false);
+					return;
+				}
+
+				batching.complete(false);
+				observer.onError(t);
+			}
+
+			@Override
+			public void onCompleted() {
+				batching.complete(false);
+				observer.onCompleted();
+			}
+		});
+	}
+
+	// run once it is known whether the server batches
+	public void whenNegotiated(Runnable action) {
+		batching.thenRun(action);
+	}
+
+	public boolean isBatching() {
+		return batching.getNow(false);
+	}
+
+	/**
+	 * A call to send events to the server on. If the server batches, events are sent on ServerEventBatchStream, compressed with
+	 * the preferred encoding, or gzip, if the server accepts it. Otherwise they are sent on ServerEventStream, one at a time.
+	 *
+	 * @param requestMarshaller marshaller of single events, for ServerEventStream
+	 */
+	public ClientCall<FederatedEvent, Subscription> newEventCall(Channel channel, CallOptions callOptions, Marshaller<FederatedEvent> requestMarshaller,
+			String federateId, String preferredCompression, int batchSize, long maxDelayMillis, boolean isRunningInHub) {
+
+		CallOptions options = callOptions.withStreamTracerFactory(FederationStreamTracer.clientFactory(federateId, isRunningInHub));
+
+		if (!isBatching()) {
+			return channel.newCall(MethodDescriptor.create(
+					MethodDescriptor.MethodType.CLIENT_STREAMING,
+					generateFullMethodName("com.atakmap.FederatedChannel", "ServerEventStream"),
+					requestMarshaller,
+					SUBSCRIPTION_MARSHALLER), options);
+		}
+
+		String compression = FederationCompression.select(preferredCompression, peerAcceptEncoding);
+
+		if (compression != null) {
+			options = options.withCompression(compression);
+		}
+
+		if (logger.isDebugEnabled()) {
+			logger.debug("sending batched events to " + federateId + ", compression: " + compression);
+		}
+
+		return new BatchingClientCall(channel.newCall(SERVER_EVENT_BATCH_STREAM, options), batchSize, maxDelayMillis, federateId, isRunningInHub);
+	}
+}
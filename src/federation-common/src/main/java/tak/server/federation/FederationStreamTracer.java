@@ -0,0 +1,106 @@
+package tak.server.federation;
+
+import com.google.common.base.Strings;
+
+import io.grpc.ClientStreamTracer;
+import io.grpc.Context;
+import io.grpc.Metadata;
+import io.grpc.ServerStreamTracer;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Metrics;
+import tak.server.Constants;
+
+/*
+ *
+ * Records the size on the wire, after framing and compression, of each message sent to a federate.
+ *
+ * On the client side, the tracer is attached to the calls that send events to a federate. On the server side, a tracer is
+ * created for every call, and the service handler names the federate of an event stream with bind(). The server tracer also
+ * keeps the encodings the client accepts, so that the handler can pick the compression of the stream.
+ *
+ */
+public final class FederationStreamTracer {
+
+	private static final Context.Key<ServerTracer> SERVER_TRACER_KEY = Context.key("federation-stream-tracer");
+
+	private FederationStreamTracer() { }
+
+	// bytes on the wire per message sent to a federate
+	public static DistributionSummary wireBytes(String federateId, boolean isRunningInHub) {
+		return DistributionSummary.builder(Constants.METRIC_FED_EVENT_WIRE_BYTES)
+				.baseUnit("bytes")
+				.tags("takserver", isRunningInHub ? "federation-hub" : "messaging", "federate", federateId)
+				.publishPercentileHistogram()
+				.register(Metrics.globalRegistry);
+	}
+
+	public static ClientStreamTracer.Factory clientFactory(String federateId, boolean isRunningInHub) {
+		DistributionSummary wireBytes = wireBytes(federateId, isRunningInHub);
+
+		return new ClientStreamTracer.Factory() {
+			@Override
+			public ClientStreamTracer newClientStreamTracer(ClientStreamTracer.StreamInfo info, Metadata headers) {
+				return new ClientStreamTracer() {
+					@Override
+					public void outboundMessageSent(int seqNo, long optionalWireSize, long optionalUncompressedSize) {
+						if (optionalWireSize >= 0) {
+							wireBytes.record(optionalWireSize);
+						}
+					}
+				};
+			}
+		};
+	}
+
+	public static ServerStreamTracer.Factory serverFactory(boolean isRunningInHub) {
+		return new ServerStreamTracer.Factory() {
+			@Override
+			public ServerStreamTracer newServerStreamTracer(String fullMethodName, Metadata headers) {
+				return new ServerTracer(headers.get(FederationCompression.ACCEPT_ENCODING_KEY), isRunningInHub);
+			}
+		};
+	}
+
+	// record the messages of the current server call as sent to the named federate
+	public static void bind(String federateId) {
+		ServerTracer tracer = SERVER_TRACER_KEY.get();
+
+		if (tracer != null && !Strings.isNullOrEmpty(federateId)) {
+			tracer.wireBytes = wireBytes(federateId, tracer.isRunningInHub);
+		}
+	}
+
+	// the grpc-accept-encoding header of the client of the current server call, or null if it isn't known
+	public static String peerAcceptEncoding() {
+		ServerTracer tracer = SERVER_TRACER_KEY.get();
+
+		return tracer == null ? null : tracer.acceptEncoding;
+	}
+
+	private static final class ServerTracer extends ServerStreamTracer {
+
+		private final String acceptEncoding;
+		private final boolean isRunningInHub;
+
+		private volatile DistributionSummary wireBytes = null;
+
+		ServerTracer(String acceptEncoding, boolean isRunningInHub) {
+			this.acceptEncoding = acceptEncoding;
+			this.isRunningInHub = isRunningInHub;
+		}
+
+		@Override
+		public Context filterContext(Context context) {
+			return context.withValue(SERVER_TRACER_KEY, this);
+		}
+
+		@Override
+		public void outboundMessageSent(int seqNo, long optionalWireSize, long optionalUncompressedSize) {
+			DistributionSummary summary = wireBytes;
+
+			if (summary != null && optionalWireSize >= 0) {
+				summary.record(optionalWireSize);
+			}
+		}
+	}
+}
@@ -0,0 +1,79 @@
+package tak.server.federation;
+
+import java.util.concurrent.TimeUnit;
+
+import io.micrometer.core.instrument.DistributionSummary;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.util.concurrent.ScheduledFuture;
+
+/*
+ *
+ * Write batching for v1 federation connections. v1 has no way to negotiate a batched stream, so each event is still its own
+ * length-prefixed frame, but frames are written without flushing, and flushed together once batchSize are pending, or maxDelayMillis
+ * after the first, so that a batch goes out in as few TLS records and TCP segments as possible.
+ *
+ * Frames may be written from any thread. They are written and flushed on the channel's event loop, in the order they were written.
+ *
+ */
+public class FederationWriteBatcher {
+
+	private final ChannelHandlerContext ctx;
+	private final int batchSize;
+	private final long maxDelayMillis;
+
+	private final DistributionSummary batchSizes;
+	private final DistributionSummary wireBytes;
+
+	// accessed only on the event loop
+	private int pendingFrames = 0;
+	private long pendingBytes = 0;
+	private ScheduledFuture<?> scheduledFlush = null;
+
+	public FederationWriteBatcher(ChannelHandlerContext ctx, int batchSize, long maxDelayMillis, String federateId, boolean isRunningInHub) {
+		this.ctx = ctx;
+		this.batchSize = Math.max(1, batchSize);
+		this.maxDelayMillis = Math.max(0, maxDelayMillis);
+		this.batchSizes = FederatedEventBatcher.batchSizes(federateId, isRunningInHub);
+		this.wireBytes = FederationStreamTracer.wireBytes(federateId, isRunningInHub);
+	}
+
+	public void write(byte[] frame) {
+		if (ctx.executor().inEventLoop()) {
+			writeFrame(frame);
+		} else {
+			ctx.executor().execute(() -> writeFrame(frame));
+		}
+	}
+
+	private void writeFrame(byte[] frame) {
+		ctx.write(frame, ctx.voidPromise());
+
+		pendingFrames++;
+		pendingBytes += frame.length;
+
+		if (pendingFrames >= batchSize || maxDelayMillis == 0) {
+			flush();
+		} else if (scheduledFlush == null) {
+			scheduledFlush = ctx.executor().schedule(this::flush, maxDelayMillis, TimeUnit.MILLISECONDS);
+		}
+	}
+
+	private void flush() {
+		if (scheduledFlush != null) {
+			scheduledFlush.cancel(false);
+			scheduledFlush = null;
+		}
+
+		if (pendingFrames == 0) {
+			return;
+		}
+
+		batchSizes.record(pendingFrames);
+		wireBytes.record(pendingBytes);
+
+		pendingFrames = 0;
+		pendingBytes = 0;
+
+		ctx.flush();
+	}
+}
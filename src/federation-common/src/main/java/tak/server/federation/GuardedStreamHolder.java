@@ -20,18 +20,25 @@ import com.atakmap.Tak.FederatedEvent;
 import com.atakmap.Tak.Identity.ConnectionType;
 import com.atakmap.Tak.ROL;
 import com.atakmap.Tak.Subscription;
+import com.bbn.marti.config.Federation;
+import com.bbn.marti.remote.config.CoreConfigFacade;
 import com.google.common.base.Strings;
 
 import io.grpc.ClientCall;
 import io.grpc.Status;
 import io.grpc.StatusRuntimeException;
+import io.grpc.stub.ServerCallStreamObserver;
 import io.grpc.stub.StreamObserver;
 import tak.server.federation.hub.FederationHubDependencyInjectionProxy;
+import tak.server.federation.hub.broker.FederationHubServerConfig;
 
 /*
  *
  * Wrapper class guarding calls to send events into stream. The instance of this class acts as the guard.
  *
+ * Events are only written while the stream is ready for more. Until then they wait in a bounded outbound queue, which is drained
+ * when gRPC reports the stream ready again. For outgoing connections, the listener of the call must pass its onReady to this holder.
+ *
  */
 public class GuardedStreamHolder<T> {
 
@@ -49,6 +56,9 @@ public class GuardedStreamHolder<T> {
     
     private boolean isRunningInHub = false;
 
+    // null if flow control is disabled
+    private FederateOutboundQueue<T> outboundQueue;
+
     private final Set<T> cache;
 
     public Set<T> getCache() {
@@ -69,6 +79,8 @@ public class GuardedStreamHolder<T> {
         this.federateIdentity = new FederateIdentity(fedId);
 
         this.clientCall = clientCall;
+
+        this.outboundQueue = createOutboundQueue();
         
         lastHealthTime = System.currentTimeMillis();
         lastHealthStatus = ClientHealth.newBuilder().setStatus(ClientHealth.ServingStatus.SERVING).build();
@@ -106,6 +118,21 @@ public class GuardedStreamHolder<T> {
         this.federateIdentity = new FederateIdentity(fedId);
 
         this.clientStream = clientStream;
+
+        this.outboundQueue = createOutboundQueue();
+
+        if (outboundQueue != null) {
+            try {
+                // the handler can only be set by the service method, which constructs this holder
+                ((ServerCallStreamObserver<T>) clientStream).setOnReadyHandler(this::onReady);
+            } catch (ClassCastException | IllegalStateException e) {
+                if (logger.isDebugEnabled()) {
+                    logger.debug("not using flow control for " + federateIdentity, e);
+                }
+                outboundQueue = null;
+            }
+        }
+
         lastHealthTime = System.currentTimeMillis();
         lastHealthStatus = ClientHealth.newBuilder().setStatus(ClientHealth.ServingStatus.SERVING).build();
     }
@@ -160,16 +187,172 @@ public class GuardedStreamHolder<T> {
     	if (modifiedEvent == null) {
     		return;
     	}
-    	    	        
+
+    	enqueue(modifiedEvent);
+    }
+
+    /**
+     * Send an event that was already stamped for the hub by stampHubEvent, without rebuilding it. The hub stamps an event once for all
+     * of its destinations, so that the same message, and its serialized bytes, are written to each stream.
+     */
+    public synchronized void sendStamped(T stamped) {
+    	if (stamped == null) {
+    		return;
+    	}
+
+    	// the hop limit of the next hop is the only check that depends on the destination
+    	if (isHubSubscription() && stamped instanceof FederatedEvent && ((FederatedEvent) stamped).hasFederateHops()) {
+    		FederateHops federateHops = ((FederatedEvent) stamped).getFederateHops();
+
+    		if (federateHops.getMaxHops() != -1 && federateHops.getCurrentHops() >= federateHops.getMaxHops()) {
+    			if (logger.isDebugEnabled()) {
+    				logger.debug("dropping message because of hop limit (1 hop left but next destination is a hub) " + stamped);
+    			}
+    			return;
+    		}
+    	}
+
+    	enqueue(stamped);
+    }
+
+    /**
+     * The event as send in the hub would stamp it for any destination: hops incremented, and this hub added to the provenance.
+     * Streams in the hub don't set their own max hops, so this is the same for every destination.
+     *
+     * @return the stamped event, or null if the event is over its hop limit
+     */
+    public static FederatedEvent stampHubEvent(FederatedEvent event) {
+    	FederatedEvent.Builder builder = event.toBuilder();
+
+    	if (event.hasFederateHops()) {
+    		long maxHops = event.getFederateHops().getMaxHops();
+    		long currentHops = event.getFederateHops().getCurrentHops() + 1;
+
+    		if (currentHops > maxHops && maxHops != -1) {
+    			if (logger.isDebugEnabled()) {
+    				logger.debug("dropping message because of hop limit " + event);
+    			}
+    			return null;
+    		}
+
+    		builder.setFederateHops(FederateHops.newBuilder().setCurrentHops(currentHops).setMaxHops(maxHops).build());
+    	} else {
+    		builder.setFederateHops(FederateHops.newBuilder().setCurrentHops(1).setMaxHops(-1).build());
+    	}
+
+    	FederationHubServerConfig config = FederationHubDependencyInjectionProxy.getInstance().fedHubServerConfigManager().getConfig();
+
+    	boolean visited = false;
+    	for (FederateProvenance provenance : event.getFederateProvenanceList()) {
+    		if (provenance.getFederationServerId().equals(config.getFullId())) {
+    			visited = true;
+    			break;
+    		}
+    	}
+
+    	if (!visited) {
+    		builder.addFederateProvenance(FederateProvenance.newBuilder()
+    				.setFederationServerId(config.getFullId())
+    				.setFederationServerName(config.getServerName())
+    				.build());
+    	}
+
+    	return builder.build();
+    }
+
+    private void enqueue(T event) {
+    	if (outboundQueue == null || (outboundQueue.isEmpty() && isReady())) {
+    		write(event);
+    	} else {
+    		outboundQueue.offer(event);
+    		drain();
+    	}
+    }
+
+    // called by gRPC when the stream can take more events
+    public synchronized void onReady() {
+    	if (outboundQueue == null) {
+    		return;
+    	}
+
+    	try {
+    		drain();
+    	} catch (Exception e) {
+    		logger.warn("exception sending queued events to " + federateIdentity, e);
+    	}
+    }
+
+    private void drain() {
+    	while (!outboundQueue.isEmpty() && isReady()) {
+    		write(outboundQueue.poll());
+    	}
+    }
+
+    private boolean isReady() {
+    	if (clientStream instanceof ServerCallStreamObserver) {
+    		return ((ServerCallStreamObserver<T>) clientStream).isReady();
+    	}
+
+    	if (clientCall != null) {
+    		return clientCall.isReady();
+    	}
+
+    	return true;
+    }
+
+    private void write(T event) {
         // clientStream = stream of messages going from server to a connected outgoing client
         if (clientStream != null) 
-        	clientStream.onNext(modifiedEvent);
+        	clientStream.onNext(event);
         
         // clientCall = stream of messages going from outgoing client to a server
         if (clientCall != null)  {
-        	clientCall.sendMessage(modifiedEvent);
+        	clientCall.sendMessage(event);
         }
     }
+
+    private FederateOutboundQueue<T> createOutboundQueue() {
+    	int size;
+    	String dropPolicy;
+
+    	try {
+    		if (isRunningInHub) {
+    			FederationHubServerConfig config = FederationHubDependencyInjectionProxy.getInstance().fedHubServerConfigManager().getConfig();
+    			size = config.getOutboundQueueSize();
+    			dropPolicy = config.getOutboundDropPolicy();
+    		} else {
+    			Federation config = CoreConfigFacade.getInstance().getRemoteConfiguration().getFederation();
+    			size = config.getOutboundQueueSize();
+    			dropPolicy = config.getOutboundDropPolicy();
+    		}
+    	} catch (Exception e) {
+    		if (logger.isDebugEnabled()) {
+    			logger.debug("federation config not available, not using flow control for " + federateIdentity, e);
+    		}
+    		return null;
+    	}
+
+    	if (size <= 0) {
+    		return null;
+    	}
+
+    	return new FederateOutboundQueue<>(size, FederateOutboundQueue.DropPolicy.fromConfig(dropPolicy), federateIdentity.getFedId(), isRunningInHub);
+    }
+
+    // whether an event sent now would be written straight to the stream, rather than wait in the outbound queue
+    public synchronized boolean canSend() {
+    	return isReady() && (outboundQueue == null || outboundQueue.isEmpty());
+    }
+
+    // events waiting for the stream to be ready
+    public synchronized int getOutboundQueueDepth() {
+    	return outboundQueue == null ? 0 : outboundQueue.size();
+    }
+
+    // events dropped because the outbound queue was full, or replaced by a newer event for the same uid
+    public synchronized long getOutboundDropped() {
+    	return outboundQueue == null ? 0 : outboundQueue.getDropped();
+    }
     
     public T addPropertiesToEvent(T event, Set<FederateProvenance> federateProvenances) {
         if (event instanceof FederatedEvent) {
@@ -325,6 +508,11 @@ public class GuardedStreamHolder<T> {
     }
     
     public void cancel(String message, Throwable cause) {
+    	synchronized (this) {
+    		if (outboundQueue != null) {
+    			outboundQueue.clear();
+    		}
+    	}
     	if (clientCall != null) {
     		clientCall.cancel(message, cause);
     	}
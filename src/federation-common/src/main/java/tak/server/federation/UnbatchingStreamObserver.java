@@ -0,0 +1,37 @@
+package tak.server.federation;
+
+import com.atakmap.Tak.FederatedEvent;
+import com.atakmap.Tak.FederatedEventBatch;
+
+import io.grpc.stub.StreamObserver;
+
+/*
+ *
+ * Receives a batched event stream, and passes each event of each batch on to an observer of single events.
+ *
+ */
+public class UnbatchingStreamObserver implements StreamObserver<FederatedEventBatch> {
+
+	private final StreamObserver<FederatedEvent> delegate;
+
+	public UnbatchingStreamObserver(StreamObserver<FederatedEvent> delegate) {
+		this.delegate = delegate;
+	}
+
+	@Override
+	public void onNext(FederatedEventBatch batch) {
+		for (FederatedEvent event : batch.getEventsList()) {
+			delegate.onNext(event);
+		}
+	}
+
+	@Override
+	public void onError(Throwable t) {
+		delegate.onError(t);
+	}
+
+	@Override
+	public void onCompleted() {
+		delegate.onCompleted();
+	}
+}
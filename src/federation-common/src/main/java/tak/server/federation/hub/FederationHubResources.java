@@ -68,6 +68,8 @@ public class FederationHubResources {
 
 	public static final ScheduledExecutorService metricsScheduler = !IS_LOW_CORE ? newScheduledExecutor("metrics-federation-hub-scheduler", 1) : lowCoreScheduledExecutorService;
 
+	public static final ScheduledExecutorService replayLogScheduler = !IS_LOW_CORE ? newScheduledExecutor("replay-log-federation-hub-scheduler", 1) : lowCoreScheduledExecutorService;
+
 	// Bounded Executor pool for federation grpc server and channel builders
 	public static final ExecutorService federationGrpcExecutor = !IS_LOW_CORE ? newGrpcThreadPoolExecutor("grpc-federation-hub-executor", POOL_SIZE_INITIAL, NUM_AVAIL_CORES) : lowCoreGrpcExecutorService;
 
@@ -73,6 +73,24 @@ public class FederationHubServerConfig {
     private long missionFederationRecencySeconds = 43200;
     private long missionFederationDisruptionMaxFileSizeBytes = 268435456;
     private boolean missionFederationDisruptionEnabled = false;
+
+    // events held for each federate while its stream isn't ready. 0 disables flow control.
+    private int outboundQueueSize = 0;
+    // oldest, priority or latestPerUid
+    private String outboundDropPolicy = "oldest";
+
+    // most events in one frame. 0 sends each event in its own frame.
+    private int eventBatchSize = 0;
+    private int eventBatchMaxDelayMillis = 20;
+    // none, gzip or zstd
+    private String eventCompression = "gzip";
+
+    // events and ROL for disconnected v2 federates, kept on disk and replayed when they reconnect
+    private boolean replayLogEnabled = false;
+    private String replayLogDirectory = "/opt/tak/federation-hub/replay";
+    private long replayLogMaxBytesPerFederate = 104857600;
+    private long replayLogMaxAgeSeconds = 43200;
+    private long replayLogSegmentBytes = 8388608;
     
     private List<TokenAuthServer> federationTokenAuthServers = new ArrayList<>();
     
@@ -363,6 +381,86 @@ public class FederationHubServerConfig {
 		this.missionFederationDisruptionMaxFileSizeBytes = missionFederationDisruptionMaxFileSizeBytes;
 	}
 
+	public int getOutboundQueueSize() {
+		return outboundQueueSize;
+	}
+
+	public void setOutboundQueueSize(int outboundQueueSize) {
+		this.outboundQueueSize = outboundQueueSize;
+	}
+
+	public String getOutboundDropPolicy() {
+		return outboundDropPolicy;
+	}
+
+	public void setOutboundDropPolicy(String outboundDropPolicy) {
+		this.outboundDropPolicy = outboundDropPolicy;
+	}
+
+	public int getEventBatchSize() {
+		return eventBatchSize;
+	}
+
+	public void setEventBatchSize(int eventBatchSize) {
+		this.eventBatchSize = eventBatchSize;
+	}
+
+	public int getEventBatchMaxDelayMillis() {
+		return eventBatchMaxDelayMillis;
+	}
+
+	public void setEventBatchMaxDelayMillis(int eventBatchMaxDelayMillis) {
+		this.eventBatchMaxDelayMillis = eventBatchMaxDelayMillis;
+	}
+
+	public String getEventCompression() {
+		return eventCompression;
+	}
+
+	public void setEventCompression(String eventCompression) {
+		this.eventCompression = eventCompression;
+	}
+
+	public boolean isReplayLogEnabled() {
+		return replayLogEnabled;
+	}
+
+	public void setReplayLogEnabled(boolean replayLogEnabled) {
+		this.replayLogEnabled = replayLogEnabled;
+	}
+
+	public String getReplayLogDirectory() {
+		return replayLogDirectory;
+	}
+
+	public void setReplayLogDirectory(String replayLogDirectory) {
+		this.replayLogDirectory = replayLogDirectory;
+	}
+
+	public long getReplayLogMaxBytesPerFederate() {
+		return replayLogMaxBytesPerFederate;
+	}
+
+	public void setReplayLogMaxBytesPerFederate(long replayLogMaxBytesPerFederate) {
+		this.replayLogMaxBytesPerFederate = replayLogMaxBytesPerFederate;
+	}
+
+	public long getReplayLogMaxAgeSeconds() {
+		return replayLogMaxAgeSeconds;
+	}
+
+	public void setReplayLogMaxAgeSeconds(long replayLogMaxAgeSeconds) {
+		this.replayLogMaxAgeSeconds = replayLogMaxAgeSeconds;
+	}
+
+	public long getReplayLogSegmentBytes() {
+		return replayLogSegmentBytes;
+	}
+
+	public void setReplayLogSegmentBytes(long replayLogSegmentBytes) {
+		this.replayLogSegmentBytes = replayLogSegmentBytes;
+	}
+
 	public List<TokenAuthServer> getFederationTokenAuthServers() {
 		return federationTokenAuthServers;
 	}
@@ -388,7 +486,12 @@ public class FederationHubServerConfig {
 				+ ", missionFederationDBRetentionDays=" + missionFederationDBRetentionDays
 				+ ", missionFederationRecencySeconds=" + missionFederationRecencySeconds
 				+ ", missionFederationDisruptionMaxFileSizeBytes=" + missionFederationDisruptionMaxFileSizeBytes
-				+ ", missionFederationDisruptionEnabled=" + missionFederationDisruptionEnabled + "]";
+				+ ", missionFederationDisruptionEnabled=" + missionFederationDisruptionEnabled
+				+ ", outboundQueueSize=" + outboundQueueSize + ", outboundDropPolicy=" + outboundDropPolicy
+				+ ", eventBatchSize=" + eventBatchSize + ", eventBatchMaxDelayMillis=" + eventBatchMaxDelayMillis
+				+ ", eventCompression=" + eventCompression + ", replayLogEnabled=" + replayLogEnabled
+				+ ", replayLogDirectory=" + replayLogDirectory + ", replayLogMaxBytesPerFederate=" + replayLogMaxBytesPerFederate
+				+ ", replayLogMaxAgeSeconds=" + replayLogMaxAgeSeconds + ", replayLogSegmentBytes=" + replayLogSegmentBytes + "]";
 	}
 	
 	@JsonIgnoreProperties(ignoreUnknown = true)
@@ -6,6 +6,8 @@ public class FederateOutgoingProperties extends NodeProperties {
     private String host;
     private int port;
     private boolean outgoingEnabled;
+    // none, gzip or zstd for the batched event stream to this federate. If not set, the hub's eventCompression.
+    private String eventCompression;
     
 	public String getOutgoingName() {
 		return outgoingName;
@@ -32,9 +34,15 @@ public class FederateOutgoingProperties extends NodeProperties {
 	public void setOutgoingEnabled(boolean outgoingEnabled) {
 		this.outgoingEnabled = outgoingEnabled;
 	}
+	public String getEventCompression() {
+		return eventCompression;
+	}
+	public void setEventCompression(String eventCompression) {
+		this.eventCompression = eventCompression;
+	}
 	@Override
 	public String toString() {
 		return "FederateOutgoingProperties [outgoingName=" + outgoingName + ", host=" + host + ", port=" + port
-				+ ", outgoingEnabled=" + outgoingEnabled + "]";
+				+ ", outgoingEnabled=" + outgoingEnabled + ", eventCompression=" + eventCompression + "]";
 	}
 }
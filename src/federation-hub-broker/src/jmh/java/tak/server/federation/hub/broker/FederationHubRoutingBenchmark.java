@@ -0,0 +1,144 @@
+package tak.server.federation.hub.broker;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import tak.server.federation.Federate;
+import tak.server.federation.FederateEdge;
+import tak.server.federation.FederateGroup;
+import tak.server.federation.FederateIdentity;
+import tak.server.federation.FederationException;
+import tak.server.federation.hub.policy.FederationPolicyGraphImpl;
+
+/*
+ *
+ * Hub routing throughput: the group filtered destinations of a message from each federate, by walking the policy graph per message
+ * as the broker did, and by lookup in a compiled FederationHubRoutingTable. The graph has federateCount federates in two CA groups,
+ * each with direct edges to a few others, and CA group edges, with a mix of group filter types.
+ *
+ * ./gradlew :federation-hub-broker:jmh -PjmhInclude=FederationHubRoutingBenchmark
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class FederationHubRoutingBenchmark {
+
+	@Param({"50"})
+	public int federateCount;
+
+	@Param({"16"})
+	public int groupCount;
+
+	private static final int EDGES_PER_FEDERATE = 5;
+
+	private static final int MESSAGE_GROUP_SETS = 32;
+
+	private FederationPolicyGraphImpl policyGraph;
+
+	private FederationHubRoutingTable routingTable;
+
+	private final List<FederateIdentity> sources = new ArrayList<>();
+
+	private final List<List<String>> messageGroups = new ArrayList<>();
+
+	private int messageCounter = 0;
+
+	@Setup(Level.Trial)
+	public void setup() throws FederationException {
+
+		Random random = new Random(42);
+
+		sources.clear();
+		messageGroups.clear();
+
+		policyGraph = new FederationPolicyGraphImpl("benchmark", new HashSet<>());
+
+		FederateGroup[] caGroups = { new FederateGroup(new FederateIdentity("ca-0")), new FederateGroup(new FederateIdentity("ca-1")) };
+		caGroups[0].setInterconnected(false);
+		caGroups[1].setInterconnected(false);
+
+		for (FederateGroup caGroup : caGroups) {
+			policyGraph.addGroup(caGroup);
+		}
+
+		for (int i = 0; i < federateCount; i++) {
+			FederateIdentity identity = new FederateIdentity("federate-" + i);
+			Federate federate = new Federate(identity);
+			federate.addGroupIdentity(caGroups[i % caGroups.length].getFederateIdentity());
+			policyGraph.addFederate(federate);
+			sources.add(identity);
+		}
+
+		for (int i = 0; i < federateCount; i++) {
+			for (int j = 1; j <= EDGES_PER_FEDERATE; j++) {
+				policyGraph.addEdge(edge(random, sources.get(i), sources.get((i + j * 7) % federateCount)));
+			}
+		}
+
+		policyGraph.addEdge(edge(random, caGroups[0].getFederateIdentity(), caGroups[1].getFederateIdentity()));
+		policyGraph.addEdge(edge(random, caGroups[1].getFederateIdentity(), caGroups[0].getFederateIdentity()));
+
+		for (int i = 0; i < MESSAGE_GROUP_SETS; i++) {
+			messageGroups.add(new ArrayList<>(randomGroups(random, 1 + random.nextInt(3))));
+		}
+
+		routingTable = new FederationHubRoutingTable(policyGraph);
+	}
+
+	private FederateEdge edge(Random random, FederateIdentity source, FederateIdentity destination) {
+		FederateEdge.GroupFilterType type = FederateEdge.GroupFilterType.values()[random.nextInt(FederateEdge.GroupFilterType.values().length)];
+		return new FederateEdge(source, destination, null, randomGroups(random, 4), randomGroups(random, 2), type);
+	}
+
+	private Set<String> randomGroups(Random random, int count) {
+		Set<String> groups = new HashSet<>();
+
+		while (groups.size() < count) {
+			groups.add("group" + random.nextInt(groupCount));
+		}
+
+		return groups;
+	}
+
+	@Benchmark
+	public void policyGraph(Blackhole blackhole) throws FederationException {
+		int i = messageCounter++;
+		blackhole.consume(FederationHubBrokerService.getGroupFilteredDestinations(messageGroups.get(i % MESSAGE_GROUP_SETS),
+				sources.get(i % federateCount), policyGraph));
+	}
+
+	@Benchmark
+	public void routingTable(Blackhole blackhole) throws FederationException {
+		int i = messageCounter++;
+		blackhole.consume(routingTable.getGroupFilteredDestinations(sources.get(i % federateCount).getFedId(),
+				messageGroups.get(i % MESSAGE_GROUP_SETS)));
+	}
+
+	// the table is compiled again whenever the policy or federate groups change
+	@Benchmark
+	public FederationHubRoutingTable compile() {
+		return new FederationHubRoutingTable(policyGraph);
+	}
+}
@@ -1,6 +1,7 @@
 package tak.server.federation.hub.broker;
 
 import static io.grpc.Metadata.ASCII_STRING_MARSHALLER;
+import static io.grpc.MethodDescriptor.generateFullMethodName;
 import static java.util.Objects.requireNonNull;
 
 import java.io.FileInputStream;
@@ -39,6 +40,7 @@ import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Supplier;
 import java.util.stream.Collectors;
 
 import javax.cache.event.CacheEntryEvent;
@@ -70,12 +72,14 @@ import com.atakmap.Tak.FederateProvenance;
 import com.atakmap.Tak.FederatedChannelGrpc;
 import com.atakmap.Tak.FederatedEvent;
 import com.atakmap.Tak.FederatedEvent.Builder;
+import com.atakmap.Tak.FederatedEventBatch;
 import com.atakmap.Tak.Identity;
 import com.atakmap.Tak.ROL;
 import com.atakmap.Tak.ServerHealth;
 import com.atakmap.Tak.Subscription;
 import com.bbn.roger.fig.FederationUtils;
 import com.google.common.base.Strings;
+import com.google.common.base.Suppliers;
 import com.google.common.collect.ComparisonChain;
 import com.google.common.collect.Sets;
 import com.google.gson.Gson;
@@ -90,9 +94,11 @@ import io.grpc.ServerCall;
 import io.grpc.ServerCallHandler;
 import io.grpc.ServerInterceptor;
 import io.grpc.ServerInterceptors;
+import io.grpc.ServerServiceDefinition;
 import io.grpc.Status;
 import io.grpc.StatusRuntimeException;
 import io.grpc.netty.NettyServerBuilder;
+import io.grpc.stub.ServerCallStreamObserver;
 import io.grpc.stub.StreamObserver;
 import io.jsonwebtoken.Claims;
 import io.jsonwebtoken.JwtException;
@@ -121,15 +127,19 @@ import mil.af.rl.rol.ResourceOperationParameterEvaluator;
 import mil.af.rl.rol.RolLexer;
 import mil.af.rl.rol.RolParser;
 import mil.af.rl.rol.value.Parameters;
+import tak.server.federation.BatchingServerStreamObserver;
 import tak.server.federation.Federate;
 import tak.server.federation.FederateEdge;
 import tak.server.federation.FederateGroup;
 import tak.server.federation.FederateIdentity;
+import tak.server.federation.FederationCompression;
 import tak.server.federation.FederationException;
 import tak.server.federation.FederationNode;
 import tak.server.federation.FederationPolicyGraph;
+import tak.server.federation.FederationStreamTracer;
 import tak.server.federation.GuardedStreamHolder;
 import tak.server.federation.TokenAuthCredential;
+import tak.server.federation.UnbatchingStreamObserver;
 import tak.server.federation.hub.FederationHubCache;
 import tak.server.federation.hub.FederationHubResources;
 import tak.server.federation.hub.FederationHubUtils;
@@ -142,6 +152,7 @@ import tak.server.federation.hub.broker.events.RestartServerEvent;
 import tak.server.federation.hub.broker.events.StreamReadyEvent;
 import tak.server.federation.hub.broker.events.UpdatePolicy;
 import tak.server.federation.hub.policy.FederationHubPolicyManager;
+import tak.server.federation.hub.policy.FederationPolicyGraphImpl.FederationPolicyReachabilityHolder;
 import tak.server.federation.hub.ui.graph.FederationOutgoingCell;
 import tak.server.federation.hub.ui.graph.FederationTokenGroupCell;
 import tak.server.federation.hub.ui.graph.PolicyObjectCell;
@@ -162,6 +173,9 @@ public class FederationHubBrokerService implements ApplicationListener<BrokerSer
     private FederationHubServerConfigManager fedHubConfigManager;
     private FederationHubPolicyManager fedHubPolicyManager;
     private FederationHubMissionDisruptionManager federationHubMissionDisruptionManager;
+
+    // null unless replayLogEnabled
+    private FederationHubReplayLog replayLog = null;
     private SSLConfig sslConfig;
 
     /* v1 variables. */
@@ -219,6 +233,14 @@ public class FederationHubBrokerService implements ApplicationListener<BrokerSer
 
     	federationHubROLHandler = new FederationHubROLHandler(federationHubMissionDisruptionManager);
 
+    	if (fedHubConfigManager.getConfig().isReplayLogEnabled()) {
+    		try {
+    			replayLog = new FederationHubReplayLog(fedHubConfigManager.getConfig());
+    		} catch (IOException e) {
+    			logger.error("not keeping a replay log for disconnected federates, " + fedHubConfigManager.getConfig().getReplayLogDirectory() + " can't be used", e);
+    		}
+    	}
+
     	setupFederationServers();
 
     	// rather than hitting ignite every time we need the policy graph,
@@ -228,6 +250,7 @@ public class FederationHubBrokerService implements ApplicationListener<BrokerSer
 	     	for (CacheEntryEvent<? extends String, ? extends FederationPolicyGraph> e : evts) {
 	     		federationPolicyGraph = e.getValue();
 	     		policyCells = fedHubPolicyManager.getPolicyCells();
+	     		invalidateRoutingTable();
 	     	}
     	});
 
@@ -237,12 +260,103 @@ public class FederationHubBrokerService implements ApplicationListener<BrokerSer
     private FederationPolicyGraph federationPolicyGraph;
     private Collection<PolicyObjectCell> policyCells;
 
+    // destinations of each source, compiled from the policy graph. Cleared whenever the graph or the federate groups change.
+    private volatile FederationHubRoutingTable routingTable;
+    private final AtomicLong routingTableVersion = new AtomicLong();
+
     public FederationPolicyGraph getFederationPolicyGraph() {
     	if (federationPolicyGraph == null)
     		federationPolicyGraph = fedHubPolicyManager.getPolicyGraph();
 
     	return federationPolicyGraph;
     }
+
+    private FederationHubRoutingTable getRoutingTable(FederationPolicyGraph policyGraph) {
+    	FederationHubRoutingTable table = routingTable;
+
+    	if (table == null || table.getPolicyGraph() != policyGraph) {
+    		long version = routingTableVersion.get();
+
+    		table = new FederationHubRoutingTable(policyGraph);
+
+    		// only keep a table of the current graph, and not one that may have been compiled while the graph was being changed
+    		if (policyGraph == getFederationPolicyGraph() && version == routingTableVersion.get()) {
+    			routingTable = table;
+    		}
+    	}
+
+    	return table;
+    }
+
+    private void invalidateRoutingTable() {
+    	routingTableVersion.incrementAndGet();
+    	routingTable = null;
+    }
+
+    /**
+     * Replay the events logged for the federate of an event stream that was just added under connectionId, if the replay log is
+     * enabled. Events are logged by stamped bytes, so they are sent as they were routed.
+     */
+    public void replayEvents(String connectionId, GuardedStreamHolder<FederatedEvent> streamHolder) {
+    	if (replayLog == null) {
+    		return;
+    	}
+
+    	replayLog.connect(FederationHubReplayLog.Stream.EVENTS, streamHolder.getFederateIdentity().getFedId(),
+    			new StreamReplaySink<FederatedEvent>(hubConnectionStore.getClientStreamMap(), connectionId, streamHolder) {
+    		@Override
+    		public void send(byte[] message) throws Exception {
+    			streamHolder.sendStamped(FederatedEvent.parseFrom(message));
+    		}
+    	}, true);
+    }
+
+    /**
+     * Replay the ROL logged for the federate of a ROL stream that was just added under connectionId, if the replay log is enabled.
+     *
+     * @param replay false if the federate was brought up to date from the mission disruption database instead
+     */
+    public void replayRol(String connectionId, GuardedStreamHolder<ROL> rolStreamHolder, boolean replay) {
+    	if (replayLog == null) {
+    		return;
+    	}
+
+    	replayLog.connect(FederationHubReplayLog.Stream.ROL, rolStreamHolder.getFederateIdentity().getFedId(),
+    			new StreamReplaySink<ROL>(hubConnectionStore.getClientROLStreamMap(), connectionId, rolStreamHolder) {
+    		@Override
+    		public void send(byte[] message) throws Exception {
+    			rolStreamHolder.send(ROL.parseFrom(message));
+    		}
+    	}, replay);
+    }
+
+    // whether the replay log holds every ROL routed to fedId since it last disconnected, so mission changes don't have to be looked up
+    public boolean isRolReplayComplete(String fedId) {
+    	return replayLog != null && replayLog.isComplete(FederationHubReplayLog.Stream.ROL, fedId);
+    }
+
+    // a stream holder, for as long as it is the stream under its connection id
+    private static abstract class StreamReplaySink<T> implements FederationHubReplayLog.Sink {
+    	private final Map<String, GuardedStreamHolder<T>> streams;
+    	private final String connectionId;
+    	private final GuardedStreamHolder<T> streamHolder;
+
+    	StreamReplaySink(Map<String, GuardedStreamHolder<T>> streams, String connectionId, GuardedStreamHolder<T> streamHolder) {
+    		this.streams = streams;
+    		this.connectionId = connectionId;
+    		this.streamHolder = streamHolder;
+    	}
+
+    	@Override
+    	public boolean isConnected() {
+    		return streams.get(connectionId) == streamHolder;
+    	}
+
+    	@Override
+    	public boolean canSend() {
+    		return streamHolder.canSend();
+    	}
+    }
     
     public Collection<PolicyObjectCell> getFederationPolicyCells() {
     	if (policyCells == null)
@@ -461,7 +575,7 @@ public class FederationHubBrokerService implements ApplicationListener<BrokerSer
                                             public int compare(FederatedEvent a, FederatedEvent b) {
                                                 return ComparisonChain.start().compare(a.hashCode(), b.hashCode()).result();
                                             }
-                                        }
+                                        }, fedHubConfigManager.getConfig()
                                 );
 
                                 v1ClientStreamMap.put(sessionId, handler);
@@ -539,14 +653,19 @@ public class FederationHubBrokerService implements ApplicationListener<BrokerSer
 				.executor(FederationHubResources.federationGrpcExecutor)
 				.workerEventLoopGroup(FederationHubResources.federationGrpcWorkerEventLoopGroup)
 				.bossEventLoopGroup(FederationHubResources.federationGrpcWorkerEventLoopGroup)
-				.channelType(Epoll.isAvailable() ? EpollServerSocketChannel.class : NioServerSocketChannel.class);
+				.channelType(Epoll.isAvailable() ? EpollServerSocketChannel.class : NioServerSocketChannel.class)
+				.compressorRegistry(FederationCompression.compressorRegistry())
+				.decompressorRegistry(FederationCompression.decompressorRegistry())
+				.addStreamTracerFactory(FederationStreamTracer.serverFactory(true));
 		
 		if (fedHubConfigManager.getConfig().getMaxConcurrentCallsPerConnection() != null
 				&& fedHubConfigManager.getConfig().getMaxConcurrentCallsPerConnection() > 0) {
 			serverBuilder.maxConcurrentCallsPerConnection(fedHubConfigManager.getConfig().getMaxConcurrentCallsPerConnection());
 		}
 
-		FederatedChannelService service = new FederatedChannelService();
+		// events fanned out by the hub are written from bytes serialized once for all destinations
+		ServerServiceDefinition service = PreSerializedMarshaller.FEDERATED_EVENT.withResponseMarshaller(
+				new FederatedChannelService().bindService(), generateFullMethodName("com.atakmap.FederatedChannel", "ClientEventStream"));
 
 		if (oauth) {
 			Server server = serverBuilder.addService(ServerInterceptors.intercept(service, oauthInterceptor())).build();
@@ -837,6 +956,10 @@ public class FederationHubBrokerService implements ApplicationListener<BrokerSer
     	for (Server server : portToServerMap.values()) {
     		 server.shutdown();
     	}
+
+    	if (replayLog != null) {
+    		replayLog.close();
+    	}
     }
 
     private void sendCaGroupsToFedManager(KeyStore keyStore) throws KeyStoreException {
@@ -879,6 +1002,7 @@ public class FederationHubBrokerService implements ApplicationListener<BrokerSer
         Federate federate = new Federate(federateIdentity);
         synchronized (federationPolicyGraph) {
         	federationPolicyGraph = fedHubPolicyManager.addCaFederate(federate, caCertNames);
+        	invalidateRoutingTable();
 		}
     }
 
@@ -916,6 +1040,7 @@ public class FederationHubBrokerService implements ApplicationListener<BrokerSer
             Federate federate = new Federate(federateIdentity);
             synchronized (federationPolicyGraph) {
             	federationPolicyGraph = fedHubPolicyManager.addCaFederate(federate, clientGroups);
+            	invalidateRoutingTable();
     		}
         }
     }
@@ -1283,6 +1408,8 @@ public class FederationHubBrokerService implements ApplicationListener<BrokerSer
                 throw new IllegalArgumentException("Invalid clientEventStream request from client - null or empty name was provided");
             }
 
+            FederationStreamTracer.bind(clientName);
+
             int streamCount = clientEventStreamCounter.incrementAndGet();
 
             GuardedStreamHolder<FederatedEvent> streamHolder = null;
@@ -1398,6 +1525,11 @@ public class FederationHubBrokerService implements ApplicationListener<BrokerSer
             	groups.getFederateGroupsList().forEach(group -> eventBuilder.addFederateGroups(group));
             	streamHolder.send(eventBuilder.build());
 
+            	// federates that don't send a server id get a new id for each connection, and nothing to replay
+            	if (!Strings.isNullOrEmpty(subscription.getIdentity().getServerId())) {
+            		replayEvents(sessionId, streamHolder);
+            	}
+
                 // if groups for this connection exist, send them here as well incase it failed
                 if (hubConnectionStore.getClientToGroupsMap().get(sessionId) != null) {
                     addFederateGroups(sessionId, hubConnectionStore.getClientToGroupsMap().get(sessionId));
@@ -1418,6 +1550,29 @@ public class FederationHubBrokerService implements ApplicationListener<BrokerSer
             logger.info("Client stream added. Count: " + streamCount);
         }
 
+        @Override
+        public void clientEventBatchStream(Subscription subscription, StreamObserver<FederatedEventBatch> clientStream) {
+            requireNonNull(subscription, "client-specified subscription");
+            requireNonNull(subscription.getIdentity(), "client-specified identity");
+
+            FederationHubServerConfig config = fedHubConfigManager.getConfig();
+
+            // the client falls back to clientEventStream
+            if (config.getEventBatchSize() <= 0) {
+                clientStream.onError(new StatusRuntimeException(Status.UNIMPLEMENTED.withDescription("event batching is disabled")));
+                return;
+            }
+
+            String compression = FederationCompression.select(config.getEventCompression(), FederationStreamTracer.peerAcceptEncoding());
+
+            if (logger.isDebugEnabled()) {
+                logger.debug("batched event stream for " + subscription.getIdentity().getName() + ", compression: " + compression);
+            }
+
+            clientEventStream(subscription, new BatchingServerStreamObserver((ServerCallStreamObserver<FederatedEventBatch>) clientStream,
+                config.getEventBatchSize(), config.getEventBatchMaxDelayMillis(), compression, subscription.getIdentity().getName(), true));
+        }
+
         @Override
         public void clientROLStream(Subscription subscription, StreamObserver<ROL> clientStream) {
             requireNonNull(subscription, "client-specified subscription");
@@ -1473,14 +1628,27 @@ public class FederationHubBrokerService implements ApplicationListener<BrokerSer
                 // down the line for getting the session id
                 FederationHubMissionDisruptionManager.OfflineMissionChanges changes = null;
 
+                // the replay log has the mission changes since the federate disconnected, unless it dropped some of them
+                boolean replayRol = isRolReplayComplete(rolStreamHolder.getFederateIdentity().getFedId());
+
                 if (fedHubConfigManager.getConfig().isMissionFederationDisruptionEnabled()) {
-                	changes = federationHubMissionDisruptionManager.getMissionChangesAndTrackConnectEvent(
-                    		rolStreamHolder.getFederateIdentity().getFedId(), rolStreamHolder.getClientGroups());
+                	if (replayRol) {
+                		federationHubMissionDisruptionManager.trackConnectEvent(
+                				rolStreamHolder.getFederateIdentity().getFedId(), rolStreamHolder.getClientGroups());
+                	} else {
+                		changes = federationHubMissionDisruptionManager.getMissionChangesAndTrackConnectEvent(
+                				rolStreamHolder.getFederateIdentity().getFedId(), rolStreamHolder.getClientGroups());
+                	}
                 }
 
                 /* Keep track of client stream and its associated federate identity. */
                 hubConnectionStore.addRolStream(sessionId, rolStreamHolder);
 
+                if (!Strings.isNullOrEmpty(subscription.getIdentity().getServerId())) {
+                	// with mission disruption tracking, the changes found above replace an incomplete log
+                	replayRol(sessionId, rolStreamHolder, replayRol || !fedHubConfigManager.getConfig().isMissionFederationDisruptionEnabled());
+                }
+
                 AtomicLong delayMs = new AtomicLong(0L);
                 if (changes != null) {
         			
@@ -1625,6 +1793,11 @@ public class FederationHubBrokerService implements ApplicationListener<BrokerSer
             };
         }
 
+        @Override
+        public StreamObserver<FederatedEventBatch> serverEventBatchStream(StreamObserver<Subscription> responseObserver) {
+            return new UnbatchingStreamObserver(serverEventStream(responseObserver));
+        }
+
         @Override
         public void healthCheck(ClientHealth request, StreamObserver<ServerHealth> responseObserver) {
             if (fedHubConfigManager.getConfig().isEnableHealthCheck()) {
@@ -1819,10 +1992,9 @@ public class FederationHubBrokerService implements ApplicationListener<BrokerSer
             throws FederationException {
     	
         message.setSource(new AddressableEntity<FederateIdentity>(federateIdentity));
-        Set<Federate> destinationNodes = policyGraph.allReachableFederates(federateIdentity.getFedId()).federates;
-        destinationNodes.stream().forEach(node ->
-            message.getDestinations().add(new AddressableEntity<>(node.getFederateIdentity()))
-        );
+        for (Federate node : getRoutingTable(policyGraph).getDestinations(federateIdentity.getFedId())) {
+            message.getDestinations().add(new AddressableEntity<>(node.getFederateIdentity()));
+        }
     }
 
     public void assignGroupFilteredMessageSourceAndDestinationsFromPolicy(Message message, List<String> groups,
@@ -1837,9 +2009,9 @@ public class FederationHubBrokerService implements ApplicationListener<BrokerSer
 
         message.setSource(new AddressableEntity<FederateIdentity>(federateIdentity));
 
-        getGroupFilteredDestinations(groups, federateIdentity, policyGraph).forEach(node -> {
+        for (Federate node : getRoutingTable(policyGraph).getGroupFilteredDestinations(federateIdentity.getFedId(), groups)) {
         	message.getDestinations().add(new AddressableEntity<>(node.getFederateIdentity()));
-        });
+        }
 
     }
 
@@ -1849,9 +2021,11 @@ public class FederationHubBrokerService implements ApplicationListener<BrokerSer
 
     	Set<Federate> reachableGroupFilteredFederates = new HashSet<>();
 
-        Set<Federate> destinationNodes = policyGraph.allReachableFederates(federateIdentity.getFedId()).federates;
-        Map<FederationNode, FederateEdge> destinationToFederateEdges = policyGraph.allReachableFederates(federateIdentity.getFedId()).getDestinationToFederateEdgeMappings();
-        Map<FederationNode, Set<FederateEdge>> destinationToFederateGroupEdges = policyGraph.allReachableFederates(federateIdentity.getFedId()).getDestinationToFederateGroupEdgeMappings();
+        FederationPolicyReachabilityHolder reachability = policyGraph.allReachableFederates(federateIdentity.getFedId());
+
+        Set<Federate> destinationNodes = reachability.federates;
+        Map<FederationNode, FederateEdge> destinationToFederateEdges = reachability.getDestinationToFederateEdgeMappings();
+        Map<FederationNode, Set<FederateEdge>> destinationToFederateGroupEdges = reachability.getDestinationToFederateGroupEdgeMappings();
 
         destinationNodes.stream().forEach(node -> {
         	// direct edge between two nodes takes top priority for group filtering
@@ -1914,9 +2088,14 @@ public class FederationHubBrokerService implements ApplicationListener<BrokerSer
 		}
     }
 
-    private void deliverRol(Message message, FederateIdentity src, FederateIdentity dest) {
+    // returns whether dest is connected
+    private boolean deliverRol(Message message, FederateIdentity src, FederateIdentity dest) {
+        boolean connected = false;
+
         for (Entry<String, GuardedStreamHolder<ROL>> entry : hubConnectionStore.getClientROLStreamMap().entrySet()) {
             if (entry.getValue().getFederateIdentity().equals(dest)) {
+                connected = true;
+
                 Message filteredMessage = message;
 
                 ROL rol = requireNonNull((ROL)filteredMessage.getPayload().getContent(), "federated rol message payload");
@@ -1937,6 +2116,8 @@ public class FederationHubBrokerService implements ApplicationListener<BrokerSer
                 }
             }
         }
+
+        return connected;
     }
 
     private void sendRolMessage(Message message) {
@@ -1963,7 +2144,12 @@ public class FederationHubBrokerService implements ApplicationListener<BrokerSer
                     continue;
                 }
 
-                deliverRol(message, src, dest);
+                if (replayLog != null) {
+                    replayLog.deliverOrAppend(FederationHubReplayLog.Stream.ROL, dest.getFedId(), () -> deliverRol(message, src, dest),
+                        null, () -> ((ROL) message.getPayload().getContent()).toByteArray());
+                } else {
+                    deliverRol(message, src, dest);
+                }
             }
         }
     }
@@ -1973,12 +2159,6 @@ public class FederationHubBrokerService implements ApplicationListener<BrokerSer
             if (entry.getValue().getFederateIdentity().equals(dest)) {
                 Message filteredMessage = message;
 
-                // Fail closed: if a subscription filter is configured, block delivery since the filter engine is not implemented
-                if (!Strings.isNullOrEmpty(entry.getValue().getSubscription().getFilter())) {
-                    logger.warn("Dropping V1 message to {} - subscription filter is configured but filter engine is not implemented", dest.getFedId());
-                    continue;
-                }
-
                 if (logger.isTraceEnabled()) {
                     logger.trace("Sending message {} from {} to {}", message.toString(), src, dest);
                 }
@@ -1998,10 +2178,13 @@ public class FederationHubBrokerService implements ApplicationListener<BrokerSer
         }
     }
 
-    private void deliver(Message message, FederateIdentity src, FederateIdentity dest) {
+    // event is the message payload as stamped for every destination by GuardedStreamHolder.stampHubEvent. Returns whether dest is connected.
+    private boolean deliver(Message message, FederatedEvent event, FederateIdentity src, FederateIdentity dest) {
+        boolean connected = false;
+
         for (Entry<String, GuardedStreamHolder<FederatedEvent>> entry : hubConnectionStore.getClientStreamMap().entrySet()) {
             if (entry.getValue().getFederateIdentity().equals(dest)) {
-                Message filteredMessage = message;
+                connected = true;
 
                 // Fail closed: if a subscription filter is configured, block delivery since the filter engine is not implemented
                 if (!Strings.isNullOrEmpty(entry.getValue().getSubscription().getFilter())) {
@@ -2009,15 +2192,12 @@ public class FederationHubBrokerService implements ApplicationListener<BrokerSer
                     continue;
                 }
 
-                FederatedEvent event = requireNonNull((FederatedEvent)filteredMessage.getPayload().getContent(),
-                    "federated event message payload");
-
                 if (logger.isTraceEnabled()) {
                     logger.trace("Sending message {} from {} to {}", message.toString(), src, dest);
                 }
 
                 try {
-                    entry.getValue().send(event);
+                    entry.getValue().sendStamped(event);
 
                     /* Track message sends for metrics. */
                     clientMessageCounter.incrementAndGet();
@@ -2030,6 +2210,8 @@ public class FederationHubBrokerService implements ApplicationListener<BrokerSer
                 }
             }
         }
+
+        return connected;
     }
 
     public void sendFederatedEventV1(Message message) {
@@ -2060,6 +2242,22 @@ public class FederationHubBrokerService implements ApplicationListener<BrokerSer
     }
 
     private void sendFederatedEvent(Message message) {
+        FederatedEvent payload = requireNonNull((FederatedEvent)message.getPayload().getContent(),
+            "federated event message payload");
+
+        // stamp the hops and provenance, and serialize, once for all destinations instead of once per destination
+        FederatedEvent event = GuardedStreamHolder.stampHubEvent(payload);
+
+        if (event == null) {
+            return;
+        }
+
+        PreSerializedMarshaller.FEDERATED_EVENT.preSerialize(event);
+
+        // serialized for the replay log once, if a destination is disconnected
+        Supplier<byte[]> serialized = Suppliers.memoize(event::toByteArray);
+        String replayKey = replayLog != null ? FederationHubReplayLog.eventKey(event) : null;
+
         /* Use FederateIdentity as the connection key. */
         /* TODO: bring back SSL_SESSION_ID self-send check. */
 //      if (message.getMetadataValue(SSL_SESSION_ID) != null) { // prefer session id
@@ -2084,7 +2282,12 @@ public class FederationHubBrokerService implements ApplicationListener<BrokerSer
                     continue;
                 }
 
-                deliver(message, src, dest);
+                if (replayLog != null) {
+                    replayLog.deliverOrAppend(FederationHubReplayLog.Stream.EVENTS, dest.getFedId(), () -> deliver(message, event, src, dest),
+                        replayKey, serialized);
+                } else {
+                    deliver(message, event, src, dest);
+                }
             }
         }
     }
@@ -2280,12 +2483,15 @@ public class FederationHubBrokerService implements ApplicationListener<BrokerSer
 
         	if (federateProvenances == null) return false;
 
-        	Set<String> visitedHubs = federateProvenances
-            		.stream()
-            		.map(prov -> prov.getFederationServerId())
-            		.collect(Collectors.toSet());
+        	String fullId = fedHubConfigManager.getConfig().getFullId();
+
+        	for (FederateProvenance provenance : federateProvenances) {
+        		if (provenance.getFederationServerId().equals(fullId)) {
+        			return true;
+        		}
+        	}
 
-           	return visitedHubs.contains(fedHubConfigManager.getConfig().getFullId());
+        	return false;
     	} catch (Exception e) {
 			return false;
 		}
@@ -2300,6 +2506,7 @@ public class FederationHubBrokerService implements ApplicationListener<BrokerSer
         }
 
     	hubConnectionStore.putFederateGroups(sourceId, groups);
+    	invalidateRoutingTable();
 
         Message federatedMessage = new Message(new HashMap<>(),new FederatedGroupPayload(groups));
         federatedMessage.setMetadataValue(SSL_SESSION_ID, sourceId);
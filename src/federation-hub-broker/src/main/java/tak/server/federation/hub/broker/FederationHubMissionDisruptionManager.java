@@ -161,7 +161,16 @@ public class FederationHubMissionDisruptionManager {
 		
 		return changes;
 	}
-	
+
+	// record the connect without looking up the changes, for a federate the hub's replay log brings up to date
+	public void trackConnectEvent(String federateServerId, List<String> clientGroups) {
+		try {
+			federationHubDatabaseService.addFederateMetadata(federateServerId, clientGroups);
+		} catch (Exception e) {
+			logger.error("trackConnectEvent error", e);
+		}
+	}
+
 	public ROL hydrateResourceROL(ObjectId resourceObjectId, ROL.Builder rol) {
 		try {
 			byte[] resource = federationHubDatabaseService.getResource(resourceObjectId);
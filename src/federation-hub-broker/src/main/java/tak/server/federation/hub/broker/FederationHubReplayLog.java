@@ -0,0 +1,392 @@
+package tak.server.federation.hub.broker;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Collections;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+import java.util.function.Supplier;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.atakmap.Tak.FederatedEvent;
+import com.google.common.base.Strings;
+import com.google.common.hash.Hashing;
+
+import io.micrometer.core.instrument.Metrics;
+import tak.server.Constants;
+import tak.server.federation.hub.FederationHubResources;
+
+/*
+ *
+ * Holds the events and ROL the hub routes to a v2 federate while it is disconnected, on disk, and replays them in order when it
+ * reconnects. A federate gets a log once it has connected, since its id is only known then, and keeps it across hub restarts. Each
+ * stream of each federate has its own ReplaySegmentLog, in a directory named by the hash of the federate id.
+ *
+ * While a log is replayed, new messages for the federate are appended behind what is being replayed, so that they arrive in order.
+ * The replay only sends while the stream can take more without queueing, and skips records that a later record for the same track
+ * or contact supersedes, and records older than the age bound.
+ *
+ */
+public class FederationHubReplayLog {
+
+	private static final Logger logger = LoggerFactory.getLogger(FederationHubReplayLog.class);
+
+	private static final String FEDERATE_FILE = "federate";
+
+	// records sent per run of a replay, so that routing to the federate isn't held up for long
+	private static final int MAX_RECORDS_PER_RUN = 512;
+
+	// wait before checking a stream that wasn't ready again
+	private static final long NOT_READY_DELAY_MILLIS = 100;
+
+	public enum Stream {
+		EVENTS, ROL;
+
+		String directoryName() {
+			return name().toLowerCase(Locale.ENGLISH);
+		}
+	}
+
+	// the stream a log is replayed to
+	public interface Sink {
+
+		// false once the stream the replay was started for is gone
+		boolean isConnected();
+
+		// whether a message sent now would be written without waiting
+		boolean canSend();
+
+		void send(byte[] message) throws Exception;
+	}
+
+	private final Path root;
+	private final long maxBytes;
+	private final long maxAgeMillis;
+	private final long segmentBytes;
+
+	private final Map<String, Destination> destinations = new ConcurrentHashMap<>();
+
+	public FederationHubReplayLog(FederationHubServerConfig config) throws IOException {
+		this.root = Paths.get(config.getReplayLogDirectory());
+		this.maxBytes = config.getReplayLogMaxBytesPerFederate();
+		this.maxAgeMillis = TimeUnit.SECONDS.toMillis(config.getReplayLogMaxAgeSeconds());
+		this.segmentBytes = config.getReplayLogSegmentBytes();
+
+		Files.createDirectories(root);
+
+		load();
+	}
+
+	// the logs of the federates that connected before the hub last stopped
+	private void load() throws IOException {
+		try (DirectoryStream<Path> directories = Files.newDirectoryStream(root, Files::isDirectory)) {
+			for (Path directory : directories) {
+				try {
+					String federateId = new String(Files.readAllBytes(directory.resolve(FEDERATE_FILE)), UTF_8);
+
+					for (Stream stream : Stream.values()) {
+						if (Files.isDirectory(directory.resolve(stream.directoryName()))) {
+							Destination destination = open(stream, federateId);
+							synchronized (destination) {
+								destination.log.enforceBounds(System.currentTimeMillis());
+							}
+						}
+					}
+				} catch (IOException e) {
+					logger.warn("not loading replay log " + directory, e);
+				}
+			}
+		}
+
+		logger.info("loaded " + destinations.size() + " federation replay logs from " + root);
+	}
+
+	/**
+	 * Deliver a message to a federate, or append it to the federate's log if the federate is disconnected or its log is being replayed.
+	 * A federate without a log is only delivered to.
+	 *
+	 * @param deliver sends the message to the federate, and returns whether the federate is connected
+	 * @param key the track or contact the message is the latest state of, or null if a later message never makes it redundant
+	 * @param message the message as it would be sent
+	 */
+	public void deliverOrAppend(Stream stream, String federateId, BooleanSupplier deliver, String key, Supplier<byte[]> message) {
+		Destination destination = destinations.get(key(stream, federateId));
+
+		if (destination == null) {
+			deliver.getAsBoolean();
+			return;
+		}
+
+		synchronized (destination) {
+			if (destination.live) {
+				if (deliver.getAsBoolean()) {
+					return;
+				}
+
+				destination.live = false;
+
+				logger.info("logging " + stream.directoryName() + " for disconnected federate " + federateId);
+			}
+
+			try {
+				destination.log.append(key, message.get(), System.currentTimeMillis());
+				count(Constants.METRIC_FED_REPLAY_APPEND_COUNT, stream, federateId);
+			} catch (IOException e) {
+				logger.warn("exception appending to the replay log of " + federateId, e);
+				count(Constants.METRIC_FED_REPLAY_DROP_COUNT, stream, federateId);
+			}
+		}
+	}
+
+	/**
+	 * Replay the federate's log to a stream that has just connected, and then deliver to the stream directly. A federate that doesn't
+	 * have a log gets one, and messages for it are logged from now on while it is disconnected.
+	 *
+	 * @param replay false to drop what is logged rather than replay it, when the federate is brought up to date some other way
+	 */
+	public void connect(Stream stream, String federateId, Sink sink, boolean replay) {
+		Destination destination;
+
+		try {
+			destination = open(stream, federateId);
+		} catch (IOException e) {
+			logger.warn("not logging " + stream.directoryName() + " for " + federateId, e);
+			return;
+		}
+
+		Replay task = new Replay(destination, sink);
+
+		synchronized (destination) {
+			// a replay to an earlier connection stops when it sees this one
+			destination.replay = task;
+
+			if (!replay) {
+				try {
+					destination.log.clear();
+				} catch (IOException e) {
+					logger.warn("exception clearing the replay log of " + federateId, e);
+				}
+			}
+		}
+
+		FederationHubResources.replayLogScheduler.execute(task);
+	}
+
+	/**
+	 * Whether the federate has a log, that holds every message routed to it since it last disconnected.
+	 */
+	public boolean isComplete(Stream stream, String federateId) {
+		Destination destination = destinations.get(key(stream, federateId));
+
+		if (destination == null) {
+			return false;
+		}
+
+		synchronized (destination) {
+			try {
+				destination.log.enforceBounds(System.currentTimeMillis());
+			} catch (IOException e) {
+				logger.warn("exception removing expired records from the replay log of " + federateId, e);
+			}
+
+			return destination.log.isComplete();
+		}
+	}
+
+	// the track or contact an event is the latest state of
+	public static String eventKey(FederatedEvent event) {
+		if (event.hasEvent() && !Strings.isNullOrEmpty(event.getEvent().getUid())) {
+			return "e:" + event.getEvent().getUid();
+		}
+
+		if (event.hasContact() && !Strings.isNullOrEmpty(event.getContact().getUid())) {
+			return "c:" + event.getContact().getUid();
+		}
+
+		return null;
+	}
+
+	public void close() {
+		for (Destination destination : destinations.values()) {
+			synchronized (destination) {
+				try {
+					destination.log.close();
+				} catch (IOException e) {
+					logger.warn("exception closing the replay log of " + destination.federateId, e);
+				}
+			}
+		}
+	}
+
+	private Destination open(Stream stream, String federateId) throws IOException {
+		Destination destination = destinations.get(key(stream, federateId));
+
+		if (destination != null) {
+			return destination;
+		}
+
+		Path directory = root.resolve(Hashing.sha256().hashString(federateId, UTF_8).toString());
+		Files.createDirectories(directory);
+		Files.write(directory.resolve(FEDERATE_FILE), federateId.getBytes(UTF_8));
+
+		ReplaySegmentLog log = new ReplaySegmentLog(directory.resolve(stream.directoryName()), maxBytes, maxAgeMillis, segmentBytes);
+
+		Destination existing = destinations.putIfAbsent(key(stream, federateId), new Destination(stream, federateId, log));
+
+		if (existing != null) {
+			log.close();
+			return existing;
+		}
+
+		return destinations.get(key(stream, federateId));
+	}
+
+	private static String key(Stream stream, String federateId) {
+		return stream.directoryName() + ":" + federateId;
+	}
+
+	private static void count(String metric, Stream stream, String federateId) {
+		Metrics.counter(metric, "takserver", "federation-hub", "federate", federateId, "stream", stream.directoryName()).increment();
+	}
+
+	private static final class Destination {
+		final Stream stream;
+		final String federateId;
+		final ReplaySegmentLog log;
+
+		// whether messages are delivered directly. Guarded by this.
+		boolean live = false;
+
+		// the replay to the current connection. Guarded by this.
+		Replay replay = null;
+
+		Destination(Stream stream, String federateId, ReplaySegmentLog log) {
+			this.stream = stream;
+			this.federateId = federateId;
+			this.log = log;
+		}
+	}
+
+	private final class Replay implements Runnable {
+
+		private final Destination destination;
+		private final Sink sink;
+
+		// offset of the last record for each key, read once when the replay starts
+		private Map<String, Long> lastOffsets = null;
+
+		private long sent = 0;
+		private long skipped = 0;
+
+		Replay(Destination destination, Sink sink) {
+			this.destination = destination;
+			this.sink = sink;
+		}
+
+		@Override
+		public void run() {
+			long delay;
+
+			try {
+				delay = replay();
+			} catch (Exception e) {
+				logger.warn("exception replaying " + destination.stream.directoryName() + " to " + destination.federateId, e);
+				saveCursor();
+				return;
+			}
+
+			if (delay >= 0) {
+				FederationHubResources.replayLogScheduler.schedule(this, delay, TimeUnit.MILLISECONDS);
+			}
+		}
+
+		// returns the delay before the replay continues, or -1 if it is done
+		private long replay() throws Exception {
+			if (lastOffsets == null) {
+				ReplaySegmentLog.Unreplayed unreplayed;
+				synchronized (destination) {
+					unreplayed = destination.log.unreplayed();
+				}
+
+				// read without holding up delivery to the federate, for a log that can be large
+				try {
+					lastOffsets = unreplayed.lastOffsetsByKey();
+				} catch (IOException e) {
+					logger.warn("not skipping superseded records replaying to " + destination.federateId, e);
+					lastOffsets = Collections.emptyMap();
+				}
+			}
+
+			synchronized (destination) {
+				if (destination.replay != this) {
+					return -1;
+				}
+
+				if (!sink.isConnected()) {
+					destination.log.saveCursor();
+					return -1;
+				}
+
+				long expiredBefore = maxAgeMillis > 0 ? System.currentTimeMillis() - maxAgeMillis : Long.MIN_VALUE;
+
+				for (int i = 0; i < MAX_RECORDS_PER_RUN; i++) {
+					if (!sink.canSend()) {
+						return NOT_READY_DELAY_MILLIS;
+					}
+
+					ReplaySegmentLog.Record record = destination.log.next();
+
+					if (record == null) {
+						destination.log.clear();
+						destination.live = true;
+						destination.replay = null;
+
+						if (sent > 0 || skipped > 0) {
+							logger.info("replayed " + sent + " " + destination.stream.directoryName() + " to federate " + destination.federateId
+									+ ", skipped " + skipped + " superseded or expired");
+						}
+						return -1;
+					}
+
+					// a newer state of the same track or contact is further on in the log
+					Long last = record.key == null ? null : lastOffsets.get(record.key);
+					boolean superseded = last != null && last > record.offset;
+
+					if (superseded || record.appendTime < expiredBefore) {
+						destination.log.advance(record);
+						skipped++;
+						continue;
+					}
+
+					// only move past the record once it's been sent, so that it's replayed again if the send fails
+					sink.send(record.message);
+					destination.log.advance(record);
+					sent++;
+					count(Constants.METRIC_FED_REPLAY_SEND_COUNT, destination.stream, destination.federateId);
+				}
+
+				return 0;
+			}
+		}
+
+		private void saveCursor() {
+			synchronized (destination) {
+				try {
+					destination.log.saveCursor();
+				} catch (IOException e) {
+					logger.warn("exception saving the replay cursor of " + destination.federateId, e);
+				}
+			}
+		}
+	}
+}
@@ -0,0 +1,255 @@
+package tak.server.federation.hub.broker;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import tak.server.federation.Federate;
+import tak.server.federation.FederateEdge;
+import tak.server.federation.FederationException;
+import tak.server.federation.FederationNode;
+import tak.server.federation.FederationPolicyGraph;
+import tak.server.federation.hub.policy.FederationPolicyGraphImpl.FederationPolicyReachabilityHolder;
+
+/*
+ *
+ * The group filtered destinations of each source in a policy graph, compiled once so that routing a message doesn't walk the graph.
+ * Every group named by an edge filter gets a bit, so checking a message's groups against an edge is a BitSet test rather than a set
+ * intersection, and the destinations for each distinct set of message groups are kept per source.
+ *
+ * A table is never updated. The policy graph is mutated in place when federates are added, so the broker compiles a new table
+ * whenever the graph or the federate groups change, and gives the same results as FederationHubBrokerService.getGroupFilteredDestinations.
+ *
+ */
+public final class FederationHubRoutingTable {
+
+	private static final Logger logger = LoggerFactory.getLogger(FederationHubRoutingTable.class);
+
+	// bound on the distinct sets of message groups remembered per source. Others are filtered, but not remembered.
+	private static final int MAX_GROUP_SETS = 1024;
+
+	private static final Federate[] NO_FEDERATES = new Federate[0];
+
+	private final FederationPolicyGraph policyGraph;
+
+	private final Map<String, Integer> groupBits = new HashMap<>();
+
+	private final Map<String, Route> routes = new HashMap<>();
+
+	public FederationHubRoutingTable(FederationPolicyGraph policyGraph) {
+		this.policyGraph = policyGraph;
+
+		long start = System.nanoTime();
+
+		for (FederationNode node : policyGraph.getNodes()) {
+			String fedId = node.getFederateIdentity().getFedId();
+
+			try {
+				routes.put(fedId, compile(policyGraph.allReachableFederates(fedId)));
+			} catch (FederationException | RuntimeException e) {
+				logger.warn("not routing from " + fedId + ", its destinations could not be found in the policy graph", e);
+			}
+		}
+
+		if (logger.isDebugEnabled()) {
+			logger.debug("compiled routing table for " + routes.size() + " sources and " + groupBits.size() + " filter groups in "
+					+ (System.nanoTime() - start) / 1000 + " us");
+		}
+	}
+
+	public FederationPolicyGraph getPolicyGraph() {
+		return policyGraph;
+	}
+
+	// every destination reachable from the source, without group filtering
+	public Federate[] getDestinations(String sourceFedId) throws FederationException {
+		return getRoute(sourceFedId).destinations;
+	}
+
+	/**
+	 * The destinations reachable from the source that a message with these groups passes the group filters of.
+	 *
+	 * @return a shared array, which must not be modified
+	 */
+	public Federate[] getGroupFilteredDestinations(String sourceFedId, List<String> groups) throws FederationException {
+		Route route = getRoute(sourceFedId);
+
+		// if no groups are attached, only destinations whose edges allow all messages through are reachable
+		if (groups == null || groups.isEmpty()) {
+			return route.ungroupedDestinations;
+		}
+
+		if (!route.filtered) {
+			return route.destinations;
+		}
+
+		BitSet groupSet = new BitSet(groupBits.size());
+
+		for (String group : groups) {
+			// a group that isn't in any filter can't match one
+			Integer bit = groupBits.get(group);
+			if (bit != null) {
+				groupSet.set(bit);
+			}
+		}
+
+		Federate[] destinations = route.groupedDestinations.get(groupSet);
+
+		if (destinations == null) {
+			destinations = route.filter(groupSet);
+
+			if (route.groupedDestinations.size() < MAX_GROUP_SETS) {
+				route.groupedDestinations.putIfAbsent(groupSet, destinations);
+			}
+		}
+
+		return destinations;
+	}
+
+	private Route getRoute(String sourceFedId) throws FederationException {
+		Route route = routes.get(sourceFedId);
+
+		if (route == null) {
+			throw new FederationException("The passed sourceID " + sourceFedId + " was not found in the policy graph.");
+		}
+
+		return route;
+	}
+
+	private Route compile(FederationPolicyReachabilityHolder reachability) {
+		Map<FederationNode, FederateEdge> federateEdges = reachability.getDestinationToFederateEdgeMappings();
+		Map<FederationNode, Set<FederateEdge>> groupEdges = reachability.getDestinationToFederateGroupEdgeMappings();
+
+		Federate[] destinations = reachability.federates.toArray(NO_FEDERATES);
+		EdgeFilter[][] filters = new EdgeFilter[destinations.length][];
+
+		for (int i = 0; i < destinations.length; i++) {
+			// a direct edge between two nodes takes priority over edges from CA groups, all of which must pass.
+			// With no edges the nodes are interconnected, so there's no group filtering.
+			Collection<FederateEdge> edges;
+
+			if (federateEdges.containsKey(destinations[i])) {
+				edges = Collections.singleton(federateEdges.get(destinations[i]));
+			} else if (groupEdges.containsKey(destinations[i])) {
+				edges = groupEdges.get(destinations[i]);
+			} else {
+				edges = Collections.emptySet();
+			}
+
+			filters[i] = new EdgeFilter[edges.size()];
+
+			int j = 0;
+			for (FederateEdge edge : edges) {
+				filters[i][j++] = new EdgeFilter(edge.getFilterType(), toBits(edge.getAllowedGroups()), toBits(edge.getDisallowedGroups()));
+			}
+		}
+
+		return new Route(destinations, filters);
+	}
+
+	private BitSet toBits(Set<String> groups) {
+		BitSet bits = new BitSet();
+
+		if (groups != null) {
+			for (String group : groups) {
+				bits.set(groupBits.computeIfAbsent(group, g -> groupBits.size()));
+			}
+		}
+
+		return bits;
+	}
+
+	private static final class Route {
+
+		final Federate[] destinations;
+		final EdgeFilter[][] filters;
+
+		final Federate[] ungroupedDestinations;
+
+		// whether any destination has a filter that depends on the message groups
+		final boolean filtered;
+
+		final Map<BitSet, Federate[]> groupedDestinations = new ConcurrentHashMap<>();
+
+		Route(Federate[] destinations, EdgeFilter[][] filters) {
+			this.destinations = destinations;
+			this.filters = filters;
+
+			List<Federate> ungrouped = new ArrayList<>();
+			boolean anyFiltered = false;
+
+			for (int i = 0; i < destinations.length; i++) {
+				boolean allowsAll = true;
+
+				for (EdgeFilter filter : filters[i]) {
+					if (filter.type != FederateEdge.GroupFilterType.ALL) {
+						allowsAll = false;
+					}
+				}
+
+				if (allowsAll) {
+					ungrouped.add(destinations[i]);
+				} else {
+					anyFiltered = true;
+				}
+			}
+
+			this.ungroupedDestinations = ungrouped.toArray(NO_FEDERATES);
+			this.filtered = anyFiltered;
+		}
+
+		Federate[] filter(BitSet groups) {
+			List<Federate> reachable = new ArrayList<>(destinations.length);
+
+			destinations:
+			for (int i = 0; i < destinations.length; i++) {
+				for (EdgeFilter filter : filters[i]) {
+					if (!filter.isReachable(groups)) {
+						continue destinations;
+					}
+				}
+
+				reachable.add(destinations[i]);
+			}
+
+			return reachable.toArray(NO_FEDERATES);
+		}
+	}
+
+	private static final class EdgeFilter {
+
+		final FederateEdge.GroupFilterType type;
+		final BitSet allowed;
+		final BitSet disallowed;
+
+		EdgeFilter(FederateEdge.GroupFilterType type, BitSet allowed, BitSet disallowed) {
+			this.type = type;
+			this.allowed = allowed;
+			this.disallowed = disallowed;
+		}
+
+		// same as FederationHubBrokerService.isDestinationEdgeReachableByGroupFilter, for a message with groups
+		boolean isReachable(BitSet groups) {
+			switch (type) {
+			case ALLOWED:
+				return allowed.intersects(groups);
+			case DISALLOWED:
+				return !disallowed.intersects(groups);
+			case ALLOWED_AND_DISALLOWED:
+				return allowed.intersects(groups) && !disallowed.intersects(groups);
+			case ALL:
+			default:
+				return true;
+			}
+		}
+	}
+}
@@ -37,6 +37,7 @@ import com.atakmap.Tak.Subscription;
 import com.bbn.roger.fig.FederationUtils;
 import com.bbn.roger.fig.FigProtocolNegotiator;
 import com.bbn.roger.fig.Propagator;
+import com.google.common.base.Strings;
 import com.google.common.collect.ComparisonChain;
 
 import io.grpc.ClientCall;
@@ -58,7 +59,9 @@ import io.netty.handler.ssl.SslProvider;
 import tak.server.federation.Federate;
 import tak.server.federation.FederateEdge;
 import tak.server.federation.FederateIdentity;
+import tak.server.federation.FederationCompression;
 import tak.server.federation.FederationPolicyGraph;
+import tak.server.federation.FederationStreamNegotiation;
 import tak.server.federation.GuardedStreamHolder;
 import tak.server.federation.hub.FederationHubDependencyInjectionProxy;
 import tak.server.federation.hub.FederationHubResources;
@@ -86,6 +89,7 @@ public class HubFigClient implements Serializable {
 	private String clientFingerprint;
 	private List<String> clientGroups;
 	private String fedName;
+	private String eventCompression;
 	private String clientUid = UUID.randomUUID().toString().replace("-", "");
 
 	private ManagedChannel channel = null;
@@ -97,6 +101,8 @@ public class HubFigClient implements Serializable {
 	private FederatedChannelBlockingStub blockingFederatedChannel;
 	private FederatedChannelStub asyncFederatedChannel;
 
+	private FederationStreamNegotiation streamNegotiation;
+
 	private SSLConfig sslConfig = new SSLConfig();
 	
 	GuardedStreamHolder<FederatedEvent> eventStreamHolder;
@@ -119,6 +125,7 @@ public class HubFigClient implements Serializable {
 		this.host = federationOutgoingCell.getProperties().getHost();
 		this.port = federationOutgoingCell.getProperties().getPort();
 		this.fedName = federationOutgoingCell.getProperties().getOutgoingName();
+		this.eventCompression = federationOutgoingCell.getProperties().getEventCompression();
 		this.info = new HubConnectionInfo();
 	}
 
@@ -145,8 +152,10 @@ public class HubFigClient implements Serializable {
 			logger.debug("init HubFigClient");
 		}
 
+		streamNegotiation = new FederationStreamNegotiation();
+
 		// Send a subscription request, get back a stream of messages from server
-		asyncFederatedChannel.clientEventStream(Subscription.newBuilder().setFilter("")
+		streamNegotiation.subscribe(asyncFederatedChannel, Subscription.newBuilder().setFilter("")
 				.setIdentity(Identity.newBuilder().setType(Identity.ConnectionType.FEDERATION_HUB_CLIENT).setServerId(fedHubConfigManager.getConfig().getFullId()).setName(fedName).setUid(clientUid).build()).build(),
 				new StreamObserver<FederatedEvent>() {
 
@@ -166,7 +175,7 @@ public class HubFigClient implements Serializable {
 
 					@Override
 					public void onCompleted() {}
-				});
+				}, fedHubConfigManager.getConfig().getEventBatchSize() > 0);
 		
 		asyncFederatedChannel.serverFederateGroupsStream(
 				Subscription.newBuilder().setFilter("")
@@ -177,7 +186,7 @@ public class HubFigClient implements Serializable {
 					public void onNext(FederateGroups value) {
 						// once the group stream is established, we are ready to setup event streaming
 						if (value.getStreamUpdate() != null && value.getStreamUpdate().getStatus() == ServingStatus.SERVING) {
-							setupEventStreamSender();
+							streamNegotiation.whenNegotiated(HubFigClient.this::setupEventStreamSender);
 							
 							FederateGroups federateGroups = FederationHubBrokerService.getInstance().getFederationHubGroups(fedName).toBuilder()
 									.setStreamUpdate(ServerHealth.newBuilder().setStatus(ServerHealth.ServingStatus.SERVING).build())
@@ -194,7 +203,7 @@ public class HubFigClient implements Serializable {
 						if (t instanceof StatusRuntimeException) {
 							StatusRuntimeException sre = (StatusRuntimeException) t;
 							if (sre.getStatus().getCode().equals(Status.Code.UNIMPLEMENTED)) {
-								setupEventStreamSender();
+								streamNegotiation.whenNegotiated(HubFigClient.this::setupEventStreamSender);
 							}
 						} else {
 							logger.error("Server Group Stream Error: ", t);
@@ -270,6 +279,8 @@ public class HubFigClient implements Serializable {
 				.negotiationType(NegotiationType.TLS)
 				.sslContext(sslContext)
 				.maxInboundMessageSize(fedHubConfigManager.getConfig().getMaxMessageSizeBytes())
+				.compressorRegistry(FederationCompression.compressorRegistry())
+				.decompressorRegistry(FederationCompression.decompressorRegistry())
 				.channelType(Epoll.isAvailable() ? EpollSocketChannel.class : NioSocketChannel.class)
 				.executor(FederationHubResources.federationGrpcExecutor)
 				.eventLoopGroup(FederationHubResources.federationGrpcWorkerEventLoopGroup)
@@ -344,7 +355,11 @@ public class HubFigClient implements Serializable {
 			}
 
 			@Override
-			public void onReady() {}
+			public void onReady() {
+				if (groupStreamHolder != null) {
+					groupStreamHolder.onReady();
+				}
+			}
 
 		}, new Metadata());
 
@@ -398,14 +413,12 @@ public class HubFigClient implements Serializable {
 	}
 
 	public void setupEventStreamSender() {
-		MethodDescriptor<FederatedEvent, Subscription> methodDescripton = MethodDescriptor.<FederatedEvent, Subscription>newBuilder()
-				.setType(MethodDescriptor.MethodType.CLIENT_STREAMING)
-				.setFullMethodName(generateFullMethodName("com.atakmap.FederatedChannel", "ServerEventStream"))
-				.setRequestMarshaller(io.grpc.protobuf.ProtoUtils.marshaller(com.atakmap.Tak.FederatedEvent.getDefaultInstance()))
-				.setResponseMarshaller(io.grpc.protobuf.ProtoUtils.marshaller(com.atakmap.Tak.Subscription.getDefaultInstance()))
-				.build();
-		
-		clientCall = channel.newCall(methodDescripton, asyncFederatedChannel.getCallOptions());
+		FederationHubServerConfig config = fedHubConfigManager.getConfig();
+
+		// batched and compressed if the server batches too, otherwise one event at a time
+		clientCall = streamNegotiation.newEventCall(channel, asyncFederatedChannel.getCallOptions(), PreSerializedMarshaller.FEDERATED_EVENT, fedName,
+				Strings.isNullOrEmpty(eventCompression) ? config.getEventCompression() : eventCompression,
+				config.getEventBatchSize(), config.getEventBatchMaxDelayMillis(), true);
 
 		// use listener to respect flow control, and send messages to the server when it
 		// is ready
@@ -421,6 +434,9 @@ public class HubFigClient implements Serializable {
 
 			@Override
 			public void onReady() {
+				if (eventStreamHolder != null) {
+					eventStreamHolder.onReady();
+				}
 			}
 		}, new Metadata());
 
@@ -444,6 +460,8 @@ public class HubFigClient implements Serializable {
 		
 		eventStreamHolder.send(FederatedEvent.newBuilder().build());
 		FederationHubDependencyInjectionProxy.getInstance().hubConnectionStore().addClientStreamHolder(fedName, eventStreamHolder);
+
+		FederationHubBrokerService.getInstance().replayEvents(fedName, eventStreamHolder);
 		
 		FederationPolicyGraph fpg = FederationHubBrokerService.getInstance().getFederationPolicyGraph();                        
         String fedId = eventStreamHolder.getFederateIdentity().getFedId();
@@ -500,6 +518,10 @@ public class HubFigClient implements Serializable {
 				if (logger.isDebugEnabled()) {
 					logger.debug("ROL channel ready");
 				}
+
+				if (rolStreamHolder != null) {
+					rolStreamHolder.onReady();
+				}
 			}
 		}, new Metadata());
 
@@ -522,12 +544,20 @@ public class HubFigClient implements Serializable {
 		// get the changes, but don't send till we add the rolStream because the stream will get used
         // down the line for getting the session id        
 		FederationHubMissionDisruptionManager.OfflineMissionChanges changes = null;
+		boolean replayRol = FederationHubBrokerService.getInstance().isRolReplayComplete(rolStreamHolder.getFederateIdentity().getFedId());
         if (fedHubConfigManager.getConfig().isMissionFederationDisruptionEnabled()) {
-        	changes = federationHubMissionDisruptionManager.getMissionChangesAndTrackConnectEvent(
-            		rolStreamHolder.getFederateIdentity().getFedId(), clientGroups);
+        	if (replayRol) {
+        		federationHubMissionDisruptionManager.trackConnectEvent(rolStreamHolder.getFederateIdentity().getFedId(), clientGroups);
+        	} else {
+        		changes = federationHubMissionDisruptionManager.getMissionChangesAndTrackConnectEvent(
+            			rolStreamHolder.getFederateIdentity().getFedId(), clientGroups);
+        	}
         }
 		
 		FederationHubDependencyInjectionProxy.getInstance().hubConnectionStore().addRolStream(fedName, rolStreamHolder);
+
+		FederationHubBrokerService.getInstance().replayRol(fedName, rolStreamHolder,
+				replayRol || !fedHubConfigManager.getConfig().isMissionFederationDisruptionEnabled());
 		
 		AtomicLong delayMs = new AtomicLong(5000l);
 		
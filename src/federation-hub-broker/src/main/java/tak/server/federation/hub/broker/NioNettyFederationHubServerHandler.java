@@ -30,6 +30,7 @@ import io.netty.util.concurrent.Future;
 import io.netty.util.concurrent.GenericFutureListener;
 import tak.server.federation.FederateIdentity;
 import tak.server.federation.FederationException;
+import tak.server.federation.FederationWriteBatcher;
 
 public class NioNettyFederationHubServerHandler extends SimpleChannelInboundHandler<byte[]> {
     private final static Logger logger = LoggerFactory.getLogger(NioNettyFederationHubServerHandler.class);
@@ -55,12 +56,20 @@ public class NioNettyFederationHubServerHandler extends SimpleChannelInboundHand
 
     private FederationHubBrokerService brokerService;
 
+    private final int eventBatchSize;
+    private final long eventBatchMaxDelayMillis;
+
+    // flushes writes in batches, if eventBatchSize is set
+    private FederationWriteBatcher writeBatcher;
+
     public NioNettyFederationHubServerHandler(String sessionId, FederationHubBrokerService brokerService,
-            Comparator<FederatedEvent> comp) {
+            Comparator<FederatedEvent> comp, FederationHubServerConfig config) {
         super();
         this.sessionId = sessionId;
         this.brokerService = brokerService;
         this.cache = new ConcurrentSkipListSet<FederatedEvent>(comp);
+        this.eventBatchSize = config.getEventBatchSize();
+        this.eventBatchMaxDelayMillis = config.getEventBatchMaxDelayMillis();
     }
 
     @FunctionalInterface
@@ -105,10 +114,16 @@ public class NioNettyFederationHubServerHandler extends SimpleChannelInboundHand
                     }
 
                     createConnectionInfo();
-                    String fedId = FederationUtils.getBytesSHA256(certArray[0].getEncoded()) + "-" + ctx.hashCode();
+                    String certHash = FederationUtils.getBytesSHA256(certArray[0].getEncoded());
+                    String fedId = certHash + "-" + ctx.hashCode();
                     federateIdentity = new FederateIdentity(fedId);
                     brokerService.addCaFederateToPolicyGraph(federateIdentity, certArray);
                     setReader();
+
+                    if (eventBatchSize > 0) {
+                        writeBatcher = new FederationWriteBatcher(ctx, eventBatchSize, eventBatchMaxDelayMillis, certHash, true);
+                    }
+
                     alreadyClosed.set(false);
                     HubConnectionInfo hubConnectionInfo = new HubConnectionInfo();
                     hubConnectionInfo.setConnectionId(fedId);
@@ -177,7 +192,11 @@ public class NioNettyFederationHubServerHandler extends SimpleChannelInboundHand
             binaryData.put(bytes);
             ((Buffer)binaryData).rewind();
             connectionInfo.getProcessedCount().getAndIncrement();
-            nettyContext.writeAndFlush(binaryData.array());
+            if (writeBatcher != null) {
+                writeBatcher.write(binaryData.array());
+            } else {
+                nettyContext.writeAndFlush(binaryData.array());
+            }
         } else {
             logger.error("Netty channel is not writable");
         }
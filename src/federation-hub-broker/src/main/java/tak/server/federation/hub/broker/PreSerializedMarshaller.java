@@ -0,0 +1,102 @@
+package tak.server.federation.hub.broker;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.concurrent.TimeUnit;
+
+import com.atakmap.Tak.FederatedEvent;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.protobuf.Message;
+
+import io.grpc.Drainable;
+import io.grpc.KnownLength;
+import io.grpc.MethodDescriptor.Marshaller;
+import io.grpc.ServerMethodDefinition;
+import io.grpc.ServerServiceDefinition;
+import io.grpc.protobuf.ProtoUtils;
+
+/*
+ *
+ * Protobuf marshaller that writes a message the hub fans out to many streams from bytes serialized once, instead of serializing the
+ * message again for each stream. The broker calls preSerialize on the message it is about to send to all of its destinations, and
+ * every stream that message is written to copies the same bytes. Other messages are serialized as usual.
+ *
+ * Pre-serialized messages are matched by identity, and held weakly, so the bytes are released with the message.
+ *
+ */
+public class PreSerializedMarshaller<T extends Message> implements Marshaller<T> {
+
+	public static final PreSerializedMarshaller<FederatedEvent> FEDERATED_EVENT = new PreSerializedMarshaller<>(FederatedEvent.getDefaultInstance());
+
+	private final Marshaller<T> delegate;
+
+	// weak keys are compared by identity
+	private final Cache<T, byte[]> serialized = CacheBuilder.newBuilder()
+			.weakKeys()
+			.expireAfterWrite(5, TimeUnit.MINUTES)
+			.build();
+
+	public PreSerializedMarshaller(T defaultInstance) {
+		this.delegate = ProtoUtils.marshaller(defaultInstance);
+	}
+
+	// serialize message once, for all the streams it will be written to
+	public void preSerialize(T message) {
+		serialized.put(message, message.toByteArray());
+	}
+
+	@Override
+	public InputStream stream(T value) {
+		byte[] bytes = serialized.getIfPresent(value);
+
+		if (bytes == null) {
+			return delegate.stream(value);
+		}
+
+		return new SerializedStream(bytes);
+	}
+
+	@Override
+	public T parse(InputStream stream) {
+		return delegate.parse(stream);
+	}
+
+	// the service with the response messages of the named method, which must be of type T, written by this marshaller
+	@SuppressWarnings("unchecked")
+	public ServerServiceDefinition withResponseMarshaller(ServerServiceDefinition service, String fullMethodName) {
+		ServerServiceDefinition.Builder builder = ServerServiceDefinition.builder(service.getServiceDescriptor().getName());
+
+		for (ServerMethodDefinition<?, ?> definition : service.getMethods()) {
+			if (definition.getMethodDescriptor().getFullMethodName().equals(fullMethodName)) {
+				ServerMethodDefinition<Object, T> typed = (ServerMethodDefinition<Object, T>) definition;
+
+				builder.addMethod(ServerMethodDefinition.create(
+						typed.getMethodDescriptor().toBuilder(typed.getMethodDescriptor().getRequestMarshaller(), this).build(),
+						typed.getServerCallHandler()));
+			} else {
+				builder.addMethod(definition);
+			}
+		}
+
+		return builder.build();
+	}
+
+	// lets gRPC size the frame and copy the bytes directly
+	private static final class SerializedStream extends ByteArrayInputStream implements KnownLength, Drainable {
+
+		SerializedStream(byte[] bytes) {
+			super(bytes);
+		}
+
+		@Override
+		public int drainTo(OutputStream target) throws IOException {
+			int length = count - pos;
+			target.write(buf, pos, length);
+			pos = count;
+			return length;
+		}
+	}
+}
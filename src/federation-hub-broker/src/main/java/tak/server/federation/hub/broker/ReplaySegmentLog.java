@@ -0,0 +1,472 @@
+package tak.server.federation.hub.broker;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.zip.CRC32;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/*
+ *
+ * The messages held for one stream of one disconnected federate: an append-only log, kept in segment files named by the offset of
+ * their first record. The log is read from a cursor, which is saved to disk, so a replay that is interrupted resumes where it stopped.
+ * Segments are deleted once they have been replayed, and the oldest are deleted when the log is over its byte or age bound. A log that
+ * has lost records that way, or to corruption, is incomplete until it is next replayed to the end.
+ *
+ * A record is its length, the CRC32 of the rest of the record, the time it was appended, the length of its key, the key in UTF-8,
+ * and the message.
+ *
+ * Not thread-safe. FederationHubReplayLog synchronizes on it.
+ *
+ */
+final class ReplaySegmentLog {
+
+	private static final Logger logger = LoggerFactory.getLogger(ReplaySegmentLog.class);
+
+	private static final String SEGMENT_SUFFIX = ".seg";
+	private static final String CURSOR_FILE = "cursor";
+	private static final String INCOMPLETE_FILE = "incomplete";
+
+	// length, crc, append time and key length
+	private static final int HEADER_BYTES = 4 + 4 + 8 + 2;
+
+	static final class Record {
+		final long offset;
+		final long nextOffset;
+		final long appendTime;
+		final String key;
+		final byte[] message;
+
+		Record(long offset, long nextOffset, long appendTime, String key, byte[] message) {
+			this.offset = offset;
+			this.nextOffset = nextOffset;
+			this.appendTime = appendTime;
+			this.key = key;
+			this.message = message;
+		}
+	}
+
+	private final Path directory;
+	private final long maxBytes;
+	private final long maxAgeMillis;
+	private final long segmentBytes;
+
+	// base offset to segment file, oldest first
+	private final TreeMap<Long, Path> segments = new TreeMap<>();
+
+	// the last segment, open for appending
+	private FileChannel appender = null;
+
+	// the segment being replayed
+	private FileChannel reader = null;
+	private long readerBase = -1;
+
+	// offset after the last record
+	private long endOffset;
+
+	// offset of the next record to replay
+	private long cursor;
+
+	private long totalBytes = 0;
+
+	private boolean incomplete;
+
+	ReplaySegmentLog(Path directory, long maxBytes, long maxAgeMillis, long segmentBytes) throws IOException {
+		this.directory = directory;
+		this.maxBytes = Math.max(1, maxBytes);
+		this.maxAgeMillis = maxAgeMillis;
+		// at least a few segments per log, so that enforcing the byte bound doesn't empty it
+		this.segmentBytes = Math.max(1, Math.min(segmentBytes, this.maxBytes / 4));
+
+		Files.createDirectories(directory);
+
+		load();
+	}
+
+	private void load() throws IOException {
+		try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, "*" + SEGMENT_SUFFIX)) {
+			for (Path file : files) {
+				String name = file.getFileName().toString();
+				try {
+					segments.put(Long.parseLong(name.substring(0, name.length() - SEGMENT_SUFFIX.length())), file);
+				} catch (NumberFormatException e) {
+					logger.warn("ignoring unexpected file in replay log " + file);
+				}
+			}
+		}
+
+		incomplete = Files.exists(directory.resolve(INCOMPLETE_FILE));
+
+		long savedCursor = readCursor();
+
+		if (segments.isEmpty()) {
+			endOffset = savedCursor;
+			cursor = savedCursor;
+			return;
+		}
+
+		// a record being appended when the hub stopped is dropped
+		Map.Entry<Long, Path> last = segments.lastEntry();
+		long valid = validLength(last.getValue());
+		if (valid < Files.size(last.getValue())) {
+			logger.warn("truncating " + (Files.size(last.getValue()) - valid) + " bytes of partly written records from " + last.getValue());
+			try (FileChannel channel = FileChannel.open(last.getValue(), StandardOpenOption.WRITE)) {
+				channel.truncate(valid);
+			}
+			markIncomplete();
+		}
+
+		for (Path segment : segments.values()) {
+			totalBytes += Files.size(segment);
+		}
+
+		endOffset = last.getKey() + valid;
+		cursor = Math.min(Math.max(savedCursor, segments.firstKey()), endOffset);
+	}
+
+	// bytes of the segment holding whole records with a valid CRC
+	private static long validLength(Path segment) throws IOException {
+		try (FileChannel channel = FileChannel.open(segment, StandardOpenOption.READ)) {
+			long size = channel.size();
+			long position = 0;
+			ByteBuffer length = ByteBuffer.allocate(4);
+
+			while (position + HEADER_BYTES <= size) {
+				length.clear();
+				readFully(channel, length, position);
+				int recordLength = length.getInt(0);
+
+				if (recordLength < HEADER_BYTES - 4 || position + 4 + recordLength > size) {
+					break;
+				}
+
+				ByteBuffer rest = ByteBuffer.allocate(recordLength);
+				readFully(channel, rest, position + 4);
+				if (!checksumMatches(rest)) {
+					break;
+				}
+
+				position += 4 + recordLength;
+			}
+
+			return position;
+		}
+	}
+
+	void append(String key, byte[] message, long now) throws IOException {
+		byte[] keyBytes = key == null ? new byte[0] : key.getBytes(UTF_8);
+		if (keyBytes.length > Short.MAX_VALUE) {
+			keyBytes = new byte[0];
+		}
+
+		int recordLength = 4 + 8 + 2 + keyBytes.length + message.length;
+
+		ByteBuffer record = ByteBuffer.allocate(4 + recordLength);
+		record.putInt(recordLength);
+		record.putInt(0);
+		record.putLong(now);
+		record.putShort((short) keyBytes.length);
+		record.put(keyBytes);
+		record.put(message);
+
+		CRC32 crc = new CRC32();
+		crc.update(record.array(), 8, recordLength - 4);
+		record.putInt(4, (int) crc.getValue());
+		record.flip();
+
+		if (appender == null || (appender.size() > 0 && appender.size() + record.remaining() > segmentBytes)) {
+			roll();
+		}
+
+		while (record.hasRemaining()) {
+			appender.write(record);
+		}
+
+		endOffset += 4 + recordLength;
+		totalBytes += 4 + recordLength;
+
+		enforceBounds(now);
+	}
+
+	private void roll() throws IOException {
+		closeAppender();
+
+		Path segment = directory.resolve(String.format("%020d", endOffset) + SEGMENT_SUFFIX);
+		appender = FileChannel.open(segment, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+		segments.put(endOffset, segment);
+	}
+
+	// delete the oldest segments, while the log is over its byte bound or they are older than its age bound
+	void enforceBounds(long now) throws IOException {
+		while (!segments.isEmpty()) {
+			Map.Entry<Long, Path> oldest = segments.firstEntry();
+
+			boolean overBytes = totalBytes > maxBytes && segments.size() > 1;
+			boolean expired = maxAgeMillis > 0 && lastModified(oldest.getValue()) < now - maxAgeMillis;
+
+			if (!overBytes && !expired) {
+				return;
+			}
+
+			if (segmentEnd(oldest.getKey()) > cursor) {
+				markIncomplete();
+			}
+
+			deleteSegment(oldest.getKey());
+		}
+	}
+
+	/**
+	 * The record at the cursor, or null if the log has been replayed to its end. The cursor moves past the record with advance.
+	 */
+	Record next() throws IOException {
+		while (cursor < endOffset) {
+			Map.Entry<Long, Path> segment = segments.floorEntry(cursor);
+
+			if (segment == null) {
+				// deleted by enforceBounds
+				cursor = segments.isEmpty() ? endOffset : segments.firstKey();
+				continue;
+			}
+
+			long end = segmentEnd(segment.getKey());
+
+			if (cursor >= end) {
+				Long nextBase = segments.higherKey(cursor);
+				cursor = nextBase == null ? endOffset : nextBase;
+				continue;
+			}
+
+			if (readerBase != segment.getKey()) {
+				closeReader();
+				reader = FileChannel.open(segment.getValue(), StandardOpenOption.READ);
+				readerBase = segment.getKey();
+			}
+
+			long position = cursor - readerBase;
+
+			ByteBuffer length = ByteBuffer.allocate(4);
+			readFully(reader, length, position);
+			int recordLength = length.getInt(0);
+
+			if (recordLength >= HEADER_BYTES - 4 && cursor + 4 + recordLength <= end) {
+				ByteBuffer rest = ByteBuffer.allocate(recordLength);
+				readFully(reader, rest, position + 4);
+
+				if (checksumMatches(rest)) {
+					rest.position(4);
+					long appendTime = rest.getLong();
+					byte[] key = new byte[rest.getShort()];
+					rest.get(key);
+					byte[] message = new byte[rest.remaining()];
+					rest.get(message);
+
+					return new Record(cursor, cursor + 4 + recordLength, appendTime, key.length == 0 ? null : new String(key, UTF_8), message);
+				}
+			}
+
+			// skip the rest of a corrupt segment
+			logger.warn("skipping corrupt records in " + segment.getValue() + " from offset " + position);
+			markIncomplete();
+			cursor = end;
+		}
+
+		return null;
+	}
+
+	// move the cursor past record, and delete the segments it has moved past
+	void advance(Record record) throws IOException {
+		cursor = record.nextOffset;
+
+		while (segments.size() > 1 && segmentEnd(segments.firstKey()) <= cursor) {
+			deleteSegment(segments.firstKey());
+		}
+	}
+
+	// the segments still to be replayed, as they are now, to be read without synchronizing on the log
+	Unreplayed unreplayed() {
+		Long first = segments.floorKey(cursor);
+		return new Unreplayed(new TreeMap<>(first == null ? segments : segments.tailMap(first, true)), cursor, endOffset);
+	}
+
+	static final class Unreplayed {
+		private final TreeMap<Long, Path> segments;
+		private final long from;
+		private final long to;
+
+		private Unreplayed(TreeMap<Long, Path> segments, long from, long to) {
+			this.segments = segments;
+			this.from = from;
+			this.to = to;
+		}
+
+		/**
+		 * The offset of the last record with each key, so that the replay can skip the records a later one supersedes. Only reads
+		 * record headers. Appends to the log since are not seen, and a segment deleted since is an IOException.
+		 */
+		Map<String, Long> lastOffsetsByKey() throws IOException {
+			Map<String, Long> lastOffsets = new HashMap<>();
+
+			for (Map.Entry<Long, Path> segment : segments.entrySet()) {
+				Long nextBase = segments.higherKey(segment.getKey());
+				long end = nextBase == null ? to : nextBase;
+
+				try (FileChannel channel = FileChannel.open(segment.getValue(), StandardOpenOption.READ)) {
+					long offset = Math.max(from, segment.getKey());
+					ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES);
+
+					while (offset + HEADER_BYTES <= end) {
+						header.clear();
+						readFully(channel, header, offset - segment.getKey());
+						int recordLength = header.getInt(0);
+						int keyLength = header.getShort(HEADER_BYTES - 2);
+
+						if (recordLength < HEADER_BYTES - 4 || offset + 4 + recordLength > end) {
+							break;
+						}
+
+						if (keyLength > 0) {
+							ByteBuffer key = ByteBuffer.allocate(keyLength);
+							readFully(channel, key, offset - segment.getKey() + HEADER_BYTES);
+							lastOffsets.put(new String(key.array(), UTF_8), offset);
+						}
+
+						offset += 4 + recordLength;
+					}
+				}
+			}
+
+			return lastOffsets;
+		}
+	}
+
+	boolean isEmpty() {
+		return cursor >= endOffset;
+	}
+
+	// whether every record appended since the log was last replayed to its end is still in the log
+	boolean isComplete() {
+		return !incomplete;
+	}
+
+	void markIncomplete() throws IOException {
+		if (!incomplete) {
+			incomplete = true;
+			Files.write(directory.resolve(INCOMPLETE_FILE), new byte[0]);
+		}
+	}
+
+	long getBytes() {
+		return totalBytes;
+	}
+
+	// drop everything in the log. The log is complete again.
+	void clear() throws IOException {
+		closeReader();
+		closeAppender();
+
+		while (!segments.isEmpty()) {
+			deleteSegment(segments.firstKey());
+		}
+
+		cursor = endOffset;
+		saveCursor();
+
+		incomplete = false;
+		Files.deleteIfExists(directory.resolve(INCOMPLETE_FILE));
+	}
+
+	void saveCursor() throws IOException {
+		Path temp = directory.resolve(CURSOR_FILE + ".tmp");
+		Files.write(temp, Long.toString(cursor).getBytes(UTF_8));
+		Files.move(temp, directory.resolve(CURSOR_FILE), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+	}
+
+	void close() throws IOException {
+		try {
+			saveCursor();
+		} finally {
+			closeReader();
+			closeAppender();
+		}
+	}
+
+	private long readCursor() {
+		try {
+			return Long.parseLong(new String(Files.readAllBytes(directory.resolve(CURSOR_FILE)), UTF_8).trim());
+		} catch (NoSuchFileException e) {
+			return 0;
+		} catch (IOException | NumberFormatException e) {
+			logger.warn("unreadable replay log cursor in " + directory + ", replaying from the start", e);
+			return 0;
+		}
+	}
+
+	private long segmentEnd(long base) {
+		Long nextBase = segments.higherKey(base);
+		return nextBase == null ? endOffset : nextBase;
+	}
+
+	private void deleteSegment(long base) throws IOException {
+		if (readerBase == base) {
+			closeReader();
+		}
+
+		if (base == segments.lastKey()) {
+			closeAppender();
+		}
+
+		Path segment = segments.remove(base);
+		totalBytes -= Files.size(segment);
+		Files.deleteIfExists(segment);
+
+		// the cursor can't point into a deleted segment
+		cursor = segments.isEmpty() ? endOffset : Math.max(cursor, segments.firstKey());
+	}
+
+	private static long lastModified(Path segment) throws IOException {
+		return Files.getLastModifiedTime(segment).toMillis();
+	}
+
+	private static boolean checksumMatches(ByteBuffer rest) {
+		CRC32 crc = new CRC32();
+		crc.update(rest.array(), 4, rest.capacity() - 4);
+		return rest.getInt(0) == (int) crc.getValue();
+	}
+
+	private static void readFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+		while (buffer.hasRemaining()) {
+			if (channel.read(buffer, position + buffer.position()) < 0) {
+				throw new IOException("unexpected end of replay log segment");
+			}
+		}
+	}
+
+	private void closeReader() throws IOException {
+		if (reader != null) {
+			reader.close();
+			reader = null;
+			readerBase = -1;
+		}
+	}
+
+	private void closeAppender() throws IOException {
+		if (appender != null) {
+			appender.close();
+			appender = null;
+		}
+	}
+}
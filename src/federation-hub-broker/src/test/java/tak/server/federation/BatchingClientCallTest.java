@@ -0,0 +1,73 @@
+package tak.server.federation;
+
+import static org.junit.Assert.assertEquals;
+import static tak.server.federation.FederatedEventBatcherTest.event;
+import static tak.server.federation.FederatedEventBatcherTest.uids;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+
+import com.atakmap.Tak.FederatedEventBatch;
+import com.atakmap.Tak.Subscription;
+
+import io.grpc.ClientCall;
+import io.grpc.Metadata;
+
+public class BatchingClientCallTest {
+
+	private final List<String> calls = new ArrayList<>();
+
+	private final BatchingClientCall call = new BatchingClientCall(new RecordingCall(), 100, 100, "client", true);
+
+	@Test
+	public void halfCloseAfterFlush() throws InterruptedException {
+		call.sendMessage(event("1"));
+		call.sendMessage(event("2"));
+		call.halfClose();
+
+		// nothing is sent once the call is half closed, even when the delay is up
+		call.sendMessage(event("3"));
+
+		Thread.sleep(300);
+
+		assertEquals(Arrays.asList("send [1, 2]", "halfClose"), calls);
+	}
+
+	@Test
+	public void cancelDiscards() throws InterruptedException {
+		call.sendMessage(event("1"));
+		call.cancel("test", null);
+		call.sendMessage(event("2"));
+
+		Thread.sleep(300);
+
+		assertEquals(Arrays.asList("cancel"), calls);
+	}
+
+	private class RecordingCall extends ClientCall<FederatedEventBatch, Subscription> {
+
+		@Override
+		public void start(Listener<Subscription> responseListener, Metadata headers) { }
+
+		@Override
+		public void request(int numMessages) { }
+
+		@Override
+		public void cancel(String message, Throwable cause) {
+			calls.add("cancel");
+		}
+
+		@Override
+		public void halfClose() {
+			calls.add("halfClose");
+		}
+
+		@Override
+		public void sendMessage(FederatedEventBatch batch) {
+			calls.add("send " + uids(batch));
+		}
+	}
+}
@@ -0,0 +1,131 @@
+package tak.server.federation;
+
+import static org.junit.Assert.assertEquals;
+import static tak.server.federation.FederatedEventBatcherTest.event;
+import static tak.server.federation.FederatedEventBatcherTest.uids;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+
+import com.atakmap.Tak.FederatedEventBatch;
+
+import io.grpc.stub.ServerCallStreamObserver;
+
+public class BatchingServerStreamObserverTest {
+
+	private final List<String> calls = new ArrayList<>();
+
+	private final RecordingObserver delegate = new RecordingObserver();
+
+	@Test
+	public void startsWithEmptyBatch() {
+		new BatchingServerStreamObserver(delegate, 100, 100, FederationCompression.GZIP, "server", true);
+
+		// the compression is set before the headers go out with the first message
+		assertEquals(Arrays.asList("setCompression gzip", "onNext []"), calls);
+
+		calls.clear();
+
+		new BatchingServerStreamObserver(delegate, 100, 100, null, "server", true);
+
+		assertEquals(Arrays.asList("onNext []"), calls);
+	}
+
+	@Test
+	public void completedAfterFlush() throws InterruptedException {
+		BatchingServerStreamObserver observer = new BatchingServerStreamObserver(delegate, 100, 100, null, "server", true);
+
+		observer.onNext(event("1"));
+		observer.onNext(event("2"));
+		observer.onCompleted();
+		observer.onNext(event("3"));
+
+		Thread.sleep(300);
+
+		assertEquals(Arrays.asList("onNext []", "onNext [1, 2]", "onCompleted"), calls);
+	}
+
+	@Test
+	public void errorDiscards() throws InterruptedException {
+		BatchingServerStreamObserver observer = new BatchingServerStreamObserver(delegate, 100, 100, null, "server", true);
+
+		observer.onNext(event("1"));
+		observer.onError(new RuntimeException());
+		observer.onNext(event("2"));
+
+		Thread.sleep(300);
+
+		assertEquals(Arrays.asList("onNext []", "onError"), calls);
+	}
+
+	@Test
+	public void cancelDiscards() throws InterruptedException {
+		BatchingServerStreamObserver observer = new BatchingServerStreamObserver(delegate, 100, 100, null, "server", true);
+
+		observer.setOnCancelHandler(() -> calls.add("cancelled"));
+		observer.onNext(event("1"));
+
+		// the client cancels, and the handler runs with the batch already dropped
+		delegate.onCancelHandler.run();
+		observer.onNext(event("2"));
+
+		Thread.sleep(300);
+
+		assertEquals(Arrays.asList("onNext []", "cancelled"), calls);
+	}
+
+	private class RecordingObserver extends ServerCallStreamObserver<FederatedEventBatch> {
+
+		Runnable onCancelHandler;
+
+		@Override
+		public void onNext(FederatedEventBatch batch) {
+			calls.add("onNext " + uids(batch));
+		}
+
+		@Override
+		public void onError(Throwable t) {
+			calls.add("onError");
+		}
+
+		@Override
+		public void onCompleted() {
+			calls.add("onCompleted");
+		}
+
+		@Override
+		public void setCompression(String compression) {
+			calls.add("setCompression " + compression);
+		}
+
+		@Override
+		public void setOnCancelHandler(Runnable onCancelHandler) {
+			this.onCancelHandler = onCancelHandler;
+		}
+
+		@Override
+		public boolean isCancelled() {
+			return false;
+		}
+
+		@Override
+		public boolean isReady() {
+			return true;
+		}
+
+		@Override
+		public void setOnReadyHandler(Runnable onReadyHandler) { }
+
+		@Override
+		public void disableAutoInboundFlowControl() { }
+
+		@Override
+		public void request(int count) { }
+
+		@Override
+		public void setMessageCompression(boolean enable) { }
+	}
+}
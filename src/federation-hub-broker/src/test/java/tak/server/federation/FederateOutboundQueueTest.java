@@ -0,0 +1,199 @@
+package tak.server.federation;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import com.atakmap.Tak.ContactListEntry;
+import com.atakmap.Tak.FederatedEvent;
+import com.atakmap.Tak.GeoEvent;
+
+import io.micrometer.core.instrument.Metrics;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import tak.server.Constants;
+import tak.server.federation.FederateOutboundQueue.DropPolicy;
+
+public class FederateOutboundQueueTest {
+
+	private static final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+
+	@BeforeClass
+	public static void addRegistry() {
+		Metrics.addRegistry(registry);
+	}
+
+	@AfterClass
+	public static void removeRegistry() {
+		Metrics.removeRegistry(registry);
+	}
+
+	@Test
+	public void dropOldest() {
+		FederateOutboundQueue<FederatedEvent> queue = new FederateOutboundQueue<>(3, DropPolicy.OLDEST, "oldest", true);
+
+		FederatedEvent contact = contact("a");
+		queue.offer(event("1", "a-f-G"));
+		queue.offer(contact);
+		queue.offer(event("2", "b-t-f"));
+		queue.offer(event("3", "a-f-G"));
+
+		// whatever its type
+		assertEquals(3, queue.size());
+		assertEquals(1, queue.getDropped());
+		assertSame(contact, queue.poll());
+		assertEquals(Arrays.asList("2", "3"), drain(queue));
+		assertNull(queue.poll());
+		assertTrue(queue.isEmpty());
+	}
+
+	@Test
+	public void dropPriority() {
+		FederateOutboundQueue<FederatedEvent> queue = new FederateOutboundQueue<>(3, DropPolicy.PRIORITY, "priority", true);
+
+		queue.offer(event("chat", "b-t-f"));
+		queue.offer(event("position1", "a-f-G"));
+		queue.offer(event("position2", "a-f-G"));
+
+		// the oldest position report goes first, though other CoT is older
+		queue.offer(contact("contact1"));
+
+		assertEquals(1, queue.getDropped());
+		assertEquals(Arrays.asList("chat", "position2", "contact1"), uids(queue));
+
+		queue.offer(event("position3", "a-f-G"));
+		assertEquals(Arrays.asList("chat", "contact1", "position3"), uids(queue));
+
+		// then other CoT, and a new event is dropped when everything queued has a higher priority
+		queue.offer(contact("contact2"));
+		queue.offer(contact("contact3"));
+		assertEquals(Arrays.asList("contact1", "contact2", "contact3"), uids(queue));
+
+		queue.offer(event("position4", "a-f-G"));
+		queue.offer(event("chat2", "b-t-f"));
+
+		assertEquals(6, queue.getDropped());
+		assertEquals(Arrays.asList("contact1", "contact2", "contact3"), uids(queue));
+
+		// control events of the same priority replace the oldest
+		queue.offer(contact("contact4"));
+		assertEquals(Arrays.asList("contact2", "contact3", "contact4"), drain(queue));
+	}
+
+	@Test
+	public void latestPerUid() {
+		FederateOutboundQueue<FederatedEvent> queue = new FederateOutboundQueue<>(3, DropPolicy.LATEST_PER_UID, "latest", true);
+
+		FederatedEvent newer = event("a", "a-f-G-U-C");
+		queue.offer(event("a", "a-f-G"));
+		queue.offer(event("b", "a-f-G"));
+		queue.offer(newer);
+
+		// replaced where it was queued
+		assertEquals(2, queue.size());
+		assertEquals(1, queue.getDropped());
+		assertEquals(Arrays.asList("a", "b"), uids(queue));
+		assertSame(newer, queue.poll());
+
+		// contacts and events without a uid aren't replaced, and a full queue drops the oldest
+		queue.offer(newer);
+		queue.offer(contact("b"));
+		queue.offer(event("", "a-f-G"));
+
+		assertEquals(3, queue.size());
+		assertEquals(2, queue.getDropped());
+		assertEquals(Arrays.asList("a", "b", ""), drain(queue));
+	}
+
+	@Test
+	public void depth() {
+		// two streams to the same federate, one of them replaced
+		FederateOutboundQueue<FederatedEvent> first = new FederateOutboundQueue<>(10, DropPolicy.LATEST_PER_UID, "depth", true);
+		FederateOutboundQueue<FederatedEvent> second = new FederateOutboundQueue<>(2, DropPolicy.OLDEST, "depth", true);
+
+		first.offer(event("a", "a-f-G"));
+		first.offer(event("b", "a-f-G"));
+		second.offer(event("c", "a-f-G"));
+
+		assertEquals(3, depth("depth"), 0);
+
+		first.offer(event("a", "a-f-G"));
+		second.offer(event("d", "a-f-G"));
+		second.offer(event("e", "a-f-G"));
+
+		assertEquals(4, depth("depth"), 0);
+
+		first.poll();
+
+		assertEquals(3, depth("depth"), 0);
+
+		// the first stream ends
+		first.clear();
+
+		assertEquals(2, depth("depth"), 0);
+
+		// a new stream doesn't reset the depth of the one still connected
+		FederateOutboundQueue<FederatedEvent> third = new FederateOutboundQueue<>(2, DropPolicy.OLDEST, "depth", true);
+
+		assertEquals(2, depth("depth"), 0);
+
+		third.offer(event("f", "a-f-G"));
+		second.clear();
+		third.poll();
+		third.poll();
+
+		assertEquals(0, depth("depth"), 0);
+	}
+
+	private static double depth(String federateId) {
+		return registry.get(Constants.METRIC_FED_OUTBOUND_QUEUE_DEPTH).tag("federate", federateId).gauge().value();
+	}
+
+	// uids of the queued events, in order, without removing them
+	private static List<String> uids(FederateOutboundQueue<FederatedEvent> queue) {
+		List<FederatedEvent> events = new ArrayList<>();
+
+		for (FederatedEvent event = queue.poll(); event != null; event = queue.poll()) {
+			events.add(event);
+		}
+
+		List<String> uids = new ArrayList<>();
+
+		for (FederatedEvent event : events) {
+			queue.offer(event);
+			uids.add(uid(event));
+		}
+
+		return uids;
+	}
+
+	private static List<String> drain(FederateOutboundQueue<FederatedEvent> queue) {
+		List<String> uids = new ArrayList<>();
+
+		for (FederatedEvent event = queue.poll(); event != null; event = queue.poll()) {
+			uids.add(uid(event));
+		}
+
+		return uids;
+	}
+
+	private static String uid(FederatedEvent event) {
+		return event.hasEvent() ? event.getEvent().getUid() : event.getContact().getUid();
+	}
+
+	private static FederatedEvent event(String uid, String type) {
+		return FederatedEvent.newBuilder().setEvent(GeoEvent.newBuilder().setUid(uid).setType(type)).build();
+	}
+
+	private static FederatedEvent contact(String uid) {
+		return FederatedEvent.newBuilder().setContact(ContactListEntry.newBuilder().setUid(uid)).build();
+	}
+}
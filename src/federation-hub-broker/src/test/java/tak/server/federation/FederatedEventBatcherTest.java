@@ -0,0 +1,126 @@
+package tak.server.federation;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+import org.junit.Test;
+
+import com.atakmap.Tak.FederatedEvent;
+import com.atakmap.Tak.FederatedEventBatch;
+import com.atakmap.Tak.GeoEvent;
+
+public class FederatedEventBatcherTest {
+
+	private final BlockingQueue<FederatedEventBatch> sent = new LinkedBlockingQueue<>();
+
+	@Test
+	public void flushOnSize() {
+		FederatedEventBatcher batcher = new FederatedEventBatcher(sent::add, 3, TimeUnit.MINUTES.toMillis(1), "size", true);
+
+		batcher.add(event("1"));
+		batcher.add(event("2"));
+
+		assertTrue(sent.isEmpty());
+
+		batcher.add(event("3"));
+		batcher.add(event("4"));
+
+		assertEquals(1, sent.size());
+		assertEquals(Arrays.asList("1", "2", "3"), uids(sent.poll()));
+
+		// what is left is sent on flush
+		batcher.flush();
+
+		assertEquals(Arrays.asList("4"), uids(sent.poll()));
+
+		batcher.flush();
+
+		assertTrue(sent.isEmpty());
+	}
+
+	@Test
+	public void flushOnDelay() throws InterruptedException {
+		long maxDelayMillis = 200;
+
+		FederatedEventBatcher batcher = new FederatedEventBatcher(sent::add, 100, maxDelayMillis, "delay", true);
+
+		long start = System.nanoTime();
+
+		batcher.add(event("1"));
+		batcher.add(event("2"));
+
+		assertTrue(sent.isEmpty());
+
+		// maxDelayMillis after the first event of the batch
+		FederatedEventBatch batch = sent.poll(10, TimeUnit.SECONDS);
+
+		assertEquals(Arrays.asList("1", "2"), uids(batch));
+		assertTrue(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) >= maxDelayMillis);
+
+		// and again for the next batch
+		batcher.add(event("3"));
+
+		assertEquals(Arrays.asList("3"), uids(sent.poll(10, TimeUnit.SECONDS)));
+		assertTrue(sent.isEmpty());
+	}
+
+	@Test
+	public void noDelay() {
+		FederatedEventBatcher batcher = new FederatedEventBatcher(sent::add, 100, 0, "none", true);
+
+		batcher.add(event("1"));
+		batcher.add(event("2"));
+
+		assertEquals(Arrays.asList("1"), uids(sent.poll()));
+		assertEquals(Arrays.asList("2"), uids(sent.poll()));
+	}
+
+	@Test
+	public void close() throws InterruptedException {
+		FederatedEventBatcher batcher = new FederatedEventBatcher(sent::add, 100, 100, "close", true);
+
+		batcher.add(event("1"));
+		batcher.close();
+
+		// flushed, and nothing is sent after
+		assertEquals(Arrays.asList("1"), uids(sent.poll()));
+
+		batcher.add(event("2"));
+		batcher.flush();
+
+		Thread.sleep(300);
+
+		assertTrue(sent.isEmpty());
+	}
+
+	@Test
+	public void discard() throws InterruptedException {
+		FederatedEventBatcher batcher = new FederatedEventBatcher(sent::add, 100, 100, "discard", true);
+
+		batcher.add(event("1"));
+		batcher.discard();
+
+		// not flushed, even once the delay is up
+		Thread.sleep(300);
+
+		batcher.add(event("2"));
+		batcher.flush();
+
+		assertTrue(sent.isEmpty());
+	}
+
+	static List<String> uids(FederatedEventBatch batch) {
+		return batch.getEventsList().stream().map(event -> event.getEvent().getUid()).collect(Collectors.toList());
+	}
+
+	static FederatedEvent event(String uid) {
+		return FederatedEvent.newBuilder().setEvent(GeoEvent.newBuilder().setUid(uid).setType("a-f-G")).build();
+	}
+}
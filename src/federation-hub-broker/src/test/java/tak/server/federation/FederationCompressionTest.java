@@ -0,0 +1,89 @@
+package tak.server.federation;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static tak.server.federation.FederatedEventBatcherTest.event;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+import org.junit.Assume;
+import org.junit.Test;
+
+import com.atakmap.Tak.FederatedEventBatch;
+
+import io.grpc.Compressor;
+import io.grpc.Decompressor;
+
+public class FederationCompressionTest {
+
+	private final FederatedEventBatch batch = FederatedEventBatch.newBuilder()
+			.addEvents(event("1"))
+			.addEvents(event("2"))
+			.addEvents(event("3"))
+			.build();
+
+	@Test
+	public void everyCodecRoundTrips() throws IOException {
+		// every encoding advertised to peers can be compressed with too
+		assertTrue(FederationCompression.decompressorRegistry().getAdvertisedMessageEncodings().contains(FederationCompression.GZIP));
+
+		for (String encoding : FederationCompression.decompressorRegistry().getAdvertisedMessageEncodings()) {
+			roundTrip(encoding);
+		}
+	}
+
+	@Test
+	public void gzipRoundTrips() throws IOException {
+		roundTrip(FederationCompression.GZIP);
+	}
+
+	@Test
+	public void zstdRoundTrips() throws IOException {
+		// only where the zstd native library loads
+		Assume.assumeNotNull(FederationCompression.compressorRegistry().lookupCompressor(FederationCompression.ZSTD));
+
+		roundTrip(FederationCompression.ZSTD);
+	}
+
+	@Test
+	public void select() {
+		assertNull(FederationCompression.select(null, "gzip"));
+		assertNull(FederationCompression.select("gzip", null));
+		assertNull(FederationCompression.select("none", "gzip"));
+		assertNull(FederationCompression.select("gzip", "identity"));
+
+		assertEquals("gzip", FederationCompression.select(" GZIP ", "identity, gzip"));
+
+		// a peer without zstd gets gzip
+		assertEquals("gzip", FederationCompression.select("zstd", "gzip"));
+		assertNull(FederationCompression.select("zstd", "deflate"));
+
+		boolean zstd = FederationCompression.compressorRegistry().lookupCompressor(FederationCompression.ZSTD) != null;
+
+		assertEquals(zstd ? "zstd" : "gzip", FederationCompression.select("zstd", "gzip,zstd"));
+	}
+
+	private void roundTrip(String encoding) throws IOException {
+		Compressor compressor = FederationCompression.compressorRegistry().lookupCompressor(encoding);
+		Decompressor decompressor = FederationCompression.decompressorRegistry().lookupDecompressor(encoding);
+
+		assertNotNull(encoding, compressor);
+		assertNotNull(encoding, decompressor);
+
+		ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+
+		try (OutputStream os = compressor.compress(compressed)) {
+			batch.writeTo(os);
+		}
+
+		try (InputStream is = decompressor.decompress(new ByteArrayInputStream(compressed.toByteArray()))) {
+			assertEquals(encoding, batch, FederatedEventBatch.parseFrom(is));
+		}
+	}
+}
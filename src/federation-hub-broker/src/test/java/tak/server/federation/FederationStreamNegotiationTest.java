@@ -0,0 +1,215 @@
+package tak.server.federation;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static tak.server.federation.FederatedEventBatcherTest.event;
+import static tak.server.federation.FederatedEventBatcherTest.uids;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Test;
+
+import com.atakmap.Tak.FederatedChannelGrpc;
+import com.atakmap.Tak.FederatedEvent;
+import com.atakmap.Tak.FederatedEventBatch;
+import com.atakmap.Tak.Subscription;
+
+import io.grpc.CallOptions;
+import io.grpc.ClientCall;
+import io.grpc.ManagedChannel;
+import io.grpc.Server;
+import io.grpc.ServerServiceDefinition;
+import io.grpc.inprocess.InProcessChannelBuilder;
+import io.grpc.inprocess.InProcessServerBuilder;
+import io.grpc.protobuf.ProtoUtils;
+import io.grpc.stub.ClientCalls;
+import io.grpc.stub.StreamObserver;
+
+public class FederationStreamNegotiationTest {
+
+	private final BlockingQueue<FederatedEventBatch> received = new LinkedBlockingQueue<>();
+
+	private Server server;
+
+	private ManagedChannel channel;
+
+	@After
+	public void shutdown() {
+		channel.shutdownNow();
+		server.shutdownNow();
+	}
+
+	@Test
+	public void oldPeer() throws Exception {
+		// a server from before batching, that doesn't know the batched methods
+		ServerServiceDefinition bound = new Peer().bindService();
+
+		start(ServerServiceDefinition.builder(bound.getServiceDescriptor().getName())
+				.addMethod(bound.getMethod(FederatedChannelGrpc.getClientEventStreamMethod().getFullMethodName()))
+				.addMethod(bound.getMethod(FederatedChannelGrpc.getServerEventStreamMethod().getFullMethodName()))
+				.build());
+
+		FederationStreamNegotiation negotiation = new FederationStreamNegotiation();
+		Events events = subscribe(negotiation);
+
+		// subscribed again with ClientEventStream
+		assertTrue(events.completed.await(10, TimeUnit.SECONDS));
+		assertEquals(Arrays.asList("1", "2"), events.uids);
+		assertFalse(negotiation.isBatching());
+
+		// and events are sent one at a time
+		ClientCall<FederatedEvent, Subscription> call = newEventCall(negotiation);
+
+		assertFalse(call instanceof BatchingClientCall);
+
+		send(call, "3", "4");
+
+		assertEquals(Arrays.asList("3"), uids(received.poll(10, TimeUnit.SECONDS)));
+		assertEquals(Arrays.asList("4"), uids(received.poll(10, TimeUnit.SECONDS)));
+	}
+
+	@Test
+	public void batchingPeer() throws Exception {
+		start(new Peer().bindService());
+
+		FederationStreamNegotiation negotiation = new FederationStreamNegotiation();
+		Events events = subscribe(negotiation);
+
+		assertTrue(events.completed.await(10, TimeUnit.SECONDS));
+		assertEquals(Arrays.asList("1", "2"), events.uids);
+		assertTrue(negotiation.isBatching());
+
+		ClientCall<FederatedEvent, Subscription> call = newEventCall(negotiation);
+
+		assertTrue(call instanceof BatchingClientCall);
+
+		send(call, "3", "4");
+
+		// flushed together when the stream is half closed
+		assertEquals(Arrays.asList("3", "4"), uids(received.poll(10, TimeUnit.SECONDS)));
+	}
+
+	private void start(ServerServiceDefinition service) throws IOException {
+		String name = InProcessServerBuilder.generateName();
+
+		server = InProcessServerBuilder.forName(name)
+				.addService(service)
+				.compressorRegistry(FederationCompression.compressorRegistry())
+				.decompressorRegistry(FederationCompression.decompressorRegistry())
+				.directExecutor()
+				.build()
+				.start();
+
+		channel = InProcessChannelBuilder.forName(name)
+				.compressorRegistry(FederationCompression.compressorRegistry())
+				.decompressorRegistry(FederationCompression.decompressorRegistry())
+				.directExecutor()
+				.build();
+	}
+
+	private Events subscribe(FederationStreamNegotiation negotiation) throws InterruptedException {
+		Events events = new Events();
+		CountDownLatch negotiated = new CountDownLatch(1);
+
+		negotiation.subscribe(FederatedChannelGrpc.newStub(channel), Subscription.getDefaultInstance(), events, true);
+		negotiation.whenNegotiated(negotiated::countDown);
+
+		assertTrue(negotiated.await(10, TimeUnit.SECONDS));
+
+		return events;
+	}
+
+	private ClientCall<FederatedEvent, Subscription> newEventCall(FederationStreamNegotiation negotiation) {
+		return negotiation.newEventCall(channel, CallOptions.DEFAULT, ProtoUtils.marshaller(FederatedEvent.getDefaultInstance()),
+				"peer", FederationCompression.GZIP, 100, TimeUnit.MINUTES.toMillis(1), true);
+	}
+
+	private static void send(ClientCall<FederatedEvent, Subscription> call, String... uids) {
+		StreamObserver<FederatedEvent> requests = ClientCalls.asyncClientStreamingCall(call, new Ignored<>());
+
+		for (String uid : uids) {
+			requests.onNext(event(uid));
+		}
+
+		requests.onCompleted();
+	}
+
+	// a federation server that sends two events to a subscriber, and keeps what it is sent
+	private class Peer extends FederatedChannelGrpc.FederatedChannelImplBase {
+
+		@Override
+		public void clientEventStream(Subscription request, StreamObserver<FederatedEvent> responseObserver) {
+			responseObserver.onNext(event("1"));
+			responseObserver.onNext(event("2"));
+			responseObserver.onCompleted();
+		}
+
+		@Override
+		public void clientEventBatchStream(Subscription request, StreamObserver<FederatedEventBatch> responseObserver) {
+			responseObserver.onNext(FederatedEventBatch.getDefaultInstance());
+			responseObserver.onNext(FederatedEventBatch.newBuilder().addEvents(event("1")).addEvents(event("2")).build());
+			responseObserver.onCompleted();
+		}
+
+		@Override
+		public StreamObserver<FederatedEvent> serverEventStream(StreamObserver<Subscription> responseObserver) {
+			return new Ignored<FederatedEvent>() {
+				@Override
+				public void onNext(FederatedEvent event) {
+					received.add(FederatedEventBatch.newBuilder().addEvents(event).build());
+				}
+			};
+		}
+
+		@Override
+		public StreamObserver<FederatedEventBatch> serverEventBatchStream(StreamObserver<Subscription> responseObserver) {
+			return new Ignored<FederatedEventBatch>() {
+				@Override
+				public void onNext(FederatedEventBatch batch) {
+					received.add(batch);
+				}
+			};
+		}
+	}
+
+	private static class Events implements StreamObserver<FederatedEvent> {
+
+		final List<String> uids = new ArrayList<>();
+
+		final CountDownLatch completed = new CountDownLatch(1);
+
+		@Override
+		public void onNext(FederatedEvent event) {
+			uids.add(event.getEvent().getUid());
+		}
+
+		@Override
+		public void onError(Throwable t) { }
+
+		@Override
+		public void onCompleted() {
+			completed.countDown();
+		}
+	}
+
+	private static class Ignored<T> implements StreamObserver<T> {
+
+		@Override
+		public void onNext(T value) { }
+
+		@Override
+		public void onError(Throwable t) { }
+
+		@Override
+		public void onCompleted() { }
+	}
+}
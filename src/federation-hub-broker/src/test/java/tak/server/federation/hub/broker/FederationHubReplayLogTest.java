@@ -0,0 +1,219 @@
+package tak.server.federation.hub.broker;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import tak.server.federation.hub.FederationHubResources;
+import tak.server.federation.hub.broker.FederationHubReplayLog.Stream;
+
+public class FederationHubReplayLogTest {
+
+	private static final String FEDERATE = "federate";
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private final FederationHubServerConfig config = new FederationHubServerConfig();
+
+	private final List<String> sent = new CopyOnWriteArrayList<>();
+
+	private FederationHubReplayLog replayLog;
+
+	@Before
+	public void init() throws IOException {
+		config.setReplayLogDirectory(folder.getRoot().getPath());
+		config.setReplayLogMaxBytesPerFederate(1024 * 1024);
+		config.setReplayLogMaxAgeSeconds(TimeUnit.HOURS.toSeconds(1));
+		config.setReplayLogSegmentBytes(64 * 1024);
+
+		replayLog = new FederationHubReplayLog(config);
+	}
+
+	@After
+	public void close() {
+		replayLog.close();
+	}
+
+	@Test
+	public void failedSendIsReplayed() throws Exception {
+		disconnected();
+
+		append(null, "m0", "m1", "m2", "m3", "m4");
+
+		// the send of m2 fails, and the stream is gone
+		AtomicInteger sends = new AtomicInteger();
+		replayLog.connect(Stream.EVENTS, FEDERATE, new RecordingSink(() -> sends.incrementAndGet() != 3), true);
+
+		await(() -> sends.get() == 3);
+
+		assertEquals(Arrays.asList("m0", "m1"), sent);
+
+		// the federate reconnects, gets m2 again and what follows it, and then what is routed to it directly
+		sent.clear();
+		replayLog.connect(Stream.EVENTS, FEDERATE, new RecordingSink(() -> true), true);
+		append(null, "m5");
+
+		await(() -> sent.size() == 4);
+
+		assertEquals(Arrays.asList("m2", "m3", "m4", "m5"), sent);
+	}
+
+	@Test
+	public void supersededSkipped() throws Exception {
+		disconnected();
+
+		replayLog.deliverOrAppend(Stream.EVENTS, FEDERATE, () -> false, "e:a", () -> bytes("a1"));
+		replayLog.deliverOrAppend(Stream.EVENTS, FEDERATE, () -> false, "c:b", () -> bytes("b1"));
+		replayLog.deliverOrAppend(Stream.EVENTS, FEDERATE, () -> false, "e:a", () -> bytes("a2"));
+		replayLog.deliverOrAppend(Stream.EVENTS, FEDERATE, () -> false, null, () -> bytes("chat"));
+		replayLog.deliverOrAppend(Stream.EVENTS, FEDERATE, () -> false, null, () -> bytes("chat"));
+		replayLog.deliverOrAppend(Stream.EVENTS, FEDERATE, () -> false, "c:b", () -> bytes("b2"));
+
+		// only the latest state of each track or contact, and every message without a key, in order
+		replay(4);
+
+		assertEquals(Arrays.asList("a2", "chat", "chat", "b2"), sent);
+	}
+
+	@Test
+	public void expiredSkipped() throws Exception {
+		config.setReplayLogMaxAgeSeconds(1);
+
+		replayLog.close();
+		replayLog = new FederationHubReplayLog(config);
+
+		disconnected();
+
+		append(null, "old1", "old2");
+
+		Thread.sleep(1500);
+
+		append(null, "new1", "new2");
+
+		replay(2);
+
+		assertEquals(Arrays.asList("new1", "new2"), sent);
+	}
+
+	@Test
+	public void cursorPersists() throws Exception {
+		disconnected();
+
+		append(null, "m0", "m1", "m2", "m3");
+
+		AtomicInteger sends = new AtomicInteger();
+		replayLog.connect(Stream.EVENTS, FEDERATE, new RecordingSink(() -> sends.incrementAndGet() != 3), true);
+
+		await(() -> sends.get() == 3);
+
+		// once the failed replay has saved its cursor, the hub restarts, and the replay resumes at the record that wasn't sent
+		FederationHubResources.replayLogScheduler.submit(() -> { }).get();
+
+		replayLog.close();
+		replayLog = new FederationHubReplayLog(config);
+
+		sent.clear();
+		replay(2);
+
+		assertEquals(Arrays.asList("m2", "m3"), sent);
+	}
+
+	// give the federate a log, with a stream that is already gone, so that what is routed to it is logged
+	private void disconnected() throws Exception {
+		AtomicInteger checks = new AtomicInteger();
+
+		replayLog.connect(Stream.EVENTS, FEDERATE, new FederationHubReplayLog.Sink() {
+
+			@Override
+			public boolean isConnected() {
+				checks.incrementAndGet();
+				return false;
+			}
+
+			@Override
+			public boolean canSend() {
+				return true;
+			}
+
+			@Override
+			public void send(byte[] message) { }
+		}, true);
+
+		await(() -> checks.get() > 0);
+	}
+
+	private void append(String key, String... messages) {
+		for (String message : messages) {
+			replayLog.deliverOrAppend(Stream.EVENTS, FEDERATE, () -> sent.add(message), key, () -> bytes(message));
+		}
+	}
+
+	private void replay(int expected) throws Exception {
+		replayLog.connect(Stream.EVENTS, FEDERATE, new RecordingSink(() -> true), true);
+
+		await(() -> sent.size() >= expected);
+
+		// and nothing more
+		Thread.sleep(200);
+	}
+
+	private static void await(BooleanSupplier condition) throws InterruptedException {
+		long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+
+		while (!condition.getAsBoolean()) {
+			assertTrue("timed out", System.nanoTime() < deadline);
+			Thread.sleep(10);
+		}
+	}
+
+	private static byte[] bytes(String message) {
+		return message.getBytes(UTF_8);
+	}
+
+	// a connected stream, that records what is sent until a send fails
+	private class RecordingSink implements FederationHubReplayLog.Sink {
+
+		private final BooleanSupplier sendSucceeds;
+
+		private volatile boolean connected = true;
+
+		RecordingSink(BooleanSupplier sendSucceeds) {
+			this.sendSucceeds = sendSucceeds;
+		}
+
+		@Override
+		public boolean isConnected() {
+			return connected;
+		}
+
+		@Override
+		public boolean canSend() {
+			return true;
+		}
+
+		@Override
+		public void send(byte[] message) throws Exception {
+			if (!sendSucceeds.getAsBoolean()) {
+				connected = false;
+				throw new IOException("stream closed");
+			}
+
+			sent.add(new String(message, UTF_8));
+		}
+	}
+}
@@ -0,0 +1,187 @@
+package tak.server.federation.hub.broker;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import tak.server.federation.Federate;
+import tak.server.federation.FederateEdge;
+import tak.server.federation.FederateEdge.GroupFilterType;
+import tak.server.federation.FederateGroup;
+import tak.server.federation.FederateIdentity;
+import tak.server.federation.FederationException;
+import tak.server.federation.FederationNode;
+import tak.server.federation.hub.policy.FederationPolicyGraphImpl;
+
+public class FederationHubRoutingTableTest {
+
+	// message groups to route with, including none, groups that aren't in any filter, and combinations
+	private static final List<List<String>> MESSAGE_GROUPS = Arrays.asList(
+			null,
+			Collections.emptyList(),
+			Arrays.asList("red"),
+			Arrays.asList("blue"),
+			Arrays.asList("green"),
+			Arrays.asList("yellow"),
+			Arrays.asList("unknown"),
+			Arrays.asList("red", "blue"),
+			Arrays.asList("green", "yellow"),
+			Arrays.asList("red", "green", "unknown"));
+
+	private FederationPolicyGraphImpl policyGraph;
+
+	@Before
+	public void setup() throws FederationException {
+		policyGraph = new FederationPolicyGraphImpl("test", new HashSet<>());
+
+		// CA groups whose members are only connected by edges, and an interconnected group
+		FederateGroup ca1 = new FederateGroup(new FederateIdentity("ca1"));
+		ca1.setInterconnected(false);
+		FederateGroup ca2 = new FederateGroup(new FederateIdentity("ca2"));
+		ca2.setInterconnected(false);
+		FederateGroup mesh = new FederateGroup(new FederateIdentity("mesh"));
+		FederateGroup team = new FederateGroup(new FederateIdentity("team"));
+		team.setInterconnected(false);
+
+		policyGraph.addGroup(ca1);
+		policyGraph.addGroup(ca2);
+		policyGraph.addGroup(mesh);
+		policyGraph.addGroup(team);
+
+		federate("a");
+		federate("b");
+		federate("c");
+		federate("d");
+		federate("e");
+		federate("f", "ca1", "ca2");
+		federate("g", "ca1");
+		federate("h");
+		federate("j", "mesh");
+		federate("k", "mesh");
+		federate("l", "team");
+		federate("m", "team");
+
+		// direct edges, one of each filter type
+		edge("a", "b", GroupFilterType.ALLOWED, groups("red"), groups());
+		edge("a", "c", GroupFilterType.DISALLOWED, groups(), groups("blue"));
+		edge("a", "d", GroupFilterType.ALLOWED_AND_DISALLOWED, groups("red", "green"), groups("blue"));
+		edge("a", "e", GroupFilterType.ALL, groups(), groups());
+
+		// an edge to a group reaches each of its members
+		edge("a", "team", GroupFilterType.ALLOWED, groups("yellow"), groups());
+
+		// f reaches h through both of its CA groups, so both filters apply. g only through ca1.
+		edge("ca1", "h", GroupFilterType.ALLOWED, groups("green", "red"), groups());
+		edge("ca2", "h", GroupFilterType.DISALLOWED, groups(), groups("red"));
+
+		// a direct edge takes priority over the edges from a CA group
+		edge("g", "h", GroupFilterType.ALLOWED, groups("yellow"), groups());
+
+		edge("b", "a", GroupFilterType.ALL, groups(), groups());
+		edge("b", "f", GroupFilterType.DISALLOWED, groups(), groups("green"));
+	}
+
+	@Test
+	public void sameDestinationsAsBrokerService() throws FederationException {
+		FederationHubRoutingTable table = new FederationHubRoutingTable(policyGraph);
+
+		for (FederationNode node : policyGraph.getNodes()) {
+			FederateIdentity source = node.getFederateIdentity();
+
+			for (List<String> groups : MESSAGE_GROUPS) {
+				Set<Federate> expected = FederationHubBrokerService.getGroupFilteredDestinations(groups, source, policyGraph);
+
+				// twice, since the second lookup for a set of groups is served from the table's cache
+				for (int i = 0; i < 2; i++) {
+					assertEquals("destinations from " + source.getFedId() + " with groups " + groups,
+							ids(expected), ids(table.getGroupFilteredDestinations(source.getFedId(), groups)));
+				}
+			}
+		}
+	}
+
+	@Test
+	public void filterTypes() throws FederationException {
+		FederationHubRoutingTable table = new FederationHubRoutingTable(policyGraph);
+
+		assertEquals(ids("e"), ids(table.getGroupFilteredDestinations("a", null)));
+		assertEquals(ids("e"), ids(table.getGroupFilteredDestinations("a", Arrays.asList("blue"))));
+		assertEquals(ids("b", "c", "d", "e"), ids(table.getGroupFilteredDestinations("a", Arrays.asList("red"))));
+		assertEquals(ids("b", "e"), ids(table.getGroupFilteredDestinations("a", Arrays.asList("red", "blue"))));
+		assertEquals(ids("c", "d", "e", "l", "m"), ids(table.getGroupFilteredDestinations("a", Arrays.asList("green", "yellow"))));
+
+		assertEquals(ids("b", "c", "d", "e", "l", "m"), ids(table.getDestinations("a")));
+
+		// both CA group edges must pass
+		assertEquals(ids("h"), ids(table.getGroupFilteredDestinations("f", Arrays.asList("green"))));
+		assertEquals(ids(), ids(table.getGroupFilteredDestinations("f", Arrays.asList("red"))));
+
+		// the direct edge, not the CA group edge
+		assertEquals(ids(), ids(table.getGroupFilteredDestinations("g", Arrays.asList("green"))));
+		assertEquals(ids("h"), ids(table.getGroupFilteredDestinations("g", Arrays.asList("yellow"))));
+
+		// interconnected group members aren't filtered
+		assertEquals(ids("k"), ids(table.getGroupFilteredDestinations("j", null)));
+	}
+
+	@Test
+	public void destinationsAreShared() throws FederationException {
+		FederationHubRoutingTable table = new FederationHubRoutingTable(policyGraph);
+
+		assertSame(table.getGroupFilteredDestinations("a", Arrays.asList("red")), table.getGroupFilteredDestinations("a", Arrays.asList("red")));
+		assertSame(table.getGroupFilteredDestinations("a", null), table.getGroupFilteredDestinations("a", Collections.emptyList()));
+	}
+
+	@Test
+	public void unknownSource() {
+		FederationHubRoutingTable table = new FederationHubRoutingTable(policyGraph);
+
+		try {
+			table.getGroupFilteredDestinations("unknown", Arrays.asList("red"));
+			fail("routed from a source that isn't in the policy graph");
+		} catch (FederationException e) {
+			// expected, as from the policy graph
+		}
+	}
+
+	private void federate(String id, String... caGroups) {
+		Federate federate = new Federate(new FederateIdentity(id));
+
+		for (String caGroup : caGroups) {
+			federate.addGroupIdentity(new FederateIdentity(caGroup));
+		}
+
+		policyGraph.addFederate(federate);
+	}
+
+	private void edge(String source, String destination, GroupFilterType type, Set<String> allowed, Set<String> disallowed)
+			throws FederationException {
+		policyGraph.addEdge(new FederateEdge(new FederateIdentity(source), new FederateIdentity(destination), "", allowed, disallowed, type));
+	}
+
+	private static Set<String> groups(String... groups) {
+		return new HashSet<>(Arrays.asList(groups));
+	}
+
+	private static Set<String> ids(String... ids) {
+		return new HashSet<>(Arrays.asList(ids));
+	}
+
+	private static Set<String> ids(Set<Federate> federates) {
+		return federates.stream().map(f -> f.getFederateIdentity().getFedId()).collect(Collectors.toSet());
+	}
+
+	private static Set<String> ids(Federate[] federates) {
+		return ids(new HashSet<>(Arrays.asList(federates)));
+	}
+}
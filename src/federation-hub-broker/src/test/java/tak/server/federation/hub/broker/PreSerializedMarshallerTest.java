@@ -0,0 +1,133 @@
+package tak.server.federation.hub.broker;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+import org.junit.Test;
+
+import com.atakmap.Tak.FederatedChannelGrpc;
+import com.atakmap.Tak.FederatedEvent;
+import com.atakmap.Tak.GeoEvent;
+
+import io.grpc.Drainable;
+import io.grpc.KnownLength;
+import io.grpc.MethodDescriptor;
+import io.grpc.MethodDescriptor.Marshaller;
+import io.grpc.ServerMethodDefinition;
+import io.grpc.ServerServiceDefinition;
+import io.grpc.protobuf.ProtoUtils;
+
+public class PreSerializedMarshallerTest {
+
+	private final PreSerializedMarshaller<FederatedEvent> marshaller = new PreSerializedMarshaller<>(FederatedEvent.getDefaultInstance());
+
+	private final Marshaller<FederatedEvent> defaultMarshaller = ProtoUtils.marshaller(FederatedEvent.getDefaultInstance());
+
+	@Test
+	public void sameBytesAsDefaultMarshaller() throws IOException {
+		FederatedEvent event = event("uid");
+
+		// not pre-serialized, and pre-serialized
+		assertArrayEquals(bytes(defaultMarshaller.stream(event)), bytes(marshaller.stream(event)));
+
+		marshaller.preSerialize(event);
+
+		assertArrayEquals(bytes(defaultMarshaller.stream(event)), bytes(marshaller.stream(event)));
+
+		// and every stream of the message gets all of them
+		assertArrayEquals(event.toByteArray(), bytes(marshaller.stream(event)));
+
+		assertEquals(event, marshaller.parse(marshaller.stream(event)));
+	}
+
+	@Test
+	public void knownLengthAndDrainable() throws IOException {
+		FederatedEvent event = event("uid");
+		byte[] expected = event.toByteArray();
+
+		marshaller.preSerialize(event);
+
+		InputStream stream = marshaller.stream(event);
+
+		assertTrue(stream instanceof KnownLength);
+		assertTrue(stream instanceof Drainable);
+
+		// gRPC sizes the frame with available(), then drains the stream into it
+		assertEquals(expected.length, stream.available());
+
+		ByteArrayOutputStream target = new ByteArrayOutputStream();
+
+		assertEquals(expected.length, ((Drainable) stream).drainTo(target));
+		assertArrayEquals(expected, target.toByteArray());
+		assertEquals(0, stream.available());
+		assertEquals(-1, stream.read());
+
+		// drains what's left after a partial read
+		stream = marshaller.stream(event);
+		assertEquals(expected[0] & 0xff, stream.read());
+
+		target.reset();
+
+		assertEquals(expected.length - 1, ((Drainable) stream).drainTo(target));
+		assertEquals(expected.length - 1, target.size());
+	}
+
+	@Test
+	public void matchedByIdentity() throws IOException {
+		FederatedEvent event = event("uid");
+		FederatedEvent equal = event("uid");
+
+		marshaller.preSerialize(event);
+
+		// an equal message that wasn't pre-serialized is serialized by the default marshaller
+		assertEquals(event, equal);
+		assertNotSame(marshaller.stream(event).getClass(), marshaller.stream(equal).getClass());
+		assertSame(defaultMarshaller.stream(equal).getClass(), marshaller.stream(equal).getClass());
+		assertArrayEquals(bytes(marshaller.stream(event)), bytes(marshaller.stream(equal)));
+	}
+
+	@Test
+	public void responseMarshaller() {
+		ServerServiceDefinition service = new FederatedChannelGrpc.FederatedChannelImplBase() { }.bindService();
+		String eventStream = FederatedChannelGrpc.getClientEventStreamMethod().getFullMethodName();
+
+		ServerServiceDefinition replaced = marshaller.withResponseMarshaller(service, eventStream);
+
+		assertEquals(service.getServiceDescriptor().getName(), replaced.getServiceDescriptor().getName());
+		assertEquals(service.getMethods().size(), replaced.getMethods().size());
+
+		for (ServerMethodDefinition<?, ?> definition : replaced.getMethods()) {
+			MethodDescriptor<?, ?> descriptor = definition.getMethodDescriptor();
+			ServerMethodDefinition<?, ?> original = service.getMethod(descriptor.getFullMethodName());
+
+			// only the responses of the event stream, with the same handler and request marshaller
+			assertSame(original.getServerCallHandler(), definition.getServerCallHandler());
+			assertSame(original.getMethodDescriptor().getRequestMarshaller(), descriptor.getRequestMarshaller());
+
+			if (descriptor.getFullMethodName().equals(eventStream)) {
+				assertSame(marshaller, descriptor.getResponseMarshaller());
+			} else {
+				assertSame(original.getMethodDescriptor().getResponseMarshaller(), descriptor.getResponseMarshaller());
+			}
+		}
+	}
+
+	private static byte[] bytes(InputStream stream) throws IOException {
+		try (stream) {
+			return stream.readAllBytes();
+		}
+	}
+
+	private static FederatedEvent event(String uid) {
+		return FederatedEvent.newBuilder()
+				.setEvent(GeoEvent.newBuilder().setUid(uid).setType("a-f-G-U-C").setLat(40.1).setLon(-72.2).setSendTime(1234L))
+				.build();
+	}
+}
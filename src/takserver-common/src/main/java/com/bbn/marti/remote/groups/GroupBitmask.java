@@ -0,0 +1,147 @@
+package com.bbn.marti.remote.groups;
+
+import java.io.Serializable;
+import java.util.Arrays;
+import java.util.Collection;
+
+/*
+ *
+ * Immutable, compiled form of a group set. One long[] word vector per direction, with bit n set if the set contains a group
+ * assigned bit position n (see RemoteUtil.getBitVectorForGroups). Reachability between a message and a user reduces to a
+ * word-wise AND of the IN mask of the source groups and the OUT mask of the destination user.
+ *
+ */
+public final class GroupBitmask implements Serializable {
+
+	private static final long serialVersionUID = -5838806329532961372L;
+
+	private static final long[] EMPTY = new long[0];
+
+	private final long[] in;
+	private final long[] out;
+
+	private GroupBitmask(long[] in, long[] out) {
+		this.in = in;
+		this.out = out;
+	}
+
+	/*
+	 * Compile a group set. Returns null if any group has not been assigned a bit position, in which case callers must fall back to
+	 * set-based reachability.
+	 */
+	public static GroupBitmask compile(Collection<Group> groups) {
+
+		if (groups == null || groups.isEmpty()) {
+			return new GroupBitmask(EMPTY, EMPTY);
+		}
+
+		// the set can be modified concurrently - compile a single snapshot of it
+		Group[] snapshot = groups.toArray(new Group[0]);
+		int[] bitposes = new int[snapshot.length];
+
+		int maxIn = -1;
+		int maxOut = -1;
+
+		for (int i = 0; i < snapshot.length; i++) {
+			Group group = snapshot[i];
+
+			if (group == null || group.getDirection() == null) {
+				continue;
+			}
+
+			Integer bitpos = group.getBitpos();
+
+			if (bitpos == null || bitpos < 0) {
+				return null;
+			}
+
+			bitposes[i] = bitpos;
+
+			if (group.getDirection() == Direction.IN) {
+				maxIn = Math.max(maxIn, bitpos);
+			} else {
+				maxOut = Math.max(maxOut, bitpos);
+			}
+		}
+
+		long[] in = maxIn < 0 ? EMPTY : new long[(maxIn >>> 6) + 1];
+		long[] out = maxOut < 0 ? EMPTY : new long[(maxOut >>> 6) + 1];
+
+		for (int i = 0; i < snapshot.length; i++) {
+			Group group = snapshot[i];
+
+			if (group == null || group.getDirection() == null) {
+				continue;
+			}
+
+			int bitpos = bitposes[i];
+
+			if (group.getDirection() == Direction.IN) {
+				in[bitpos >>> 6] |= 1L << bitpos;
+			} else {
+				out[bitpos >>> 6] |= 1L << bitpos;
+			}
+		}
+
+		return new GroupBitmask(in, out);
+	}
+
+	public static boolean intersects(long[] a, long[] b) {
+
+		int len = Math.min(a.length, b.length);
+
+		for (int i = 0; i < len; i++) {
+			if ((a[i] & b[i]) != 0L) {
+				return true;
+			}
+		}
+
+		return false;
+	}
+
+	/*
+	 * true if any IN group of this (source) mask has a matching OUT group in the destination mask
+	 */
+	public boolean canReach(GroupBitmask dest) {
+		return dest != null && intersects(in, dest.out);
+	}
+
+	/*
+	 * true if this mask has the OUT group assigned the given bit position
+	 */
+	public boolean hasOut(int bitpos) {
+		return bitpos >= 0 && (bitpos >>> 6) < out.length && (out[bitpos >>> 6] & (1L << bitpos)) != 0L;
+	}
+
+	public boolean isEmpty() {
+		return in.length == 0 && out.length == 0;
+	}
+
+	public long[] getIn() {
+		return in.clone();
+	}
+
+	public long[] getOut() {
+		return out.clone();
+	}
+
+	@Override
+	public int hashCode() {
+		return 31 * Arrays.hashCode(in) + Arrays.hashCode(out);
+	}
+
+	@Override
+	public boolean equals(Object obj) {
+		if (this == obj)
+			return true;
+		if (!(obj instanceof GroupBitmask))
+			return false;
+		GroupBitmask other = (GroupBitmask) obj;
+		return Arrays.equals(in, other.in) && Arrays.equals(out, other.out);
+	}
+
+	@Override
+	public String toString() {
+		return "GroupBitmask [in=" + Arrays.toString(in) + ", out=" + Arrays.toString(out) + "]";
+	}
+}
@@ -27,6 +27,11 @@ public interface GroupManager {
      */
     NavigableSet<Group> getGroups(User user);
 
+    /*
+     * Get the compiled IN / OUT group bitmask for a user, or null if the user is unknown or has a group without an assigned bit position.
+     */
+    GroupBitmask getGroupBitmask(User user);
+
     /*
      * Get all users.
      */
@@ -14,11 +14,20 @@ public interface RetentionQueryService {
     void deleteMission(String name, String creatorUid, String groupVector, boolean deepDelete);
     void deleteMission(String name, String creatorUid, List<String> groups, boolean deepDelete);
     
-    byte[] getArchivedMission(String missionName, String groupVector, String serverName);
+    // archives and content move between processes as transfers, read and written a chunk at a time
+    String createTransfer() throws Exception;
+    void appendTransfer(String transferId, byte[] chunk) throws Exception;
+    // up to length bytes of the transfer from offset, or an empty array at its end
+    byte[] readTransfer(String transferId, long offset, int length) throws Exception;
+    void deleteTransfer(String transferId);
+
+    // archive the mission to a transfer, returning the transfer id
+    String getArchivedMission(String missionName, String groupVector, String serverName) throws Exception;
          
-    boolean restoreMission(Map<String, byte[]> files, Map<String, String> properties, List<String> groups, String defaultRole, List<String> defaultPermissions);
+    boolean restoreMission(Map<String, String> properties, List<String> groups, String defaultRole, List<String> defaultPermissions);
 	void restoreCoT(String missionName, List<byte[]> files, List<String> groups);
-	void restoreContent(String missionName, byte[] file, Element missionContent, List<String> groups) throws Exception;
+	// restore mission content from a transfer, which is then deleted
+	void restoreContent(String missionName, String transferId, Element missionContent, List<String> groups) throws Exception;
     public List<Mission> getAllMissions(boolean passwordProtected, boolean defaultRole, String tool) throws Exception;
 
 }
@@ -0,0 +1,197 @@
+package com.bbn.marti.remote.sync;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.SeekableByteChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/*
+ *
+ * Content store in a local or shared directory. Each piece of content is a file named by its hash, two directory levels down from
+ * the root by the first four hex digits of the hash, so that no directory gets too large:
+ *
+ *   <root>/3f/a9/3fa9...
+ *
+ * Content is written to a temporary file under <root>/tmp, synced, then renamed into place, so a file at a hash path is always
+ * complete.
+ *
+ */
+public class FileSystemResourceContentStore implements ResourceContentStore {
+
+	private static final Logger logger = LoggerFactory.getLogger(FileSystemResourceContentStore.class);
+
+	// content written more recently than this is never deleted
+	public static final long DELETE_GRACE_MILLIS = TimeUnit.MINUTES.toMillis(10);
+
+	private static final String TEMP_DIRECTORY = "tmp";
+
+	private static final Pattern HASH = Pattern.compile("[0-9a-f]{64}");
+
+	private final Path root;
+
+	// serializes storing and deleting the same hash within this process
+	private final Object[] locks = new Object[64];
+
+	public FileSystemResourceContentStore(Path root) {
+		this.root = root.toAbsolutePath().normalize();
+
+		for (int i = 0; i < locks.length; i++) {
+			locks[i] = new Object();
+		}
+	}
+
+	public Path getRoot() {
+		return root;
+	}
+
+	@Override
+	public StoredContent store(InputStream content) throws IOException {
+
+		Path temp = Files.createTempFile(Files.createDirectories(root.resolve(TEMP_DIRECTORY)), "content", ".part");
+
+		try {
+			MessageDigest digest = sha256();
+			long length;
+
+			try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.WRITE)) {
+				// the caller closes content
+				length = new DigestInputStream(content, digest).transferTo(Channels.newOutputStream(channel));
+				channel.force(true);
+			}
+
+			String hash = HexFormat.of().formatHex(digest.digest());
+			Path target = path(hash);
+
+			Files.createDirectories(target.getParent());
+
+			synchronized (lock(target)) {
+				// an existing copy is identical. Replacing it makes it recent again, so it isn't deleted as an orphan before the
+				// new resource row referencing it is inserted.
+				Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+			}
+
+			if (logger.isDebugEnabled()) {
+				logger.debug("stored {} bytes of content with hash {}", length, hash);
+			}
+
+			return new StoredContent(hash, length);
+		} finally {
+			Files.deleteIfExists(temp);
+		}
+	}
+
+	@Override
+	public SeekableByteChannel open(String hash) throws IOException {
+		try {
+			return FileChannel.open(path(hash), StandardOpenOption.READ);
+		} catch (NoSuchFileException e) {
+			return null;
+		}
+	}
+
+	@Override
+	public boolean contains(String hash) {
+		return Files.isRegularFile(path(hash));
+	}
+
+	@Override
+	public boolean delete(String hash) throws IOException {
+
+		Path file = path(hash);
+
+		synchronized (lock(file)) {
+			try {
+				if (System.currentTimeMillis() - Files.getLastModifiedTime(file).toMillis() < DELETE_GRACE_MILLIS) {
+					return false;
+				}
+
+				Files.delete(file);
+			} catch (NoSuchFileException e) {
+				return false;
+			}
+		}
+
+		if (logger.isDebugEnabled()) {
+			logger.debug("deleted content with hash {}", hash);
+		}
+
+		return true;
+	}
+
+	// hashes of all stored content. Close the stream when done.
+	public Stream<String> hashes() throws IOException {
+
+		if (!Files.isDirectory(root)) {
+			return Stream.empty();
+		}
+
+		return Files.walk(root, 3)
+				.filter(path -> root.relativize(path).getNameCount() == 3 && !path.startsWith(root.resolve(TEMP_DIRECTORY)))
+				.map(path -> path.getFileName().toString())
+				.filter(name -> HASH.matcher(name).matches());
+	}
+
+	// removes temporary files left by stores that didn't finish, such as when the process was stopped
+	public void deleteStaleTemporaryFiles() {
+
+		Path tempDirectory = root.resolve(TEMP_DIRECTORY);
+
+		if (!Files.isDirectory(tempDirectory)) {
+			return;
+		}
+
+		long cutoff = System.currentTimeMillis() - TimeUnit.DAYS.toMillis(1);
+
+		try (DirectoryStream<Path> files = Files.newDirectoryStream(tempDirectory)) {
+			for (Path file : files) {
+				if (Files.getLastModifiedTime(file).toMillis() < cutoff) {
+					Files.deleteIfExists(file);
+				}
+			}
+		} catch (IOException e) {
+			logger.warn("unable to clean up temporary files in " + tempDirectory, e);
+		}
+	}
+
+	private Path path(String hash) {
+
+		String name = hash == null ? "" : hash.toLowerCase(Locale.ROOT);
+
+		// only ever a file in the store
+		if (!HASH.matcher(name).matches()) {
+			throw new IllegalArgumentException("invalid content hash " + hash);
+		}
+
+		return root.resolve(name.substring(0, 2)).resolve(name.substring(2, 4)).resolve(name);
+	}
+
+	private Object lock(Path file) {
+		return locks[Math.floorMod(file.getFileName().hashCode(), locks.length)];
+	}
+
+	private static MessageDigest sha256() {
+		try {
+			return MessageDigest.getInstance("SHA-256");
+		} catch (NoSuchAlgorithmException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+}
@@ -0,0 +1,53 @@
+package com.bbn.marti.remote.sync;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.channels.SeekableByteChannel;
+
+/*
+ *
+ * Storage for Enterprise Sync content outside of the resource table, addressed by the SHA-256 hash of the content. The same
+ * content stored twice is kept once. Resource rows hold the metadata, and are what keeps content referenced.
+ *
+ */
+public interface ResourceContentStore {
+
+	// stores the content, returning its hash and length
+	StoredContent store(InputStream content) throws IOException;
+
+	// the content with the given hash, or null if it isn't stored
+	SeekableByteChannel open(String hash) throws IOException;
+
+	boolean contains(String hash);
+
+	/*
+	 * Removes the content with the given hash, once nothing references it. Content stored recently is kept, since the resource row
+	 * referencing it may not have been inserted yet. Returns true if the content was removed.
+	 */
+	boolean delete(String hash) throws IOException;
+
+	public static class StoredContent {
+
+		private final String hash;
+
+		private final long length;
+
+		public StoredContent(String hash, long length) {
+			this.hash = hash;
+			this.length = length;
+		}
+
+		public String getHash() {
+			return hash;
+		}
+
+		public long getLength() {
+			return length;
+		}
+
+		@Override
+		public String toString() {
+			return "StoredContent [hash=" + hash + ", length=" + length + "]";
+		}
+	}
+}
@@ -0,0 +1,201 @@
+package tak.server.ignite.cache;
+
+import java.io.IOException;
+import java.io.Serializable;
+import java.nio.ByteBuffer;
+import java.util.Collections;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import javax.cache.expiry.Duration;
+import javax.cache.expiry.ModifiedExpiryPolicy;
+import javax.cache.processor.MutableEntry;
+
+import org.apache.ignite.IgniteCache;
+import org.apache.ignite.cache.CacheEntryProcessor;
+import org.apache.ignite.cache.CacheAtomicityMode;
+import org.apache.ignite.configuration.CacheConfiguration;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.bbn.marti.remote.config.CoreConfigFacade;
+import com.google.protobuf.CodedInputStream;
+
+import atakmap.commoncommo.protobuf.v1.Takmessage.TakMessage;
+import tak.server.Constants;
+import tak.server.cot.CotEventContainer;
+import tak.server.ignite.IgniteHolder;
+import tak.server.proto.StreamingProtoBufHelper;
+
+/*
+ *
+ * Latest event for each uid, as it was brokered, with the groups bit vector of its sender. When enabled, messaging puts every brokered
+ * event here whether or not it is archived, so the messaging and API processes (and the other nodes of a cluster) can get the latest CoT for a
+ * uid without querying cot_router.
+ *
+ * Events are kept as TAK protocol messages, and each entry expires at the stale time of its event. The cache is in the default data
+ * region, which is off-heap and bounded by its max size.
+ *
+ */
+public final class LatestSAIndex {
+
+	private static final Logger logger = LoggerFactory.getLogger(LatestSAIndex.class);
+
+	private static volatile IgniteCache<String, Entry> cache = null;
+
+	private LatestSAIndex() { }
+
+	public static boolean isEnabled() {
+		return CoreConfigFacade.getInstance().getRemoteConfiguration().getBuffer().getQueue().isEnableLatestSaIndex();
+	}
+
+	private static IgniteCache<String, Entry> getCache() {
+		if (cache == null) {
+			synchronized (LatestSAIndex.class) {
+				if (cache == null) {
+					CacheConfiguration<String, Entry> cacheCfg = new CacheConfiguration<>(Constants.LATEST_SA_CACHE);
+					cacheCfg.setAtomicityMode(CacheAtomicityMode.ATOMIC);
+					cacheCfg.setEagerTtl(true);
+					cache = IgniteHolder.getInstance().getIgnite().getOrCreateCache(cacheCfg);
+				}
+			}
+		}
+
+		return cache;
+	}
+
+	/**
+	 * Index an event, replacing the previous one for its uid unless that one is newer. Puts are made asynchronously, and by more than
+	 * one thread and node, so they can arrive out of order - the event time decides which event is the latest, not the order.
+	 *
+	 * @param framedTakMessage the event as a framed TAK protocol message, as it is streamed to clients. It isn't modified.
+	 */
+	public static void put(String uid, ByteBuffer framedTakMessage, String groupsBitVectorString, long timeMillis, long staleMillis) {
+
+		long ttl = staleMillis - System.currentTimeMillis();
+
+		if (ttl <= 0) {
+			// an event that is already stale replaces the previous one, so that isn't served instead
+			getCache().invokeAsync(uid, new ReplaceIfNewer(timeMillis, staleMillis, null));
+			return;
+		}
+
+		try {
+			CodedInputStream input = CodedInputStream.newInstance(framedTakMessage.duplicate());
+
+			if (input.readRawByte() != StreamingProtoBufHelper.MAGIC) {
+				throw new IOException("invalid TAK protocol frame");
+			}
+
+			byte[] takMessageBytes = input.readRawBytes(input.readRawVarint32());
+
+			// the expiry is set on update as well as create, since each event has its own stale time
+			getCache().withExpiryPolicy(new ModifiedExpiryPolicy(new Duration(TimeUnit.MILLISECONDS, ttl)))
+				.invokeAsync(uid, new ReplaceIfNewer(timeMillis, staleMillis, new Entry(uid, takMessageBytes, groupsBitVectorString, timeMillis, staleMillis)));
+
+		} catch (IOException e) {
+			if (logger.isDebugEnabled()) {
+				logger.debug("not indexing latest event for uid " + uid, e);
+			}
+		}
+	}
+
+	// latest unexpired event for uid, or null
+	public static Entry get(String uid) {
+		return getCache().get(uid);
+	}
+
+	// latest unexpired events for those of uids that have one
+	public static Map<String, Entry> getAll(Set<String> uids) {
+
+		if (uids.isEmpty()) {
+			return Collections.emptyMap();
+		}
+
+		return getCache().getAll(uids);
+	}
+
+	/*
+	 * Sets the entry (or removes it, if entry is null) unless the indexed event is newer, by event time and then stale time. Runs on
+	 * the node that owns the key, under the entry's lock.
+	 */
+	static class ReplaceIfNewer implements CacheEntryProcessor<String, Entry, Void> {
+
+		private static final long serialVersionUID = 6138207739128446127L;
+
+		private final long timeMillis;
+		private final long staleMillis;
+		private final Entry entry;
+
+		ReplaceIfNewer(long timeMillis, long staleMillis, Entry entry) {
+			this.timeMillis = timeMillis;
+			this.staleMillis = staleMillis;
+			this.entry = entry;
+		}
+
+		@Override
+		public Void process(MutableEntry<String, Entry> indexed, Object... arguments) {
+
+			Entry current = indexed.getValue();
+
+			if (current != null && (current.getTimeMillis() > timeMillis
+					|| (current.getTimeMillis() == timeMillis && current.getStaleMillis() > staleMillis))) {
+				return null;
+			}
+
+			if (entry == null) {
+				indexed.remove();
+			} else {
+				indexed.setValue(entry);
+			}
+
+			return null;
+		}
+	}
+
+	public static class Entry implements Serializable {
+
+		private static final long serialVersionUID = 2719843718273659102L;
+
+		private final String uid;
+		private final byte[] takMessageBytes;
+		private final String groupsBitVectorString;
+		private final long timeMillis;
+		private final long staleMillis;
+
+		public Entry(String uid, byte[] takMessageBytes, String groupsBitVectorString, long timeMillis, long staleMillis) {
+			this.uid = uid;
+			this.takMessageBytes = takMessageBytes;
+			this.groupsBitVectorString = groupsBitVectorString;
+			this.timeMillis = timeMillis;
+			this.staleMillis = staleMillis;
+		}
+
+		public String getUid() {
+			return uid;
+		}
+
+		public String getGroupsBitVectorString() {
+			return groupsBitVectorString;
+		}
+
+		public long getTimeMillis() {
+			return timeMillis;
+		}
+
+		public long getStaleMillis() {
+			return staleMillis;
+		}
+
+		// a new message for the event, protobuf backed, so the XML document is only built if something needs it
+		public CotEventContainer toCotEventContainer() throws IOException {
+			return StreamingProtoBufHelper.proto2cot(TakMessage.parseFrom(takMessageBytes), takMessageBytes);
+		}
+
+		@Override
+		public String toString() {
+			return "LatestSAIndex.Entry [uid=" + uid + ", bytes=" + takMessageBytes.length + ", timeMillis=" + timeMillis + ", staleMillis=" + staleMillis + "]";
+		}
+	}
+}
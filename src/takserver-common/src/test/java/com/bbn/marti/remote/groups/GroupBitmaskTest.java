@@ -0,0 +1,166 @@
+package com.bbn.marti.remote.groups;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.NavigableSet;
+import java.util.Random;
+import java.util.concurrent.ConcurrentSkipListSet;
+
+import org.junit.Test;
+
+import com.bbn.marti.remote.util.RemoteUtil;
+
+public class GroupBitmaskTest {
+
+	@Test
+	public void emptyGroups() {
+		GroupBitmask empty = GroupBitmask.compile(Collections.emptySet());
+
+		assertTrue(empty.isEmpty());
+		assertEquals(empty, GroupBitmask.compile(null));
+		assertEquals(0, empty.getIn().length);
+		assertEquals(0, empty.getOut().length);
+
+		GroupBitmask both = GroupBitmask.compile(groups(in(0), out(0)));
+
+		// an empty source reaches nobody, and nobody reaches an empty destination
+		assertFalse(empty.canReach(both));
+		assertFalse(both.canReach(empty));
+		assertFalse(empty.canReach(empty));
+		assertFalse(both.canReach(null));
+
+		assertFalse(empty.hasOut(0));
+		assertFalse(empty.hasOut(-1));
+	}
+
+	@Test
+	public void unassignedBitpos() {
+		NavigableSet<Group> groups = groups(in(0));
+		groups.add(new Group("unassigned", Direction.OUT));
+
+		// callers fall back to the group set
+		assertNull(GroupBitmask.compile(groups));
+	}
+
+	@Test
+	public void direction() {
+		GroupBitmask source = GroupBitmask.compile(groups(in(5), out(6)));
+
+		assertTrue(source.canReach(GroupBitmask.compile(groups(out(5)))));
+
+		// the IN groups of the source only match the OUT groups of the destination
+		assertFalse(source.canReach(GroupBitmask.compile(groups(in(5)))));
+		assertFalse(source.canReach(GroupBitmask.compile(groups(in(6), out(7)))));
+		assertFalse(GroupBitmask.compile(groups(out(5))).canReach(GroupBitmask.compile(groups(out(5)))));
+
+		assertTrue(source.hasOut(6));
+		assertFalse(source.hasOut(5));
+	}
+
+	@Test
+	public void bitsAboveWordBoundary() {
+		for (int bitpos : new int[] { 63, 64, 65, 127, 128, 1000, RemoteUtil.GROUPS_BIT_VECTOR_LEN - 1 }) {
+			GroupBitmask source = GroupBitmask.compile(groups(in(bitpos)));
+			GroupBitmask dest = GroupBitmask.compile(groups(out(bitpos)));
+
+			assertTrue("bit " + bitpos, source.canReach(dest));
+			assertTrue("bit " + bitpos, dest.hasOut(bitpos));
+			assertEquals((bitpos >>> 6) + 1, source.getIn().length);
+
+			assertFalse("bit " + bitpos, source.canReach(GroupBitmask.compile(groups(out(bitpos - 1)))));
+
+			// the same bit of the first word doesn't match
+			if (bitpos >= 64) {
+				assertFalse("bit " + bitpos, source.canReach(GroupBitmask.compile(groups(out(bitpos & 63)))));
+				assertFalse("bit " + bitpos, dest.hasOut(bitpos & 63));
+			}
+		}
+
+		// masks of different lengths
+		GroupBitmask wide = GroupBitmask.compile(groups(in(3), in(200)));
+
+		assertTrue(wide.canReach(GroupBitmask.compile(groups(out(3)))));
+		assertTrue(GroupBitmask.compile(groups(in(3))).canReach(GroupBitmask.compile(groups(out(3), out(200)))));
+		assertFalse(wide.canReach(GroupBitmask.compile(groups(out(4)))));
+	}
+
+	@Test
+	public void immutable() {
+		GroupBitmask mask = GroupBitmask.compile(groups(in(1), out(2)));
+
+		long[] in = mask.getIn();
+		in[0] = -1L;
+
+		assertArrayEquals(new long[] { 1L << 1 }, mask.getIn());
+		assertEquals(GroupBitmask.compile(groups(in(1), out(2))), mask);
+		assertEquals(GroupBitmask.compile(groups(in(1), out(2))).hashCode(), mask.hashCode());
+	}
+
+	@Test
+	public void sameAsGroupVectorString() {
+		Random random = new Random(42);
+
+		RemoteUtil remoteUtil = RemoteUtil.getInstance();
+
+		for (int i = 0; i < 500; i++) {
+			NavigableSet<Group> source = randomGroups(random);
+			NavigableSet<Group> dest = randomGroups(random);
+
+			GroupBitmask sourceMask = GroupBitmask.compile(source);
+			GroupBitmask destMask = GroupBitmask.compile(dest);
+
+			assertNotNull(sourceMask);
+			assertNotNull(destMask);
+
+			String sourceVector = remoteUtil.bitVectorToString(remoteUtil.getBitVectorForGroups(source, Direction.IN));
+			String destVector = remoteUtil.bitVectorToString(remoteUtil.getBitVectorForGroups(dest, Direction.OUT));
+
+			assertEquals(source + " -> " + dest, remoteUtil.isGroupVectorAllowed(sourceVector, destVector), sourceMask.canReach(destMask));
+		}
+	}
+
+	// up to 4 groups from a small range of bits, so that some sets intersect, and some above bit 63
+	private static NavigableSet<Group> randomGroups(Random random) {
+		List<Group> groups = new ArrayList<>();
+
+		int count = random.nextInt(5);
+
+		for (int i = 0; i < count; i++) {
+			int bitpos = random.nextBoolean() ? random.nextInt(8) : 60 + random.nextInt(80);
+			groups.add(random.nextBoolean() ? in(bitpos) : out(bitpos));
+		}
+
+		return groups(groups.toArray(new Group[0]));
+	}
+
+	private static NavigableSet<Group> groups(Group... groups) {
+		NavigableSet<Group> result = new ConcurrentSkipListSet<>();
+
+		Collections.addAll(result, groups);
+
+		return result;
+	}
+
+	private static Group in(int bitpos) {
+		return group(bitpos, Direction.IN);
+	}
+
+	private static Group out(int bitpos) {
+		return group(bitpos, Direction.OUT);
+	}
+
+	private static Group group(int bitpos, Direction direction) {
+		Group group = new Group("group" + bitpos, direction);
+		group.setBitpos(bitpos);
+
+		return group;
+	}
+}
@@ -0,0 +1,133 @@
+package tak.server.ignite.cache;
+
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import javax.cache.processor.MutableEntry;
+
+import org.junit.Test;
+
+public class LatestSAIndexTest {
+
+	@Test
+	public void newerReplaces() {
+		IndexedEntry indexed = new IndexedEntry(entry(1000, 2000));
+		LatestSAIndex.Entry newer = entry(1001, 1500);
+
+		process(indexed, newer);
+
+		assertSame(newer, indexed.value);
+	}
+
+	@Test
+	public void olderIgnored() {
+		// puts are async, so an older event can arrive after a newer one
+		LatestSAIndex.Entry current = entry(1000, 2000);
+		IndexedEntry indexed = new IndexedEntry(current);
+
+		process(indexed, entry(999, 5000));
+
+		assertSame(current, indexed.value);
+	}
+
+	@Test
+	public void sameTimeLaterStaleWins() {
+		LatestSAIndex.Entry current = entry(1000, 2000);
+		IndexedEntry indexed = new IndexedEntry(current);
+
+		process(indexed, entry(1000, 1999));
+
+		assertSame(current, indexed.value);
+
+		LatestSAIndex.Entry laterStale = entry(1000, 2001);
+
+		process(indexed, laterStale);
+
+		assertSame(laterStale, indexed.value);
+
+		// and the same event again replaces it
+		LatestSAIndex.Entry same = entry(1000, 2001);
+
+		process(indexed, same);
+
+		assertSame(same, indexed.value);
+	}
+
+	@Test
+	public void staleEventRemoves() {
+		// an event put already stale removes the indexed one, unless that one is newer
+		LatestSAIndex.Entry current = entry(1000, 2000);
+		IndexedEntry indexed = new IndexedEntry(current);
+
+		new LatestSAIndex.ReplaceIfNewer(999, 1500, null).process(indexed);
+
+		assertSame(current, indexed.value);
+
+		new LatestSAIndex.ReplaceIfNewer(1001, 1500, null).process(indexed);
+
+		assertNull(indexed.value);
+
+		// removing nothing leaves nothing
+		new LatestSAIndex.ReplaceIfNewer(1001, 1500, null).process(indexed);
+
+		assertNull(indexed.value);
+	}
+
+	@Test
+	public void emptyIndexSet() {
+		IndexedEntry indexed = new IndexedEntry(null);
+		LatestSAIndex.Entry entry = entry(0, 0);
+
+		process(indexed, entry);
+
+		assertSame(entry, indexed.value);
+	}
+
+	private static void process(IndexedEntry indexed, LatestSAIndex.Entry entry) {
+		new LatestSAIndex.ReplaceIfNewer(entry.getTimeMillis(), entry.getStaleMillis(), entry).process(indexed);
+	}
+
+	private static LatestSAIndex.Entry entry(long timeMillis, long staleMillis) {
+		return new LatestSAIndex.Entry("uid", new byte[0], "1", timeMillis, staleMillis);
+	}
+
+	// the entry for the uid in the cache, as the processor sees it
+	private static class IndexedEntry implements MutableEntry<String, LatestSAIndex.Entry> {
+
+		LatestSAIndex.Entry value;
+
+		IndexedEntry(LatestSAIndex.Entry value) {
+			this.value = value;
+		}
+
+		@Override
+		public String getKey() {
+			return "uid";
+		}
+
+		@Override
+		public LatestSAIndex.Entry getValue() {
+			return value;
+		}
+
+		@Override
+		public boolean exists() {
+			return value != null;
+		}
+
+		@Override
+		public void remove() {
+			value = null;
+		}
+
+		@Override
+		public void setValue(LatestSAIndex.Entry value) {
+			this.value = value;
+		}
+
+		@Override
+		public <T> T unwrap(Class<T> clazz) {
+			throw new IllegalArgumentException();
+		}
+	}
+}
@@ -0,0 +1,181 @@
+package com.bbn.marti.service;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.NavigableSet;
+import java.util.Random;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.ignite.Ignition;
+import org.dom4j.DocumentHelper;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.context.annotation.AnnotationConfigApplicationContext;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import com.bbn.marti.groups.DistributedPersistentGroupManager;
+import com.bbn.marti.groups.InMemoryGroupStore;
+import com.bbn.marti.nio.channel.ChannelHandler;
+import com.bbn.marti.nio.channel.base.AbstractBroadcastingChannelHandler;
+import com.bbn.marti.remote.config.CoreConfigFacade;
+import com.bbn.marti.remote.groups.AuthenticatedUser;
+import com.bbn.marti.remote.groups.Direction;
+import com.bbn.marti.remote.groups.FederateUser;
+import com.bbn.marti.remote.groups.Group;
+import com.bbn.marti.remote.groups.GroupManager;
+import com.bbn.marti.remote.groups.User;
+import com.bbn.marti.util.concurrent.future.AsyncFuture;
+
+import tak.server.Constants;
+import tak.server.TakServerTestApplicationConfig;
+import tak.server.cot.CotEventContainer;
+
+/*
+ *
+ * Implicit brokering through DistributedSubscriptionManager.getImplicitMatches, with the subscriptions and group memberships held by
+ * the real SubscriptionStore and group manager, comparing the full subscription scan (indexedMatching=false) with the group bit
+ * candidate index (indexedMatching=true). Each receiver is a member of one or two of the groups, and each message is sent to one group.
+ *
+ * ./gradlew :takserver-core:jmh -PjmhInclude=ImplicitMatchingBenchmark
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ImplicitMatchingBenchmark {
+
+	private static final String SA = "<event version='2.0' uid='benchmark-sender' type='a-f-G-U-C' time='2024-01-01T00:00:00Z' start='2024-01-01T00:00:00Z' stale='2024-01-01T00:05:00Z' how='m-g'>"
+			+ "<point lat='42.0' lon='-71.0' hae='0' ce='10' le='10'/><detail><contact callsign='benchmark'/></detail></event>";
+
+	@Param({"1000", "10000", "50000"})
+	public int subscriptionCount;
+
+	@Param({"64"})
+	public int groupCount;
+
+	@Param({"false", "true"})
+	public boolean indexedMatching;
+
+	private AnnotationConfigApplicationContext context;
+
+	private DistributedSubscriptionManager subscriptionManager;
+
+	private final List<CotEventContainer> messages = new ArrayList<>();
+
+	private int messageCounter = 0;
+
+	@Setup(Level.Trial)
+	public void setup() throws Exception {
+
+		context = new AnnotationConfigApplicationContext(TakServerTestApplicationConfig.class, BenchmarkConfig.class);
+
+		com.bbn.marti.config.Configuration config = CoreConfigFacade.getInstance().getRemoteConfiguration();
+		config.getRepository().setEnable(false);
+		config.getDissemination().setIndexedMatching(indexedMatching);
+
+		GroupManager groupManager = context.getBean(GroupManager.class);
+
+		subscriptionManager = new DistributedSubscriptionManager();
+
+		Random random = new Random(42);
+
+		for (int i = 0; i < subscriptionCount; i++) {
+
+			// every 50th receiver is a federate
+			User receiver = i % 50 == 0
+					? new FederateUser("federate" + i, "federate-connection" + i, "federate" + i, "127.0.0.1", null, null, null)
+					: new AuthenticatedUser("user" + i, "connection" + i, "127.0.0.1", null, "user" + i, "", "uid" + i);
+
+			int memberships = 1 + random.nextInt(2);
+
+			for (int j = 0; j < memberships; j++) {
+				int g = random.nextInt(groupCount);
+
+				groupManager.addUserToGroup(receiver, group(g, Direction.IN));
+				groupManager.addUserToGroup(receiver, group(g, Direction.OUT));
+			}
+
+			Subscription subscription = new Subscription();
+			subscription.uid = "subscription" + i;
+			subscription.setUser(receiver);
+			subscription.setHandler(new BenchmarkChannelHandler());
+
+			subscriptionManager.addRawSubscription(subscription);
+		}
+
+		User sender = new AuthenticatedUser("sender", "sender-connection", "127.0.0.1", null, "sender", "", "benchmark-sender");
+
+		for (int g = 0; g < groupCount; g++) {
+			NavigableSet<Group> srcGroups = new ConcurrentSkipListSet<>();
+			srcGroups.add(groupManager.hydrateGroup(group(g, Direction.IN)));
+
+			CotEventContainer message = new CotEventContainer(DocumentHelper.parseText(SA));
+			message.setContextValue(Constants.USER_KEY, sender);
+			message.setContextValue(Constants.GROUPS_KEY, srcGroups);
+			message.setContextValue(Constants.SOURCE_HASH_KEY, "benchmark-sender");
+
+			messages.add(message);
+		}
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() {
+		context.close();
+		Ignition.stopAll(true);
+	}
+
+	@Benchmark
+	public Collection<Subscription> getImplicitMatches() {
+		return subscriptionManager.getImplicitMatches(messages.get((messageCounter++ & Integer.MAX_VALUE) % messages.size()));
+	}
+
+	private static Group group(int bitpos, Direction direction) {
+		Group group = new Group("group" + bitpos, direction);
+		group.setBitpos(bitpos);
+
+		return group;
+	}
+
+	@Configuration
+	static class BenchmarkConfig {
+
+		@Bean
+		GroupManager groupManager() {
+			return new DistributedPersistentGroupManager(new InMemoryGroupStore());
+		}
+	}
+
+	// connected receiver, that is never written to
+	static class BenchmarkChannelHandler extends AbstractBroadcastingChannelHandler {
+
+		@Override
+		public AsyncFuture<ChannelHandler> close() {
+			return null;
+		}
+
+		@Override
+		public void forceClose() { }
+
+		@Override
+		public String netProtocolName() {
+			return "benchmark";
+		}
+	}
+}
@@ -39,6 +39,12 @@ public class FlowTagFilter implements CotFilter {
 	@Override
 	public CotEventContainer filter(CotEventContainer c) {
 		if (!Strings.isNullOrEmpty(flowTag())) {
+			// protobuf backed message without flow tags - add ours to the xml detail, so that the document doesn't have to be built
+			if (!c.hasXmlDetailElement("_flow-tags_")
+					&& c.appendXmlDetail("<_flow-tags_ " + flowTag() + "=\"" + DateUtil.toCotTime(System.currentTimeMillis()) + "\"/>")) {
+				return c;
+			}
+
 			// check to make sure detail field exists
 			Element detailElem = c.getDocument().getRootElement()
 					.element("detail");
@@ -57,6 +63,19 @@ public class FlowTagFilter implements CotFilter {
 		return c;
 	}
 
+	/**
+	* Checks whether this server's flow tag is present on a message, ie whether this server has already processed it.
+	*
+	* Does not build the document of a protobuf backed message unless its xml detail has a flow tags element.
+	*/
+	public boolean hasFlowTag(CotEventContainer c) {
+		if (!c.hasXmlDetailElement("_flow-tags_")) {
+			return false;
+		}
+
+		return c.matchXPath(flowTagXPath + "[@" + flowTag() + "]");
+	}
+
 	/**
 	* Removes the flow tag filter *for this server* from a message, if there is a filter.
 	*
@@ -2,6 +2,7 @@
 
 package com.bbn.cot.filter;
 
+import java.util.ArrayList;
 import java.util.List;
 
 import org.apache.log4j.Logger;
@@ -50,6 +51,19 @@ public class ImageFormattingFilter implements CotFilter {
 
 		log.trace("reattaching " + imageList.size() + " to the cot, with format " + pref.toString());
 		
+		// generate the image elements first, so that the document is only written when there is something to change
+		List<Element> generated = new ArrayList<>(imageList.size());
+		for (ImageData img : imageList) {
+			Element imageElem = Images.generateElementFromData(img, pref);
+			if (imageElem != null) {
+				generated.add(imageElem);
+			}
+		}
+
+		if (generated.isEmpty() && cot.getReadOnlyDocument().selectSingleNode(Images.DETAIL_PATH + "/" + Images.IMAGE_ELEMENT_NAME) == null) {
+			return cot;
+		}
+
 		// get detail element out of document for attaching child images
 		Element detailElem = DocumentHelper.makeElement(cot.getDocument(), Images.DETAIL_PATH);
 		
@@ -63,11 +77,8 @@ public class ImageFormattingFilter implements CotFilter {
 		}
 		
 		// attach image string data for each image
-		for (ImageData img : imageList) {
-			Element imageElem = Images.generateElementFromData(img, pref);
-			if (imageElem != null) {
-				detailElem.add(imageElem);
-			}
+		for (Element imageElem : generated) {
+			detailElem.add(imageElem);
 		}
 
 		return cot;
@@ -99,7 +99,14 @@ public class StreamingEndpointRewriteFilter implements CotFilter {
 			logger.trace("StreamingEndpointFilter start");
 		}
 
-		if (config.getFilter().getStreamingbroker().isEnable()) {
+		// protobuf backed message without a marti element - no destinations to process, and nothing to remove
+		if (!cot.hasXmlDetailElement("marti")) {
+			return cot;
+		}
+
+		if (config.getFilter().getStreamingbroker().isEnable()
+				&& cot.getReadOnlyDocument().selectSingleNode(DEST_XPATH) != null) {
+			// the dests are detached below, so select them from the writable document
 			List<Node> destList = cot.getDocument().selectNodes(DEST_XPATH); // XML node with all the dests
 
 			if (destList.size() > 0) {
@@ -245,10 +252,12 @@ public class StreamingEndpointRewriteFilter implements CotFilter {
 			}
 		}
 
-        // remove marti element completely
-		Element martiElem = (Element) cot.getDocument().selectSingleNode(Constants.MARTI_XPATH);
-		if (martiElem != null) {
-			martiElem.detach();
+        // remove marti element completely. Only take the writable document if there is one to remove.
+		if (cot.getReadOnlyDocument().selectSingleNode(Constants.MARTI_XPATH) != null) {
+			Element martiElem = (Element) cot.getDocument().selectSingleNode(Constants.MARTI_XPATH);
+			if (martiElem != null) {
+				martiElem.detach();
+			}
 		}
 
 		return cot;
@@ -13,6 +13,7 @@ import org.slf4j.LoggerFactory;
 import com.bbn.marti.remote.groups.Direction;
 import com.bbn.marti.remote.groups.FederateUser;
 import com.bbn.marti.remote.groups.Group;
+import com.bbn.marti.remote.groups.GroupBitmask;
 import com.bbn.marti.remote.groups.GroupManager;
 import com.bbn.marti.remote.groups.Node;
 import com.bbn.marti.remote.groups.Reachability;
@@ -96,6 +97,13 @@ public class CommonGroupDirectedReachability implements Reachability<User>, Seri
 			return false;
 		}
 
+		// the group manager keeps a compiled bitmask for each user, so there is nothing to compile here
+		GroupBitmask srcBitmask = groupManager.getGroupBitmask(src);
+
+		if (srcBitmask != null) {
+			return isReachable(srcBitmask, groups, dest);
+		}
+
 		return isReachable(groups, dest);
 	}
 
@@ -116,6 +124,57 @@ public class CommonGroupDirectedReachability implements Reachability<User>, Seri
 			return false;
 		}
 
+		// test each source IN group against the compiled OUT groups of the destination, rather than compiling the source groups per call
+		GroupBitmask destBitmask = groupManager.getGroupBitmask(dest);
+
+		if (destBitmask != null) {
+			boolean compiled = true;
+
+			for (Group group : groups) {
+				if (group.getDirection() != Direction.IN) {
+					continue;
+				}
+
+				Integer bitpos = group.getBitpos();
+
+				if (bitpos == null || bitpos < 0) {
+					compiled = false;
+					break;
+				}
+
+				if (destBitmask.hasOut(bitpos)) {
+					return true;
+				}
+			}
+
+			if (compiled) {
+				return false;
+			}
+		}
+
+		return isReachable(null, groups, dest);
+	}
+
+	/*
+	 * Reachability for a source group set that has already been compiled, so that a message can be compiled once and checked against
+	 * each subscriber. When both bitmasks are available this is a word-wise AND of the source IN groups and the destination OUT groups.
+	 * Otherwise (a group without an assigned bit position) falls back to the group set traversal.
+	 *
+	 */
+	public boolean isReachable(GroupBitmask srcBitmask, NavigableSet<Group> groups, User dest) {
+
+		if (srcBitmask != null && dest != null) {
+			GroupBitmask destBitmask = groupManager.getGroupBitmask(dest);
+
+			if (destBitmask != null) {
+				return srcBitmask.canReach(destBitmask);
+			}
+		}
+
+		if (groups == null || groups.isEmpty() || dest == null) {
+			return false;
+		}
+
 		for (Group inGroup : groups) {
 
 			// filter out groups that are not IN groups
@@ -11,6 +11,7 @@ import java.util.NavigableSet;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.function.Consumer;
 import java.util.stream.Collectors;
 
 import javax.naming.Context;
@@ -46,12 +47,14 @@ import com.bbn.marti.remote.groups.ConnectionType;
 import com.bbn.marti.remote.groups.Direction;
 import com.bbn.marti.remote.groups.FederateUser;
 import com.bbn.marti.remote.groups.Group;
+import com.bbn.marti.remote.groups.GroupBitmask;
 import com.bbn.marti.remote.groups.GroupManager;
 import com.bbn.marti.remote.groups.Reachability;
 import com.bbn.marti.remote.groups.User;
 import com.bbn.marti.remote.groups.UserClassification;
 import com.bbn.marti.remote.LdapUser;
 import com.bbn.marti.remote.util.RemoteUtil;
+import com.bbn.marti.service.SubscriptionMatchingIndex;
 import com.bbn.marti.util.MessagingDependencyInjectionProxy;
 import com.google.common.base.Strings;
 import com.google.common.collect.Sets;
@@ -150,6 +153,32 @@ public class DistributedPersistentGroupManager implements GroupManager, Service
         return new ConcurrentSkipListSet<>();
     }
 
+    @Override
+    public GroupBitmask getGroupBitmask(User user) {
+
+        if (user == null) {
+            return null;
+        }
+
+        return groupStore().getUserGroupBitmaskMap().get(user);
+    }
+
+    // apply a membership change to the group set of a user, and recompile the user's group bitmask
+    private void updateGroupBitmask(User user, NavigableSet<Group> userGroups, Consumer<NavigableSet<Group>> change) {
+
+        // change and compile inside compute() so that concurrent changes for the same user are applied and compiled in order. A null
+        // group set removes the entry.
+        groupStore().getUserGroupBitmaskMap().compute(user, (u, previous) -> {
+            if (userGroups == null) {
+                return null;
+            }
+
+            change.accept(userGroups);
+
+            return GroupBitmask.compile(userGroups);
+        });
+    }
+
     @Override
     public void addUser(User user) {
         if (user == null) {
@@ -221,6 +250,9 @@ public class DistributedPersistentGroupManager implements GroupManager, Service
 
         // remove user from user -> group map
         groupStore().getUserGroupMap().remove(user);
+        groupStore().getUserGroupBitmaskMap().remove(user);
+        
+        SubscriptionMatchingIndex.invalidateReceiver(user);
 
         if (logger.isDebugEnabled()) {
         	logger.debug("removal complete for " + user);
@@ -251,7 +283,9 @@ public class DistributedPersistentGroupManager implements GroupManager, Service
         NavigableSet<Group> userGroups = groupStore().getUserGroupMap().get(user);
         
         // add this group to the user group list for this user if not already present
-        userGroups.add(storedGroup);
+        updateGroupBitmask(user, userGroups, groups -> groups.add(storedGroup));
+        
+        SubscriptionMatchingIndex.invalidateReceiver(user);
         
         if (shouldCacheUser(user)) {
         	IgniteCacheHolder.getIgniteUserOutboundGroupCache().put(user.getConnectionId(), getOutboundGroupVector(user));
@@ -335,10 +369,11 @@ public class DistributedPersistentGroupManager implements GroupManager, Service
         	logger.trace("post-removal " + group + " members: " + group.getNeighbors());
         }
 
-        if (userGroups != null) {
-            // remove group from user -> group map
-            userGroups.remove(group);
-        }
+        // remove group from user -> group map
+        final Group storedGroup = group;
+        updateGroupBitmask(user, userGroups, groups -> groups.remove(storedGroup));
+        
+        SubscriptionMatchingIndex.invalidateReceiver(user);
         
         if (shouldCacheUser(user)) {
         	IgniteCacheHolder.getIgniteUserOutboundGroupCache().put(user.getConnectionId(), getOutboundGroupVector(user));
@@ -6,6 +6,7 @@ import java.util.concurrent.ConcurrentMap;
 import com.bbn.marti.remote.RemoteSubscription;
 import com.bbn.marti.remote.groups.Authenticator;
 import com.bbn.marti.remote.groups.Group;
+import com.bbn.marti.remote.groups.GroupBitmask;
 import com.bbn.marti.remote.groups.User;
 import com.bbn.marti.remote.groups.UserClassification;
 
@@ -18,6 +19,8 @@ public interface GroupStore {
 
 	ConcurrentMap<User, NavigableSet<Group>> getUserGroupMap();
 
+	ConcurrentMap<User, GroupBitmask> getUserGroupBitmaskMap();
+
 	ConcurrentMap<User, UserClassification> getUserClassificationMap();
 
 	ConcurrentMap<String, Group> getGroups();
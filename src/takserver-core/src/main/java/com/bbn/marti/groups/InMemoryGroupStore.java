@@ -13,6 +13,7 @@ import org.slf4j.LoggerFactory;
 import com.bbn.marti.remote.RemoteSubscription;
 import com.bbn.marti.remote.groups.Authenticator;
 import com.bbn.marti.remote.groups.Group;
+import com.bbn.marti.remote.groups.GroupBitmask;
 import com.bbn.marti.remote.groups.User;
 import com.bbn.marti.remote.groups.UserClassification;
 
@@ -30,6 +31,9 @@ public class InMemoryGroupStore implements GroupStore, Serializable {
     // track groups by user
     protected final ConcurrentMap<User, NavigableSet<Group>> userGroupMap;
 
+    // compiled group membership by user, kept in sync with userGroupMap
+    protected final ConcurrentMap<User, GroupBitmask> userGroupBitmaskMap;
+
 	// track classification by user
 	protected final ConcurrentMap<User, UserClassification> userClassificationMap;
 
@@ -52,6 +56,7 @@ public class InMemoryGroupStore implements GroupStore, Serializable {
     	}
 
         userGroupMap = new ConcurrentHashMap<>();
+        userGroupBitmaskMap = new ConcurrentHashMap<>();
     	userClassificationMap = new ConcurrentHashMap<>();
         groups = new ConcurrentHashMap<>();
         connectionIdUserMap = new ConcurrentHashMap<>();
@@ -67,6 +72,11 @@ public class InMemoryGroupStore implements GroupStore, Serializable {
 		return userGroupMap;
 	}
 
+	@Override
+	public ConcurrentMap<User, GroupBitmask> getUserGroupBitmaskMap() {
+		return userGroupBitmaskMap;
+	}
+
 	@Override
 	public ConcurrentMap<User, UserClassification> getUserClassificationMap() {
     	return userClassificationMap;
@@ -15,6 +15,7 @@ import atakmap.commoncommo.protobuf.v1.Takmessage.TakMessage;
 import io.grpc.stub.StreamObserver;
 import io.netty.channel.ChannelHandlerContext;
 import tak.server.cot.CotEventContainer;
+import tak.server.cot.EncodingCache;
 import tak.server.ignite.IgniteHolder;
 import tak.server.proto.StreamingProtoBufHelper;
 
@@ -96,7 +97,7 @@ public class NioGrpcChannelHandler extends NioNettyTlsServerHandler {
     @Override
     protected void setWriter() {
         writer = (data) -> {
-        	stream.onNext(StreamingProtoBufHelper.cot2protoBuf(data));
+        	stream.onNext(data.getOrInstantiateEncoding(EncodingCache.Format.TAK_MESSAGE, () -> StreamingProtoBufHelper.cot2protoBuf(data)));
         };
     }
     
@@ -88,6 +88,7 @@ public class NioNettyFederationClientHandler extends NioNettyFederationServerHan
 							createAdaptedNettyHandler(connectionInfo);
 							((AbstractBroadcastingChannelHandler) channelHandler).withHandlerType("NettyFederationClient");
 							setReader();
+							setupFederationWriteBatcher();
 							new FederateSslPreAuthCodec(null, DummyAuthenticator.getInstance()).handleOnConnect(connectionInfo);
 							alreadyClosed.set(false);
 							federationManager().handleOnConnect(channelHandler, fedProto);
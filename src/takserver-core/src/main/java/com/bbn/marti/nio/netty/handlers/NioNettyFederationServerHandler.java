@@ -9,7 +9,9 @@ import java.util.concurrent.atomic.AtomicBoolean;
 import org.apache.log4j.Logger;
 
 import com.atakmap.Tak.FederatedEvent;
+import com.bbn.marti.config.Federation;
 import tak.server.federation.FederateSslPreAuthCodec;
+import tak.server.federation.FederationWriteBatcher;
 import com.bbn.marti.groups.DummyAuthenticator;
 import com.bbn.marti.nio.channel.ChannelHandler;
 import com.bbn.marti.nio.channel.base.AbstractBroadcastingChannelHandler;
@@ -17,6 +19,7 @@ import com.bbn.marti.nio.channel.connections.TcpChannelHandler;
 import com.bbn.marti.nio.protocol.Protocol;
 import com.bbn.marti.nio.protocol.base.AbstractBroadcastingProtocol;
 import com.bbn.marti.remote.groups.ConnectionInfo;
+import com.bbn.marti.remote.util.RemoteUtil;
 import com.bbn.marti.service.SubscriptionStore;
 import com.bbn.marti.util.MessageConversionUtil;
 import com.bbn.marti.util.concurrent.future.AsyncFuture;
@@ -41,6 +44,9 @@ public class NioNettyFederationServerHandler extends NioNettyHandlerBase {
 	private ByteBuffer leftovers = null;
 	private int nextSize = -1;
 
+	// flushes writes in batches, if the federation eventBatchSize is set
+	private FederationWriteBatcher federationWriteBatcher;
+
 	@Override
 	public void channelActive(ChannelHandlerContext ctx) {
 		ctx.pipeline()
@@ -58,6 +64,7 @@ public class NioNettyFederationServerHandler extends NioNettyHandlerBase {
 							createAdaptedNettyHandler(connectionInfo);
 							((AbstractBroadcastingChannelHandler) channelHandler).withHandlerType("NettyFederationServer");
 							setReader();
+							setupFederationWriteBatcher();
 							new FederateSslPreAuthCodec(null, DummyAuthenticator.getInstance()).handleOnConnect(connectionInfo);
 							alreadyClosed.set(false);
 							federationManager().handleOnConnect(channelHandler, fedProto);
@@ -122,7 +129,11 @@ public class NioNettyFederationServerHandler extends NioNettyHandlerBase {
 					((TcpChannelHandler) channelHandler).totalTcpBytesWritten.getAndAdd(binaryData.array().length);
 					((TcpChannelHandler) channelHandler).totalTcpNumberOfWrites.getAndIncrement();
 					connectionInfo.getProcessedCount().getAndIncrement();
-					nettyContext.writeAndFlush(binaryData.array());
+					if (federationWriteBatcher != null) {
+						federationWriteBatcher.write(binaryData.array());
+					} else {
+						nettyContext.writeAndFlush(binaryData.array());
+					}
 				}
 				return null;
 			}
@@ -130,6 +141,15 @@ public class NioNettyFederationServerHandler extends NioNettyHandlerBase {
 		};
 	}
 	
+	protected void setupFederationWriteBatcher() {
+		Federation federation = config().getRemoteConfiguration().getFederation();
+
+		if (federation.getEventBatchSize() > 0) {
+			String federateId = RemoteUtil.getInstance().getCertSHA256Fingerprint((X509Certificate) getCertFromSslChain(0));
+			federationWriteBatcher = new FederationWriteBatcher(nettyContext, federation.getEventBatchSize(), federation.getEventBatchMaxDelayMillis(), federateId, false);
+		}
+	}
+
 	protected void setReader() {
 		reader = (msg) -> {
 			ByteBuffer buffer = ByteBuffer.wrap(msg);
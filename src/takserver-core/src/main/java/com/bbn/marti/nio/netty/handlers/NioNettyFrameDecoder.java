@@ -0,0 +1,189 @@
+package com.bbn.marti.nio.netty.handlers;
+
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.function.BooleanSupplier;
+
+import org.apache.log4j.Logger;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.DefaultByteBufHolder;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.handler.codec.ByteToMessageDecoder;
+
+/*
+ *
+ * Frames TAK streaming input directly on the pooled read buffers, in place of ByteArrayDecoder. Each complete message is passed on
+ * as a retained slice of the cumulated input, so nothing is copied until the message is parsed.
+ *
+ * In protobuf mode a frame is the message following the magic byte and varint size. In XML mode a frame runs up to and including the
+ * next </event> - anything ahead of the <event> start tag is left for the handler to skip, as StreamingCotProtocol does. The mode is
+ * checked for each frame, so that a connection can switch to protobuf after protocol negotiation, and passed on with the frame, so
+ * that the handler parses it the way it was framed.
+ *
+ * XML messages over MAX_FRAME_SIZE are discarded, as in StreamingCotProtocol. TAK protocol messages are not limited unless a
+ * maximum size is given (network maxProtobufFrameSize), in which case a larger message closes the connection.
+ *
+ * Handlers receive Frame messages, and are responsible for releasing them (see NioNettyHandlerBase.channelRead).
+ *
+ */
+public class NioNettyFrameDecoder extends ByteToMessageDecoder {
+
+	private final static Logger log = Logger.getLogger(NioNettyFrameDecoder.class);
+
+	public final static byte MAGIC = (byte) 0xbf;
+
+	// same limit as StreamingCotProtocol, for XML messages
+	public final static int MAX_FRAME_SIZE = 8388608;
+
+	private final static byte[] END_OF_COT_MSG = "</event>".getBytes(StandardCharsets.UTF_8);
+
+	private final BooleanSupplier protobuf;
+
+	// largest TAK protocol message accepted before the connection is closed, or 0 for no limit
+	private final int maxProtobufFrameSize;
+
+	// offset from the reader index at which to resume searching for the end of an XML message
+	private int xmlSearchOffset = 0;
+
+	public NioNettyFrameDecoder(BooleanSupplier protobuf) {
+		this(protobuf, 0);
+	}
+
+	public NioNettyFrameDecoder(BooleanSupplier protobuf, int maxProtobufFrameSize) {
+		this.protobuf = protobuf;
+		this.maxProtobufFrameSize = maxProtobufFrameSize;
+	}
+
+	@Override
+	protected void decode(ChannelHandlerContext ctx, ByteBuf in, List<Object> out) throws Exception {
+		if (protobuf.getAsBoolean()) {
+			decodeProtoBuf(ctx, in, out);
+		} else {
+			decodeXml(in, out);
+		}
+	}
+
+	private void decodeProtoBuf(ChannelHandlerContext ctx, ByteBuf in, List<Object> out) {
+
+		xmlSearchOffset = 0;
+
+		int start = in.readerIndex();
+		int end = in.writerIndex();
+
+		if (start == end) {
+			return;
+		}
+
+		// size is preceded by the magic byte
+		if (in.getByte(start) != MAGIC) {
+			log.error("Failed to find magic byte, instead found " + in.getByte(start));
+
+			// skip to the next magic byte, if any
+			int next = in.indexOf(start, end, MAGIC);
+			in.readerIndex(next < 0 ? end : next);
+			return;
+		}
+
+		int size = 0;
+		int shift = 0;
+		int index = start + 1;
+
+		while (true) {
+			if (index == end) {
+				// haven't got the whole size yet
+				return;
+			}
+
+			byte b = in.getByte(index++);
+
+			size |= (b & 0x7F) << shift;
+
+			if ((b & 0x80) == 0) {
+				break;
+			}
+
+			shift += 7;
+
+			if (shift > 28) {
+				size = -1;
+				break;
+			}
+		}
+
+		if (size < 0 || (maxProtobufFrameSize > 0 && size > maxProtobufFrameSize)) {
+			log.error("TAK protocol message with invalid size: " + size + ", closing connection");
+			in.skipBytes(in.readableBytes());
+			ctx.close();
+			return;
+		}
+
+		if (end - index < size) {
+			// haven't got enough for a message
+			return;
+		}
+
+		in.readerIndex(index);
+		out.add(new Frame(in.readRetainedSlice(size), true));
+	}
+
+	private void decodeXml(ByteBuf in, List<Object> out) {
+
+		int start = in.readerIndex();
+		int end = in.writerIndex();
+
+		int from = start + xmlSearchOffset;
+
+		while (from < end) {
+			int candidate = in.indexOf(from, end, END_OF_COT_MSG[0]);
+
+			if (candidate < 0 || end - candidate < END_OF_COT_MSG.length) {
+				// note: an end tag spanning reads is found from here next time
+				from = candidate < 0 ? end : candidate;
+				break;
+			}
+
+			if (matchesEndTag(in, candidate)) {
+				xmlSearchOffset = 0;
+				out.add(new Frame(in.readRetainedSlice(candidate + END_OF_COT_MSG.length - start), false));
+				return;
+			}
+
+			from = candidate + 1;
+		}
+
+		if (end - start > MAX_FRAME_SIZE) {
+			// too long to be a message, even if we could parse it -- chuck out
+			in.skipBytes(in.readableBytes());
+			xmlSearchOffset = 0;
+			return;
+		}
+
+		xmlSearchOffset = from - start;
+	}
+
+	// a complete message, and whether it was framed as a TAK protocol message
+	public static final class Frame extends DefaultByteBufHolder {
+
+		private final boolean protobuf;
+
+		Frame(ByteBuf content, boolean protobuf) {
+			super(content);
+			this.protobuf = protobuf;
+		}
+
+		public boolean isProtobuf() {
+			return protobuf;
+		}
+	}
+
+	private static boolean matchesEndTag(ByteBuf in, int index) {
+		for (int i = 1; i < END_OF_COT_MSG.length; i++) {
+			if (in.getByte(index + i) != END_OF_COT_MSG[i]) {
+				return false;
+			}
+		}
+
+		return true;
+	}
+}
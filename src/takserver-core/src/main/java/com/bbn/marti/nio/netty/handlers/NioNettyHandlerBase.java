@@ -23,6 +23,7 @@ import javax.net.ssl.SSLPeerUnverifiedException;
 import com.google.common.base.Strings;
 
 import io.micrometer.core.instrument.Metrics;
+import io.netty.buffer.ByteBufUtil;
 import io.netty.channel.ChannelHandlerContext;
 import io.netty.channel.SimpleChannelInboundHandler;
 import io.netty.handler.ssl.SslHandler;
@@ -83,6 +84,7 @@ public abstract class NioNettyHandlerBase extends SimpleChannelInboundHandler<by
 	protected InetSocketAddress remoteSocketAddress;
 	protected InetSocketAddress localSocketAddress;
 	protected Reader reader;
+	protected FrameReader frameReader;
 	protected Writer writer;
 	protected Negotiator negotiator;
 	protected ChannelHandlerContext nettyContext;
@@ -93,6 +95,7 @@ public abstract class NioNettyHandlerBase extends SimpleChannelInboundHandler<by
 	protected AtomicLong lastMessageCountResetTime = new AtomicLong(System.currentTimeMillis());
 	protected AtomicBoolean isInstantFlush = new AtomicBoolean(true);
 	protected ScheduledFuture<?> flushFuture;
+	protected NioNettyWriteBatcher writeBatcher;
 
 
 	public NioNettyHandlerBase()  {
@@ -138,6 +141,12 @@ public abstract class NioNettyHandlerBase extends SimpleChannelInboundHandler<by
 		void read(byte[] msg);
 	}
 
+	// reads a complete message framed by NioNettyFrameDecoder. Takes ownership of the frame, and must release it.
+	@FunctionalInterface
+	protected interface FrameReader {
+		void read(NioNettyFrameDecoder.Frame frame);
+	}
+
 	@FunctionalInterface
 	protected interface Writer {
 		void write(CotEventContainer data);
@@ -162,13 +171,55 @@ public abstract class NioNettyHandlerBase extends SimpleChannelInboundHandler<by
 		return groupManagerRef.get();
 	}
 
+	public boolean isProtobufSupported() {
+		return protobufSupported.get();
+	}
+
+	@Override
+	public void channelRead(ChannelHandlerContext ctx, Object msg) throws Exception {
+
+		if (!(msg instanceof NioNettyFrameDecoder.Frame)) {
+			super.channelRead(ctx, msg);
+			return;
+		}
+
+		NioNettyFrameDecoder.Frame frame = (NioNettyFrameDecoder.Frame) msg;
+
+		if (frameReader != null) {
+			try {
+				countRead(frame.content().readableBytes());
+			} catch (RuntimeException e) {
+				frame.release();
+				throw e;
+			}
+
+			frameReader.read(frame);
+			return;
+		}
+
+		// no frame reader for this handler - read it as ByteArrayDecoder would have passed it on
+		try {
+			channelRead0(ctx, ByteBufUtil.getBytes(frame.content()));
+		} finally {
+			frame.release();
+		}
+	}
+
 	@Override
 	protected void channelRead0(ChannelHandlerContext ctx, byte[] msg) throws Exception {
 
-		AbstractBroadcastingChannelHandler.totalBytesRead.getAndAdd(msg.length);
+		countRead(msg.length);
+
+		reader.read(msg);
+
+	}
+
+	private void countRead(int length) {
+
+		AbstractBroadcastingChannelHandler.totalBytesRead.getAndAdd(length);
 		AbstractBroadcastingChannelHandler.totalNumberOfReads.getAndIncrement();
 
-		((TcpChannelHandler) channelHandler).totalTcpBytesRead.getAndAdd(msg.length);
+		((TcpChannelHandler) channelHandler).totalTcpBytesRead.getAndAdd(length);
 		((TcpChannelHandler) channelHandler).totalTcpNumberOfReads.getAndIncrement();
 
 		try {
@@ -181,8 +232,6 @@ public abstract class NioNettyHandlerBase extends SimpleChannelInboundHandler<by
 		}
 
 		connectionInfo.getReadCount().getAndIncrement();
-		reader.read(msg);
-
 	}
 
 	@Override
@@ -440,7 +489,12 @@ public abstract class NioNettyHandlerBase extends SimpleChannelInboundHandler<by
 						.removeProtocolListener(negotiationListener);
 				CotEventContainer response = StreamingProtoBufOrCoTProtocol.buildProtocolResponse(supported,
 						negotiationUuid);
-				nettyContext.writeAndFlush(response.getOrInstantiateEncoding());
+				// keep the response in order behind anything already batched for this connection
+				if (writeBatcher != null) {
+					writeBatcher.enqueue(response.getOrInstantiateEncoding());
+				} else {
+					nettyContext.writeAndFlush(response.getOrInstantiateEncoding());
+				}
 				protobufSupported.set(supported);
 			} catch (Exception e) {
 				log.error("exception in processProtocolRequest! ", e);
@@ -554,7 +608,22 @@ public abstract class NioNettyHandlerBase extends SimpleChannelInboundHandler<by
 		return protocol;
 	}
 
+	/*
+	 * Whether writes to this connection go through a NioNettyWriteBatcher, rather than being flushed instantly or by the
+	 * periodic flush task.
+	 */
+	protected boolean useWriteBatcher() {
+		return false;
+	}
+
 	protected void setupFlushHandler() {
+		if (useWriteBatcher()) {
+			com.bbn.marti.config.Queue queueConfig = config().getRemoteConfiguration().getBuffer().getQueue();
+			writeBatcher = new NioNettyWriteBatcher(nettyContext, queueConfig.getOutboundBatchBytes(),
+					queueConfig.getOutboundBatchMaxDelayMillis(), NioNettyBuilder.highMark);
+			return;
+		}
+
 		flushFuture = Resources.flushPool.scheduleAtFixedRate(() -> {
 			// connection closed - cancel scheduler
 			if (!nettyContext.channel().isOpen()) {
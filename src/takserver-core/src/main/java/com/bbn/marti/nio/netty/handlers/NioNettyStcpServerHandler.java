@@ -24,6 +24,7 @@ import com.google.common.base.Charsets;
 
 import io.netty.channel.ChannelHandlerContext;
 import io.netty.channel.socket.SocketChannel;
+import tak.server.cot.CotEventContainer;
 import tak.server.ignite.IgniteHolder;
 
 /*
@@ -97,17 +98,44 @@ public class NioNettyStcpServerHandler extends NioNettyHandlerBase {
 			
 			StreamingCotProtocol
 				.add(builder, Charsets.UTF_8.decode(msgBuf), cotParser(), channelHandler)
-				.forEach(c -> {
-					if (isNotDOSLimited(c)  && isNotReadLimited(c)) {
-						if (isDataFeedInput()) {
-							DataFeedFilter.getInstance().filter(c, (DataFeed) input);
-						}
- 						protocolListeners.forEach(listener -> listener.onDataReceived(c, channelHandler, protocol));
-					}
-				});
+				.forEach(c -> submitCot(c));
+		};
+
+		// complete messages from NioNettyFrameDecoder, parsed straight from the pooled buffer
+		frameReader = (frame) -> {
+			try {
+				if (authCodec != null) {
+					// only used with auth codecs that pass the data through as is
+					ByteBuffer msgBuf = authCodec.decode(frame.content().nioBuffer());
+
+					if (msgBuf == null || msgBuf.remaining() == 0) return;
+				}
+
+				CotEventContainer c = StreamingCotProtocol.convertFrameToCot(frame.content(), cotParser());
+
+				if (c != null) {
+					submitCot(c);
+				}
+			} finally {
+				frame.release();
+			}
 		};
 	}
 
+	private void submitCot(CotEventContainer c) {
+		if (isNotDOSLimited(c)  && isNotReadLimited(c)) {
+			if (isDataFeedInput()) {
+				DataFeedFilter.getInstance().filter(c, (DataFeed) input);
+			}
+			protocolListeners.forEach(listener -> listener.onDataReceived(c, channelHandler, protocol));
+		}
+	}
+
+	@Override
+	protected boolean useWriteBatcher() {
+		return config().getRemoteConfiguration().getBuffer().getQueue().isOutboundBatching();
+	}
+
 	protected void setWriter() {
 		writer = (data) -> {
 			if (nettyContext.channel().isWritable()) {
@@ -115,8 +143,13 @@ public class NioNettyStcpServerHandler extends NioNettyHandlerBase {
 				
 				currentMessageCount.getAndIncrement();
 				
+				if (writeBatcher != null) {
+					if (!writeBatcher.write(bytesToWrite)) {
+						// do not broker - too much already pending for this client
+						return;
+					}
 				// flush if instant flush is set or if queued bytes > flushThreshold
-				if (isInstantFlush.get() || (NioNettyBuilder.highMark - nettyContext.channel().bytesBeforeUnwritable()) > NioNettyBuilder.flushThreshold) {
+				} else if (isInstantFlush.get() || (NioNettyBuilder.highMark - nettyContext.channel().bytesBeforeUnwritable()) > NioNettyBuilder.flushThreshold) {
 					nettyContext.writeAndFlush(bytesToWrite);
 				} else {
 					nettyContext.write(bytesToWrite);
@@ -86,7 +86,7 @@ public class NioNettyStcpStaticSubHandler extends NioNettyHandlerBase {
 						
 						Metrics.counter(Constants.METRIC_MESSAGE_PRECONVERT_COUNT, "takserver", "messaging").increment();
 					} else {
-						bytesToWrite = StreamingProtoBufProtocol.convertCotToProtoBufBytes(data).array();
+						bytesToWrite = StreamingProtoBufProtocol.getOrConvertCotToProtoBufBytes(data).array();
 					}
 				}
 				
@@ -32,7 +32,7 @@ public class NioNettyTcpStaticSubConnectionHandler extends NioNettyHandlerBase {
 		if (!protobufSupported.get()) {
 			bytesToWrite = cot.getOrInstantiateEncoding();
 		} else {
-			bytesToWrite = StreamingProtoBufProtocol.convertCotToProtoBufBytes(cot).array();
+			bytesToWrite = StreamingProtoBufProtocol.getOrConvertCotToProtoBufBytes(cot).array();
 		}
 					
 		Metrics.counter(Constants.METRIC_MESSAGE_WRITE_COUNT, "takserver", "messaging").increment();
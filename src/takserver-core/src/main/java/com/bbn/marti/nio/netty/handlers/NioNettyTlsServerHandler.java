@@ -36,10 +36,10 @@ import com.bbn.marti.service.TransportCotEvent;
 import com.bbn.marti.util.MessageConversionUtil;
 import com.google.common.base.Charsets;
 
-import atakmap.commoncommo.protobuf.v1.Takmessage.TakMessage;
 import io.micrometer.core.instrument.Counter;
 import io.micrometer.core.instrument.Metrics;
 import io.micrometer.core.instrument.Timer;
+import io.netty.buffer.ByteBuf;
 import io.netty.channel.Channel;
 import io.netty.channel.ChannelHandlerContext;
 import io.netty.channel.socket.SocketChannel;
@@ -49,7 +49,6 @@ import io.netty.util.concurrent.GenericFutureListener;
 import tak.server.Constants;
 import tak.server.cot.CotEventContainer;
 import tak.server.ignite.IgniteHolder;
-import tak.server.proto.StreamingProtoBufHelper;
 
 /*
  */
@@ -94,7 +93,11 @@ public class NioNettyTlsServerHandler extends NioNettyHandlerBase {
 		// init metrics
 		preconvertCounter = Metrics.counter(Constants.METRIC_MESSAGE_PRECONVERT_COUNT, "takserver", "messaging");
 		writeCounter = Metrics.counter(Constants.METRIC_MESSAGE_WRITE_COUNT, "takserver", "messaging");
-		writeLatencyTimer = Metrics.timer(Constants.METRIC_MESSAGE_WRITE_LATENCY, "takserver", "messaging");
+		// publish the tail, to compare brokering modes (see pipelinedBrokering) under load
+		writeLatencyTimer = Timer.builder(Constants.METRIC_MESSAGE_WRITE_LATENCY)
+				.tags("takserver", "messaging")
+				.publishPercentiles(0.5, 0.99)
+				.register(Metrics.globalRegistry);
 		watermarkSkipCounter = Metrics.counter(Constants.METRIC_MESSAGE_WATERMARK_SKIP_COUNT, "takserver", "messaging");
 		readCounter = Metrics.counter(Constants.METRIC_MESSAGE_READ_COUNT, "takserver", "messaging");
 		queueFullCounter = Metrics.counter(Constants.METRIC_MESSAGE_QUEUE_FULL_SKIP);
@@ -220,8 +223,46 @@ public class NioNettyTlsServerHandler extends NioNettyHandlerBase {
 				}
 			}
 		};
+
+		// complete messages from NioNettyFrameDecoder, parsed straight from the pooled buffer
+		frameReader = (frame) -> {
+			try {
+				readParseProcessor.get().execute(() -> {
+					try {
+						readCounter.increment();
+
+						// only used with auth codecs that pass the data through as is
+						ByteBuffer msgBuf = authCodec.decode(frame.content().nioBuffer());
+
+						if (msgBuf == null || msgBuf.remaining() == 0) {
+							return;
+						}
+
+						// parse the frame as it was framed, which may differ from the current mode while it switches
+						if (frame.isProtobuf()) {
+							convertAndSubmitProtoBufFrameAsCot(frame.content());
+						} else {
+							convertAndSubmitXmlFrameAsCot(frame.content());
+						}
+					} finally {
+						frame.release();
+					}
+				});
+			}  catch (Exception e) {
+				frame.release();
+
+				if (log.isDebugEnabled()) {
+					log.debug("error on read convert and submit ", e);
+				}
+			}
+		};
 	}
 	
+	@Override
+	protected boolean useWriteBatcher() {
+		return config().getRemoteConfiguration().getBuffer().getQueue().isOutboundBatching();
+	}
+
 	protected void setWriter() {
 		writer = (data) -> {
 			try {
@@ -238,7 +279,7 @@ public class NioNettyTlsServerHandler extends NioNettyHandlerBase {
 							preconvertCounter.increment();
 
 						} else {
-							bytesToWrite = StreamingProtoBufProtocol.convertCotToProtoBufBytes(data).array();							
+							bytesToWrite = StreamingProtoBufProtocol.getOrConvertCotToProtoBufBytes(data).array();							
 						}
 					}
 					
@@ -257,8 +298,14 @@ public class NioNettyTlsServerHandler extends NioNettyHandlerBase {
 						}
 					}
 					
+					if (writeBatcher != null) {
+						if (!writeBatcher.write(bytesToWrite)) {
+							// do not broker - too much already pending for this client
+							watermarkSkipCounter.increment();
+							return;
+						}
 					// flush if instant flush is set or if queued bytes > flushThreshold
-					if (isInstantFlush.get() || (NioNettyBuilder.highMark - nettyContext.channel().bytesBeforeUnwritable()) > NioNettyBuilder.flushThreshold) {
+					} else if (isInstantFlush.get() || (NioNettyBuilder.highMark - nettyContext.channel().bytesBeforeUnwritable()) > NioNettyBuilder.flushThreshold) {
 						nettyContext.writeAndFlush(bytesToWrite);
 					} else {
 						nettyContext.write(bytesToWrite);
@@ -308,24 +355,23 @@ public class NioNettyTlsServerHandler extends NioNettyHandlerBase {
 
 		try {
 			
-			StreamingCotProtocol.add(builder, Charsets.UTF_8.decode(msg), cotParser(), channelHandler).forEach(c -> {
-				if (isNotDOSLimited(c) && isNotReadLimited(c)) {
-					if (isDataFeedInput()) {
-						DataFeedFilter.getInstance().filter(c, (DataFeed) input);
-					}
+			StreamingCotProtocol.add(builder, Charsets.UTF_8.decode(msg), cotParser(), channelHandler).forEach(c -> submitCot(c));
+		} catch (Exception e) {
+			if (log.isWarnEnabled()) {
+				log.warn("Exception receiving message", e);
+			}
+		}
+	}
 
-					protocolListeners.forEach(listener -> {
-						try {
-							listener.onDataReceived(c, channelHandler, protocol);
-						} catch (RejectedExecutionException ree) {
-							// count how often full queue has blocked message send
+	protected void convertAndSubmitXmlFrameAsCot(ByteBuf frame) {
 
-							queueFullCounter.increment();
+		try {
 
-						}
-					});
-				}
-			});
+			CotEventContainer c = StreamingCotProtocol.convertFrameToCot(frame, cotParser());
+
+			if (c != null) {
+				submitCot(c);
+			}
 		} catch (Exception e) {
 			if (log.isWarnEnabled()) {
 				log.warn("Exception receiving message", e);
@@ -333,6 +379,25 @@ public class NioNettyTlsServerHandler extends NioNettyHandlerBase {
 		}
 	}
 
+	private void submitCot(CotEventContainer c) {
+		if (isNotDOSLimited(c) && isNotReadLimited(c)) {
+			if (isDataFeedInput()) {
+				DataFeedFilter.getInstance().filter(c, (DataFeed) input);
+			}
+
+			protocolListeners.forEach(listener -> {
+				try {
+					listener.onDataReceived(c, channelHandler, protocol);
+				} catch (RejectedExecutionException ree) {
+					// count how often full queue has blocked message send
+
+					queueFullCounter.increment();
+
+				}
+			});
+		}
+	}
+
 	protected void convertAndSubmitProtoBufBytesAsCot(byte[] msg) {
 		convertAndSubmitProtoBufBytesAsCot(ByteBuffer.wrap(msg));
 	}
@@ -393,19 +458,7 @@ public class NioNettyTlsServerHandler extends NioNettyHandlerBase {
 				fullBuf.get(eventBytes);
 
 				// parse and broadcast the message
-				TakMessage takMessage = TakMessage.parseFrom(eventBytes);
-				CotEventContainer cotEventContainer = StreamingProtoBufHelper.proto2cot(takMessage);
-				
-				if (isNotDOSLimited(cotEventContainer)  && isNotReadLimited(cotEventContainer)) {
-					
-					if (isDataFeedInput()) {
-						DataFeedFilter.getInstance().filter(cotEventContainer, (DataFeed) input);
-					}
-					
-					for (ProtocolListener<CotEventContainer> listener :  protocolListeners) {
-						listener.onDataReceived(cotEventContainer, channelHandler, protocol);
-					}
-				}
+				submitProtoBufCot(StreamingProtoBufProtocol.convertProtoBufBytesToCot(eventBytes));
 				
 				// reset parser state
 				nextSize = 0;
@@ -420,6 +473,28 @@ public class NioNettyTlsServerHandler extends NioNettyHandlerBase {
 		}
 	}
 
+	protected void convertAndSubmitProtoBufFrameAsCot(ByteBuf frame) {
+		try {
+			submitProtoBufCot(StreamingProtoBufProtocol.convertProtoBufFrameToCot(frame));
+		} catch (Exception e) {
+			log.error("Exception in convertAndSubmitProtoBufFrameAsCot!", e);
+			channelHandler.forceClose();
+		}
+	}
+
+	private void submitProtoBufCot(CotEventContainer cotEventContainer) {
+		if (isNotDOSLimited(cotEventContainer)  && isNotReadLimited(cotEventContainer)) {
+			
+			if (isDataFeedInput()) {
+				DataFeedFilter.getInstance().filter(cotEventContainer, (DataFeed) input);
+			}
+			
+			for (ProtocolListener<CotEventContainer> listener :  protocolListeners) {
+				listener.onDataReceived(cotEventContainer, channelHandler, protocol);
+			}
+		}
+	}
+
 	private boolean readSize(ByteBuffer buffer) {
 		while (buffer.remaining() > 0) {
 			byte b = buffer.get();
@@ -0,0 +1,141 @@
+package com.bbn.marti.nio.netty.handlers;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.log4j.Logger;
+
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Metrics;
+import io.netty.buffer.CompositeByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.ChannelHandlerContext;
+import tak.server.Constants;
+
+/*
+ *
+ * Outbound batching for a single connection. Messages written from any thread are queued, and drained on the channel's event loop
+ * into composite buffers, which are written and flushed together - one write and flush per batch rather than per message, and no
+ * periodic flush task per connection.
+ *
+ * A drain is scheduled when the first message is queued. It runs after maxDelayMillis, or as soon as the event loop gets to it if
+ * maxDelayMillis is 0, or right away once batchBytes are pending. Messages queued while a drain is pending join its batch, so batches
+ * grow with load.
+ *
+ * Messages are not accepted while the channel is not writable, or while more than maxPendingBytes are queued, so that a slow reader
+ * can't build up an unbounded backlog.
+ *
+ */
+public class NioNettyWriteBatcher {
+
+	private final static Logger log = Logger.getLogger(NioNettyWriteBatcher.class);
+
+	// most messages in one composite buffer
+	private final static int MAX_BATCH_COMPONENTS = 1024;
+
+	private final static int IDLE = 0;
+	private final static int DRAIN_DELAYED = 1;
+	private final static int DRAIN_NOW = 2;
+
+	private final static DistributionSummary batchSizeSummary = Metrics.summary(Constants.METRIC_MESSAGE_WRITE_BATCH_SIZE, "takserver", "messaging");
+
+	private final ChannelHandlerContext ctx;
+	private final int batchBytes;
+	private final long maxDelayMillis;
+	private final int maxPendingBytes;
+
+	private final Queue<byte[]> pending = new ConcurrentLinkedQueue<>();
+	private final AtomicInteger pendingBytes = new AtomicInteger();
+	private final AtomicInteger drainState = new AtomicInteger(IDLE);
+
+	public NioNettyWriteBatcher(ChannelHandlerContext ctx, int batchBytes, long maxDelayMillis, int maxPendingBytes) {
+		this.ctx = ctx;
+		this.batchBytes = Math.max(1, batchBytes);
+		this.maxDelayMillis = maxDelayMillis;
+		this.maxPendingBytes = maxPendingBytes;
+	}
+
+	/*
+	 * Queue a message. Returns false, without queueing it, if the channel can't take any more right now.
+	 */
+	public boolean write(byte[] bytes) {
+		if (!ctx.channel().isWritable() || pendingBytes.get() > maxPendingBytes) {
+			return false;
+		}
+
+		enqueue(bytes);
+
+		return true;
+	}
+
+	/*
+	 * Queue a message regardless of back-pressure, such as a protocol negotiation response that has to be sent after anything
+	 * already queued.
+	 */
+	public void enqueue(byte[] bytes) {
+		pending.add(bytes);
+
+		int total = pendingBytes.addAndGet(bytes.length);
+
+		if (total >= batchBytes || maxDelayMillis <= 0) {
+			if (drainState.getAndSet(DRAIN_NOW) != DRAIN_NOW) {
+				ctx.executor().execute(this::drain);
+			}
+		} else if (drainState.compareAndSet(IDLE, DRAIN_DELAYED)) {
+			ctx.executor().schedule(this::drain, maxDelayMillis, TimeUnit.MILLISECONDS);
+		}
+	}
+
+	public int getPendingBytes() {
+		return pendingBytes.get();
+	}
+
+	// runs on the event loop
+	private void drain() {
+
+		// anything queued from here on schedules another drain
+		drainState.set(IDLE);
+
+		boolean wrote = false;
+
+		try {
+			while (true) {
+				CompositeByteBuf batch = null;
+				int batchSize = 0;
+				int count = 0;
+
+				byte[] next;
+				while (batchSize < batchBytes && count < MAX_BATCH_COMPONENTS && (next = pending.poll()) != null) {
+					if (batch == null) {
+						batch = ctx.alloc().compositeBuffer(MAX_BATCH_COMPONENTS);
+					}
+
+					batch.addComponent(true, Unpooled.wrappedBuffer(next));
+					batchSize += next.length;
+					count++;
+				}
+
+				if (batch == null) {
+					break;
+				}
+
+				pendingBytes.addAndGet(-batchSize);
+
+				batchSizeSummary.record(count);
+
+				ctx.write(batch, ctx.voidPromise());
+				wrote = true;
+			}
+		} catch (Exception e) {
+			if (log.isDebugEnabled()) {
+				log.debug("exception writing message batch", e);
+			}
+		} finally {
+			if (wrote) {
+				ctx.flush();
+			}
+		}
+	}
+}
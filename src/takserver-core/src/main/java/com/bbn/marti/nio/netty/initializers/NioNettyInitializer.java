@@ -13,6 +13,7 @@ import io.netty.incubator.codec.quic.QuicSslContext;
 import io.netty.incubator.codec.quic.QuicSslContextBuilder;
 import org.apache.log4j.Logger;
 
+import com.bbn.marti.config.AuthType;
 import com.bbn.marti.config.Federation.FederationOutgoing;
 import com.bbn.marti.config.Federation.FederationServer;
 import com.bbn.marti.config.Federation.FederationServer.V1Tls;
@@ -21,12 +22,14 @@ import com.bbn.marti.config.Input;
 import com.bbn.marti.config.Tls;
 import com.bbn.marti.nio.netty.handlers.NioNettyFederationClientHandler;
 import com.bbn.marti.nio.netty.handlers.NioNettyFederationServerHandler;
+import com.bbn.marti.nio.netty.handlers.NioNettyFrameDecoder;
 import com.bbn.marti.nio.netty.handlers.NioNettyStcpServerHandler;
 import com.bbn.marti.nio.netty.handlers.NioNettyStcpStaticSubHandler;
 import com.bbn.marti.nio.netty.handlers.NioNettyTcpServerHandler;
 import com.bbn.marti.nio.netty.handlers.NioNettyTcpStaticSubConnectionHandler;
 import com.bbn.marti.nio.netty.handlers.NioNettyTlsServerHandler;
 import com.bbn.marti.remote.ConnectionStatus;
+import com.bbn.marti.remote.config.CoreConfigFacade;
 import com.bbn.marti.remote.groups.User;
 import com.bbn.marti.service.SSLConfig;
 import com.google.common.base.Strings;
@@ -162,7 +165,7 @@ public abstract class NioNettyInitializer extends ChannelInitializer<SocketChann
 				@Override
 				protected void initChannel(SocketChannel channel) throws Exception {
 					channel.pipeline()
-							.addLast(new ByteArrayDecoder())
+							.addLast(useFrameDecoder(input) ? new NioNettyFrameDecoder(() -> false) : new ByteArrayDecoder())
 							.addLast(new ByteArrayEncoder())
 							.addLast(new NioNettyTcpServerHandler(input));
 				}
@@ -179,7 +182,7 @@ public abstract class NioNettyInitializer extends ChannelInitializer<SocketChann
 				@Override
 				protected void initChannel(SocketChannel channel) throws Exception {
 					channel.pipeline()
-							.addLast(new ByteArrayDecoder())
+							.addLast(useFrameDecoder(input) ? new NioNettyFrameDecoder(() -> false) : new ByteArrayDecoder())
 							.addLast(new ByteArrayEncoder())
 							.addLast(new NioNettyStcpServerHandler(input));
 				}
@@ -200,11 +203,14 @@ public abstract class NioNettyInitializer extends ChannelInitializer<SocketChann
 					sslHandler.engine()
 						.setEnabledProtocols(input.getCoreVersion2TlsVersions().split(","));
 
+					NioNettyTlsServerHandler handler = new NioNettyTlsServerHandler(input);
+
 					channel.pipeline()
 							.addLast("ssl", sslHandler)
-							.addLast(new ByteArrayDecoder())
+							.addLast(useFrameDecoder(input) ? new NioNettyFrameDecoder(handler::isProtobufSupported,
+									CoreConfigFacade.getInstance().getRemoteConfiguration().getNetwork().getMaxProtobufFrameSize()) : new ByteArrayDecoder())
 							.addLast(new ByteArrayEncoder())
-							.addLast(new NioNettyTlsServerHandler(input));
+							.addLast(handler);
 				}
 				
 				@Override
@@ -243,6 +249,15 @@ public abstract class NioNettyInitializer extends ChannelInitializer<SocketChann
 		return sslContext;
 	}
 
+	/*
+	 * Frame streaming input with NioNettyFrameDecoder, rather than passing each read on as a byte array. The auth codec sees framed
+	 * messages, so this is limited to the codecs that don't read anything from the stream themselves.
+	 */
+	private static boolean useFrameDecoder(Input input) {
+		return CoreConfigFacade.getInstance().getRemoteConfiguration().getNetwork().isUseFrameDecoder() &&
+				(input.getAuth() == AuthType.X_509 || input.getAuth() == AuthType.ANONYMOUS);
+	}
+
 	protected SslContext buildServerSslContext(Tls tls) {
 		try {
 			initTrust(tls);
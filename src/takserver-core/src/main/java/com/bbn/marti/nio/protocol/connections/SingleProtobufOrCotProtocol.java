@@ -17,7 +17,6 @@ import com.bbn.marti.nio.protocol.base.AbstractBroadcastingProtocol;
 import com.bbn.marti.util.Assertion;
 import com.bbn.marti.util.concurrent.future.AsyncFuture;
 
-import atakmap.commoncommo.protobuf.v1.Takmessage;
 import tak.server.cot.CotEventContainer;
 import tak.server.cot.CotParser;
 import tak.server.proto.StreamingProtoBufHelper;
@@ -122,8 +121,7 @@ public class SingleProtobufOrCotProtocol extends AbstractBroadcastingProtocol<Co
                 buffer.get(eventBytes);
 
                 // parse the protobuf
-                Takmessage.TakMessage takMessage = Takmessage.TakMessage.parseFrom(eventBytes);
-                cotEventContainer = StreamingProtoBufHelper.proto2cot(takMessage);
+                cotEventContainer = StreamingProtoBufProtocol.convertProtoBufBytesToCot(eventBytes);
 
             } else if (firstByte == 0x3C) {
 
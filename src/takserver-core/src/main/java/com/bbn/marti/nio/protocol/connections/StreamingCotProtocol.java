@@ -18,6 +18,7 @@ import com.bbn.marti.util.Assertion;
 import com.bbn.marti.util.concurrent.future.AsyncFuture;
 import com.google.common.base.Charsets;
 
+import io.netty.buffer.ByteBuf;
 import tak.server.cot.CotEventContainer;
 import tak.server.cot.CotParser;
 
@@ -267,6 +268,34 @@ public class StreamingCotProtocol extends AbstractBroadcastingProtocol<CotEventC
 		return results;
 	}
 
+	/**
+	 * Parse a complete message framed by NioNettyFrameDecoder, directly from the pooled buffer. Anything ahead of the first cot event
+	 * (such as <auth> messages sent to anonymous ports) is skipped, as in add.
+	 *
+	 * Returns null if the frame doesn't contain a message that can be parsed. The frame is not released.
+	 */
+	public static CotEventContainer convertFrameToCot(ByteBuf frame, CotParser parser) {
+
+		final String data = frame.toString(charset);
+
+		int openIndex = data.indexOf(START_OF_COT_MSG_STR);
+
+		if (openIndex < 0) {
+			if (log.isTraceEnabled()) {
+				log.trace("no cot event in frame: " + data);
+			}
+
+			return null;
+		}
+
+		try {
+			return new CotEventContainer(parser.parse(openIndex == 0 ? data : data.substring(openIndex)));
+		} catch (Exception e) {
+			log.warn("Error parsing cot message ", e);
+			return null;
+		}
+	}
+
 	/**
 	 * DO NOT put the channel handler in the string -- typically prints out its listener as
 	 * part of its toString method
@@ -1,13 +1,18 @@
 package com.bbn.marti.nio.protocol.connections;
 
 import java.io.ByteArrayInputStream;
+import java.io.IOException;
 import java.nio.Buffer;
 import java.nio.ByteBuffer;
+import java.util.Date;
 
 import com.google.protobuf.CodedOutputStream;
 import com.google.protobuf.GeneratedMessageV3;
+import com.google.protobuf.InvalidProtocolBufferException;
 
 import io.micrometer.core.instrument.Metrics;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufUtil;
 
 import org.dom4j.Document;
 import org.dom4j.io.SAXReader;
@@ -27,6 +32,7 @@ import com.bbn.marti.util.concurrent.future.AsyncFuture;
 import com.bbn.marti.remote.config.CoreConfigFacade;
 import tak.server.Constants;
 import tak.server.cot.CotEventContainer;
+import tak.server.cot.EncodingCache;
 import tak.server.proto.StreamingProtoBufHelper;
 
 public class StreamingProtoBufProtocol extends AbstractBroadcastingProtocol<CotEventContainer> {
@@ -143,8 +149,7 @@ public class StreamingProtoBufProtocol extends AbstractBroadcastingProtocol<CotE
                 fullBuf.get(eventBytes);
 
                 // parse and broadcast the message
-                TakMessage takMessage = TakMessage.parseFrom(eventBytes);
-                CotEventContainer cotEventContainer = StreamingProtoBufHelper.proto2cot(takMessage);
+                CotEventContainer cotEventContainer = convertProtoBufBytesToCot(eventBytes);
                 super.broadcastDataReceived(cotEventContainer, handler);
 
                 // reset parser state
@@ -214,7 +219,7 @@ public class StreamingProtoBufProtocol extends AbstractBroadcastingProtocol<CotE
             ByteBuffer buffer = data.getProtoBufBytes();
 
             if (buffer == null) {
-            	buffer = convertCotToProtoBufBytes(data);
+            	buffer = getOrConvertCotToProtoBufBytes(data);
             } else {
 				Metrics.counter(Constants.METRIC_MESSAGE_PRECONVERT_COUNT, "takserver", "messaging").increment();
             }
@@ -223,7 +228,8 @@ public class StreamingProtoBufProtocol extends AbstractBroadcastingProtocol<CotE
                 return null;
             };
 
-            return handler.write(buffer);
+            // the buffer is shared with the other subscribers
+            return handler.write(buffer.duplicate());
 
         } catch (Exception e) {
             log.error("Exception in write!", e);
@@ -256,9 +262,90 @@ public class StreamingProtoBufProtocol extends AbstractBroadcastingProtocol<CotE
         }
     }
 
+    /*
+     * Parse a TAK protocol message, without the magic byte and size. Unless disabled in the submission config, the resulting message
+     * stays protobuf backed - the XML document is only built if something needs it.
+     */
+    public static CotEventContainer convertProtoBufBytesToCot(byte[] takMessageBytes) throws InvalidProtocolBufferException {
+        TakMessage takMessage = TakMessage.parseFrom(takMessageBytes);
+
+        if (CoreConfigFacade.getInstance().getRemoteConfiguration().getSubmission().isProtobufBackedMessages()) {
+            return StreamingProtoBufHelper.proto2cot(takMessage, takMessageBytes);
+        }
+
+        return StreamingProtoBufHelper.proto2cot(takMessage);
+    }
+
+    /*
+     * Parse a TAK protocol message framed by NioNettyFrameDecoder, without the magic byte and size. The frame is not released.
+     */
+    public static CotEventContainer convertProtoBufFrameToCot(ByteBuf frame) throws InvalidProtocolBufferException {
+        if (CoreConfigFacade.getInstance().getRemoteConfiguration().getSubmission().isProtobufBackedMessages()) {
+            // the message keeps the bytes as received, to send on unmodified - so take the one copy out of the pooled buffer here
+            return convertProtoBufBytesToCot(ByteBufUtil.getBytes(frame));
+        }
+
+        return StreamingProtoBufHelper.proto2cot(TakMessage.parseFrom(frame.nioBuffer()));
+    }
+
+    /*
+     * Frame an unmodified protobuf backed message as it was received. The submission and creation times are appended as fields rather
+     * than re-serializing the message - the protobuf parser keeps the last value seen for a scalar field.
+     *
+     * Returns null if the message is too large to send as is.
+     */
+    private static ByteBuffer frameTakMessageBytes(byte[] takMessageBytes, CotEventContainer data, boolean sendLargeMessages) throws IOException {
+
+        Date submissionTime = data.getSubmissionTime();
+        long submissionMillis = submissionTime == null ? 0 : submissionTime.getTime();
+        long creationTime = data.getCreationTime();
+
+        int messageSize = takMessageBytes.length;
+        if (submissionMillis > 0) {
+            messageSize += CodedOutputStream.computeUInt64Size(TakMessage.SUBMISSIONTIME_FIELD_NUMBER, submissionMillis);
+        }
+        if (creationTime > 0) {
+            messageSize += CodedOutputStream.computeUInt64Size(TakMessage.CREATIONTIME_FIELD_NUMBER, creationTime);
+        }
+
+        if (!sendLargeMessages && messageSize > MAX_SIZE) {
+            return null;
+        }
+
+        int sizeOfSize = CodedOutputStream.computeUInt32SizeNoTag(messageSize);
+        ByteBuffer buffer = ByteBuffer.allocate(1 + sizeOfSize + messageSize);
+
+        CodedOutputStream codedOutputStream = CodedOutputStream.newInstance(buffer);
+        codedOutputStream.write(StreamingProtoBufHelper.MAGIC);
+        codedOutputStream.writeUInt32NoTag(messageSize);
+        codedOutputStream.writeRawBytes(takMessageBytes);
+        if (submissionMillis > 0) {
+            codedOutputStream.writeUInt64(TakMessage.SUBMISSIONTIME_FIELD_NUMBER, submissionMillis);
+        }
+        if (creationTime > 0) {
+            codedOutputStream.writeUInt64(TakMessage.CREATIONTIME_FIELD_NUMBER, creationTime);
+        }
+        ((Buffer) buffer).rewind();
+
+        Metrics.counter(Constants.METRIC_MESSAGE_PROTOBUF_PASSTHROUGH_COUNT, "takserver", "messaging").increment();
+
+        return buffer;
+    }
+
     public static ByteBuffer convertCotToProtoBufBytes(CotEventContainer data, boolean sendLargeMessages) {
         ByteBuffer buffer = null;
         try {
+            //
+            // protobuf backed and unmodified - send on the bytes that were received
+            //
+            byte[] takMessageBytes = data.getTakMessageBytes();
+            if (takMessageBytes != null) {
+                buffer = frameTakMessageBytes(takMessageBytes, data, sendLargeMessages);
+                if (buffer != null) {
+                    return buffer;
+                }
+            }
+
             //
             // Convert CotEventContainer to protobuf
             //
@@ -304,6 +391,27 @@ public class StreamingProtoBufProtocol extends AbstractBroadcastingProtocol<CotE
         return convertCotToProtoBufBytes(data, false);
     }
 
+    /*
+     * Framed TAK protocol encoding of the message, converted at most once per message however many subscribers it is written to.
+     * The buffer is shared, so callers must not modify it.
+     */
+    public static ByteBuffer getOrConvertCotToProtoBufBytes(CotEventContainer data) {
+        return data.getOrInstantiateEncoding(EncodingCache.Format.TAK_PROTO, () -> {
+            // the two encodings only differ for messages over the size limit, so a message under it is encoded once for both
+            ByteBuffer unlimited = getOrConvertCotToUnlimitedProtoBufBytes(data);
+            if (unlimited != null && unlimited.remaining() <= MAX_SIZE) {
+                return unlimited;
+            }
+
+            return convertCotToProtoBufBytes(data);
+        });
+    }
+
+    // as above, without the size limit on streaming messages
+    public static ByteBuffer getOrConvertCotToUnlimitedProtoBufBytes(CotEventContainer data) {
+        return data.getOrInstantiateEncoding(EncodingCache.Format.TAK_PROTO_UNLIMITED, () -> convertCotToProtoBufBytes(data, true));
+    }
+
     /**
      * Called when the handler has finished propagating
      * data coming from the network, signifies an EOS
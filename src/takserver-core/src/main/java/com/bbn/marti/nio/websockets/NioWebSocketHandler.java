@@ -15,18 +15,17 @@ import com.bbn.marti.config.Input;
 import com.bbn.marti.groups.GroupFederationUtil;
 import com.bbn.marti.nio.channel.base.AbstractBroadcastingChannelHandler;
 import com.bbn.marti.nio.netty.handlers.NioNettyTlsServerHandler;
+import com.bbn.marti.nio.protocol.connections.StreamingProtoBufProtocol;
 import com.bbn.marti.remote.groups.ConnectionInfo;
 import com.bbn.marti.remote.groups.Direction;
 import com.bbn.marti.remote.groups.Group;
 import com.bbn.marti.remote.groups.User;
 import com.bbn.marti.service.TransportCotEvent;
 
-import atakmap.commoncommo.protobuf.v1.Takmessage.TakMessage;
 import io.netty.channel.ChannelHandlerContext;
 import tak.server.Constants;
 import tak.server.cot.CotEventContainer;
 import tak.server.ignite.IgniteHolder;
-import tak.server.proto.StreamingProtoBufHelper;
 
 
 public class NioWebSocketHandler extends NioNettyTlsServerHandler {
@@ -167,8 +166,7 @@ public class NioWebSocketHandler extends NioNettyTlsServerHandler {
         				fullBuf.get(eventBytes);
 
         				// parse and broadcast the message
-        				TakMessage takMessage = TakMessage.parseFrom(eventBytes);
-        				CotEventContainer cotEventContainer = StreamingProtoBufHelper.proto2cot(takMessage);
+        				CotEventContainer cotEventContainer = StreamingProtoBufProtocol.convertProtoBufBytesToCot(eventBytes);
 
         				if (isNotDOSLimited(cotEventContainer) && isNotReadLimited(cotEventContainer))
         					protocolListeners.forEach(listener -> listener.onDataReceived(cotEventContainer, channelHandler, protocol));
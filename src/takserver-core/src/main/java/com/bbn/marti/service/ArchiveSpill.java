@@ -0,0 +1,286 @@
+package com.bbn.marti.service;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+import java.util.NavigableSet;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Predicate;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.bbn.marti.config.DataFeed;
+import com.bbn.marti.config.Repository;
+import com.bbn.marti.remote.groups.Direction;
+import com.bbn.marti.remote.groups.Group;
+import com.bbn.marti.remote.groups.GroupManager;
+import com.bbn.marti.remote.util.SpringContextBeanForApi;
+import com.bbn.marti.util.SpillLog;
+import com.google.common.base.Strings;
+import com.google.protobuf.InvalidProtocolBufferException;
+
+import atakmap.commoncommo.protobuf.v1.MessageOuterClass.Message;
+import io.micrometer.core.instrument.Metrics;
+import tak.server.Constants;
+import tak.server.cot.CotEventContainer;
+import tak.server.proto.StreamingProtoBufHelper;
+
+/*
+ *
+ * Messages that RepositoryService couldn't archive, held in a SpillLog until the database can take them.
+ *
+ * Each message is spilled as a TAK protocol Message, carrying the payload, group names and data feed, preceded by a byte of
+ * flags for the context that the Message doesn't carry. Replayed messages are archived as they would have been originally: with
+ * the same server time, groups and data feed.
+ *
+ */
+class ArchiveSpill {
+
+	private static final Logger log = LoggerFactory.getLogger(ArchiveSpill.class);
+
+	// context key marking a message replayed from the spill log
+	static final String REPLAYED_KEY = "repository.spill.replayed";
+
+	// context key the archiver sets on a replayed message once it has been archived, for a batch that it could only partly archive
+	static final String ARCHIVED_KEY = "repository.spill.archived";
+
+	// the time attribute holds the server time
+	private static final byte FLAG_SERVER_TIME = 1;
+
+	private final SpillLog spillLog;
+
+	private final int batchSize;
+
+	private final AtomicLong replayLag = new AtomicLong();
+
+	// records at the head of the spill log that were archived by a partly archived batch, by position from the head. Held in memory
+	// only, so they may be archived again after a restart.
+	private final BitSet archivedHead = new BitSet();
+
+	private GroupManager groupManager;
+
+	ArchiveSpill(Repository repository, int batchSize) throws IOException {
+		this(repository, batchSize, null);
+	}
+
+	// groupManager resolves the group names of replayed messages. If null, the GroupManager bean is used.
+	ArchiveSpill(Repository repository, int batchSize, GroupManager groupManager) throws IOException {
+
+		this.groupManager = groupManager;
+
+		Path directory = Paths.get(repository.getSpillDirectory());
+
+		spillLog = new SpillLog(directory, repository.getSpillSegmentMegabytes() * 1024 * 1024, repository.getSpillMaxMegabytes() * 1024L * 1024L);
+
+		this.batchSize = batchSize;
+
+		Metrics.gauge(Constants.METRIC_REPOSITORY_SPILL_SIZE, spillLog.getPendingRecords());
+		Metrics.gauge(Constants.METRIC_REPOSITORY_SPILL_BYTES, spillLog.getPendingBytes());
+		Metrics.gauge(Constants.METRIC_REPOSITORY_SPILL_REPLAY_LAG, replayLag);
+
+		updateReplayLag();
+	}
+
+	/*
+	 * Spill messages to disk. Returns false if any of them were dropped because the spill log is full.
+	 */
+	boolean spill(List<CotEventContainer> events) {
+
+		int dropped = 0;
+
+		for (CotEventContainer event : events) {
+			try {
+				if (!spillLog.append(encode(event))) {
+					dropped++;
+				}
+			} catch (Exception e) {
+				log.error("exception spilling message " + event, e);
+				dropped++;
+			}
+		}
+
+		Metrics.counter(Constants.METRIC_REPOSITORY_SPILL).increment(events.size() - dropped);
+
+		if (dropped > 0) {
+			Metrics.counter(Constants.METRIC_REPOSITORY_SPILL_DROP).increment(dropped);
+
+			if (log.isDebugEnabled()) {
+				log.debug("spill log full, dropped " + dropped + " messages");
+			}
+		}
+
+		updateReplayLag();
+
+		return dropped == 0;
+	}
+
+	/*
+	 * Archive up to maxMessages spilled messages, oldest first, in batches. A batch stays in the spill log unless archiver returns true
+	 * for it, in which case replay stops. The messages of a failed batch that the archiver marked with ARCHIVED_KEY are left out when
+	 * the batch is replayed again.
+	 */
+	int replay(int maxMessages, Predicate<List<CotEventContainer>> archiver) throws IOException {
+
+		int replayed = 0;
+
+		try {
+			while (replayed < maxMessages) {
+
+				SpillLog.Batch batch = spillLog.read(Math.min(batchSize, maxMessages - replayed));
+
+				if (batch.isEmpty()) {
+					break;
+				}
+
+				List<CotEventContainer> events = new ArrayList<>(batch.getRecords().size());
+				List<Integer> positions = new ArrayList<>(batch.getRecords().size());
+
+				for (int i = 0; i < batch.getRecords().size(); i++) {
+					if (archivedHead.get(i)) {
+						continue;
+					}
+
+					try {
+						events.add(decode(batch.getRecords().get(i).getPayload()));
+						positions.add(i);
+					} catch (Exception e) {
+						log.error("discarding spilled message that can't be decoded", e);
+					}
+				}
+
+				if (!events.isEmpty() && !archiver.test(events)) {
+					for (int i = 0; i < events.size(); i++) {
+						if (events.get(i).hasContextKey(ARCHIVED_KEY)) {
+							archivedHead.set(positions.get(i));
+						}
+					}
+					break;
+				}
+
+				spillLog.commit(batch);
+
+				archivedHead.clear();
+
+				replayed += batch.getRecords().size();
+			}
+		} finally {
+			updateReplayLag();
+		}
+
+		if (replayed > 0) {
+			Metrics.counter(Constants.METRIC_REPOSITORY_SPILL_REPLAY).increment(replayed);
+		}
+
+		return replayed;
+	}
+
+	void force() {
+		spillLog.force();
+	}
+
+	void close() throws IOException {
+		spillLog.close();
+	}
+
+	// number of spilled messages that haven't been archived
+	AtomicLong getSize() {
+		return spillLog.getPendingRecords();
+	}
+
+	// bytes of spill log holding messages that haven't been archived
+	AtomicLong getBytes() {
+		return spillLog.getPendingBytes();
+	}
+
+	// age of the oldest spilled message that hasn't been archived, in milliseconds
+	AtomicLong getReplayLag() {
+		updateReplayLag();
+		return replayLag;
+	}
+
+	private void updateReplayLag() {
+		long oldest = spillLog.getOldestPending();
+		replayLag.set(oldest == 0 ? 0 : Math.max(0, System.currentTimeMillis() - oldest));
+	}
+
+	private byte[] encode(CotEventContainer event) {
+
+		Message.Builder mb = Message.newBuilder();
+
+		mb.setPayload(StreamingProtoBufHelper.cot2protoBuf(event));
+
+		@SuppressWarnings("unchecked")
+		NavigableSet<Group> groups = (NavigableSet<Group>) event.getContextValue(Constants.GROUPS_KEY);
+		if (groups != null) {
+			groups.forEach((group) -> mb.addGroups(group.getName()));
+		}
+
+		Object dataFeed = event.getContextValue(Constants.DATA_FEED_KEY);
+		if (dataFeed instanceof DataFeed && ((DataFeed) dataFeed).getUuid() != null) {
+			mb.setFeedUuid(((DataFeed) dataFeed).getUuid());
+		}
+
+		mb.setArchive(true);
+
+		byte[] message = mb.build().toByteArray();
+
+		byte[] record = new byte[message.length + 1];
+		record[0] = event.hasServerTime() ? FLAG_SERVER_TIME : 0;
+		System.arraycopy(message, 0, record, 1, message.length);
+
+		return record;
+	}
+
+	private CotEventContainer decode(byte[] record) throws InvalidProtocolBufferException {
+
+		Message m = Message.parser().parseFrom(record, 1, record.length - 1);
+
+		CotEventContainer event = StreamingProtoBufHelper.proto2cot(m.getPayload());
+
+		if (event == null) {
+			throw new InvalidProtocolBufferException("invalid spilled TAK message");
+		}
+
+		if ((record[0] & FLAG_SERVER_TIME) != 0) {
+			event.setServerTime(event.getTime());
+		}
+
+		NavigableSet<Group> groups = new ConcurrentSkipListSet<>();
+
+		for (String groupName : m.getGroupsList()) {
+			Group group = groupManager().getGroup(groupName, Direction.IN);
+
+			if (group != null) {
+				groups.add(group);
+			}
+		}
+
+		event.setContext(Constants.GROUPS_KEY, groups);
+
+		// the data feed itself only matters to archiving for its uuid
+		if (!Strings.isNullOrEmpty(m.getFeedUuid())) {
+			DataFeed dataFeed = new DataFeed();
+			dataFeed.setUuid(m.getFeedUuid());
+			dataFeed.setArchive(true);
+
+			event.setContext(Constants.DATA_FEED_KEY, dataFeed);
+			event.setContext(Constants.DATA_FEED_UUID_KEY, m.getFeedUuid());
+		}
+
+		event.setContext(REPLAYED_KEY, true);
+
+		return event;
+	}
+
+	private GroupManager groupManager() {
+		if (groupManager == null) {
+			groupManager = SpringContextBeanForApi.getSpringContext().getBean(GroupManager.class);
+		}
+		return groupManager;
+	}
+}
@@ -0,0 +1,105 @@
+package com.bbn.marti.service;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/*
+ *
+ * Temporary files for moving mission archives, and their contents, between the retention service and this process a chunk at a
+ * time, so that neither side holds a whole archive in memory.
+ *
+ */
+class ArchiveTransfers {
+
+	private static final Logger logger = LoggerFactory.getLogger(ArchiveTransfers.class);
+
+	// transfers left behind by a retention service that stopped part way through
+	private static final long STALE_MILLIS = TimeUnit.DAYS.toMillis(1);
+
+	private Path directory;
+
+	String create() throws IOException {
+		String id = UUID.randomUUID().toString();
+		Files.createFile(path(id));
+
+		deleteStale();
+
+		return id;
+	}
+
+	OutputStream write(String id) throws IOException {
+		return Files.newOutputStream(path(id), StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+	}
+
+	void append(String id, byte[] chunk) throws IOException {
+		Files.write(path(id), chunk, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+	}
+
+	byte[] read(String id, long offset, int length) throws IOException {
+		try (FileChannel channel = FileChannel.open(path(id), StandardOpenOption.READ)) {
+
+			long remaining = channel.size() - offset;
+
+			ByteBuffer chunk = ByteBuffer.allocate((int) Math.max(0, Math.min(length, remaining)));
+
+			while (chunk.hasRemaining()) {
+				if (channel.read(chunk, offset + chunk.position()) < 0) {
+					break;
+				}
+			}
+
+			return chunk.array();
+		}
+	}
+
+	InputStream open(String id) throws IOException {
+		return Files.newInputStream(path(id));
+	}
+
+	void delete(String id) {
+		try {
+			Files.deleteIfExists(path(id));
+		} catch (Exception e) {
+			logger.warn("unable to delete mission archive transfer " + id, e);
+		}
+	}
+
+	private synchronized Path directory() throws IOException {
+		if (directory == null) {
+			directory = Files.createTempDirectory("mission-archive-transfers");
+		}
+
+		return directory;
+	}
+
+	private Path path(String id) throws IOException {
+		// only ever a file in the transfer directory
+		return directory().resolve(UUID.fromString(id).toString());
+	}
+
+	private void deleteStale() {
+		long cutoff = System.currentTimeMillis() - STALE_MILLIS;
+
+		try (DirectoryStream<Path> files = Files.newDirectoryStream(directory)) {
+			for (Path file : files) {
+				if (Files.getLastModifiedTime(file).toMillis() < cutoff) {
+					Files.deleteIfExists(file);
+				}
+			}
+		} catch (Exception e) {
+			logger.warn("unable to clean up mission archive transfers", e);
+		}
+	}
+}
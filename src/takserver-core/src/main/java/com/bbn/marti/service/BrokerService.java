@@ -2,7 +2,12 @@
 
 package com.bbn.marti.service;
 
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NavigableSet;
 import java.util.Set;
 import java.util.concurrent.ConcurrentSkipListSet;
 import java.util.concurrent.ExecutorService;
@@ -11,18 +16,28 @@ import org.apache.commons.collections.CollectionUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.event.ContextRefreshedEvent;
+import org.springframework.context.event.EventListener;
 
 import com.bbn.cot.filter.StreamingEndpointRewriteFilter;
 import com.bbn.cot.filter.VBMSASharingFilter;
 import com.bbn.marti.nio.protocol.connections.StreamingProtoBufProtocol;
 import com.bbn.marti.remote.QueueMetric;
 import com.bbn.marti.remote.groups.ConnectionInfo;
+import com.bbn.marti.remote.groups.Group;
+import com.bbn.marti.remote.util.DateUtil;
+import com.bbn.marti.remote.util.RemoteUtil;
 import com.bbn.marti.util.FixedSizeBlockingQueue;
 import com.bbn.marti.remote.util.SpringContextBeanForApi;
+import com.google.common.base.Strings;
 
 import com.bbn.marti.remote.config.CoreConfigFacade;
 import tak.server.Constants;
+import io.micrometer.core.instrument.Metrics;
+import io.micrometer.core.instrument.Tags;
 import tak.server.cot.CotEventContainer;
+import tak.server.cot.EncodingCache;
+import tak.server.ignite.cache.LatestSAIndex;
 
 public class BrokerService extends BaseService {
 	private static final Logger logger = LoggerFactory.getLogger(BrokerService.class);
@@ -52,6 +67,14 @@ public class BrokerService extends BaseService {
 		return "Broker";
 	}
 
+	@EventListener({ContextRefreshedEvent.class})
+	private void onContextRefresh() {
+		Metrics.more().counter(Constants.METRIC_MESSAGE_SHARED_COPY_COUNT, Tags.of("takserver", "messaging"), CotEventContainer.class, c -> CotEventContainer.getSharedCopyCount());
+		Metrics.more().counter(Constants.METRIC_MESSAGE_DOCUMENT_CLONE_COUNT, Tags.of("takserver", "messaging"), CotEventContainer.class, c -> CotEventContainer.getDocumentCloneCount());
+		Metrics.more().counter(Constants.METRIC_MESSAGE_ENCODE_COUNT, Tags.of("takserver", "messaging"), EncodingCache.class, c -> EncodingCache.getEncodeCount());
+		Metrics.more().counter(Constants.METRIC_MESSAGE_ENCODING_REUSE_COUNT, Tags.of("takserver", "messaging"), EncodingCache.class, c -> EncodingCache.getReuseCount());
+	}
+
 	@Override
 	public boolean addToInputQueue(final CotEventContainer c) {
 		if (c != null && // not null
@@ -61,17 +84,29 @@ public class BrokerService extends BaseService {
 				((Boolean) c.getContextValue(Constants.DO_NOT_BROKER_KEY)).booleanValue() != true)) {
 			try {
 
+				if (c.getContext(Constants.STORE_FORWARD_KEY) == null && Resources.brokerShardProcessors != null) {
+
+					// pipelined - match, process and hand off the message on its sender's shard
+					shardFor(c).execute(() -> {
+						try {
+							matchMessage(c);
+
+							dispatchMessage(c, true);
+						} catch (Exception e) {
+							logger.error("exception brokering message", e);
+						}
+					});
+
+					return true;
+				}
+
 				ExecutorService executorService = c.getContext(Constants.STORE_FORWARD_KEY) != null ?
 						Resources.storeForwardChatProcessor : Resources.brokerMatchingProcessor;
 
 				executorService.execute(() -> {
 
 					try {
-						streamendpointFilter.filter(c);
-
-						Collection<Subscription> hits = subMgr.getMatches(c);
-						
-						c.setContextValue(Constants.SUBSCRIBER_HITS_KEY, subscriptionStore.subscriptionCollectionToConnectionIdSet(hits));
+						matchMessage(c);
 
 						inputQueue.add(c);
 
@@ -95,6 +130,30 @@ public class BrokerService extends BaseService {
 		return false;
 	}
 
+	private void matchMessage(CotEventContainer c) {
+		streamendpointFilter.filter(c);
+
+		Collection<Subscription> hits = subMgr.getMatches(c);
+
+		c.setContextValue(Constants.SUBSCRIBER_HITS_KEY, subscriptionStore.subscriptionCollectionToConnectionIdSet(hits));
+	}
+
+	// messages from the same connection (or, failing that, with the same uid) always go to the same shard
+	private ExecutorService shardFor(CotEventContainer c) {
+		Object key = c.getContextValue(Constants.CONNECTION_ID_KEY);
+
+		if (key == null) {
+			key = c.getUid();
+		}
+
+		int hash = key == null ? 0 : key.hashCode();
+
+		// spread the hash bits, as HashMap does
+		hash ^= (hash >>> 16);
+
+		return Resources.brokerShardProcessors[(hash & Integer.MAX_VALUE) % Resources.brokerShardProcessors.length];
+	}
+
 	@Override
 	protected void processNextEvent() {
 		CotEventContainer c = null;
@@ -106,8 +165,42 @@ public class BrokerService extends BaseService {
 		} catch (InterruptedException e) {
 			return;
 		}
-		
-		final CotEventContainer fc = c;
+
+		dispatchMessage(c, false);
+	}
+
+	/*
+	 * Send a matched message to its subscribers, and copies of it to the other services. If inline, it's all done in this thread,
+	 * otherwise the work is handed off to the message and message copy pools.
+	 */
+	private void dispatchMessage(final CotEventContainer fc, boolean inline) {
+
+		// Independent copies of the event for each path out. The document is shared by the copies until one of them modifies it, so
+		// the copies are made here, before processMessage can modify the original.
+		final List<CotEventContainer> copies = new ArrayList<>(consumers.size());
+
+		for (int i = 0; i < consumers.size(); i++) {
+			copies.add(fc.sharedCopy());
+		}
+
+		final Iterator<CotEventContainer> nextCopy = copies.iterator();
+
+		if (inline) {
+			processMessage(fc);
+
+			for (final BaseService s : consumers) {
+				final CotEventContainer copy = nextCopy.next();
+				try {
+					s.addToInputQueue(copy);
+				} catch (Exception e) {
+					if (logger.isDebugEnabled()) {
+						logger.debug("exception adding to broker service input queue", e);
+					}
+				}
+			}
+
+			return;
+		}
 
 		ExecutorService executorService = fc.getContext(Constants.STORE_FORWARD_KEY) != null ?
 				Resources.storeForwardChatProcessor : Resources.messageProcessor;
@@ -129,11 +222,11 @@ public class BrokerService extends BaseService {
 		}
 		
 		for (final BaseService s : consumers) {
+			final CotEventContainer copy = nextCopy.next();
 			try {
-				// need independent copies of event for each path out
 				Resources.messageCopyProcessor.submit(() -> {
 					try {
-						s.addToInputQueue(fc.copy());
+						s.addToInputQueue(copy);
 					} catch (Exception e) {
 						if (logger.isDebugEnabled()) {
 							logger.debug("exception adding to broker service input queue", e);
@@ -142,7 +235,7 @@ public class BrokerService extends BaseService {
 				});
 			} catch (Exception e) {
 				if (logger.isDebugEnabled()) {
-					logger.debug("Exception while processing queue " + inputQueue + " element " + c, e);
+					logger.debug("Exception while processing queue " + inputQueue + " element " + fc, e);
 				}
 			}
 		}
@@ -164,8 +257,10 @@ public class BrokerService extends BaseService {
 				senderConnectionId = (String) cot.getContextValue(Constants.CONNECTION_ID_KEY);
 			}			
 
-			// pre-convert to protobuf
-			cot.setProtoBufBytes(StreamingProtoBufProtocol.convertCotToProtoBufBytes(cot));
+			// pre-convert to protobuf, once for all subscribers
+			StreamingProtoBufProtocol.getOrConvertCotToProtoBufBytes(cot);
+
+			indexLatestSA(cot);
 			
 			for (String connectionId : hits) {
 				// if the message was injected by a plugin, the list of hits may contain the original sender.
@@ -227,6 +322,64 @@ public class BrokerService extends BaseService {
 		}	
 	}
 
+	/*
+	 * Keep the message as the latest event for its uid, with the groups of its sender, until it goes stale. Messages replayed for
+	 * store and forward chat are older than what has been indexed since. The index keeps whichever event for a uid has the latest
+	 * time, so these jobs may run in any order.
+	 */
+	private void indexLatestSA(CotEventContainer cot) {
+		if (Strings.isNullOrEmpty(cot.getUid()) || cot.getContext(Constants.STORE_FORWARD_KEY) != null || !LatestSAIndex.isEnabled()) {
+			return;
+		}
+
+		@SuppressWarnings("unchecked")
+		NavigableSet<Group> groups = (NavigableSet<Group>) cot.getContextValue(Constants.GROUPS_KEY);
+
+		// the encoding that websocket clients are sent, which for most messages is the one just made for the streaming clients
+		ByteBuffer encoded = StreamingProtoBufProtocol.getOrConvertCotToUnlimitedProtoBufBytes(cot);
+
+		if (groups == null || encoded == null) {
+			return;
+		}
+
+		String uid = cot.getUid();
+		long time;
+		long stale;
+
+		try {
+			// the times are only kept as longs for messages that arrived as TAK protocol
+			time = cot.getTimeLong() >= 0 ? cot.getTimeLong() : DateUtil.millisFromCotTimeStr(cot.getTime());
+			stale = cot.getStaleLong() >= 0 ? cot.getStaleLong() : DateUtil.millisFromCotTimeStr(cot.getStale());
+		} catch (Exception e) {
+			if (logger.isDebugEnabled()) {
+				logger.debug("not indexing latest event for uid " + uid + " without valid time and stale", e);
+			}
+			return;
+		}
+
+		try {
+			Resources.messageCacheProcessor.execute(() -> {
+				try {
+					String groupVector = RemoteUtil.getInstance().bitVectorToString(RemoteUtil.getInstance().getBitVectorForGroups(groups));
+
+					if (RemoteUtil.getInstance().getBitStringNoGroups().equals(groupVector)) {
+						return;
+					}
+
+					LatestSAIndex.put(uid, encoded, groupVector, time, stale);
+				} catch (Exception e) {
+					if (logger.isDebugEnabled()) {
+						logger.debug("exception indexing latest event for uid " + uid, e);
+					}
+				}
+			});
+		} catch (Exception e) {
+			if (logger.isDebugEnabled()) {
+				logger.debug("exception scheduling latest event index job", e);
+			}
+		}
+	}
+
 	// TODO: something smart
 	protected static int findPriority(CotEventContainer c) {
 		return 0;
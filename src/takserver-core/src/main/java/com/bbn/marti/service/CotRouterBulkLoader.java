@@ -0,0 +1,323 @@
+package com.bbn.marti.service;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.sql.Array;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.Instant;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.apache.log4j.Logger;
+import org.postgresql.PGConnection;
+import org.postgresql.copy.CopyManager;
+
+import com.bbn.marti.config.DataFeed;
+import com.bbn.marti.remote.util.RemoteUtil;
+
+import jakarta.xml.bind.DatatypeConverter;
+import tak.server.Constants;
+import tak.server.cot.CotEventContainer;
+
+/*
+ *
+ * Bulk load of archived messages into cot_router, cot_router_chat and data_feed_cot using COPY, in place of batched INSERTs. Each
+ * batch is sent as a single CSV stream per table, in one transaction.
+ *
+ * Ids are allocated from cot_router_seq up front, one block per batch, so that data feed rows can reference the cot_router rows
+ * they belong to without a round trip per row.
+ *
+ * Any exception leaves the transaction rolled back, so that the caller can fall back to inserting the batch the old way.
+ *
+ */
+class CotRouterBulkLoader {
+
+	private static final Logger log = Logger.getLogger(CotRouterBulkLoader.class);
+
+	private static final String COT_ROUTER_COPY = "COPY cot_router "
+			+ "(uid, event_pt, cot_type, start, time, stale, detail, access, qos, opex, how, point_hae, point_ce, point_le, groups, "
+			+ "id, servertime, caveat, releaseableto) FROM STDIN WITH (FORMAT csv)";
+
+	private static final String COT_ROUTER_CHAT_COPY = "COPY cot_router_chat "
+			+ "(uid, event_pt, cot_type, start, time, stale, detail, access, qos, opex, how, point_hae, point_ce, point_le, groups, "
+			+ "id, servertime, sender_callsign, dest_callsign, dest_uid, chat_content, chat_room) FROM STDIN WITH (FORMAT csv)";
+
+	private static final String DATA_FEED_COT_COPY = "COPY data_feed_cot (cot_router_id, data_feed_id) FROM STDIN WITH (FORMAT csv)";
+
+	// a chat message row, one per destination
+	static class ChatRow {
+		final CotEventContainer event;
+		final String detail;
+		final String groups;
+		final String senderCallsign;
+		final String destCallsign;
+		final String destUid;
+		final String remarks;
+		final String chatRoom;
+
+		ChatRow(CotEventContainer event, String detail, String groups, String senderCallsign, String destCallsign, String destUid, String remarks, String chatRoom) {
+			this.event = event;
+			this.detail = detail;
+			this.groups = groups;
+			this.senderCallsign = senderCallsign;
+			this.destCallsign = destCallsign;
+			this.destUid = destUid;
+			this.remarks = remarks;
+			this.chatRoom = chatRoom;
+		}
+	}
+
+	/*
+	 * Load messages into cot_router, and data feed messages into cot_router and data_feed_cot. Data feed messages whose feed no
+	 * longer exists are skipped, as they are by the insert. Returns the number of rows loaded into cot_router.
+	 */
+	int copyCotBatch(Connection connection, List<CotEventContainer> events, List<CotEventContainer> dataFeedEvents) throws SQLException, IOException {
+
+		Map<String, Long> dataFeedIds = dataFeedIds(connection, dataFeedEvents);
+
+		int rowCount = events.size() + dataFeedEvents.size();
+
+		if (rowCount == 0) {
+			return 0;
+		}
+
+		return inTransaction(connection, () -> {
+
+			long[] ids = allocateIds(connection, rowCount);
+			int next = 0;
+
+			StringBuilder cotRows = new StringBuilder(rowCount * 512);
+			StringBuilder dataFeedRows = new StringBuilder();
+
+			for (CotEventContainer event : events) {
+				if (appendCotRow(cotRows, event, ids[next])) {
+					next++;
+				}
+			}
+
+			for (CotEventContainer event : dataFeedEvents) {
+				Long dataFeedId = dataFeedIds.get(((DataFeed) event.getContext(Constants.DATA_FEED_KEY)).getUuid());
+
+				if (dataFeedId == null) {
+					if (log.isDebugEnabled()) {
+						log.debug("not archiving message from unknown data feed: " + event);
+					}
+					continue;
+				}
+
+				if (appendCotRow(cotRows, event, ids[next])) {
+					dataFeedRows.append(ids[next]).append(',').append(dataFeedId).append('\n');
+					next++;
+				}
+			}
+
+			CopyManager copyManager = copyManager(connection);
+
+			copyManager.copyIn(COT_ROUTER_COPY, new StringReader(cotRows.toString()));
+
+			if (dataFeedRows.length() > 0) {
+				copyManager.copyIn(DATA_FEED_COT_COPY, new StringReader(dataFeedRows.toString()));
+			}
+
+			return next;
+		});
+	}
+
+	/*
+	 * Load chat messages into cot_router_chat. Returns the number of rows loaded.
+	 */
+	int copyChatBatch(Connection connection, List<ChatRow> rows) throws SQLException, IOException {
+
+		if (rows.isEmpty()) {
+			return 0;
+		}
+
+		return inTransaction(connection, () -> {
+
+			long[] ids = allocateIds(connection, rows.size());
+			int next = 0;
+
+			StringBuilder chatRows = new StringBuilder(rows.size() * 512);
+
+			for (ChatRow row : rows) {
+				int start = chatRows.length();
+
+				try {
+					appendCommonColumns(chatRows, row.event, row.detail, row.groups, ids[next]);
+				} catch (Exception e) {
+					log.error("Error parsing chat message for insert into DB: " + e.toString(), e);
+					chatRows.setLength(start);
+					continue;
+				}
+
+				chatRows.append(',');
+				text(chatRows, row.senderCallsign).append(',');
+				text(chatRows, row.destCallsign).append(',');
+				text(chatRows, row.destUid).append(',');
+				text(chatRows, row.remarks).append(',');
+				text(chatRows, row.chatRoom).append('\n');
+
+				next++;
+			}
+
+			copyManager(connection).copyIn(COT_ROUTER_CHAT_COPY, new StringReader(chatRows.toString()));
+
+			return next;
+		});
+	}
+
+	// append a cot_router row. Returns false, leaving the buffer unchanged, if the message can't be archived
+	private boolean appendCotRow(StringBuilder rows, CotEventContainer event, long id) {
+		int start = rows.length();
+
+		try {
+			appendCommonColumns(rows, event, event.getDetailXml(), RemoteUtil.getInstance().bitVectorToString((boolean[]) event.getContext(Constants.GROUPS_BIT_VECTOR_KEY)), id);
+
+			rows.append(',');
+			text(rows, event.getCaveat()).append(',');
+			text(rows, event.getReleaseableTo()).append('\n');
+
+			return true;
+		} catch (Exception e) {
+			log.error("Error parsing CoT message for insert into DB: " + e.toString(), e);
+			rows.setLength(start);
+			return false;
+		}
+	}
+
+	// columns shared by cot_router and cot_router_chat, up to and including servertime
+	private void appendCommonColumns(StringBuilder rows, CotEventContainer event, String detail, String groups, long id) {
+		text(rows, event.getUid()).append(',');
+		text(rows, "SRID=4326;POINT(" + event.getLon() + " " + event.getLat() + ")").append(',');
+		text(rows, event.getType()).append(',');
+		timestamp(rows, event.getStart()).append(',');
+		timestamp(rows, event.getTime()).append(',');
+		timestamp(rows, event.getStale()).append(',');
+		text(rows, detail).append(',');
+		text(rows, event.getAccess()).append(',');
+		text(rows, event.getQos()).append(',');
+		text(rows, event.getOpex()).append(',');
+		text(rows, event.getHow()).append(',');
+		rows.append(event.getHae()).append(',');
+		rows.append(event.getCe()).append(',');
+		rows.append(event.getLe()).append(',');
+		text(rows, groups).append(',');
+		rows.append(id).append(',');
+		timestamp(rows, RepositoryService.serverTime(event));
+	}
+
+	/*
+	 * Allocate count ids from cot_router_seq in one round trip.
+	 */
+	static long[] allocateIds(Connection connection, int count) throws SQLException {
+		long[] ids = new long[count];
+
+		try (PreparedStatement ps = connection.prepareStatement("SELECT nextval('cot_router_seq') FROM generate_series(1, ?)")) {
+			ps.setInt(1, count);
+
+			try (ResultSet rs = ps.executeQuery()) {
+				int i = 0;
+				while (rs.next() && i < count) {
+					ids[i++] = rs.getLong(1);
+				}
+
+				if (i != count) {
+					throw new SQLException("allocated " + i + " of " + count + " cot_router ids");
+				}
+			}
+		}
+
+		return ids;
+	}
+
+	private Map<String, Long> dataFeedIds(Connection connection, List<CotEventContainer> dataFeedEvents) throws SQLException {
+		Map<String, Long> ids = new HashMap<>();
+
+		if (dataFeedEvents.isEmpty()) {
+			return ids;
+		}
+
+		Set<String> uuids = new LinkedHashSet<>();
+
+		for (CotEventContainer event : dataFeedEvents) {
+			uuids.add(((DataFeed) event.getContext(Constants.DATA_FEED_KEY)).getUuid());
+		}
+
+		try (PreparedStatement ps = connection.prepareStatement("SELECT uuid, id FROM data_feed WHERE uuid = ANY (?)")) {
+			Array uuidArray = connection.createArrayOf("varchar", uuids.toArray());
+			ps.setArray(1, uuidArray);
+
+			try (ResultSet rs = ps.executeQuery()) {
+				while (rs.next()) {
+					ids.put(rs.getString(1), rs.getLong(2));
+				}
+			}
+		}
+
+		return ids;
+	}
+
+	private interface CopyWork {
+		int run() throws SQLException, IOException;
+	}
+
+	private static int inTransaction(Connection connection, CopyWork work) throws SQLException, IOException {
+		boolean autoCommit = connection.getAutoCommit();
+
+		try {
+			connection.setAutoCommit(false);
+
+			int rows = work.run();
+
+			connection.commit();
+
+			return rows;
+		} catch (SQLException | IOException | RuntimeException e) {
+			try {
+				connection.rollback();
+			} catch (SQLException re) {
+				if (log.isDebugEnabled()) {
+					log.debug("exception rolling back bulk load", re);
+				}
+			}
+			throw e;
+		} finally {
+			connection.setAutoCommit(autoCommit);
+		}
+	}
+
+	private static CopyManager copyManager(Connection connection) throws SQLException {
+		return connection.unwrap(PGConnection.class).getCopyAPI();
+	}
+
+	// CSV text field. null is written as an unquoted empty field, which COPY reads as NULL
+	private static StringBuilder text(StringBuilder rows, String value) {
+		if (value == null) {
+			return rows;
+		}
+
+		rows.append('"');
+
+		for (int i = 0; i < value.length(); i++) {
+			char c = value.charAt(i);
+			if (c == '"') {
+				rows.append('"');
+			}
+			rows.append(c);
+		}
+
+		return rows.append('"');
+	}
+
+	// CoT time as an ISO-8601 UTC literal. The columns are timestamp with time zone, so this is the same instant that the INSERT
+	// path writes with setTimestamp and the UTC calendar, whatever the JVM or session time zone.
+	static StringBuilder timestamp(StringBuilder rows, String cotTime) {
+		return rows.append(Instant.ofEpochMilli(DatatypeConverter.parseDateTime(cotTime).getTimeInMillis()).toString());
+	}
+}
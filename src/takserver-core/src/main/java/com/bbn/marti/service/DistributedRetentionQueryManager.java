@@ -1,5 +1,8 @@
 package com.bbn.marti.service;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.util.Date;
 import java.util.List;
 import java.util.Map;
@@ -41,6 +44,8 @@ public class DistributedRetentionQueryManager implements RetentionQueryService,
 
 	GroupManager groupManager;
 
+	private final ArchiveTransfers transfers = new ArchiveTransfers();
+
 	// Currently this only contains the mission service
 	public DistributedRetentionQueryManager(Ignite ignite, GroupManager groupManager) {
 		this.ignite = ignite;
@@ -108,11 +113,40 @@ public class DistributedRetentionQueryManager implements RetentionQueryService,
 	}
 
 	@Override
-	public byte[] getArchivedMission(String missionName, String groupVector, String serverName) {
+	public String createTransfer() throws IOException {
+		return transfers.create();
+	}
+
+	@Override
+	public void appendTransfer(String transferId, byte[] chunk) throws IOException {
+		transfers.append(transferId, chunk);
+	}
+
+	@Override
+	public byte[] readTransfer(String transferId, long offset, int length) throws IOException {
+		return transfers.read(transferId, offset, length);
+	}
+
+	@Override
+	public void deleteTransfer(String transferId) {
+		transfers.delete(transferId);
+	}
+
+	@Override
+	public String getArchivedMission(String missionName, String groupVector, String serverName) throws IOException {
 		
 		Mission m = missionService().getMissionByNameCheckGroups(missionName, groupVector);
-		
-		return missionService().archiveMission(m.getGuidAsUUID(), groupVector, serverName);
+
+		String transferId = transfers.create();
+
+		try (OutputStream out = transfers.write(transferId)) {
+			missionService().archiveMission(m.getGuidAsUUID(), groupVector, serverName, out);
+		} catch (Exception e) {
+			transfers.delete(transferId);
+			throw e;
+		}
+
+		return transferId;
 	}
 	
 	@Override
@@ -161,7 +195,7 @@ public class DistributedRetentionQueryManager implements RetentionQueryService,
 	}
 
 	@Override
-	public boolean restoreMission(Map<String, byte[]> files, Map<String, String> properties, List<String> groups,
+	public boolean restoreMission(Map<String, String> properties, List<String> groups,
 			String defaultRole, List<String> defaultPermissions) {
 
 		MissionRole missionRole = null;
@@ -224,7 +258,7 @@ public class DistributedRetentionQueryManager implements RetentionQueryService,
 	}
 
 	@Override
-	public void restoreContent(String missionName, byte[] file, Element missionContent, List<String> groups) throws Exception {
+	public void restoreContent(String missionName, String transferId, Element missionContent, List<String> groups) throws Exception {
 		Set<Group> groupSet = groupManager.findGroups(groups);
 		String groupVector = RemoteUtil.getInstance()
 				.bitVectorToString(RemoteUtil.getInstance().getBitVectorForGroups(groupSet));
@@ -269,10 +303,16 @@ public class DistributedRetentionQueryManager implements RetentionQueryService,
 
 		toStore.set(Metadata.Field.UID, new String[] { UUID.randomUUID().toString() });
 		
-		Metadata fromStore = ApiDependencyProxy.getInstance().enterpriseSyncService().insertResource(toStore, file, groupVector);
+		Metadata fromStore;
+
+		try (InputStream file = transfers.open(transferId)) {
+			fromStore = ApiDependencyProxy.getInstance().enterpriseSyncService().insertResourceStream(toStore, file, groupVector);
+		} finally {
+			transfers.delete(transferId);
+		}
 		
 		MissionContent mc = new MissionContent();
-		mc.getHashes().add(toStore.getHash());
+		mc.getHashes().add(fromStore.getHash());
 		mc.getUids().add(fromStore.getUid());
 		
 		Mission m = missionService().getMissionByNameCheckGroups(missionName, groupVector);
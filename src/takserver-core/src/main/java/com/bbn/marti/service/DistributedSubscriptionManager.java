@@ -89,8 +89,8 @@ import com.bbn.marti.remote.groups.ConnectionType;
 import com.bbn.marti.remote.groups.Direction;
 import com.bbn.marti.remote.groups.FederateUser;
 import com.bbn.marti.remote.groups.Group;
+import com.bbn.marti.remote.groups.GroupBitmask;
 import com.bbn.marti.remote.groups.GroupManager;
-import com.bbn.marti.remote.groups.Reachability;
 import com.bbn.marti.remote.groups.User;
 import com.bbn.marti.remote.socket.SituationAwarenessMessage;
 import com.bbn.marti.remote.util.DateUtil;
@@ -113,14 +113,18 @@ import com.google.common.collect.Sets;
 import com.google.common.collect.Sets.SetView;
 
 import io.micrometer.core.instrument.Metrics;
+import io.micrometer.core.instrument.Tags;
 import tak.server.CommonConstants;
 import tak.server.Constants;
 import tak.server.cluster.ClusterManager;
+import tak.server.cot.CompiledXPath;
 import tak.server.cot.CotEventContainer;
+import tak.server.cot.XPathCache;
 import tak.server.federation.FederateSubscription;
 import tak.server.federation.FigFederateSubscription;
 import tak.server.ignite.IgniteHolder;
 import tak.server.ignite.cache.IgniteCacheHolder;
+import tak.server.ignite.cache.LatestSAIndex;
 import tak.server.messaging.MessageConverter;
 
 public class DistributedSubscriptionManager implements SubscriptionManager, org.apache.ignite.services.Service {
@@ -248,6 +252,13 @@ public class DistributedSubscriptionManager implements SubscriptionManager, org.
         
 		clientCountRef.set(Metrics.gauge(Constants.METRIC_CLIENT_COUNT, clientCountRef.get()));
 
+		XPathCache.setMaxSize(CoreConfigFacade.getInstance().getRemoteConfiguration().getDissemination().getXpathCacheSize());
+
+		Metrics.more().counter(Constants.METRIC_XPATH_CACHE_HIT_COUNT, Tags.of("takserver", "messaging"), XPathCache.class, c -> XPathCache.getHitCount());
+		Metrics.more().counter(Constants.METRIC_XPATH_CACHE_MISS_COUNT, Tags.of("takserver", "messaging"), XPathCache.class, c -> XPathCache.getMissCount());
+		Metrics.more().counter(Constants.METRIC_XPATH_CACHE_EVICTION_COUNT, Tags.of("takserver", "messaging"), XPathCache.class, c -> XPathCache.getEvictionCount());
+		Metrics.gauge(Constants.METRIC_XPATH_CACHE_SIZE, Tags.of("takserver", "messaging"), XPathCache.class, c -> XPathCache.size());
+
 		applyClassificationFilter = CoreConfigFacade.getInstance().getRemoteConfiguration().getVbm() != null &&
 				CoreConfigFacade.getInstance().getRemoteConfiguration().getVbm().isEnabled();
 	}
@@ -691,7 +702,7 @@ public class DistributedSubscriptionManager implements SubscriptionManager, org.
 	* Returns the list of subscriptions interested in receiving the message
 	*/
 	@SuppressWarnings("unchecked")
-    private Collection<Subscription> getImplicitMatches(CotEventContainer cot) {
+    Collection<Subscription> getImplicitMatches(CotEventContainer cot) {
 	    
 	    Collection<Subscription> matches = new ArrayList<Subscription>();
 
@@ -757,118 +768,146 @@ public class DistributedSubscriptionManager implements SubscriptionManager, org.
 
         final User zender = sender;
         final NavigableSet<Group> srcGroupz = srcGroups;
+
+        // compile the source groups once for this message, for the word-wise reachability check against each subscriber
+        final GroupBitmask srcBitmask = GroupBitmask.compile(srcGroupz);
         
         if (dupeLogger.isTraceEnabled()) {
 			dupeLogger.trace("message: " + cot + " message context map: " + cot.getContext());
 		}
      
-        for (Entry<String, Subscription> destSubscriptionEntry : subscriptionStore().getSubscriptionsEntries()) {
-        	
-        	Subscription destSubscription = destSubscriptionEntry.getValue();
-      
-        	if (CoreConfigFacade.getInstance().getRemoteConfiguration().getFederation() == null) {
-        		if (zender instanceof FederateUser && destSubscription.getUser() instanceof FederateUser) {
-        			continue;
+        // don't consider federate receivers for a federate sender, unless federation is configured
+        final boolean includeFederates = !(zender instanceof FederateUser) || CoreConfigFacade.getInstance().getRemoteConfiguration().getFederation() != null;
+
+        boolean indexed = CoreConfigFacade.getInstance().getRemoteConfiguration().getDissemination().isIndexedMatching()
+        		&& subscriptionStore().getMatchingIndex().forEachCandidate(srcGroupz, includeFederates, destSubscription -> {
+        			if (isImplicitMatch(cot, destSubscription, zender, srcGroupz, srcBitmask)) {
+        				matches.add(destSubscription);
+        			}
+        		});
+
+        if (!indexed) {
+        	for (Entry<String, Subscription> destSubscriptionEntry : subscriptionStore().getSubscriptionsEntries()) {
+        		Subscription destSubscription = destSubscriptionEntry.getValue();
+
+        		if (isImplicitMatch(cot, destSubscription, zender, srcGroupz, srcBitmask)) {
+        			matches.add(destSubscription);
         		}
         	}
+        }
 
-        	// Special case for ROGER FIG federation. There is no channel handler, since we are using gRPC / Netty as the network transport.
-        	// So we are keeping the reachability directly in the subscription.
-        	if (destSubscription instanceof FigFederateSubscription) {
+        if (logger.isTraceEnabled()) {
+        	logger.trace("implicit matches: " + matches);
+        }
 
-        	} else {
+        return matches;
+	}
 
-        		AbstractBroadcastingChannelHandler destHandler = (AbstractBroadcastingChannelHandler) destSubscription.getHandler();
+	/*
+	 * Apply the implicit brokering rules for a single destination subscription: federate and repeater rules, group reachability,
+	 * xpath / geospatial / drop filters, self-echo suppression and classification.
+	 */
+	private boolean isImplicitMatch(CotEventContainer cot, Subscription destSubscription, User zender, NavigableSet<Group> srcGroupz, GroupBitmask srcBitmask) {
 
-        		if (destHandler == null) {
-        			if (logger.isDebugEnabled()) {
-        				logger.debug("null handler in subscription: " + destSubscription);
-        			}
-        			
-        			continue;
-        		}
-        	}
+		if (CoreConfigFacade.getInstance().getRemoteConfiguration().getFederation() == null) {
+			if (zender instanceof FederateUser && destSubscription.getUser() instanceof FederateUser) {
+				return false;
+			}
+		}
 
-        	User receiver = destSubscription.getUser();
+		// Special case for ROGER FIG federation. There is no channel handler, since we are using gRPC / Netty as the network transport.
+		// So we are keeping the reachability directly in the subscription.
+		if (destSubscription instanceof FigFederateSubscription) {
 
-        	if (receiver == null) {
-        		if (logger.isDebugEnabled()) {
-        			logger.debug("receiver user not found in subscription - skipping subscription: " + destSubscription);
-        		}
-        		
-    			continue;
-        	}
+		} else {
 
-        	if (cot.getContextValue(Constants.REPEATER_KEY) != null) {
-        		if (receiver instanceof FederateUser) {
-        			if (destSubscription instanceof FederateSubscription &&
-        					((FederateSubscription) destSubscription).getShareAlerts() == false) {
-        				if (logger.isTraceEnabled()) {
-        					logger.trace("not federating repeater message");
-        				}
-        				
-            			continue;
-        			}
-        		}
-        	}
+			AbstractBroadcastingChannelHandler destHandler = (AbstractBroadcastingChannelHandler) destSubscription.getHandler();
 
-        	// check if this subscriber is allowed to receive messages from the source groups
-        	if (reachability().isReachable(srcGroupz, receiver)) {
+			if (destHandler == null) {
+				if (logger.isDebugEnabled()) {
+					logger.debug("null handler in subscription: " + destSubscription);
+				}
 
-        		if (logger.isDebugEnabled()) {
-        			logger.debug(srcGroupz + " can reach " + receiver);
-        		}
+				return false;
+			}
+		}
+
+		User receiver = destSubscription.getUser();
+
+		if (receiver == null) {
+			if (logger.isDebugEnabled()) {
+				logger.debug("receiver user not found in subscription - skipping subscription: " + destSubscription);
+			}
 
-        		if (matchesXPath(cot, destSubscription.xpath) &&
-        				matchesFilter(cot, destSubscription.geospatialEventFilter) &&
-						matchesFilter(cot, destSubscription.dropFilters)
-				) {
+			return false;
+		}
 
-					if (dupeLogger.isTraceEnabled()) {
-						dupeLogger.trace("dest sub: " + destSubscription + " identity hash: " + destSubscription.getHandler().identityHash());
+		if (cot.getContextValue(Constants.REPEATER_KEY) != null) {
+			if (receiver instanceof FederateUser) {
+				if (destSubscription instanceof FederateSubscription &&
+						((FederateSubscription) destSubscription).getShareAlerts() == false) {
+					if (logger.isTraceEnabled()) {
+						logger.trace("not federating repeater message");
 					}
 
-					String subIdHash = destSubscription.getHandler().identityHash();
-					String msgIdHash = (String) cot.getContextValue(Constants.SOURCE_HASH_KEY);
+					return false;
+				}
+			}
+		}
 
-					// don't send messages back over the EXACT same transport stream from which they came.
-					if (destSubscription.getHandler() != null && (!subIdHash.equals(msgIdHash))) {
-						// otherwise, add to match list
+		// check if this subscriber is allowed to receive messages from the source groups
+		if (!reachability().isReachable(srcBitmask, srcGroupz, receiver)) {
+			if (logger.isDebugEnabled()) {
+				logger.debug(srcGroupz + " cannot reach " + receiver);
+			}
 
-						if (logger.isDebugEnabled()) {
-							logger.debug("Found implicit match for message. Receiver " + destSubscription.getHandler() + " message: " + cot.partial());
-						}
+			return false;
+		}
 
-						if (dupeLogger.isTraceEnabled()) {
-							dupeLogger.trace("not self message - subIdHash: " + subIdHash + " msgIdHash " + msgIdHash);
-						}
+		if (logger.isDebugEnabled()) {
+			logger.debug(srcGroupz + " can reach " + receiver);
+		}
 
-						if (applyClassificationFilter) {
-							if (!classificationService().canAccess(
-									groupManager().getClassificationForUser(receiver), cot)) {
-								continue;
-							}
-						}
+		if (!(matchesXPath(cot, destSubscription.getCompiledXpath()) &&
+				matchesFilter(cot, destSubscription.geospatialEventFilter) &&
+				matchesFilter(cot, destSubscription.dropFilters))) {
+			return false;
+		}
 
-						matches.add(destSubscription);
-					} else {
-						if (dupeLogger.isTraceEnabled()) {
-							dupeLogger.trace("skipping self message echo - subIdHash: " + subIdHash + " msgIdHash " + msgIdHash);
-						}
-					}
-        		}
-        	} else {
-        		if (logger.isDebugEnabled()) {
-        			logger.debug(srcGroupz + " cannot reach " + receiver);
-        		}
-        	}
+		if (dupeLogger.isTraceEnabled()) {
+			dupeLogger.trace("dest sub: " + destSubscription + " identity hash: " + destSubscription.getHandler().identityHash());
+		}
 
-        	if (logger.isTraceEnabled()) {
-        		logger.trace("implicit matches: " + matches);
-        	}
-        }
-        
-        return matches;
+		String subIdHash = destSubscription.getHandler().identityHash();
+		String msgIdHash = (String) cot.getContextValue(Constants.SOURCE_HASH_KEY);
+
+		// don't send messages back over the EXACT same transport stream from which they came.
+		if (destSubscription.getHandler() == null || subIdHash.equals(msgIdHash)) {
+			if (dupeLogger.isTraceEnabled()) {
+				dupeLogger.trace("skipping self message echo - subIdHash: " + subIdHash + " msgIdHash " + msgIdHash);
+			}
+
+			return false;
+		}
+
+		// otherwise, add to match list
+
+		if (logger.isDebugEnabled()) {
+			logger.debug("Found implicit match for message. Receiver " + destSubscription.getHandler() + " message: " + cot.partial());
+		}
+
+		if (dupeLogger.isTraceEnabled()) {
+			dupeLogger.trace("not self message - subIdHash: " + subIdHash + " msgIdHash " + msgIdHash);
+		}
+
+		if (applyClassificationFilter) {
+			if (!classificationService().canAccess(
+					groupManager().getClassificationForUser(receiver), cot)) {
+				return false;
+			}
+		}
+
+		return true;
 	}
 
 	public boolean matchesXPath(CotEventContainer cot, String xpath) {
@@ -877,6 +916,10 @@ public class DistributedSubscriptionManager implements SubscriptionManager, org.
 				|| cot.matchXPath(xpath)); // or the xpath expression actually matches
 	}
 
+	public boolean matchesXPath(CotEventContainer cot, CompiledXPath xpath) {
+		return xpath == null || xpath.matches(cot);
+	}
+
 	public boolean matchesFilter(CotEventContainer cot, GeospatialEventFilter geospatialEventFilter) {
 		return geospatialEventFilter == null // filter is null
 				|| geospatialEventFilter.filter(cot) != null; // filter actually matches
@@ -898,7 +941,7 @@ public class DistributedSubscriptionManager implements SubscriptionManager, org.
 
 	public boolean matchesXPath(CotEventContainer c, XPath xpath) {
 		return (xpath == null 
-			|| xpath.booleanValueOf(c.getDocument()));
+			|| c.matchXPath(xpath));
 	}
 
 	public void addRawSubscription(Subscription subscription) {
@@ -1042,7 +1085,7 @@ public class DistributedSubscriptionManager implements SubscriptionManager, org.
 	{
 		Subscription subscription = new Subscription();
 		subscription.uid = uid;
-		subscription.xpath = xpath;
+		subscription.setXpath(xpath);
 		subscription.encoder = protocol;
 		subscription.handler = handler;
 		subscription.to = handler.toString();
@@ -1515,7 +1558,7 @@ public class DistributedSubscriptionManager implements SubscriptionManager, org.
 	public void setXpathForUid(String uid, String xpath) {
 		Subscription subscription = subscriptionStore().getBySubscriptionUid(uid);
 		Assertion.notNull(subscription, "Invalid subscription uid: " + uid);
-		subscription.xpath = xpath;
+		subscription.setXpath(xpath);
 	}
 
 	public void setClientForSubscription(String clientUid, String callsign, ChannelHandler handler, boolean overwriteSub) {
@@ -2250,29 +2293,44 @@ public class DistributedSubscriptionManager implements SubscriptionManager, org.
 
 	    Set<User> reachableUsers = new CommonGroupDirectedReachability(groupManager()).getAllReachableFrom(destUser);
 
+	    List<Subscription> reachableSubs = new ArrayList<>(reachableUsers.size());
+
 	    // find all of the subscriptions to get the latest sa for all reachable users to send out
 	    for (User u : reachableUsers) {
 
 	    	if (u != null) {
 	    		try {
-	    			Subscription sub = getSubscription(u);
-
-	    			CotEventContainer cot = sub.getLatestSA();
-
-	    			SituationAwarenessMessage saMessage = MessageConversionUtil.saMessageFromCot(cot);
-
-	    			if (saMessage != null) {
-	    				latestSASet.add(saMessage);
-	    			}
-
+	    			reachableSubs.add(getSubscription(u));
 	    		} catch (java.lang.IllegalStateException e) {
 	    			if (logger.isTraceEnabled()) {
 	    				logger.trace("ignoring non-socket web connection for latest SA");
 	    			}
-	    		} catch (Exception e) {
-	    			if (logger.isDebugEnabled()) {
-	    				logger.debug("exception getting latest sa for socket", e);
-	    			}
+	    		}
+	    	}
+	    }
+
+	    Map<String, LatestSAIndex.Entry> indexed = getIndexedLatestSA(reachableSubs);
+
+	    for (Subscription sub : reachableSubs) {
+	    	try {
+	    		// the indexed event is the latest for the client's uid, and is gone once it's stale
+	    		LatestSAIndex.Entry entry = sub.clientUid == null ? null : indexed.get(sub.clientUid);
+
+	    		CotEventContainer cot = entry == null ? null : entry.toCotEventContainer();
+
+	    		if (cot == null) {
+	    			cot = sub.getLatestSA();
+	    		}
+
+	    		SituationAwarenessMessage saMessage = MessageConversionUtil.saMessageFromCot(cot);
+
+	    		if (saMessage != null) {
+	    			latestSASet.add(saMessage);
+	    		}
+
+	    	} catch (Exception e) {
+	    		if (logger.isDebugEnabled()) {
+	    			logger.debug("exception getting latest sa for socket", e);
 	    		}
 	    	}
 	    }
@@ -2280,6 +2338,31 @@ public class DistributedSubscriptionManager implements SubscriptionManager, org.
 	    return latestSASet;
 	}
 
+	// latest events from the latest SA index for the client uids of subscriptions
+	private Map<String, LatestSAIndex.Entry> getIndexedLatestSA(Collection<Subscription> subs) {
+
+		if (!LatestSAIndex.isEnabled()) {
+			return Collections.emptyMap();
+		}
+
+		Set<String> clientUids = new HashSet<>();
+
+		for (Subscription sub : subs) {
+			if (!Strings.isNullOrEmpty(sub.clientUid)) {
+				clientUids.add(sub.clientUid);
+			}
+		}
+
+		try {
+			return LatestSAIndex.getAll(clientUids);
+		} catch (Exception e) {
+			if (logger.isDebugEnabled()) {
+				logger.debug("exception reading latest SA index", e);
+			}
+			return Collections.emptyMap();
+		}
+	}
+
 	private TAKServerCAConfig getTAKServerCAConfig() {
 		try {
 			CertificateSigning certificateSigningConfig =
@@ -2428,7 +2511,7 @@ public class DistributedSubscriptionManager implements SubscriptionManager, org.
 		return GroupFederationUtil.getInstance();
 	}
 	
-	private Reachability<User> reachability() {
+	private CommonGroupDirectedReachability reachability() {
 		return CommonGroupDirectedReachability.getInstance();
 	}
 	
@@ -213,7 +213,7 @@ public class RepeaterService extends BaseService {
 	private boolean isRepeatCancellationMessage(CotEventContainer cotMsg) {
 		for(Tuple<String, String> xpathTests : repeatableTypes.values()) {
 
-			if (getXPath(xpathTests.right()).booleanValueOf(cotMsg.getDocument())) {
+			if (cotMsg.matchXPath(getXPath(xpathTests.right()))) {
 				return true;
 			}
 		}
@@ -231,7 +231,7 @@ public class RepeaterService extends BaseService {
 		for(String repeatableType : repeatableTypes.keySet()) {
 			Tuple<String, String> xpathTests = repeatableTypes.get(repeatableType);
 
-			if (getXPath(xpathTests.left()).booleanValueOf(cotMsg.getDocument())) {
+			if (cotMsg.matchXPath(getXPath(xpathTests.left()))) {
 				return new Tuple<Boolean, String> (true, repeatableType);
 			}
 		}
@@ -2,15 +2,21 @@
 
 package com.bbn.marti.service;
 
+import java.io.IOException;
+import java.nio.channels.Channels;
+import java.nio.channels.SeekableByteChannel;
 import java.sql.BatchUpdateException;
 import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.sql.SQLRecoverableException;
+import java.sql.SQLTransientConnectionException;
 import java.sql.Timestamp;
 import java.text.SimpleDateFormat;
 import java.util.ArrayList;
 import java.util.Calendar;
+import java.util.Collections;
 import java.util.Date;
 import java.util.GregorianCalendar;
 import java.util.HashMap;
@@ -21,6 +27,8 @@ import java.util.SimpleTimeZone;
 import java.util.TimeZone;
 import java.util.UUID;
 import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 
 import jakarta.annotation.PostConstruct;
 import javax.naming.NamingException;
@@ -54,6 +62,7 @@ import com.bbn.marti.remote.QueueMetric;
 import com.bbn.marti.remote.exception.TakException;
 import com.bbn.marti.remote.groups.Group;
 import com.bbn.marti.remote.sync.MissionMetadata;
+import com.bbn.marti.remote.sync.ResourceContentStore;
 import com.bbn.marti.remote.util.DateUtil;
 import com.bbn.marti.remote.util.RemoteUtil;
 import com.bbn.marti.remote.util.SecureXmlParser;
@@ -83,6 +92,9 @@ public class RepositoryService extends BaseService {
     @Autowired
     private CoTCacheHelper cotCacheHelper;
 
+	@Autowired
+	private ResourceContentStore contentStore;
+
 	private static RepositoryService instance = null;
 
 	public static RepositoryService getInstance() {
@@ -101,6 +113,11 @@ public class RepositoryService extends BaseService {
 
 	private FixedSizeBlockingQueue<CotEventContainer> inputQueue = new FixedSizeBlockingQueue<CotEventContainer>();
 
+	// messages that couldn't be archived, if repository spillEnabled is set
+	private ArchiveSpill spill = null;
+
+	// cleared when a batch can't be archived for want of a database connection, and set again once the database can be reached
+	private volatile boolean databaseAvailable = true;
 
 	private static final Calendar utcCalendar = new GregorianCalendar(TimeZone.getTimeZone("GMT"));
 
@@ -126,6 +143,37 @@ public class RepositoryService extends BaseService {
 		return "Repository";
 	}
 
+	@Override
+	public void startService() {
+
+		Repository repository = CoreConfigFacade.getInstance().getRemoteConfiguration().getRepository();
+
+		if (repository.isSpillEnabled()) {
+			try {
+				spill = new ArchiveSpill(repository, INSERTION_BATCH_SIZE);
+
+				Resources.repositorySpillPool.scheduleWithFixedDelay(this::replaySpill, 1, 1, TimeUnit.SECONDS);
+			} catch (Exception e) {
+				log.error("unable to open spill log in " + repository.getSpillDirectory() + ". Messages that can't be archived will be dropped.", e);
+			}
+		}
+
+		super.startService();
+	}
+
+	@Override
+	public void stopService(boolean wait) {
+		super.stopService(wait);
+
+		if (spill != null) {
+			try {
+				spill.close();
+			} catch (IOException e) {
+				log.error("exception closing spill log", e);
+			}
+		}
+	}
+
 	@Override
 	public boolean addToInputQueue(CotEventContainer c) {
 
@@ -155,7 +203,12 @@ public class RepositoryService extends BaseService {
 	        log.debug("exception checking archive flag in message", e);
 	    }
 
-		return inputQueue.add(c);
+		if (inputQueue.add(c)) {
+			return true;
+		}
+
+		// the database isn't keeping up
+		return spill(Collections.singletonList(c));
 	}
 
 	@Override
@@ -167,9 +220,7 @@ public class RepositoryService extends BaseService {
 
 			CotEventContainer element = inputQueue.take(); // block for first message in batch
 
-			if (element.getType().startsWith("b-t-f") &&
-					element.getDocument().selectNodes(
-							"/event/detail/marti/dest[@mission]").size() == 0) {
+			if (isChat(element)) {
 				chat_batch.add(element);
 			} else {
 				batch.add(element);
@@ -181,9 +232,7 @@ public class RepositoryService extends BaseService {
 				element = inputQueue.poll();
 
 				if (element != null) {
-					if (element.getType().startsWith("b-t-f") &&
-							element.getDocument().selectNodes(
-									"/event/detail/marti/dest[@mission]").size() == 0) {
+					if (isChat(element)) {
 						chat_batch.add(element);
 					} else {
 						batch.add(element);
@@ -192,6 +241,13 @@ public class RepositoryService extends BaseService {
 			}
 		} catch (InterruptedException e) { }
 
+		// while the database is unavailable, spill batches instead of tying up persistence threads waiting for connections
+		if (spill != null && !databaseAvailable) {
+			spill(batch);
+			spill(chat_batch);
+			return;
+		}
+
 		if (!batch.isEmpty()) {
 
 			try {
@@ -217,6 +273,8 @@ public class RepositoryService extends BaseService {
 			} catch (RejectedExecutionException ree) {
 				// count how often full queue has blocked message send
 				Metrics.counter(Constants.METRIC_REPOSITORY_QUEUE_FULL_SKIP).increment();
+
+				spill(batch);
 			};
 		}
 
@@ -245,16 +303,33 @@ public class RepositoryService extends BaseService {
 			} catch (RejectedExecutionException ree) {
 				// count how often full queue has blocked message send
 				Metrics.counter(Constants.METRIC_REPOSITORY_QUEUE_FULL_SKIP).increment();
+
+				spill(chat_batch);
 			}
 		}
 	}
 
+	private static boolean isChat(CotEventContainer event) {
+		return event.getType().startsWith("b-t-f") && !event.matchXPath("/event/detail/marti/dest[@mission]");
+	}
 	private static final String cotRouterTableName = "cot_router";
 	private static final String cotRouterChatTableName = "cot_router_chat";
 
 	private static final Filter<CotEventContainer> imageFilter = new ImageFormattingFilter(ImagePref.DATABASE);
 
+	private final CotRouterBulkLoader bulkLoader = new CotRouterBulkLoader();
+
 	public void insertBatchCotData(List<CotEventContainer> events) {
+		if (!archiveCotBatch(events)) {
+			spillUnarchived(events);
+		}
+	}
+
+	/*
+	 * Archive a batch of messages in cot_router. Returns false if the database couldn't be reached, in which case none of the batch was
+	 * archived. Messages that the database rejects are logged and dropped.
+	 */
+	private boolean archiveCotBatch(List<CotEventContainer> events) {
 
 		try (Connection connection = dataSource.getConnection()) {
 			LinkedList<CotEventContainer> dataFeedEvents = new LinkedList<>();
@@ -267,42 +342,24 @@ public class RepositoryService extends BaseService {
 							+ "id, servertime, caveat, releaseableto) VALUES "
 							+ "(?,ST_GeometryFromText(?, 4326),?,?,?,?,?,?,?,?,?,?,?,?,(?)::bit(" + RemoteUtil.GROUPS_BIT_VECTOR_LEN + "), nextval('cot_router_seq'),?,?,?) ")) {
 
+				List<CotEventContainer> cotEvents = new ArrayList<>(events.size());
+
 				// formats each cot message as we iterate over it
 				Iterable<CotEventContainer> imageFormattedEvents = Iterables.filter(events, imageFilter);
-				LinkedList<CotEventContainer> toRemove = new LinkedList<>();
 				for (CotEventContainer event : imageFormattedEvents) {
 					try {
-						boolean[] groupsBitVector = new boolean[RemoteUtil.GROUPS_BIT_VECTOR_LEN];
-
-						if (event.getContextValue(Constants.GROUPS_KEY) != null) {
-							try {
-								@SuppressWarnings("unchecked")
-								NavigableSet<Group> groups = (NavigableSet<Group>) event.getContextValue(Constants.GROUPS_KEY);
-
-								if (log.isDebugEnabled()) {
-									log.debug("groups for message: " + event + ": " + groups);
-								}
+						boolean[] groupsBitVector = groupsBitVector(event);
 
-								groupsBitVector = RemoteUtil.getInstance().getBitVectorForGroups(groups);
+						// messages replayed from the spill log are older than what has been cached since
+						if (event.getContextValue(Constants.GROUPS_KEY) != null && !event.hasContextKey(ArchiveSpill.REPLAYED_KEY) &&
+								CoreConfigFacade.getInstance().getRemoteConfiguration().getBuffer().getQueue().isCacheCotInRepository()) {
 
-								final boolean[] fgroupBitVector = groupsBitVector;
+							final boolean[] fgroupBitVector = groupsBitVector;
 
-								if (CoreConfigFacade.getInstance().getRemoteConfiguration().getBuffer().getQueue().isCacheCotInRepository()) {
-									// cache latest CoT for each uid
-									Resources.messageCacheProcessor.execute(() -> {
-										cotCacheHelper.cacheCoT(event, RemoteUtil.getInstance().bitVectorToString(fgroupBitVector));
-									});
-								}
-
-							} catch (ClassCastException e) {
-								if (log.isDebugEnabled()) {
-									log.debug("Not trying to get group info for message with invalid type of groups object: " + event);
-								}
-							}
-						} else {
-							if (log.isDebugEnabled()) {
-                                log.debug("Groups context key not set for message: " + event);
-                            }
+							// cache latest CoT for each uid
+							Resources.messageCacheProcessor.execute(() -> {
+								cotCacheHelper.cacheCoT(event, RemoteUtil.getInstance().bitVectorToString(fgroupBitVector));
+							});
 						}
 
 						if (Strings.isNullOrEmpty(event.getStart()) || Strings.isNullOrEmpty(event.getStale()) || Strings.isNullOrEmpty(event.getTime())) {
@@ -320,22 +377,46 @@ public class RepositoryService extends BaseService {
 							continue;
 						}
 
+						cotEvents.add(event);
+					} catch (Exception e) {
+						log.error("Error parsing CoT message for insert into DB: " + e.toString(), e);
+					}
+				}
+
+				if (isCopyInsert()) {
+					try {
+						bulkLoader.copyCotBatch(connection, cotEvents, dataFeedEvents);
+						return true;
+					} catch (Exception e) {
+						Metrics.counter(Constants.METRIC_REPOSITORY_COPY_FALLBACK).increment();
+
+						log.warn("unable to COPY CoT batch, inserting instead: " + e.getMessage());
+
+						if (log.isDebugEnabled()) {
+							log.debug("exception executing CoT COPY batch ", e);
+						}
+					}
+				}
+
+				for (CotEventContainer event : cotEvents) {
+					try {
 						setCotQueryParams(cotRouterInsert, event);
 
 						cotRouterInsert.addBatch();
 					} catch (Exception e) {
 						log.error("Error parsing CoT message for insert into DB: " + e.toString(), e);
 						cotRouterInsert.clearBatch();
-						toRemove.add(event);
 					}
 				}
-				for (CotEventContainer event : toRemove) {
-					events.remove(event);
-				}
 				cotRouterInsert.executeBatch();
 
 			} catch (SQLException e) {
 
+				if (isConnectionFailure(e)) {
+					log.warn("database unavailable, unable to archive CoT batch: " + e.getMessage());
+					return false;
+				}
+
 				if (log.isDebugEnabled()) {
 					log.debug("exception executing CoT insert batch ", e);
 				}
@@ -343,54 +424,98 @@ public class RepositoryService extends BaseService {
 
 			archiveBatchDataFeedCot(dataFeedEvents, connection);
 
+			return true;
+
 		} catch (SQLException eee) {
 			if (log.isWarnEnabled()) {
 				log.warn("unable to obtain database connection");
 			}
+			return false;
 		}
 	}
 
-	private void setCotQueryParams(PreparedStatement dataFeedInsert, CotEventContainer event) throws SQLException {
+	private boolean[] groupsBitVector(CotEventContainer event) {
 
-		dataFeedInsert.setString(1, event.getUid());
-		dataFeedInsert.setString(2, "POINT(" + event.getLon() + " "
-				+ event.getLat() + ")");
-		dataFeedInsert.setString(3, event.getType());
+		boolean[] groupsBitVector = new boolean[RemoteUtil.GROUPS_BIT_VECTOR_LEN];
 
-		dataFeedInsert.setTimestamp(4, new Timestamp(DatatypeConverter
-				.parseDateTime(event.getStart()).getTimeInMillis()), utcCalendar);
-		dataFeedInsert.setTimestamp(5, new Timestamp(DatatypeConverter
-				.parseDateTime(event.getTime()).getTimeInMillis()), utcCalendar);
-		dataFeedInsert.setTimestamp(6, new Timestamp(DatatypeConverter
-				.parseDateTime(event.getStale()).getTimeInMillis()), utcCalendar);
+		if (event.getContextValue(Constants.GROUPS_KEY) != null) {
+			try {
+				@SuppressWarnings("unchecked")
+				NavigableSet<Group> groups = (NavigableSet<Group>) event.getContextValue(Constants.GROUPS_KEY);
 
-		dataFeedInsert.setString(7, event.getDetailXml());
-		dataFeedInsert.setString(8, event.getAccess());
-		dataFeedInsert.setString(9, event.getQos());
-		dataFeedInsert.setString(10, event.getOpex());
-		dataFeedInsert.setString(11, event.getHow());
-		dataFeedInsert.setDouble(12, event.getHae());
-		dataFeedInsert.setDouble(13, event.getCe());
-		dataFeedInsert.setDouble(14, event.getLe());
-
-		dataFeedInsert.setString(15, RemoteUtil.getInstance().bitVectorToString((boolean[]) event.getContext(Constants.GROUPS_BIT_VECTOR_KEY)));
-
-		//
-		// check to see if this event has serverTime (set by SubmissionService.processNextEvent)
-		//
-		String serverTime;
+				if (log.isDebugEnabled()) {
+					log.debug("groups for message: " + event + ": " + groups);
+				}
+
+				groupsBitVector = RemoteUtil.getInstance().getBitVectorForGroups(groups);
+
+			} catch (ClassCastException e) {
+				if (log.isDebugEnabled()) {
+					log.debug("Not trying to get group info for message with invalid type of groups object: " + event);
+				}
+			}
+		} else {
+			if (log.isDebugEnabled()) {
+				log.debug("Groups context key not set for message: " + event);
+			}
+		}
+
+		return groupsBitVector;
+	}
+
+	private boolean isCopyInsert() {
+		return CoreConfigFacade.getInstance().getRemoteConfiguration().getRepository().isCopyInsert();
+	}
+
+	//
+	// check to see if this event has serverTime (set by SubmissionService.processNextEvent)
+	//
+	static String serverTime(CotEventContainer event) {
 		if (event.hasServerTime()) {
-			serverTime = event.getTime();
+			return event.getTime();
 		} else {
-			serverTime = DateUtil.toCotTime(new Date().getTime());
+			return DateUtil.toCotTime(new Date().getTime());
 		}
-		dataFeedInsert.setTimestamp(16, new Timestamp(DatatypeConverter
-				.parseDateTime(serverTime).getTimeInMillis()), utcCalendar);
+	}
+
+	private void setCotQueryParams(PreparedStatement dataFeedInsert, CotEventContainer event) throws SQLException {
+
+		setCommonQueryParams(dataFeedInsert, event, event.getDetailXml(), RemoteUtil.getInstance().bitVectorToString((boolean[]) event.getContext(Constants.GROUPS_BIT_VECTOR_KEY)));
 
 		dataFeedInsert.setString(17, event.getCaveat());
 		dataFeedInsert.setString(18, event.getReleaseableTo());
 	}
 
+	// parameters shared by the cot_router and cot_router_chat inserts, up to and including servertime
+	private void setCommonQueryParams(PreparedStatement insert, CotEventContainer event, String detail, String groups) throws SQLException {
+
+		insert.setString(1, event.getUid());
+		insert.setString(2, "POINT(" + event.getLon() + " "
+				+ event.getLat() + ")");
+		insert.setString(3, event.getType());
+
+		insert.setTimestamp(4, new Timestamp(DatatypeConverter
+				.parseDateTime(event.getStart()).getTimeInMillis()), utcCalendar);
+		insert.setTimestamp(5, new Timestamp(DatatypeConverter
+				.parseDateTime(event.getTime()).getTimeInMillis()), utcCalendar);
+		insert.setTimestamp(6, new Timestamp(DatatypeConverter
+				.parseDateTime(event.getStale()).getTimeInMillis()), utcCalendar);
+
+		insert.setString(7, detail);
+		insert.setString(8, event.getAccess());
+		insert.setString(9, event.getQos());
+		insert.setString(10, event.getOpex());
+		insert.setString(11, event.getHow());
+		insert.setDouble(12, event.getHae());
+		insert.setDouble(13, event.getCe());
+		insert.setDouble(14, event.getLe());
+
+		insert.setString(15, groups);
+
+		insert.setTimestamp(16, new Timestamp(DatatypeConverter
+				.parseDateTime(serverTime(event)).getTimeInMillis()), utcCalendar);
+	}
+
 	// link the Cot UID to the data feed it came from
 	private void archiveBatchDataFeedCot(List<CotEventContainer> events, Connection connection) {
 
@@ -445,6 +570,16 @@ public class RepositoryService extends BaseService {
 	}
 
 	private void insertBatchChatData(List<CotEventContainer> events) {
+		if (!archiveChatBatch(events)) {
+			spillUnarchived(events);
+		}
+	}
+
+	/*
+	 * Archive a batch of chat messages in cot_router_chat. Returns false if the database couldn't be reached, in which case none of the
+	 * batch was archived. Messages that the database rejects are logged and dropped.
+	 */
+	private boolean archiveChatBatch(List<CotEventContainer> events) {
 		try (Connection connection = dataSource.getConnection()) {
 
 			try (PreparedStatement cotRouterChatInsert = connection.prepareStatement("INSERT INTO "
@@ -457,65 +592,14 @@ public class RepositoryService extends BaseService {
 					+ "(?,ST_GeometryFromText(?, 4326),?,?,?,?,?,?,?,?,?,?,?,?,(?)::bit(" +
 					RemoteUtil.GROUPS_BIT_VECTOR_LEN + "), nextval('cot_router_seq'),?,?,?,?,?,?) ")) {
 
-				LinkedList<CotEventContainer> toRemove = new LinkedList<>();
+				// a row for each destination of each message
+				List<CotRouterBulkLoader.ChatRow> rows = new ArrayList<>(events.size());
+
 				for (CotEventContainer event : events) {
 					try {
-						boolean[] groupsBitVector = new boolean[RemoteUtil.GROUPS_BIT_VECTOR_LEN];
-
-						if (event.getContextValue(Constants.GROUPS_KEY) != null) {
-							try {
-								@SuppressWarnings("unchecked")
-								NavigableSet<Group> groups = (NavigableSet<Group>) event.getContextValue(Constants.GROUPS_KEY);
-
-								if (log.isDebugEnabled()) {
-									log.debug("groups for message: " + event + ": " + groups);
-								}
-
-								groupsBitVector = RemoteUtil.getInstance().getBitVectorForGroups(groups);
-
-							} catch (ClassCastException e) {
-								if (log.isDebugEnabled()) {
-									log.debug("Not trying to get group info for message with invalid type of groups object: " + event);
-								}
-							}
-						} else {
-							if (log.isDebugEnabled()) {
-							log.debug("Groups context key not set for message: " + event);
-						}
-						}
+						String groups = RemoteUtil.getInstance().bitVectorToString(groupsBitVector(event));
 
-						cotRouterChatInsert.setString(1, event.getUid());
-						cotRouterChatInsert.setString(2, "POINT(" + event.getLon() + " "
-								+ event.getLat() + ")");
-						cotRouterChatInsert.setString(3, event.getType());
-						cotRouterChatInsert.setTimestamp(4, new Timestamp(DatatypeConverter
-								.parseDateTime(event.getStart()).getTimeInMillis()), utcCalendar);
-						cotRouterChatInsert.setTimestamp(5, new Timestamp(DatatypeConverter
-								.parseDateTime(event.getTime()).getTimeInMillis()), utcCalendar);
-						cotRouterChatInsert.setTimestamp(6, new Timestamp(DatatypeConverter
-								.parseDateTime(event.getStale()).getTimeInMillis()), utcCalendar);
-						cotRouterChatInsert.setString(7, event.getDetailXml());
-						cotRouterChatInsert.setString(8, event.getAccess());
-						cotRouterChatInsert.setString(9, event.getQos());
-						cotRouterChatInsert.setString(10, event.getOpex());
-						cotRouterChatInsert.setString(11, event.getHow());
-						cotRouterChatInsert.setDouble(12, event.getHae());
-						cotRouterChatInsert.setDouble(13, event.getCe());
-						cotRouterChatInsert.setDouble(14, event.getLe());
-						cotRouterChatInsert.setString(15, RemoteUtil.getInstance().
-								bitVectorToString(groupsBitVector));
-
-						//
-						// check to see if this event has serverTime (set by SubmissionService.processNextEvent)
-						//
-						String serverTime;
-						if (event.hasServerTime()) {
-							serverTime = event.getTime();
-						} else {
-							serverTime = DateUtil.toCotTime(new Date().getTime());
-						}
-						cotRouterChatInsert.setTimestamp(16, new Timestamp(DatatypeConverter
-								.parseDateTime(serverTime).getTimeInMillis()), utcCalendar);
+						String detailXml = event.getDetailXml();
 
 						//
 						// Parse out the dest_uid from the chat message
@@ -576,7 +660,7 @@ public class RepositoryService extends BaseService {
 						LinkedList<String> allGroupUids = new LinkedList<>();
 
 						try {
-							Document detailDocument = SecureXmlParser.makeDocument(event.getDetailXml());
+							Document detailDocument = SecureXmlParser.makeDocument(detailXml);
 							org.w3c.dom.Node detail = detailDocument.getElementsByTagName("detail").item(0);
 							NodeList detailList = detail.getChildNodes();
 
@@ -639,10 +723,11 @@ public class RepositoryService extends BaseService {
 
 						String destCallsign = null;
 						List<Node> callsignDestList = event.getDocument().selectNodes(CALLSIGN_DEST_XPATH);
+						// the destinations are left in the message, so that it can be spilled if the batch can't be archived
 						for (Node destElem : callsignDestList) {
-							Element detached = (Element) destElem.detach();
-							if (detached.attribute("callsign") != null) {
-								destCallsign = detached.attributeValue("callsign");
+							Element dest = (Element) destElem;
+							if (dest.attribute("callsign") != null) {
+								destCallsign = dest.attributeValue("callsign");
 								// if we haven't gotten the destUid from the chatgrp above, we must have a group
 								// chat message, so get the destUid from the callsignUid map
 								if (destUid == null) {
@@ -657,44 +742,175 @@ public class RepositoryService extends BaseService {
 							continue;
 						}
 
-						cotRouterChatInsert.setString(17, senderCallsign);
-						cotRouterChatInsert.setString(18, destCallsign);
-						cotRouterChatInsert.setString(20, remarks);
-						cotRouterChatInsert.setString(21, chatRoom);
-
 						if (destUid != null) {
-							cotRouterChatInsert.setString(19, destUid);
-							cotRouterChatInsert.addBatch();
-						} else if (allGroupUids.size() != 0) {
+							rows.add(new CotRouterBulkLoader.ChatRow(event, detailXml, groups, senderCallsign, destCallsign, destUid, remarks, chatRoom));
+						} else {
 							for (String allGroupUid : allGroupUids) {
-								cotRouterChatInsert.setString(19, allGroupUid);
-								cotRouterChatInsert.addBatch();
+								rows.add(new CotRouterBulkLoader.ChatRow(event, detailXml, groups, senderCallsign, destCallsign, allGroupUid, remarks, chatRoom));
 							}
 						}
 
 					} catch (Exception e) {
 						log.error("Error parsing chat message for insert into DB: " + e.toString(), e);
-						cotRouterChatInsert.clearBatch();
-						toRemove.add(event);
 					}
 				}
-				for (CotEventContainer event : toRemove) {
-					events.remove(event);
+
+				if (isCopyInsert()) {
+					try {
+						bulkLoader.copyChatBatch(connection, rows);
+						return true;
+					} catch (Exception e) {
+						Metrics.counter(Constants.METRIC_REPOSITORY_COPY_FALLBACK).increment();
+
+						log.warn("unable to COPY chat batch, inserting instead: " + e.getMessage());
+
+						if (log.isDebugEnabled()) {
+							log.debug("exception executing chat COPY batch ", e);
+						}
+					}
+				}
+
+				for (CotRouterBulkLoader.ChatRow row : rows) {
+					try {
+						setCommonQueryParams(cotRouterChatInsert, row.event, row.detail, row.groups);
+
+						cotRouterChatInsert.setString(17, row.senderCallsign);
+						cotRouterChatInsert.setString(18, row.destCallsign);
+						cotRouterChatInsert.setString(19, row.destUid);
+						cotRouterChatInsert.setString(20, row.remarks);
+						cotRouterChatInsert.setString(21, row.chatRoom);
+
+						cotRouterChatInsert.addBatch();
+					} catch (Exception e) {
+						log.error("Error parsing chat message for insert into DB: " + e.toString(), e);
+						cotRouterChatInsert.clearBatch();
+					}
 				}
 				cotRouterChatInsert.executeBatch();
 
 			} catch (SQLException e) {
 
+				if (isConnectionFailure(e)) {
+					log.warn("database unavailable, unable to archive chat batch: " + e.getMessage());
+					return false;
+				}
+
 				if (log.isDebugEnabled()) {
 					log.debug("exception executing chat insert batch ", e);
 				}
 			}
 
+			return true;
+
 		} catch (SQLException eee) {
 			if (log.isWarnEnabled()) {
 				log.warn("unable to obtain database connection");
 			}
+			return false;
+		}
+	}
+
+	// whether an exception means the database couldn't be reached, rather than that it rejected the batch
+	private static boolean isConnectionFailure(SQLException e) {
+		for (Throwable t : e) {
+			if (t instanceof SQLTransientConnectionException || t instanceof SQLRecoverableException) {
+				return true;
+			}
+
+			// SQLSTATE class 08, connection exception
+			if (t instanceof SQLException && ((SQLException) t).getSQLState() != null && ((SQLException) t).getSQLState().startsWith("08")) {
+				return true;
+			}
 		}
+
+		return false;
+	}
+
+	/*
+	 * Spill messages that couldn't be archived, if the spill log is enabled. Returns false if they were dropped.
+	 */
+	private boolean spill(List<CotEventContainer> events) {
+		if (spill == null || events.isEmpty()) {
+			return false;
+		}
+
+		return spill.spill(events);
+	}
+
+	// spill a batch that couldn't be archived because the database was unavailable
+	private void spillUnarchived(List<CotEventContainer> events) {
+		if (spill != null) {
+			databaseAvailable = false;
+			spill(events);
+		}
+	}
+
+	/*
+	 * Periodically archive spilled messages, at up to repository spillReplayRate messages per second, once the database is available
+	 * again. Also writes the spill log through to disk.
+	 */
+	private void replaySpill() {
+		try {
+			spill.force();
+
+			if (!databaseAvailable) {
+				try {
+					testDatabaseConnection();
+				} catch (Exception e) {
+					return;
+				}
+
+				databaseAvailable = true;
+
+				log.info("database available, archiving " + spill.getSize().get() + " spilled messages");
+			}
+
+			if (spill.getSize().get() == 0) {
+				return;
+			}
+
+			// leave the database to live traffic while the input queue is backing up
+			QueueMetric queueMetric = inputQueue.getQueueMetrics();
+			if (queueMetric.currentSize.get() > queueMetric.capacity.get() / 2) {
+				return;
+			}
+
+			spill.replay(CoreConfigFacade.getInstance().getRemoteConfiguration().getRepository().getSpillReplayRate(), this::archiveReplayed);
+
+		} catch (Exception e) {
+			log.error("exception archiving spilled messages", e);
+		}
+	}
+
+	private boolean archiveReplayed(List<CotEventContainer> events) {
+
+		List<CotEventContainer> cotEvents = new ArrayList<>(events.size());
+		List<CotEventContainer> chatEvents = new ArrayList<>();
+
+		for (CotEventContainer event : events) {
+			if (isChat(event)) {
+				chatEvents.add(event);
+			} else {
+				cotEvents.add(event);
+			}
+		}
+
+		if (!cotEvents.isEmpty()) {
+			if (!archiveCotBatch(cotEvents)) {
+				databaseAvailable = false;
+				return false;
+			}
+
+			// so that the CoT isn't archived again if the chat can't be
+			cotEvents.forEach((event) -> event.setContext(ArchiveSpill.ARCHIVED_KEY, true));
+		}
+
+		if (!chatEvents.isEmpty() && !archiveChatBatch(chatEvents)) {
+			databaseAvailable = false;
+			return false;
+		}
+
+		return true;
 	}
 
 	public List<CotElement> getChatMessagesForUidSinceLastDisconnect(String uid, long storeForwardQueryBufferMs, String groupVector) {
@@ -1026,6 +1242,7 @@ public class RepositoryService extends BaseService {
 
 	public byte[] getContentByHash(String hash) throws SQLException, NamingException {
 		byte[] result = null;
+		boolean found = false;
 		try (Connection conn = getConnection(); PreparedStatement query = conn.prepareStatement("SELECT data FROM resource WHERE hash = ? ")) {
 
 			query.setString(1, hash);
@@ -1037,9 +1254,22 @@ public class RepositoryService extends BaseService {
 			try (ResultSet queryResults = query.executeQuery()) {
 				if (queryResults.next()) {
 					result = queryResults.getBytes(1);
+					found = true;
+				}
+			}
+		}
+
+		// content in the content store has no data in its resource row
+		if (found && result == null) {
+			try (SeekableByteChannel channel = contentStore.open(hash)) {
+				if (channel != null) {
+					result = Channels.newInputStream(channel).readAllBytes();
 				}
+			} catch (IOException e) {
+				throw new TakException("exception reading content for hash " + hash + " from the content store", e);
 			}
 		}
+
 		return result;
 	}
 
@@ -1047,6 +1277,21 @@ public class RepositoryService extends BaseService {
 		return inputQueue.getQueueMetrics();
 	}
 
+	// number of spilled messages waiting to be archived
+	public AtomicLong getSpillSize() {
+		return spill == null ? new AtomicLong() : spill.getSize();
+	}
+
+	// size of the spill log on disk, in bytes
+	public AtomicLong getSpillBytes() {
+		return spill == null ? new AtomicLong() : spill.getBytes();
+	}
+
+	// age of the oldest spilled message waiting to be archived, in milliseconds
+	public AtomicLong getSpillReplayLag() {
+		return spill == null ? new AtomicLong() : spill.getReplayLag();
+	}
+
 	public void testDatabaseConnection() throws Exception {
 		try (Connection connection = getConnection(); PreparedStatement sql = connection.prepareStatement("select 1")) {
 			sql.execute();
@@ -143,6 +143,9 @@ public class Resources {
 	// pool for testing database connection
 	public static final ScheduledExecutorService dbHealthThreadPool = !IS_LOW_CORE ? newScheduledExecutor("DBHealthPool", 1) : lowCoreScheduledExecutorService;
 
+	// pool for archiving messages spilled to disk by the repository
+	public static final ScheduledExecutorService repositorySpillPool = !IS_LOW_CORE ? newScheduledExecutor("RepositorySpillPool", 1) : lowCoreScheduledExecutorService;
+
 	// pool for repeaters and federate health check messages
 	public static final ScheduledExecutorService repeaterPool = !IS_LOW_CORE ? newScheduledExecutor("RepeaterPool", 1) : lowCoreScheduledExecutorService;
 
@@ -184,6 +187,10 @@ public class Resources {
 	// producer-consumer pool for message writes. This pool will be busy under load.
 	public static final ExecutorService messageWritePoolExecutor = !IS_LOW_CORE ? newExecutorService("messageWritePoolExecutor", 1, 1, queue.getMessageWriteExecutorQueueSize()) : lowCoreExecutorService;
 
+	// single threaded brokering pipelines, used in place of brokerMatchingProcessor, messageProcessor and messageCopyProcessor when pipelined brokering is enabled. Each
+	// message is brokered on the shard selected by its sender, so that messages from each sender are brokered in order.
+	public static final ExecutorService[] brokerShardProcessors = queue.isPipelinedBrokering() ? newShardedExecutors("BrokerShard", queue.getBrokerShards() > 0 ? queue.getBrokerShards() : NUM_AVAIL_CORES) : null;
+
 	public static final ExecutorService messageSendExecutor = !IS_LOW_CORE ? newExecutorService("MessageSendExecutor", POOL_SIZE_INITIAL, POOL_SIZE_MAX) : lowCoreExecutorService;
 
 	// Bounded Executor pool for federation grpc server and channel builders
@@ -222,6 +229,17 @@ public class Resources {
 		return new TakServerThreadPoolExecutor(initialPoolSize, maxPoolSize, 60L, TimeUnit.SECONDS, workQueue, threadFactory);
 	}
 
+	private static ExecutorService[] newShardedExecutors(String name, int shards) {
+
+		ExecutorService[] executors = new ExecutorService[shards];
+
+		for (int i = 0; i < shards; i++) {
+			executors[i] = newExecutorService(name + i, 1, 1);
+		}
+
+		return executors;
+	}
+
 	private static ScheduledExecutorService newScheduledExecutor(String name, int size) {
 		
 		ThreadFactory threadFactory =
@@ -1155,7 +1155,7 @@ public class SubmissionService extends BaseService implements MessagingConfigura
                 //
                 if (sub.incognito
                 &&  !isControlMessage(data.getType())
-                &&  data.getDocument().selectNodes("/event/detail/marti/dest[@callsign]").size() == 0) {
+                &&  !data.matchXPath("/event/detail/marti/dest[@callsign]")) {
                     return;
                 }
 
@@ -1282,8 +1282,7 @@ public class SubmissionService extends BaseService implements MessagingConfigura
                         if (groups != null) {
 
                         	if (postMissionEventsAsPublic || alwaysArchiveMissionCot) {
-								if (data.getDocument().selectNodes(
-										"/event/detail/marti/dest[@mission]").size() > 0) {
+								if (data.matchXPath("/event/detail/marti/dest[@mission]")) {
 
 									if (postMissionEventsAsPublic) {
 										//make a copy of the group set so we don't modify the actual user
@@ -1759,7 +1758,7 @@ public class SubmissionService extends BaseService implements MessagingConfigura
 
 		Configuration config = CoreConfigFacade.getInstance().getRemoteConfiguration();
 
-        if (config.getFilter().getFlowtag().isEnable() && c.matchXPath("/event/detail/_flow-tags_[@" + flowTagFilter.flowTag() + "]")) {
+        if (config.getFilter().getFlowtag().isEnable() && flowTagFilter.hasFlowTag(c)) {
             //we've already processed this message, throw it away
         	logger.error("Duplicate message - already processed by this takserver");
 
@@ -1895,7 +1894,7 @@ public class SubmissionService extends BaseService implements MessagingConfigura
                     	if (logger.isDebugEnabled()) {
                     		logger.debug("updating subscription: " + subscription);
                     	}
-                        subscription.xpath = xpath;
+                        subscription.setXpath(xpath);
                     } else {
                         logger.warn("can't update a subscription that doesn't exist");
                     }
@@ -22,6 +22,7 @@ import com.bbn.marti.nio.codec.Codec;
 import com.bbn.marti.nio.protocol.Protocol;
 import com.bbn.marti.nio.server.NioServer;
 import com.bbn.marti.remote.RemoteSubscription;
+import com.bbn.marti.remote.groups.User;
 import com.bbn.marti.util.Assertion;
 import com.bbn.marti.util.Tuple;
 import com.bbn.marti.util.MessageConversionUtil;
@@ -31,7 +32,9 @@ import com.bbn.marti.remote.util.SpringContextBeanForApi;
 
 import com.bbn.marti.remote.config.CoreConfigFacade;
 import tak.server.cluster.ClusterManager;
+import tak.server.cot.CompiledXPath;
 import tak.server.cot.CotEventContainer;
+import tak.server.cot.XPathCache;
 import tak.server.ignite.IgniteHolder;
 import tak.server.ignite.cache.IgniteCacheHolder;
 
@@ -59,9 +62,39 @@ public class Subscription extends RemoteSubscription {
 	List<DropEventFilter> dropFilters = null;
 	public GeospatialEventFilter geospatialEventFilter = null;
 
+	// compiled form of xpath, for matching. Recompiled on access if xpath has been reassigned.
+	private transient volatile CompiledXPath compiledXpath = null;
+
 	// keep a fresh SA message for this subscription so that it can be disseminated when required
 	protected CotEventContainer latestSA;
 
+	public void setXpath(String xpath) {
+		this.xpath = xpath;
+
+		getCompiledXpath();
+	}
+
+	/*
+	 * Compiled form of the subscription xpath, or null if the subscription has no xpath
+	 */
+	public CompiledXPath getCompiledXpath() {
+
+		String expression = xpath;
+
+		if (expression == null || expression.trim().isEmpty()) {
+			return null;
+		}
+
+		CompiledXPath compiled = compiledXpath;
+
+		if (compiled == null || !compiled.getExpression().equals(expression)) {
+			compiled = XPathCache.compile(expression);
+			compiledXpath = compiled;
+		}
+
+		return compiled;
+	}
+
 	public CotEventContainer getLatestSA() {
 		return latestSA;
 	}
@@ -117,6 +150,14 @@ public class Subscription extends RemoteSubscription {
 		this.handler = handler;
 	}
 
+	@Override
+	public void setUser(User user) {
+		super.setUser(user);
+
+		// the receiver determines which group buckets this subscription is indexed under
+		SubscriptionMatchingIndex.invalidateSubscription(this);
+	}
+
 	public Subscription(RemoteSubscription sub, int ttl) throws IOException {
 		this(sub.to, ttl);
 	}
@@ -0,0 +1,572 @@
+package com.bbn.marti.service;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableSet;
+import java.util.Set;
+import java.util.WeakHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.bbn.marti.remote.groups.Direction;
+import com.bbn.marti.remote.groups.Group;
+
+/*
+ *
+ * Candidate index for implicit brokering. Subscriptions are bucketed by the bit positions of the OUT groups of their receiver,
+ * and split into federate and non-federate classes, so that a message only visits the subscriptions that could possibly be
+ * reachable from its IN groups.
+ *
+ * The index is an immutable snapshot. A change to a subscription (see refresh()) or to the groups of a receiver (see
+ * invalidateReceiver()) replaces only the buckets of the subscriptions it affects, in a new snapshot published before the change
+ * returns. invalidate() is for changes that can't be attributed to a subscription or receiver, and rebuilds the whole snapshot
+ * lazily.
+ *
+ * The index only narrows the candidate set. All per-subscription checks (reachability, handler, filters, self-echo, classification)
+ * are still applied by the caller, so semantics are identical to a full scan.
+ *
+ */
+public class SubscriptionMatchingIndex<S> {
+
+	private static final Logger logger = LoggerFactory.getLogger(SubscriptionMatchingIndex.class);
+
+	// bumped on every change that requires a full rebuild of every index
+	private static final AtomicLong generation = new AtomicLong(1L);
+
+	// live indexes, told of changes to subscriptions and receivers
+	private static final Set<SubscriptionMatchingIndex<?>> indexes = Collections.synchronizedSet(Collections.newSetFromMap(new WeakHashMap<>()));
+
+	public static void invalidate() {
+		generation.incrementAndGet();
+	}
+
+	/*
+	 * Re-index a subscription held by any index, after its receiver changed.
+	 */
+	public static void invalidateSubscription(Object subscription) {
+		synchronized (indexes) {
+			for (SubscriptionMatchingIndex<?> index : indexes) {
+				index.refreshIndexed(subscription);
+			}
+		}
+	}
+
+	/*
+	 * Re-index the subscriptions of a receiver in every index, after its groups changed.
+	 */
+	public static void invalidateReceiver(Object receiver) {
+		synchronized (indexes) {
+			for (SubscriptionMatchingIndex<?> index : indexes) {
+				index.refreshReceiver(receiver);
+			}
+		}
+	}
+
+	private final Supplier<Collection<S>> subscriptionSource;
+
+	private final Predicate<S> present;
+
+	private final Function<S, Object> receiver;
+
+	private final Function<S, Collection<Group>> receiverGroups;
+
+	private final Predicate<S> federate;
+
+	// guards changes to the snapshot, and the state below
+	private final ReentrantLock lock = new ReentrantLock();
+
+	private volatile Snapshot<S> snapshot = null;
+
+	private final Map<S, Entry<S>> entries = new IdentityHashMap<>();
+
+	private final Map<Object, List<S>> receiverSubscriptions = new HashMap<>();
+
+	private final Deque<Integer> freeOrdinals = new ArrayDeque<>();
+
+	private int nextOrdinal = 0;
+
+	/*
+	 * subscriptionSource supplies every subscription for a full rebuild, and present tells whether a subscription is still among
+	 * them. receiver is the key under which a subscription is re-indexed by invalidateReceiver().
+	 */
+	public SubscriptionMatchingIndex(Supplier<Collection<S>> subscriptionSource, Predicate<S> present, Function<S, Object> receiver,
+			Function<S, Collection<Group>> receiverGroups, Predicate<S> federate) {
+		this.subscriptionSource = subscriptionSource;
+		this.present = present;
+		this.receiver = receiver;
+		this.receiverGroups = receiverGroups;
+		this.federate = federate;
+
+		indexes.add(this);
+	}
+
+	/*
+	 * Visit each candidate subscription for a message having the given source groups, at most once.
+	 *
+	 * Returns false, without visiting anything, if the index can't be used for this message - either because a full rebuild is
+	 * pending and another thread is doing it, or because a source IN group has no assigned bit position. In that case the caller
+	 * must fall back to a full scan.
+	 *
+	 */
+	public boolean forEachCandidate(NavigableSet<Group> srcGroups, boolean includeFederates, Consumer<S> action) {
+
+		Snapshot<S> current = currentSnapshot();
+
+		if (current == null) {
+			return false;
+		}
+
+		List<Entry<S>[]> buckets = new ArrayList<>(4);
+
+		for (Group group : srcGroups) {
+
+			if (group.getDirection() != Direction.IN) {
+				continue;
+			}
+
+			Integer bitpos = group.getBitpos();
+
+			if (bitpos == null) {
+				return false;
+			}
+
+			if (bitpos >= 0 && bitpos < current.local.length) {
+				addBucket(buckets, current.local[bitpos]);
+
+				if (includeFederates) {
+					addBucket(buckets, current.federate[bitpos]);
+				}
+			}
+		}
+
+		addBucket(buckets, current.unindexed);
+
+		if (buckets.isEmpty()) {
+			return true;
+		}
+
+		if (buckets.size() == 1) {
+			// common case - no need to de-duplicate
+			for (Entry<S> entry : buckets.get(0)) {
+				if (includeFederates || !entry.federate) {
+					action.accept(entry.subscription);
+				}
+			}
+
+			return true;
+		}
+
+		// a receiver can be in several of the source groups - visit it once
+		BitSet visited = new BitSet(current.ordinals);
+
+		for (Entry<S>[] bucket : buckets) {
+			for (Entry<S> entry : bucket) {
+				if ((includeFederates || !entry.federate) && !visited.get(entry.ordinal)) {
+					visited.set(entry.ordinal);
+					action.accept(entry.subscription);
+				}
+			}
+		}
+
+		return true;
+	}
+
+	/*
+	 * Index a subscription that was added, or re-index one that changed, or drop one that is no longer present.
+	 */
+	public void refresh(S subscription) {
+		lock.lock();
+		try {
+			Snapshot<S> current = snapshot;
+
+			// not built yet, so the first build will include it
+			if (current == null) {
+				return;
+			}
+
+			snapshot = reindex(current, Collections.singletonList(subscription));
+		} catch (Exception e) {
+			logger.warn("exception updating subscription matching index", e);
+			invalidate();
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	public int size() {
+		Snapshot<S> current = snapshot;
+
+		return current == null ? 0 : current.size;
+	}
+
+	@SuppressWarnings("unchecked")
+	private void refreshIndexed(Object subscription) {
+		lock.lock();
+		try {
+			// only the subscriptions of this index are in entries
+			Entry<S> entry = entries.get(subscription);
+
+			if (entry != null) {
+				snapshot = reindex(snapshot, Collections.singletonList((S) subscription));
+			}
+		} catch (Exception e) {
+			logger.warn("exception updating subscription matching index", e);
+			invalidate();
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	private void refreshReceiver(Object receiverKey) {
+		lock.lock();
+		try {
+			List<S> subscriptions = receiverSubscriptions.get(receiverKey);
+
+			if (subscriptions != null) {
+				snapshot = reindex(snapshot, new ArrayList<>(subscriptions));
+			}
+		} catch (Exception e) {
+			logger.warn("exception updating subscription matching index", e);
+			invalidate();
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	private static <S> void addBucket(List<Entry<S>[]> buckets, Entry<S>[] bucket) {
+		if (bucket != null && bucket.length > 0) {
+			buckets.add(bucket);
+		}
+	}
+
+	private Snapshot<S> currentSnapshot() {
+
+		Snapshot<S> current = snapshot;
+
+		long gen = generation.get();
+
+		if (current != null && current.generation == gen) {
+			return current;
+		}
+
+		// only one thread rebuilds - the others scan in the meantime
+		if (!lock.tryLock()) {
+			return null;
+		}
+
+		try {
+			current = snapshot;
+
+			if (current == null || current.generation != gen) {
+				current = build(gen);
+				snapshot = current;
+			}
+
+			return current;
+		} catch (Exception e) {
+			logger.warn("exception building subscription matching index", e);
+			return null;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	// called with the lock held
+	@SuppressWarnings("unchecked")
+	private Snapshot<S> build(long gen) {
+
+		long start = System.nanoTime();
+
+		entries.clear();
+		receiverSubscriptions.clear();
+		freeOrdinals.clear();
+		nextOrdinal = 0;
+
+		List<List<Entry<S>>> local = new ArrayList<>();
+		List<List<Entry<S>>> federated = new ArrayList<>();
+		List<Entry<S>> unindexed = new ArrayList<>();
+
+		for (S subscription : subscriptionSource.get()) {
+
+			Entry<S> entry = newEntry(subscription);
+
+			if (entry == null) {
+				continue;
+			}
+
+			List<List<Entry<S>>> target = entry.federate ? federated : local;
+
+			for (int bitpos : entry.bits) {
+				while (target.size() <= bitpos) {
+					target.add(null);
+				}
+
+				if (target.get(bitpos) == null) {
+					target.set(bitpos, new ArrayList<>());
+				}
+
+				target.get(bitpos).add(entry);
+			}
+
+			if (entry.unindexed) {
+				unindexed.add(entry);
+			}
+		}
+
+		int width = Math.max(local.size(), federated.size());
+
+		Entry<S>[][] localBuckets = new Entry[width][];
+		Entry<S>[][] federateBuckets = new Entry[width][];
+
+		for (int i = 0; i < width; i++) {
+			localBuckets[i] = toArray(i < local.size() ? local.get(i) : null);
+			federateBuckets[i] = toArray(i < federated.size() ? federated.get(i) : null);
+		}
+
+		Snapshot<S> result = new Snapshot<>(gen, localBuckets, federateBuckets, toArray(unindexed), entries.size(), nextOrdinal);
+
+		if (logger.isDebugEnabled()) {
+			logger.debug("built subscription matching index - subscriptions: " + entries.size() + " group bits: " + width + " unindexed: " + unindexed.size() + " in " + ((System.nanoTime() - start) / 1000) + " us");
+		}
+
+		return result;
+	}
+
+	/*
+	 * Copy of current with the given subscriptions removed, and added back under their current receiver groups if still present.
+	 * Only the buckets that change are copied. Called with the lock held.
+	 */
+	private Snapshot<S> reindex(Snapshot<S> current, List<S> subscriptions) {
+
+		Entry<S>[][] local = current.local.clone();
+		Entry<S>[][] federated = current.federate.clone();
+		Entry<S>[] unindexed = current.unindexed;
+
+		for (S subscription : subscriptions) {
+
+			Entry<S> old = removeEntry(subscription);
+
+			if (old != null) {
+				Entry<S>[][] source = old.federate ? federated : local;
+
+				for (int bitpos : old.bits) {
+					source[bitpos] = without(source[bitpos], old);
+				}
+
+				if (old.unindexed) {
+					unindexed = without(unindexed, old);
+				}
+			}
+
+			Entry<S> entry = present.test(subscription) ? newEntry(subscription) : null;
+
+			if (entry == null) {
+				continue;
+			}
+
+			int width = local.length;
+
+			for (int bitpos : entry.bits) {
+				width = Math.max(width, bitpos + 1);
+			}
+
+			if (width > local.length) {
+				local = Arrays.copyOf(local, width);
+				federated = Arrays.copyOf(federated, width);
+			}
+
+			Entry<S>[][] target = entry.federate ? federated : local;
+
+			for (int bitpos : entry.bits) {
+				target[bitpos] = with(target[bitpos], entry);
+			}
+
+			if (entry.unindexed) {
+				unindexed = with(unindexed, entry);
+			}
+		}
+
+		return new Snapshot<>(current.generation, local, federated, unindexed, entries.size(), nextOrdinal);
+	}
+
+	// new entry for a subscription, recorded in entries, or null if its receiver has no groups
+	private Entry<S> newEntry(S subscription) {
+
+		Collection<Group> groups = receiverGroups.apply(subscription);
+
+		if (groups == null || groups.isEmpty()) {
+			// not reachable by any group
+			return null;
+		}
+
+		int[] bits = new int[groups.size()];
+		int bitCount = 0;
+
+		boolean unindexed = false;
+
+		for (Group group : groups) {
+
+			if (group.getDirection() != Direction.OUT) {
+				continue;
+			}
+
+			Integer bitpos = group.getBitpos();
+
+			if (bitpos == null || bitpos < 0) {
+				unindexed = true;
+				continue;
+			}
+
+			bits[bitCount++] = bitpos;
+		}
+
+		int ordinal = freeOrdinals.isEmpty() ? nextOrdinal++ : freeOrdinals.pop();
+
+		Object receiverKey = receiver.apply(subscription);
+
+		Entry<S> entry = new Entry<>(subscription, ordinal, federate.test(subscription), Arrays.copyOf(bits, bitCount), unindexed, receiverKey);
+
+		entries.put(subscription, entry);
+
+		if (receiverKey != null) {
+			receiverSubscriptions.computeIfAbsent(receiverKey, key -> new ArrayList<>(1)).add(subscription);
+		}
+
+		return entry;
+	}
+
+	private Entry<S> removeEntry(S subscription) {
+
+		Entry<S> entry = entries.remove(subscription);
+
+		if (entry == null) {
+			return null;
+		}
+
+		freeOrdinals.push(entry.ordinal);
+
+		if (entry.receiver != null) {
+			List<S> subscriptions = receiverSubscriptions.get(entry.receiver);
+
+			if (subscriptions != null) {
+				subscriptions.removeIf(s -> s == subscription);
+
+				if (subscriptions.isEmpty()) {
+					receiverSubscriptions.remove(entry.receiver);
+				}
+			}
+		}
+
+		return entry;
+	}
+
+	@SuppressWarnings("unchecked")
+	private static <S> Entry<S>[] with(Entry<S>[] bucket, Entry<S> entry) {
+		if (bucket == null) {
+			return new Entry[] { entry };
+		}
+
+		Entry<S>[] result = Arrays.copyOf(bucket, bucket.length + 1);
+		result[bucket.length] = entry;
+
+		return result;
+	}
+
+	@SuppressWarnings("unchecked")
+	private static <S> Entry<S>[] without(Entry<S>[] bucket, Entry<S> entry) {
+		if (bucket == null) {
+			return null;
+		}
+
+		for (int i = 0; i < bucket.length; i++) {
+			if (bucket[i] == entry) {
+				if (bucket.length == 1) {
+					return null;
+				}
+
+				Entry<S>[] result = new Entry[bucket.length - 1];
+				System.arraycopy(bucket, 0, result, 0, i);
+				System.arraycopy(bucket, i + 1, result, i, bucket.length - i - 1);
+
+				return result;
+			}
+		}
+
+		return bucket;
+	}
+
+	@SuppressWarnings("unchecked")
+	private static <S> Entry<S>[] toArray(List<Entry<S>> entries) {
+		if (entries == null) {
+			return null;
+		}
+
+		return entries.toArray(new Entry[entries.size()]);
+	}
+
+	private static final class Entry<S> {
+
+		final S subscription;
+		final int ordinal;
+		final boolean federate;
+
+		// OUT group bit positions of the receiver
+		final int[] bits;
+
+		// whether the receiver has an OUT group without a bit position
+		final boolean unindexed;
+
+		final Object receiver;
+
+		Entry(S subscription, int ordinal, boolean federate, int[] bits, boolean unindexed, Object receiver) {
+			this.subscription = subscription;
+			this.ordinal = ordinal;
+			this.federate = federate;
+			this.bits = bits;
+			this.unindexed = unindexed;
+			this.receiver = receiver;
+		}
+	}
+
+	private static final class Snapshot<S> {
+
+		final long generation;
+
+		// indexed by group bit position
+		final Entry<S>[][] local;
+		final Entry<S>[][] federate;
+
+		// receivers having an OUT group without an assigned bit position. Always candidates.
+		final Entry<S>[] unindexed;
+
+		final int size;
+
+		// upper bound of the entry ordinals
+		final int ordinals;
+
+		Snapshot(long generation, Entry<S>[][] local, Entry<S>[][] federate, Entry<S>[] unindexed, int size, int ordinals) {
+			this.generation = generation;
+			this.local = local;
+			this.federate = federate;
+			this.unindexed = unindexed;
+			this.size = size;
+			this.ordinals = ordinals;
+		}
+	}
+}
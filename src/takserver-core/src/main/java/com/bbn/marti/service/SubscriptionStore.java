@@ -93,6 +93,14 @@ public class SubscriptionStore implements FederatedSubscriptionManager {
 	private final Map<String, Subscription> clientUidToSubMap = new ConcurrentHashMap<String, Subscription>();  
 	private final Map<String, AtomicBoolean> retryScheduledMap = new ConcurrentHashMap<>();
 	
+	// candidate index for implicit brokering, keyed by receiver OUT group bit
+	private final SubscriptionMatchingIndex<Subscription> matchingIndex = new SubscriptionMatchingIndex<>(
+			() -> uidSubscriptionMap.values(),
+			subscription -> uidSubscriptionMap.get(subscription.uid) == subscription,
+			subscription -> subscription.getUser(),
+			subscription -> subscription.getUser() == null ? null : MessagingDependencyInjectionProxy.getInstance().groupManager().getGroups(subscription.getUser()),
+			subscription -> subscription.getUser() instanceof FederateUser);
+	
 	// track mission subscriptions
     private final Multimap<UUID, String> missionUidMap = new ConcurrentMultiHashMap<>();
     private final Multimap<String, UUID> uidMissionMap = new ConcurrentMultiHashMap<>();
@@ -191,6 +199,10 @@ public class SubscriptionStore implements FederatedSubscriptionManager {
 		return uidSubscriptionMap.entrySet();
 	}
 	
+	public SubscriptionMatchingIndex<Subscription> getMatchingIndex() {
+		return matchingIndex;
+	}
+	
 	public void put(String uid, Subscription subscription) {
 		
 		// only update count if new subscription
@@ -201,7 +213,11 @@ public class SubscriptionStore implements FederatedSubscriptionManager {
 			}
 		}
 		
-		uidSubscriptionMap.put(uid, subscription);
+		Subscription replaced = uidSubscriptionMap.put(uid, subscription);
+		if (replaced != null && replaced != subscription) {
+			matchingIndex.refresh(replaced);
+		}
+		matchingIndex.refresh(subscription);
 		updateSubscriptionCaches(subscription);
 		if (logger.isTraceEnabled()) {
 			logger.trace("storing handler " + subscription.getHandler() + " for subscription " + subscription);
@@ -227,6 +243,7 @@ public class SubscriptionStore implements FederatedSubscriptionManager {
 	public Subscription removeByUid(String uid) {
 		Subscription subscription = uidSubscriptionMap.remove(uid);
 		if (subscription != null) {
+			matchingIndex.refresh(subscription);
 			IgniteCacheHolder.removeCachedRemoteSubscription(subscription);
 			channelHandlerSubscriptionMap.remove(subscription.handler);
             InputMetric inputMetric = SubmissionService.getInstance().getMetricByPort(subscription.handler.localPort());
@@ -272,7 +289,13 @@ public class SubscriptionStore implements FederatedSubscriptionManager {
 		
 		IgniteCacheHolder.removeCachedRemoteSubscription(subscription);
 
-		return uidSubscriptionMap.remove(subscription.uid);
+		Subscription removed = uidSubscriptionMap.remove(subscription.uid);
+		matchingIndex.refresh(subscription);
+		if (removed != null && removed != subscription) {
+			matchingIndex.refresh(removed);
+		}
+
+		return removed;
 	}	
 	public long size() {
 		return uidSubscriptionMap.size();
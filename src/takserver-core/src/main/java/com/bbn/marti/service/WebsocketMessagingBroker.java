@@ -17,7 +17,7 @@ import tak.server.messaging.MessageConverter;
 public class WebsocketMessagingBroker {
 	
 	public static void brokerTargetedWebSocketMessage(Set<String> websocketConnectionIds, CotEventContainer data, UUID websocketApiId) {
-		ByteBuffer message = StreamingProtoBufProtocol.convertCotToProtoBufBytes(data, true);
+		ByteBuffer message = StreamingProtoBufProtocol.getOrConvertCotToUnlimitedProtoBufBytes(data);
 		
 		IgniteHolder.getInstance()
 			.getIgnite()
@@ -28,7 +28,7 @@ public class WebsocketMessagingBroker {
 	public static void brokerWebSocketMessage(Set<String> websocketConnectionIds, CotEventContainer data, String serverId) {
 
 		if (data.getBinaryPayloads() != null && !data.getBinaryPayloads().isEmpty()) {
-			Message messageV3 = MessageConverter.cotToMessage(data, false, serverId);
+			Message messageV3 = MessageConverter.getOrConvertCotToMessage(data, serverId);
 			ByteBuffer message = StreamingProtoBufProtocol.convertGeneratedMessageV3ToProtoBufBytes(messageV3);
 
 			IgniteHolder.getInstance()
@@ -36,7 +36,7 @@ public class WebsocketMessagingBroker {
 					.message(IgniteHolder.getInstance().getIgnite().cluster().forAttribute(Constants.TAK_PROFILE_KEY, Constants.API_PROFILE_NAME))
 					.send("websocket-payload-write-listener", new WebsocketMessageTransporter(websocketConnectionIds, message.array(), data.getUid(), data.getType()));
 		} else {
-			ByteBuffer message = StreamingProtoBufProtocol.convertCotToProtoBufBytes(data, true);
+			ByteBuffer message = StreamingProtoBufProtocol.getOrConvertCotToUnlimitedProtoBufBytes(data);
 
 			IgniteHolder.getInstance()
 					.getIgnite()
@@ -44,6 +44,8 @@ public class FixedSizeBlockingQueue<E> {
 
 				return false;
 			}
+
+			return true;
 		}
 		
 		// null insertion not allowed
@@ -4,7 +4,6 @@ package com.bbn.marti.util;
 
 import java.util.Arrays;
 
-import org.dom4j.DocumentHelper;
 import org.dom4j.InvalidXPathException;
 import org.dom4j.XPath;
 
@@ -15,6 +14,7 @@ import com.bbn.marti.filter.Predicate;
 import com.bbn.marti.filter.XPathPredicate;
 
 import tak.server.cot.CotEventContainer;
+import tak.server.cot.XPathCache;
 
 /**
 * Static utilities class for creating predicates
@@ -34,7 +34,7 @@ public class Predicates {
 
 			result = AcceptingPredicate.getInstance();
 		} else {
-			XPath xpathPredicate = DocumentHelper.createXPath(xpath);
+			XPath xpathPredicate = XPathCache.compile(xpath).getXPath();
 			result = new XPathPredicate()
 				.withXPath(xpathPredicate);
 		}
@@ -0,0 +1,421 @@
+package com.bbn.marti.util;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.TreeSet;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.CRC32;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/*
+ *
+ * Durable append-only log of opaque records, kept in fixed size memory-mapped segment files, for buffering data on local disk
+ * while its destination is unavailable.
+ *
+ * Each record is written as [length][crc32 of payload][time appended][payload]. A segment ends at its first record that is
+ * empty (unwritten) or fails its checksum, so a record torn by a crash is discarded along with the rest of its segment. After a
+ * restart, appends go to a new segment.
+ *
+ * Records are read in order and stay in the log until they are committed. The read position is checkpointed on every commit,
+ * and segments are deleted once all of their records are committed, so a record may be read again after a crash, but is not lost.
+ *
+ * One writer and one reader may use the log concurrently.
+ *
+ */
+public class SpillLog implements Closeable {
+
+	private static final Logger logger = LoggerFactory.getLogger(SpillLog.class);
+
+	private static final String SEGMENT_PREFIX = "spill-";
+	private static final String SEGMENT_SUFFIX = ".log";
+	private static final String CHECKPOINT = "spill.checkpoint";
+
+	// length, crc, time appended
+	private static final int HEADER_BYTES = 16;
+
+	private final Path directory;
+	private final int segmentBytes;
+	private final long maxBytes;
+
+	private long writeSeq;
+	private MappedByteBuffer writeBuffer;
+	private int writeOffset;
+
+	private long readSeq;
+	private MappedByteBuffer readBuffer;
+	private int readOffset;
+
+	private final AtomicLong pendingRecords = new AtomicLong();
+	private final AtomicLong pendingBytes = new AtomicLong();
+	private final AtomicLong oldestPending = new AtomicLong();
+
+	private final CRC32 appendCrc = new CRC32();
+	private final CRC32 readCrc = new CRC32();
+
+	private boolean closed = false;
+
+	public static class Record {
+		private final byte[] payload;
+		private final long appended;
+
+		Record(byte[] payload, long appended) {
+			this.payload = payload;
+			this.appended = appended;
+		}
+
+		public byte[] getPayload() {
+			return payload;
+		}
+
+		// time the record was appended, in milliseconds since the epoch
+		public long getAppended() {
+			return appended;
+		}
+	}
+
+	// records read from the log, which stay in it until committed
+	public static class Batch {
+		private final List<Record> records;
+		private final long endSeq;
+		private final int endOffset;
+		private final long bytes;
+
+		Batch(List<Record> records, long endSeq, int endOffset, long bytes) {
+			this.records = records;
+			this.endSeq = endSeq;
+			this.endOffset = endOffset;
+			this.bytes = bytes;
+		}
+
+		public List<Record> getRecords() {
+			return records;
+		}
+
+		public boolean isEmpty() {
+			return records.isEmpty();
+		}
+	}
+
+	/*
+	 * Open the log in directory, creating it if it doesn't exist. The log holds at most maxBytes, in segments of segmentBytes.
+	 */
+	public SpillLog(Path directory, int segmentBytes, long maxBytes) throws IOException {
+
+		if (segmentBytes <= HEADER_BYTES) {
+			throw new IllegalArgumentException("invalid spill log segment size " + segmentBytes);
+		}
+
+		if (maxBytes < segmentBytes) {
+			throw new IllegalArgumentException("spill log maximum size " + maxBytes + " is less than one segment of " + segmentBytes);
+		}
+
+		this.directory = directory;
+		this.segmentBytes = segmentBytes;
+		this.maxBytes = maxBytes;
+
+		Files.createDirectories(directory);
+
+		TreeSet<Long> segments = segments();
+
+		readSeq = segments.isEmpty() ? 0 : segments.first();
+		readOffset = 0;
+
+		Path checkpoint = directory.resolve(CHECKPOINT);
+
+		if (Files.exists(checkpoint)) {
+			ByteBuffer position = ByteBuffer.wrap(Files.readAllBytes(checkpoint));
+
+			if (position.remaining() == Long.BYTES + Integer.BYTES) {
+				readSeq = position.getLong();
+				readOffset = position.getInt();
+			} else {
+				logger.warn("ignoring invalid spill log checkpoint " + checkpoint);
+			}
+		}
+
+		// committed segments that weren't deleted before a crash
+		for (Long seq : segments.headSet(readSeq)) {
+			Files.deleteIfExists(segment(seq));
+		}
+
+		if (segments.isEmpty() || readSeq > segments.last()) {
+			readOffset = 0;
+		}
+
+		// count what's left to read
+		long seq = readSeq;
+		int offset = readOffset;
+		long lastSeq = segments.isEmpty() ? readSeq : Math.max(readSeq, segments.last());
+
+		while (seq <= lastSeq) {
+			if (Files.exists(segment(seq))) {
+				MappedByteBuffer buffer = map(seq);
+
+				int length;
+				while ((length = recordLength(buffer, offset)) > 0) {
+					if (pendingRecords.getAndIncrement() == 0) {
+						oldestPending.set(buffer.getLong(offset + 8));
+					}
+					pendingBytes.addAndGet(HEADER_BYTES + length);
+					offset += HEADER_BYTES + length;
+				}
+			}
+
+			seq++;
+			offset = 0;
+		}
+
+		// never append after a record that may have been torn
+		writeSeq = lastSeq + (segments.isEmpty() ? 0 : 1);
+		writeBuffer = map(writeSeq);
+		writeOffset = 0;
+
+		readBuffer = readSeq == writeSeq ? writeBuffer : map(readSeq);
+
+		if (pendingRecords.get() > 0) {
+			logger.info("spill log " + directory + " holds " + pendingRecords.get() + " records (" + pendingBytes.get() + " bytes)");
+		}
+	}
+
+	/*
+	 * Append a record. Returns false if the log is full, or the record is too large for a segment.
+	 */
+	public synchronized boolean append(byte[] payload) throws IOException {
+
+		if (closed) {
+			return false;
+		}
+
+		int recordBytes = HEADER_BYTES + payload.length;
+
+		if (recordBytes > segmentBytes) {
+			return false;
+		}
+
+		if (writeOffset + recordBytes > segmentBytes) {
+			// the segments from the read position to the next one
+			if ((writeSeq - readSeq + 2) * segmentBytes > maxBytes) {
+				return false;
+			}
+
+			writeBuffer.force();
+
+			writeSeq++;
+			writeBuffer = map(writeSeq);
+			writeOffset = 0;
+		}
+
+		long now = System.currentTimeMillis();
+
+		appendCrc.reset();
+		appendCrc.update(payload);
+
+		writeBuffer.put(writeOffset + HEADER_BYTES, payload);
+		writeBuffer.putLong(writeOffset + 8, now);
+		writeBuffer.putInt(writeOffset + 4, (int) appendCrc.getValue());
+		writeBuffer.putInt(writeOffset, payload.length);
+
+		writeOffset += recordBytes;
+
+		pendingBytes.addAndGet(recordBytes);
+
+		if (pendingRecords.getAndIncrement() == 0) {
+			oldestPending.set(now);
+		}
+
+		return true;
+	}
+
+	/*
+	 * Write appended records through to disk.
+	 */
+	public synchronized void force() {
+		if (!closed) {
+			writeBuffer.force();
+		}
+	}
+
+	/*
+	 * Read up to max records, from the oldest one that hasn't been committed. The same records are read again until the batch is committed.
+	 */
+	public synchronized Batch read(int max) throws IOException {
+
+		List<Record> records = new ArrayList<>();
+
+		long seq = readSeq;
+		MappedByteBuffer buffer = readBuffer;
+		int offset = readOffset;
+		long bytes = 0;
+
+		while (!closed && records.size() < max) {
+
+			int length = seq == writeSeq ? (offset < writeOffset ? writeBuffer.getInt(offset) : 0) : recordLength(buffer, offset);
+
+			if (length <= 0) {
+				if (seq == writeSeq) {
+					break;
+				}
+
+				// end of a segment that has been written
+				seq++;
+				buffer = seq == writeSeq ? writeBuffer : map(seq);
+				offset = 0;
+				continue;
+			}
+
+			byte[] payload = new byte[length];
+			buffer.get(offset + HEADER_BYTES, payload);
+
+			records.add(new Record(payload, buffer.getLong(offset + 8)));
+
+			offset += HEADER_BYTES + length;
+			bytes += HEADER_BYTES + length;
+		}
+
+		return new Batch(records, seq, offset, bytes);
+	}
+
+	/*
+	 * Remove a batch, and the ones read before it, from the log.
+	 */
+	public synchronized void commit(Batch batch) throws IOException {
+
+		if (closed || batch.isEmpty()) {
+			return;
+		}
+
+		long previousSeq = readSeq;
+
+		if (batch.endSeq != readSeq) {
+			readBuffer = batch.endSeq == writeSeq ? writeBuffer : map(batch.endSeq);
+		}
+
+		readSeq = batch.endSeq;
+		readOffset = batch.endOffset;
+
+		writeCheckpoint();
+
+		for (long seq = previousSeq; seq < readSeq; seq++) {
+			Files.deleteIfExists(segment(seq));
+		}
+
+		if (pendingRecords.addAndGet(-batch.records.size()) <= 0) {
+			pendingRecords.set(0);
+			pendingBytes.set(0);
+			oldestPending.set(0);
+		} else {
+			pendingBytes.addAndGet(-batch.bytes);
+
+			Batch next = read(1);
+			oldestPending.set(next.isEmpty() ? 0 : next.records.get(0).getAppended());
+		}
+	}
+
+	// number of records that haven't been committed
+	public AtomicLong getPendingRecords() {
+		return pendingRecords;
+	}
+
+	// bytes of the records that haven't been committed
+	public AtomicLong getPendingBytes() {
+		return pendingBytes;
+	}
+
+	// time the oldest record that hasn't been committed was appended, or 0 if there is none
+	public long getOldestPending() {
+		return oldestPending.get();
+	}
+
+	@Override
+	public synchronized void close() throws IOException {
+		if (closed) {
+			return;
+		}
+
+		writeBuffer.force();
+		writeCheckpoint();
+
+		closed = true;
+	}
+
+	// length of the record at offset in a segment that isn't being written, or 0 if the segment ends there
+	private int recordLength(MappedByteBuffer buffer, int offset) {
+
+		if (offset + HEADER_BYTES > segmentBytes) {
+			return 0;
+		}
+
+		int length = buffer.getInt(offset);
+
+		if (length <= 0 || offset + HEADER_BYTES + length > segmentBytes) {
+			return 0;
+		}
+
+		byte[] payload = new byte[length];
+		buffer.get(offset + HEADER_BYTES, payload);
+
+		readCrc.reset();
+		readCrc.update(payload);
+
+		if ((int) readCrc.getValue() != buffer.getInt(offset + 4)) {
+			logger.warn("discarding the rest of a spill log segment in " + directory + " after a corrupt record at offset " + offset);
+			return 0;
+		}
+
+		return length;
+	}
+
+	private void writeCheckpoint() throws IOException {
+		ByteBuffer position = ByteBuffer.allocate(Long.BYTES + Integer.BYTES);
+		position.putLong(readSeq).putInt(readOffset).flip();
+
+		Path temp = directory.resolve(CHECKPOINT + ".tmp");
+
+		try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+			channel.write(position);
+			channel.force(true);
+		}
+
+		Files.move(temp, directory.resolve(CHECKPOINT), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+	}
+
+	private MappedByteBuffer map(long seq) throws IOException {
+		// the mapping stays valid after the channel is closed
+		try (FileChannel channel = FileChannel.open(segment(seq), StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+			return channel.map(FileChannel.MapMode.READ_WRITE, 0, segmentBytes);
+		}
+	}
+
+	private Path segment(long seq) {
+		return directory.resolve(String.format("%s%020d%s", SEGMENT_PREFIX, seq, SEGMENT_SUFFIX));
+	}
+
+	private TreeSet<Long> segments() throws IOException {
+		TreeSet<Long> segments = new TreeSet<>();
+
+		try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, SEGMENT_PREFIX + "*" + SEGMENT_SUFFIX)) {
+			for (Path file : files) {
+				String name = file.getFileName().toString();
+				try {
+					segments.add(Long.parseLong(name.substring(SEGMENT_PREFIX.length(), name.length() - SEGMENT_SUFFIX.length())));
+				} catch (NumberFormatException e) {
+					logger.warn("ignoring unexpected file in spill log directory: " + file);
+				}
+			}
+		}
+
+		return segments;
+	}
+}
@@ -122,6 +122,21 @@ public class DistributedMetricsCollector implements MetricsCollector, Service, S
 		return QueueMetricsService.getInstance().getRepositorySize();
 	}
 
+	@Override
+	public AtomicLong getRepositorySpillSize() {
+		return QueueMetricsService.getInstance().getRepositorySpillSize();
+	}
+
+	@Override
+	public AtomicLong getRepositorySpillBytes() {
+		return QueueMetricsService.getInstance().getRepositorySpillBytes();
+	}
+
+	@Override
+	public AtomicLong getRepositorySpillReplayLag() {
+		return QueueMetricsService.getInstance().getRepositorySpillReplayLag();
+	}
+
 	@Override
 	public AtomicLong getSubmissionCapacity() {
 		return QueueMetricsService.getInstance().getSubmissionCapacity();
@@ -45,5 +45,11 @@ public interface MetricsCollector {
 	AtomicLong getRepositorySize();
 
 	AtomicLong getRepositoryCapacity();
+
+	AtomicLong getRepositorySpillSize();
+
+	AtomicLong getRepositorySpillBytes();
+
+	AtomicLong getRepositorySpillReplayLag();
 	
 }
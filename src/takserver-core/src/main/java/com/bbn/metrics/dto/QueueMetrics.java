@@ -10,6 +10,9 @@ public class QueueMetrics {
 	private AtomicLong submissionCapacity;
 	private AtomicLong repositorySize;
 	private AtomicLong repositoryCapacity;
+	private AtomicLong repositorySpillSize;
+	private AtomicLong repositorySpillBytes;
+	private AtomicLong repositorySpillReplayLag;
 	
 	public AtomicLong getBrokerSize() {
 		return brokerSize;
@@ -59,10 +62,35 @@ public class QueueMetrics {
 		this.repositoryCapacity = repositoryCapacity;
 	}
 
+	public AtomicLong getRepositorySpillSize() {
+		return repositorySpillSize;
+	}
+
+	public void setRepositorySpillSize(AtomicLong repositorySpillSize) {
+		this.repositorySpillSize = repositorySpillSize;
+	}
+
+	public AtomicLong getRepositorySpillBytes() {
+		return repositorySpillBytes;
+	}
+
+	public void setRepositorySpillBytes(AtomicLong repositorySpillBytes) {
+		this.repositorySpillBytes = repositorySpillBytes;
+	}
+
+	public AtomicLong getRepositorySpillReplayLag() {
+		return repositorySpillReplayLag;
+	}
+
+	public void setRepositorySpillReplayLag(AtomicLong repositorySpillReplayLag) {
+		this.repositorySpillReplayLag = repositorySpillReplayLag;
+	}
+
 	@Override
 	public String toString() {
 		return "QueueMetrics [brokerSize=" + brokerSize + ", brokerCapacity=" + brokerCapacity + ", submissionSize="
 				+ submissionSize + ", submissionCapacity=" + submissionCapacity + ", repositorySize=" + repositorySize
-				+ ", repositoryCapacity=" + repositoryCapacity + "]";
+				+ ", repositoryCapacity=" + repositoryCapacity + ", repositorySpillSize=" + repositorySpillSize
+				+ ", repositorySpillBytes=" + repositorySpillBytes + ", repositorySpillReplayLag=" + repositorySpillReplayLag + "]";
 	}
 }
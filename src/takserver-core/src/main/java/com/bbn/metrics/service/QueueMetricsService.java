@@ -61,4 +61,18 @@ public final class QueueMetricsService implements Serializable {
 	public AtomicLong getRepositoryCapacity() {
 		return repositoryService.getQueueMetrics().capacity;
 	}
+
+	// messages spilled to disk while the database was unavailable, waiting to be archived
+	public AtomicLong getRepositorySpillSize() {
+		return repositoryService.getSpillSize();
+	}
+
+	public AtomicLong getRepositorySpillBytes() {
+		return repositoryService.getSpillBytes();
+	}
+
+	// age of the oldest spilled message, in milliseconds
+	public AtomicLong getRepositorySpillReplayLag() {
+		return repositoryService.getSpillReplayLag();
+	}
 }
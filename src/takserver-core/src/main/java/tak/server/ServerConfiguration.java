@@ -107,6 +107,8 @@ import com.bbn.marti.remote.config.CoreConfigFacade;
 import com.bbn.marti.remote.config.LocalConfiguration;
 import com.bbn.marti.remote.exception.TakException;
 import com.bbn.marti.remote.groups.GroupManager;
+import com.bbn.marti.remote.sync.FileSystemResourceContentStore;
+import com.bbn.marti.remote.sync.ResourceContentStore;
 import com.bbn.marti.remote.util.LoggingConfigPropertiesSetupUtil;
 import com.bbn.marti.remote.util.RemoteUtil;
 import com.bbn.marti.remote.util.SpringContextBeanForApi;
@@ -166,6 +168,7 @@ import jakarta.persistence.EntityManagerFactory;
 import tak.server.cache.ActiveGroupCacheHelper;
 import tak.server.cache.CoTCacheHelper;
 import tak.server.cache.MissionCacheHelper;
+import tak.server.cache.MissionChangeLog;
 import tak.server.cache.SpringCacheOperationUpdater;
 import tak.server.cache.TakIgniteSpringCacheManager;
 import tak.server.cache.resolvers.AllCopMissionCacheResolver;
@@ -1244,6 +1247,11 @@ public class ServerConfiguration extends SpringBootServletInitializer  {
 		return new MissionCacheHelper();
 	}
 
+	@Bean
+	public MissionChangeLog missionChangeLog() {
+		return new MissionChangeLog();
+	}
+
 	@Bean
 	public ClassificationService classificationService() { return new ClassificationServiceImpl(); }
 
@@ -1282,6 +1290,12 @@ public class ServerConfiguration extends SpringBootServletInitializer  {
 	public EnterpriseSyncCacheHelper enterpriseSyncCacheHelper() {
 		return new EnterpriseSyncCacheHelper();
 	}
+
+	// always created, so that content already in the store stays readable when esyncContentStore is set back to database
+	@Bean
+	public ResourceContentStore resourceContentStore() {
+		return new FileSystemResourceContentStore(Paths.get(CoreConfigFacade.getInstance().getRemoteConfiguration().getNetwork().getEsyncFileStoreDirectory()));
+	}
 	
 	@Bean
 	@Lazy
@@ -389,8 +389,7 @@ public class DistributedPluginMissionApi implements PluginMissionApi, org.apache
 
 		String serverName = ""; // Don't have server name
 
-		byte[] archive = missionService.archiveMission(mission.getGuidAsUUID(), groupVectorForAdmin, serverName);
-		missionService.addMissionArchiveToEsync(mission.getName(), archive, groupVectorForAdmin, true);
+		missionService.archiveMissionToEsync(mission.getGuidAsUUID(), mission.getName(), groupVectorForAdmin, groupVectorForAdmin, serverName, true);
 
 		logger.debug("added archived mission to esync " + mission.getName());
 
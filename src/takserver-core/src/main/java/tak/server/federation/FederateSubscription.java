@@ -98,7 +98,7 @@ public class FederateSubscription extends Subscription {
             	}
                 
                 FederatedEvent fEvent = FederatedEvent.newBuilder()
-                        .setEvent(ProtoBufHelper.getInstance().cot2protoBuf(toSend))
+                        .setEvent(ProtoBufHelper.getInstance().getOrConvertCot2protoBuf(toSend))
                         .build();
                 
                 if (logger.isDebugEnabled()) {
@@ -72,6 +72,7 @@ import io.grpc.ServerInterceptor;
 import io.grpc.ServerInterceptors;
 import io.grpc.Status;
 import io.grpc.netty.NettyServerBuilder;
+import io.grpc.stub.ServerCallStreamObserver;
 import io.grpc.stub.StreamObserver;
 import io.micrometer.core.instrument.Metrics;
 import io.netty.channel.socket.nio.NioServerSocketChannel;
@@ -96,6 +97,7 @@ import com.atakmap.Tak.Empty;
 import com.atakmap.Tak.FederateGroups;
 import com.atakmap.Tak.FederatedChannelGrpc;
 import com.atakmap.Tak.FederatedEvent;
+import com.atakmap.Tak.FederatedEventBatch;
 import com.atakmap.Tak.Identity;
 import com.atakmap.Tak.ROL;
 import com.atakmap.Tak.ServerHealth;
@@ -386,7 +388,10 @@ public class FederationServer {
 					.executor(Resources.federationGrpcExecutor)
 					.workerEventLoopGroup(Resources.federationGrpcWorkerEventLoopGroup)
 					.bossEventLoopGroup(Resources.federationGrpcWorkerEventLoopGroup)
-					.channelType(NioServerSocketChannel.class);
+					.channelType(NioServerSocketChannel.class)
+					.compressorRegistry(FederationCompression.compressorRegistry())
+					.decompressorRegistry(FederationCompression.decompressorRegistry())
+					.addStreamTracerFactory(FederationStreamTracer.serverFactory(false));
 
 			if (config.getMaxConcurrentCallsPerConnection() != null && config.getMaxConcurrentCallsPerConnection() > 0) {
 				serverBuilder.maxConcurrentCallsPerConnection(config.getMaxConcurrentCallsPerConnection());
@@ -544,6 +549,8 @@ public class FederationServer {
 				throw new IllegalArgumentException("invalid clientEventStream request from client - null or empty name was provided");
 			}
 
+			FederationStreamTracer.bind(fedName);
+
 			int streamCount = clientEventStreamCounter.incrementAndGet();
 
 			SSLSession session = (SSLSession) sslSessionKey.get(Context.current());
@@ -651,6 +658,30 @@ public class FederationServer {
 			}
 		}
 
+		/*
+		 * Batched version of clientEventStream, for clients that batch too. If batching is disabled here, the client falls back to clientEventStream.
+		 *
+		 */
+		@Override
+		public void clientEventBatchStream(Subscription subscription, StreamObserver<FederatedEventBatch> clientStream) {
+			requireNonNull(subscription, "client-specified subscription");
+			requireNonNull(subscription.getIdentity(), "client-specified identity");
+
+			if (fedConfig().getEventBatchSize() <= 0) {
+				clientStream.onError(Status.UNIMPLEMENTED.withDescription("event batching is disabled").asRuntimeException());
+				return;
+			}
+
+			String compression = FederationCompression.select(fedConfig().getEventCompression(), FederationStreamTracer.peerAcceptEncoding());
+
+			if (logger.isDebugEnabled()) {
+				logger.debug("batched event stream for " + subscription.getIdentity().getName() + ", compression: " + compression);
+			}
+
+			clientEventStream(subscription, new BatchingServerStreamObserver((ServerCallStreamObserver<FederatedEventBatch>) clientStream,
+					fedConfig().getEventBatchSize(), fedConfig().getEventBatchMaxDelayMillis(), compression, subscription.getIdentity().getName(), false));
+		}
+
 		/*
 		 * Establish a stream for sending ROL to the client (client-initiated)
 		 */
@@ -1493,6 +1524,12 @@ public class FederationServer {
 		}
 
 
+		// batched version of serverEventStream
+		@Override
+		public StreamObserver<FederatedEventBatch> serverEventBatchStream(StreamObserver<Subscription> responseObserver) {
+			return new UnbatchingStreamObserver(serverEventStream(responseObserver));
+		}
+
 		@Override
 		public void healthCheck(ClientHealth request, StreamObserver<ServerHealth> responseObserver) {
 
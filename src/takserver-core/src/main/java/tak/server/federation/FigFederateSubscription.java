@@ -110,7 +110,9 @@ public class FigFederateSubscription extends FederateSubscription {
 			}
 
 			@Override
-			public void onReady() {}
+			public void onReady() {
+				groupsCallHolder.onReady();
+			}
 			
 		}, new Metadata());
 
@@ -120,11 +122,8 @@ public class FigFederateSubscription extends FederateSubscription {
     }
     
     public void setupEventStream() { 
-    	ClientCall<FederatedEvent, Subscription> clientCall = figClient.getChannel().newCall(io.grpc.MethodDescriptor.create(
-    			io.grpc.MethodDescriptor.MethodType.CLIENT_STREAMING,
-    			generateFullMethodName("com.atakmap.FederatedChannel", "ServerEventStream"),
-    			io.grpc.protobuf.ProtoUtils.marshaller(com.atakmap.Tak.FederatedEvent.getDefaultInstance()),
-    			io.grpc.protobuf.ProtoUtils.marshaller(com.atakmap.Tak.Subscription.getDefaultInstance())), figClient.getAsyncFederatedChannel().getCallOptions());
+    	// batched and compressed if the server batches too, otherwise one event at a time
+    	ClientCall<FederatedEvent, Subscription> clientCall = figClient.newEventCall();
 
 		clientCallHolder = new GuardedStreamHolder<FederatedEvent>(clientCall, figClient.getClientName(),
 				new Comparator<FederatedEvent>() {
@@ -151,6 +150,9 @@ public class FigFederateSubscription extends FederateSubscription {
     			if (logger.isDebugEnabled()) {
     				logger.debug("ServerEventStreamclientCall ready.");
     			}
+
+    			// send events queued while the call wasn't ready
+    			clientCallHolder.onReady();
     			
     			try {
     				// send a current snapshot of the contact list (current subscriptions) to this federate
@@ -324,7 +326,7 @@ public class FigFederateSubscription extends FederateSubscription {
             		builder.addAllFederateGroups(outGroups);
 				}
 
-                FederatedEvent fEvent = builder.setEvent(ProtoBufHelper.getInstance().cot2protoBuf(toSend)).build();
+                FederatedEvent fEvent = builder.setEvent(ProtoBufHelper.getInstance().getOrConvertCot2protoBuf(toSend)).build();
 
                 if (logger.isDebugEnabled()) {
                 	logger.debug("sending FederatedEvent: " + fEvent);
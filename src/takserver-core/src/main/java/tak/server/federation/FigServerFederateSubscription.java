@@ -207,7 +207,7 @@ public class FigServerFederateSubscription extends FigFederateSubscription {
 						builder.addAllFederateGroups(outGroups);
 					}
 
-					FederatedEvent fEvent = builder.setEvent(ProtoBufHelper.getInstance().cot2protoBuf(toSend)).build();
+					FederatedEvent fEvent = builder.setEvent(ProtoBufHelper.getInstance().getOrConvertCot2protoBuf(toSend)).build();
 					if (logger.isDebugEnabled()) {
 						logger.debug("sending FederatedEvent: " + fEvent);
 					}
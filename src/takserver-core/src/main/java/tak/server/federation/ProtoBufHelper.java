@@ -32,6 +32,7 @@ import com.google.protobuf.ByteString;
 
 import tak.server.Constants;
 import tak.server.cot.CotEventContainer;
+import tak.server.cot.EncodingCache;
 import tak.server.util.NumericUtil;
 
 /**
@@ -48,6 +49,14 @@ public class ProtoBufHelper {
 	ProtoBufHelper() {
 	}
 
+	/*
+	 * Convert the message to a federated event payload, at most once per message however many federates it is sent to (see
+	 * EncodingCache).
+	 */
+	public GeoEvent getOrConvertCot2protoBuf(CotEventContainer cot) {
+		return cot.getOrInstantiateEncoding(EncodingCache.Format.FEDERATED_EVENT, () -> cot2protoBuf(cot));
+	}
+
 	public GeoEvent cot2protoBuf(CotEventContainer cot) {
 
 		Element rootE = requireNonNull(cot, "CoT event XML object").getDocument().getRootElement();
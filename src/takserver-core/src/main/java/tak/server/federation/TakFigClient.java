@@ -55,6 +55,7 @@ import io.grpc.StatusRuntimeException;
 import io.grpc.netty.GrpcSslContexts;
 import io.grpc.netty.NegotiationType;
 import io.grpc.netty.NettyChannelBuilder;
+import io.grpc.protobuf.ProtoUtils;
 import io.grpc.stub.StreamObserver;
 import io.micrometer.core.instrument.Metrics;
 import io.netty.channel.socket.nio.NioSocketChannel;
@@ -196,6 +197,8 @@ public class TakFigClient implements Serializable {
 		return asyncFederatedChannel;
 	}
 
+	private FederationStreamNegotiation streamNegotiation;
+
 	private String fedName = "";
 
 	public String getClientName() {
@@ -529,6 +532,8 @@ public class TakFigClient implements Serializable {
 	private void init() {
 		FederationOutgoing outgoing = fedManager().getOutgoingConnection(outgoingName);
 
+		streamNegotiation = new FederationStreamNegotiation();
+
 		// setup group stream
 		serverFederateGroups();
 
@@ -538,7 +543,7 @@ public class TakFigClient implements Serializable {
 
 
 		// Send a subscription request, get back a stream of messages from server
-		asyncFederatedChannel.clientEventStream(Subscription.newBuilder()
+		streamNegotiation.subscribe(asyncFederatedChannel, Subscription.newBuilder()
 				.setFilter(Strings.isNullOrEmpty(outgoing.getFilter()) ? "" : outgoing.getFilter())
 				.setIdentity(Identity.newBuilder()
 						.setName(fedName)
@@ -757,7 +762,7 @@ public class TakFigClient implements Serializable {
 			}
 
 
-		});
+		}, CoreConfigFacade.getInstance().getRemoteConfiguration().getFederation().getEventBatchSize() > 0);
 
 		final AtomicBoolean initROLStream = new AtomicBoolean(false);
 
@@ -1051,6 +1056,10 @@ public class TakFigClient implements Serializable {
 				if (logger.isDebugEnabled()) {
 					logger.debug("ROL channel ready");
 				}
+
+				if (rolHolder != null) {
+					rolHolder.onReady();
+				}
 			}
 		}, new Metadata());
 
@@ -1087,6 +1096,8 @@ public class TakFigClient implements Serializable {
 				.negotiationType(NegotiationType.TLS)
 				.sslContext(sslContext)
 				.maxInboundMessageSize(outgoing.getMaxFrameSize())
+				.compressorRegistry(FederationCompression.compressorRegistry())
+				.decompressorRegistry(FederationCompression.decompressorRegistry())
 				.executor(Resources.federationGrpcExecutor)
 				.eventLoopGroup(Resources.federationGrpcWorkerEventLoopGroup)
 				.channelType(NioSocketChannel.class)
@@ -1369,6 +1380,17 @@ public class TakFigClient implements Serializable {
 		}
 	}
 
+	// a call to send events to the server on, batched and compressed if the server batches too
+	public ClientCall<FederatedEvent, Subscription> newEventCall() {
+		Federation federation = CoreConfigFacade.getInstance().getRemoteConfiguration().getFederation();
+		FederationOutgoing outgoing = fedManager().getOutgoingConnection(outgoingName);
+
+		String compression = outgoing == null || Strings.isNullOrEmpty(outgoing.getEventCompression()) ? federation.getEventCompression() : outgoing.getEventCompression();
+
+		return streamNegotiation.newEventCall(channel, asyncFederatedChannel.getCallOptions(), ProtoUtils.marshaller(FederatedEvent.getDefaultInstance()),
+				fedName, compression, federation.getEventBatchSize(), federation.getEventBatchMaxDelayMillis(), false);
+	}
+
 	private void serverFederateGroups() {
 		// Send a subscription request, get back a stream of messages from server
 		asyncFederatedChannel.serverFederateGroupsStream(Subscription.newBuilder()
@@ -1390,7 +1412,7 @@ public class TakFigClient implements Serializable {
 
 				// once the group stream is established, we are ready to setup event streaming
 				if (value.getStreamUpdate() != null && value.getStreamUpdate().getStatus() == ServingStatus.SERVING) {
-					federateSubscription.setupEventStream();
+					streamNegotiation.whenNegotiated(federateSubscription::setupEventStream);
 				}
 
 				// send the server our groups if we havent yet
@@ -1406,7 +1428,7 @@ public class TakFigClient implements Serializable {
 				if (t instanceof StatusRuntimeException) {
 					StatusRuntimeException sre = (StatusRuntimeException) t;
 					if (sre.getStatus().getCode().equals(Status.Code.UNIMPLEMENTED)) {
-						federateSubscription.setupEventStream();
+						streamNegotiation.whenNegotiated(federateSubscription::setupEventStream);
 					}
 				}
 			}
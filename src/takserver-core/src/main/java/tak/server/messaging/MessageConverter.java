@@ -51,6 +51,7 @@ import tak.server.Constants;
 import tak.server.cluster.ClusterManager.ClusterMissionAnnouncementDetail;
 import tak.server.cluster.ClusterMessageWrapper;
 import tak.server.cot.CotEventContainer;
+import tak.server.cot.EncodingCache;
 import tak.server.cot.CotParser;
 import tak.server.ignite.IgniteHolder;
 import tak.server.proto.StreamingProtoBufHelper;
@@ -86,9 +87,18 @@ public class MessageConverter {
 
 	// Convert CotEventContainer to proto encoding
 	public static byte[] cotToDataMessage(CotEventContainer message, boolean padEmptyGroups, String serverId) {
+		if (!padEmptyGroups) {
+			return getOrConvertCotToMessage(message, serverId).toByteArray();
+		}
+
 		return cotToMessage(message, padEmptyGroups, serverId).toByteArray();
 	}
 
+	// Convert CotEventContainer to proto encoding, at most once per message (see EncodingCache). Groups are not padded.
+	public static Message getOrConvertCotToMessage(CotEventContainer message, String serverId) {
+		return message.getOrInstantiateEncoding(EncodingCache.Format.CLUSTER_MESSAGE, () -> cotToMessage(message, false, serverId));
+	}
+
 	// Convert CotEventContainer to proto encoding
 	public static Message cotToMessage(CotEventContainer message, boolean padEmptyGroups, String serverId) {
 
@@ -0,0 +1,302 @@
+package tak.server.qos;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/*
+ *
+ * Time of the last message delivered from each sender to each receiver, for delivery rate limiting.
+ *
+ * Sender ids are interned to ints, and each receiver has an open addressing map from sender to a primitive long timestamp, so an
+ * entry costs 12 bytes rather than a concatenated String key and boxed Long. Timestamps older than the retention time are dropped
+ * when a receiver's map fills up, instead of growing it, so each map only holds the senders heard from recently.
+ *
+ * Updates are made inline. Each receiver's map is locked separately, so deliveries to different receivers don't contend. Receivers
+ * without live timestamps are dropped by purge, which is run periodically.
+ *
+ */
+public class DeliveryTimestampTable {
+
+	// returned by update if there was no timestamp for the sender and receiver
+	public static final long NO_TIMESTAMP = -1L;
+
+	private static final int INITIAL_CAPACITY = 16;
+
+	// when more senders than this have been interned, start over, so that the interned ids can't grow without bound
+	private static final int DEFAULT_MAX_SENDERS = 1 << 20;
+
+	private final long maxEntries;
+
+	private final int maxSenders;
+
+	private volatile Tables tables = new Tables();
+
+	private final AtomicLong resetCount = new AtomicLong();
+
+	/*
+	 * maxEntries bounds the total number of timestamps held. A receiver whose map would take the total over it is cleared instead.
+	 * 0 or less is unbounded.
+	 */
+	public DeliveryTimestampTable(long maxEntries) {
+		this(maxEntries, DEFAULT_MAX_SENDERS);
+	}
+
+	DeliveryTimestampTable(long maxEntries, int maxSenders) {
+		this.maxEntries = maxEntries;
+		this.maxSenders = maxSenders;
+	}
+
+	/*
+	 * Get the last delivery time from sender to receiver, and record now as the last delivery time if it's more than intervalMillis
+	 * later (or there wasn't one). Returns NO_TIMESTAMP if there was no last delivery time. Timestamps more than retainMillis old
+	 * may be discarded.
+	 */
+	public long update(String sender, String receiver, long now, long intervalMillis, long retainMillis) {
+
+		Tables current = tables;
+
+		int senderId = current.intern(sender);
+
+		if (senderId < 0) {
+			// too many senders - start over
+			synchronized (this) {
+				if (tables == current) {
+					tables = new Tables();
+					resetCount.incrementAndGet();
+				}
+				current = tables;
+			}
+
+			senderId = current.intern(sender);
+		}
+
+		while (true) {
+			ReceiverTimestamps timestamps = current.receivers.computeIfAbsent(receiver, r -> new ReceiverTimestamps());
+
+			synchronized (timestamps) {
+				if (timestamps.removed) {
+					// purged since it was looked up - look up the replacement
+					continue;
+				}
+
+				long previous = timestamps.get(senderId);
+
+				if (previous == NO_TIMESTAMP || now - previous > intervalMillis) {
+					timestamps.put(senderId, now, now - retainMillis, current);
+				}
+
+				return previous;
+			}
+		}
+	}
+
+	/*
+	 * Drop expired timestamps, and receivers left without any.
+	 */
+	public void purge(long now, long retainMillis) {
+
+		Tables current = tables;
+
+		for (Map.Entry<String, ReceiverTimestamps> entry : current.receivers.entrySet()) {
+			ReceiverTimestamps timestamps = entry.getValue();
+
+			synchronized (timestamps) {
+				timestamps.purge(now - retainMillis, current);
+
+				if (timestamps.size == 0) {
+					// only remove the map that was purged, and mark it so that an update holding it looks up the receiver again
+					timestamps.removed = true;
+					current.receivers.remove(entry.getKey(), timestamps);
+				}
+			}
+		}
+	}
+
+	public void clear() {
+		tables = new Tables();
+	}
+
+	public long size() {
+		return tables.entries.get();
+	}
+
+	public int receiverCount() {
+		return tables.receivers.size();
+	}
+
+	public int senderCount() {
+		return tables.senderIds.size();
+	}
+
+	// number of times the table was cleared because the interned sender ids or entry bound were exhausted
+	public long getResetCount() {
+		return resetCount.get();
+	}
+
+	@Override
+	public String toString() {
+		return "DeliveryTimestampTable [entries=" + size() + ", receivers=" + receiverCount() + ", senders=" + senderCount() + "]";
+	}
+
+	private class Tables {
+
+		final ConcurrentHashMap<String, Integer> senderIds = new ConcurrentHashMap<>();
+
+		final ConcurrentHashMap<String, ReceiverTimestamps> receivers = new ConcurrentHashMap<>();
+
+		// 0 marks an empty slot, so ids start at 1
+		final AtomicInteger nextSenderId = new AtomicInteger(1);
+
+		final AtomicLong entries = new AtomicLong();
+
+		// -1 if out of ids
+		int intern(String sender) {
+			Integer id = senderIds.get(sender);
+
+			if (id != null) {
+				return id;
+			}
+
+			if (senderIds.size() >= maxSenders) {
+				return -1;
+			}
+
+			return senderIds.computeIfAbsent(sender, s -> nextSenderId.getAndIncrement());
+		}
+	}
+
+	/*
+	 * Open addressing (linear probing) map from sender id to timestamp. Not thread safe - guarded by its own monitor.
+	 */
+	private class ReceiverTimestamps {
+
+		int[] keys = new int[INITIAL_CAPACITY];
+
+		long[] values = new long[INITIAL_CAPACITY];
+
+		int size = 0;
+
+		// set once dropped from the receivers map by purge
+		boolean removed = false;
+
+		long get(int key) {
+			int mask = keys.length - 1;
+
+			for (int i = mix(key) & mask; keys[i] != 0; i = (i + 1) & mask) {
+				if (keys[i] == key) {
+					return values[i];
+				}
+			}
+
+			return NO_TIMESTAMP;
+		}
+
+		void put(int key, long value, long expiry, Tables owner) {
+			int mask = keys.length - 1;
+
+			int i = mix(key) & mask;
+
+			for (; keys[i] != 0; i = (i + 1) & mask) {
+				if (keys[i] == key) {
+					values[i] = value;
+					return;
+				}
+			}
+
+			// keep the load factor at or under 1/2
+			if ((size + 1) * 2 > keys.length) {
+
+				// make room by dropping expired timestamps before growing
+				purge(expiry, owner);
+
+				if ((size + 1) * 2 > keys.length) {
+					if (maxEntries > 0 && owner.entries.get() + keys.length / 2 > maxEntries) {
+						owner.entries.addAndGet(-size);
+						rehash(INITIAL_CAPACITY);
+						resetCount.incrementAndGet();
+					} else {
+						rehash(keys.length * 2);
+					}
+				}
+
+				insert(key, value);
+			} else {
+				keys[i] = key;
+				values[i] = value;
+				size++;
+			}
+
+			owner.entries.incrementAndGet();
+		}
+
+		void purge(long expiry, Tables owner) {
+			int[] oldKeys = keys;
+			long[] oldValues = values;
+
+			int live = 0;
+
+			for (int i = 0; i < oldKeys.length; i++) {
+				if (oldKeys[i] != 0 && oldValues[i] >= expiry) {
+					live++;
+				}
+			}
+
+			if (live == size) {
+				return;
+			}
+
+			owner.entries.addAndGet(live - size);
+
+			keys = new int[oldKeys.length];
+			values = new long[oldKeys.length];
+			size = 0;
+
+			for (int i = 0; i < oldKeys.length; i++) {
+				if (oldKeys[i] != 0 && oldValues[i] >= expiry) {
+					insert(oldKeys[i], oldValues[i]);
+				}
+			}
+		}
+
+		private void rehash(int capacity) {
+			int[] oldKeys = keys;
+			long[] oldValues = values;
+
+			boolean keep = capacity > oldKeys.length;
+
+			keys = new int[capacity];
+			values = new long[capacity];
+			size = 0;
+
+			if (keep) {
+				for (int i = 0; i < oldKeys.length; i++) {
+					if (oldKeys[i] != 0) {
+						insert(oldKeys[i], oldValues[i]);
+					}
+				}
+			}
+		}
+
+		// insert a key known not to be present, with room for it
+		private void insert(int key, long value) {
+			int mask = keys.length - 1;
+
+			int i = mix(key) & mask;
+
+			while (keys[i] != 0) {
+				i = (i + 1) & mask;
+			}
+
+			keys[i] = key;
+			values[i] = value;
+			size++;
+		}
+	}
+
+	private static int mix(int key) {
+		int h = key * 0x9E3779B9;
+		return h ^ (h >>> 16);
+	}
+}
@@ -1,11 +1,10 @@
 package tak.server.qos;
 
 import java.util.Collections;
-import java.util.Date;
 import java.util.HashMap;
 import java.util.LinkedList;
 import java.util.Map;
-import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
 
 import com.bbn.marti.remote.CoreConfig;
@@ -24,6 +23,7 @@ import com.google.common.collect.Maps;
 
 import io.micrometer.core.instrument.Counter;
 import io.micrometer.core.instrument.Metrics;
+import io.micrometer.core.instrument.Tags;
 import tak.server.Constants;
 import tak.server.cot.CotEventContainer;
 
@@ -33,13 +33,14 @@ public class MessageDeliveryStrategy extends MessageBaseStrategy<CotEventContain
 	
 	private Counter qosNoTimestampCounter = null;
 	private Counter qosDeliverySkipCounter = null;
-	private Counter qosCachePutSkipCounter = null;
+
+	private DeliveryTimestampTable timestamps = new DeliveryTimestampTable(-1);
+
+	private static final long TIMESTAMP_PURGE_INTERVAL_SECONDS = 60;
 	
 	public MessageDeliveryStrategy() {
 		qosNoTimestampCounter = Metrics.counter(Constants.METRIC_MESSAGE_QOS_NO_TIMESTAMP_COUNT);
 		qosDeliverySkipCounter = Metrics.counter(Constants.METRIC_MESSAGE_QOS_DELIVERY_SKIP_COUNT, "takserver", "messaging");
-		qosCachePutSkipCounter = Metrics.counter(Constants.METRIC_QOS_DELIVERY_CACHE_PUT_SKIP);
-
 	}
 	
 	@EventListener({ContextRefreshedEvent.class})
@@ -52,6 +53,19 @@ public class MessageDeliveryStrategy extends MessageBaseStrategy<CotEventContain
 		CoreConfig config = CoreConfigFacade.getInstance();
 
 		maxCacheSize = config.getRemoteConfiguration().getBuffer().getQueue().getMessageTimestampCacheSizeItems();
+
+		timestamps = new DeliveryTimestampTable(maxCacheSize);
+
+		Metrics.gauge(Constants.METRIC_QOS_DELIVERY_TIMESTAMP_COUNT, Tags.of("takserver", "messaging"), this, s -> s.timestamps.size());
+
+		// drop expired timestamps, and the receivers that have gone away
+		Resources.metricsReportingPool.scheduleWithFixedDelay(() -> {
+			try {
+				timestamps.purge(System.currentTimeMillis(), Math.max(maxRate * 1000L, currentRateLimit.get() * 1000L));
+			} catch (Exception e) {
+				logger.error("exception purging delivery timestamps", e);
+			}
+		}, TIMESTAMP_PURGE_INTERVAL_SECONDS, TIMESTAMP_PURGE_INTERVAL_SECONDS, TimeUnit.SECONDS);
 		
 		if (config.getRemoteConfiguration().getFilter() == null) {
 			throw new TakException("filter config not found");
@@ -147,25 +161,23 @@ public class MessageDeliveryStrategy extends MessageBaseStrategy<CotEventContain
 		if (messageId.equals(clientId)) 
 			return true;
 
-		// concat ids for simple key that doesn't need multimap
-		final String key = messageId + "-" + clientId;
+		final long now = System.currentTimeMillis();
 
-		final Long now = new Date().getTime();
+		final long rateLimitMillis = currentRateLimit.get() * 1000L;
 
-		Long latestMessageTimestamp = cache().getIfPresent(key);
+		// records now as the latest timestamp, unless the rate limit applies
+		long latestMessageTimestamp = timestamps.update(messageId, clientId, now, rateLimitMillis, Math.max(maxRate * 1000L, rateLimitMillis));
 
-		if (latestMessageTimestamp == null) {
+		if (latestMessageTimestamp == DeliveryTimestampTable.NO_TIMESTAMP) {
 
 			qosNoTimestampCounter.increment();
 
-			put(key, now);
-
 			// there was no recorded timestamp for message from this client, so broker
 			return true;
 		}
 		
 		// skip this message, rate limit applies
-		if (now - latestMessageTimestamp <= (currentRateLimit.get() * 1000)) {
+		if (now - latestMessageTimestamp <= rateLimitMillis) {
 
 			if (logger.isDebugEnabled()) {
 				logger.debug("skipping message from " + messageId + " to " + clientId);
@@ -176,15 +188,13 @@ public class MessageDeliveryStrategy extends MessageBaseStrategy<CotEventContain
 			return false;
 		}
 
-		// deliver the message and update the timestamp
-		put(key, now);
-		
+		// deliver the message
 		return true;
 	}
 
 	@Override
 	public String toString() {
-		return "MessageDeliveryStrategy [cache=" + cache() + ", maxCacheSize=" + maxCacheSize + "]";
+		return "MessageDeliveryStrategy [timestamps=" + timestamps + ", maxCacheSize=" + maxCacheSize + "]";
 	}
 
 	@Override
@@ -206,17 +216,4 @@ public class MessageDeliveryStrategy extends MessageBaseStrategy<CotEventContain
 	public Map.Entry<Integer, Integer> getActiveRateThresholdAndLimit() {
 		return Maps.immutableEntry(currentThreshold.get(), currentRateLimit.get());
 	}
-	
-	private void put(String key, Long value) {
-		try {
-			Resources.qosCacheProcessor.execute(() -> {
-				if (key != null) {
-					cache().put(key, value);
-				}
-			});
-		} catch (RejectedExecutionException ree) {
-			// count how often full queue has blocked message send
-			qosCachePutSkipCounter.increment();
-		}
-	}
 }
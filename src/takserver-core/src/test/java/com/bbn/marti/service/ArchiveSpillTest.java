@@ -0,0 +1,234 @@
+package com.bbn.marti.service;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.lang.reflect.Proxy;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.NavigableSet;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import org.dom4j.io.SAXReader;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.xml.sax.InputSource;
+
+import com.bbn.marti.config.DataFeed;
+import com.bbn.marti.config.Repository;
+import com.bbn.marti.remote.groups.Direction;
+import com.bbn.marti.remote.groups.Group;
+import com.bbn.marti.remote.groups.GroupManager;
+
+import tak.server.Constants;
+import tak.server.cot.CotEventContainer;
+
+public class ArchiveSpillTest {
+
+	private static final String SA = "<event version=\"2.0\" uid=\"%s\" type=\"a-f-G-U-C\" how=\"m-g\" time=\"2020-02-12T13:16:07Z\" start=\"2020-02-12T13:16:05Z\" stale=\"2020-02-12T13:16:50Z\"><point lat=\"40.255716\" lon=\"-72.045306\" hae=\"-22.2\" ce=\"4.9\" le=\"9999999.0\"/><detail><track speed=\"0.0\" course=\"344.7\"/><contact callsign=\"coolata\"/></detail></event>";
+
+	private Path directory;
+
+	private ArchiveSpill spill;
+
+	@Before
+	public void init() throws IOException {
+		directory = Files.createTempDirectory("archive-spill-test");
+		spill = open(10);
+	}
+
+	@After
+	public void cleanup() throws IOException {
+		spill.close();
+
+		try (Stream<Path> files = Files.walk(directory)) {
+			files.sorted(Comparator.reverseOrder()).forEach(file -> file.toFile().delete());
+		}
+	}
+
+	@Test
+	public void roundTrip() throws Exception {
+		CotEventContainer event = event("spilled");
+		// set to the second, as SubmissionService does
+		event.setServerTime("2021-06-01T10:20:30Z");
+		event.setContext(Constants.GROUPS_KEY, groups("red", "blue", "unknown"));
+
+		DataFeed dataFeed = new DataFeed();
+		dataFeed.setUuid("feed-uuid");
+		event.setContext(Constants.DATA_FEED_KEY, dataFeed);
+
+		CotEventContainer plain = event("plain");
+
+		assertTrue(spill.spill(List.of(event, plain)));
+		assertEquals(2, spill.getSize().get());
+
+		List<CotEventContainer> archived = new ArrayList<>();
+
+		assertEquals(2, spill.replay(10, events -> archived.addAll(events)));
+		assertEquals(0, spill.getSize().get());
+
+		CotEventContainer replayed = archived.get(0);
+
+		assertEquals("spilled", replayed.getUid());
+		assertEquals("a-f-G-U-C", replayed.getType());
+
+		// archived with the original server time
+		assertTrue(replayed.hasServerTime());
+		assertEquals(Instant.parse("2021-06-01T10:20:30Z"), Instant.parse(replayed.getTime()));
+
+		// groups that no longer exist are left out
+		assertEquals(List.of("blue", "red"), groupNames(replayed));
+
+		DataFeed replayedFeed = (DataFeed) replayed.getContextValue(Constants.DATA_FEED_KEY);
+		assertEquals("feed-uuid", replayedFeed.getUuid());
+		assertTrue(replayedFeed.isArchive());
+		assertEquals("feed-uuid", replayed.getContextValue(Constants.DATA_FEED_UUID_KEY));
+
+		assertEquals(true, replayed.getContextValue(ArchiveSpill.REPLAYED_KEY));
+
+		CotEventContainer replayedPlain = archived.get(1);
+
+		assertEquals("plain", replayedPlain.getUid());
+		assertFalse(replayedPlain.hasServerTime());
+		assertTrue(groupNames(replayedPlain).isEmpty());
+		assertNull(replayedPlain.getContextValue(Constants.DATA_FEED_KEY));
+	}
+
+	@Test
+	public void failedBatchStays() throws Exception {
+		assertTrue(spill.spill(List.of(event("a"), event("b"))));
+
+		assertEquals(0, spill.replay(10, events -> false));
+		assertEquals(2, spill.getSize().get());
+
+		List<String> uids = new ArrayList<>();
+
+		assertEquals(2, spill.replay(10, events -> events.stream().map(CotEventContainer::getUid).allMatch(uids::add)));
+		assertEquals(List.of("a", "b"), uids);
+	}
+
+	@Test
+	public void batches() throws Exception {
+		spill.close();
+		spill = open(2);
+
+		assertTrue(spill.spill(List.of(event("a"), event("b"), event("c"))));
+
+		List<Integer> sizes = new ArrayList<>();
+
+		assertEquals(3, spill.replay(10, events -> sizes.add(events.size())));
+		assertEquals(List.of(2, 1), sizes);
+
+		// and no more than asked for
+		assertTrue(spill.spill(List.of(event("d"), event("e"), event("f"))));
+
+		sizes.clear();
+
+		assertEquals(1, spill.replay(1, events -> sizes.add(events.size())));
+		assertEquals(List.of(1), sizes);
+		assertEquals(2, spill.getSize().get());
+	}
+
+	@Test
+	public void partlyArchivedBatch() throws Exception {
+		assertTrue(spill.spill(List.of(event("a"), event("b"), event("c"), event("d"))));
+
+		// the archiver gets a and c into the database before the batch fails
+		assertEquals(0, spill.replay(10, events -> {
+			events.get(0).setContext(ArchiveSpill.ARCHIVED_KEY, true);
+			events.get(2).setContext(ArchiveSpill.ARCHIVED_KEY, true);
+			return false;
+		}));
+
+		assertEquals(4, spill.getSize().get());
+
+		// so only b and d are archived again
+		List<String> uids = new ArrayList<>();
+
+		assertEquals(0, spill.replay(10, events -> {
+			events.forEach(event -> uids.add(event.getUid()));
+			events.get(1).setContext(ArchiveSpill.ARCHIVED_KEY, true);
+			return false;
+		}));
+
+		assertEquals(List.of("b", "d"), uids);
+
+		uids.clear();
+
+		assertEquals(4, spill.replay(10, events -> events.stream().map(CotEventContainer::getUid).allMatch(uids::add)));
+		assertEquals(List.of("b"), uids);
+
+		// the next batch starts from a clean slate
+		assertTrue(spill.spill(List.of(event("e"))));
+
+		uids.clear();
+
+		assertEquals(1, spill.replay(10, events -> events.stream().map(CotEventContainer::getUid).allMatch(uids::add)));
+		assertEquals(List.of("e"), uids);
+	}
+
+	@Test
+	public void replayAfterRestart() throws Exception {
+		assertTrue(spill.spill(List.of(event("a"), event("b"), event("c"))));
+
+		assertEquals(1, spill.replay(1, events -> true));
+
+		spill.close();
+		spill = open(10);
+
+		assertEquals(2, spill.getSize().get());
+
+		List<String> uids = new ArrayList<>();
+
+		assertEquals(2, spill.replay(10, events -> events.stream().map(CotEventContainer::getUid).allMatch(uids::add)));
+		assertEquals(List.of("b", "c"), uids);
+	}
+
+	private ArchiveSpill open(int batchSize) throws IOException {
+		Repository repository = new Repository();
+		repository.setSpillDirectory(directory.toString());
+		repository.setSpillSegmentMegabytes(1);
+		repository.setSpillMaxMegabytes(4);
+
+		// resolves every group but "unknown"
+		GroupManager groupManager = (GroupManager) Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[] { GroupManager.class },
+				(proxy, method, args) -> {
+					if (method.getName().equals("getGroup") && !"unknown".equals(args[0])) {
+						return new Group((String) args[0], (Direction) args[1]);
+					}
+					return null;
+				});
+
+		return new ArchiveSpill(repository, batchSize, groupManager);
+	}
+
+	private static CotEventContainer event(String uid) throws Exception {
+		return new CotEventContainer(new SAXReader().read(new InputSource(new StringReader(String.format(SA, uid)))));
+	}
+
+	private static NavigableSet<Group> groups(String... names) {
+		NavigableSet<Group> groups = new ConcurrentSkipListSet<>();
+
+		for (String name : names) {
+			groups.add(new Group(name, Direction.IN));
+		}
+
+		return groups;
+	}
+
+	@SuppressWarnings("unchecked")
+	private static List<String> groupNames(CotEventContainer event) {
+		return ((NavigableSet<Group>) event.getContextValue(Constants.GROUPS_KEY)).stream().map(Group::getName).collect(Collectors.toList());
+	}
+}
@@ -0,0 +1,65 @@
+package com.bbn.marti.service;
+
+import static org.junit.Assert.assertEquals;
+
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.time.OffsetDateTime;
+import java.util.Calendar;
+import java.util.TimeZone;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.postgresql.jdbc.TimestampUtils;
+
+import jakarta.xml.bind.DatatypeConverter;
+
+public class CotRouterBulkLoaderTest {
+
+	private static final String[] COT_TIMES = { "2023-01-15T12:30:45.123Z", "2023-07-04T23:59:59.999Z", "2023-03-12T07:15:00Z" };
+
+	private TimeZone defaultTimeZone;
+
+	@Before
+	public void init() {
+		defaultTimeZone = TimeZone.getDefault();
+	}
+
+	@After
+	public void restore() {
+		TimeZone.setDefault(defaultTimeZone);
+	}
+
+	@Test
+	public void copyAndInsertStoreSameInstant() throws Exception {
+		for (String zone : new String[] { "UTC", "America/New_York", "Asia/Kolkata", "Pacific/Auckland" }) {
+			TimeZone.setDefault(TimeZone.getTimeZone(zone));
+
+			for (String cotTime : COT_TIMES) {
+				Instant expected = Instant.parse(cotTime);
+
+				assertEquals("COPY in " + zone, expected, copyInstant(cotTime));
+				assertEquals("INSERT in " + zone, expected, insertInstant(cotTime));
+			}
+		}
+	}
+
+	// the timestamptz that the server reads from the COPY literal
+	private static Instant copyInstant(String cotTime) {
+		String literal = CotRouterBulkLoader.timestamp(new StringBuilder(), cotTime).toString();
+
+		return OffsetDateTime.parse(literal.replace("Z", "+00:00")).toInstant();
+	}
+
+	// the timestamptz that the server reads from the parameter bound by setTimestamp with the UTC calendar, as in RepositoryService
+	private static Instant insertInstant(String cotTime) throws Exception {
+		TimestampUtils timestampUtils = new TimestampUtils(false, TimeZone::getDefault);
+
+		Calendar utcCalendar = Calendar.getInstance(TimeZone.getTimeZone("UTC"));
+
+		String parameter = timestampUtils.toString(utcCalendar, new Timestamp(DatatypeConverter.parseDateTime(cotTime).getTimeInMillis()));
+
+		return timestampUtils.toOffsetDateTime(parameter).toInstant();
+	}
+}
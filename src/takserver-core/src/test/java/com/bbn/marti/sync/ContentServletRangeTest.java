@@ -0,0 +1,70 @@
+package com.bbn.marti.sync;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertNull;
+
+import org.junit.Test;
+
+public class ContentServletRangeTest {
+
+	private static final long SIZE = 1000;
+
+	private static final long[] UNSATISFIABLE = new long[0];
+
+	@Test
+	public void closedRange() {
+		assertArrayEquals(new long[] { 0, 499 }, ContentServlet.parseRange("bytes=0-499", SIZE));
+		assertArrayEquals(new long[] { 500, 500 }, ContentServlet.parseRange("bytes=500-500", SIZE));
+		assertArrayEquals(new long[] { 10, 20 }, ContentServlet.parseRange("bytes= 10-20 ", SIZE));
+
+		// a last position past the end is cut to the content
+		assertArrayEquals(new long[] { 900, 999 }, ContentServlet.parseRange("bytes=900-5000", SIZE));
+	}
+
+	@Test
+	public void openEndedRange() {
+		assertArrayEquals(new long[] { 200, 999 }, ContentServlet.parseRange("bytes=200-", SIZE));
+		assertArrayEquals(new long[] { 0, 999 }, ContentServlet.parseRange("bytes=0-", SIZE));
+		assertArrayEquals(new long[] { 999, 999 }, ContentServlet.parseRange("bytes=999-", SIZE));
+	}
+
+	@Test
+	public void suffixRange() {
+		assertArrayEquals(new long[] { 900, 999 }, ContentServlet.parseRange("bytes=-100", SIZE));
+		assertArrayEquals(new long[] { 999, 999 }, ContentServlet.parseRange("bytes=-1", SIZE));
+
+		// longer than the content - all of it
+		assertArrayEquals(new long[] { 0, 999 }, ContentServlet.parseRange("bytes=-5000", SIZE));
+	}
+
+	@Test
+	public void unsatisfiableRange() {
+		assertArrayEquals(UNSATISFIABLE, ContentServlet.parseRange("bytes=1000-", SIZE));
+		assertArrayEquals(UNSATISFIABLE, ContentServlet.parseRange("bytes=1000-1100", SIZE));
+		assertArrayEquals(UNSATISFIABLE, ContentServlet.parseRange("bytes=-0", SIZE));
+
+		// nothing can be satisfied for empty content
+		assertArrayEquals(UNSATISFIABLE, ContentServlet.parseRange("bytes=0-", 0));
+		assertArrayEquals(UNSATISFIABLE, ContentServlet.parseRange("bytes=-10", 0));
+	}
+
+	@Test
+	public void multipleRangesIgnored() {
+		// only single ranges are supported, so the whole content is sent
+		assertNull(ContentServlet.parseRange("bytes=0-10,20-30", SIZE));
+		assertNull(ContentServlet.parseRange("bytes=0-10, -5", SIZE));
+		assertNull(ContentServlet.parseRange("bytes=-5,0-", SIZE));
+	}
+
+	@Test
+	public void malformedRangeIgnored() {
+		assertNull(ContentServlet.parseRange("items=0-10", SIZE));
+		assertNull(ContentServlet.parseRange("bytes=", SIZE));
+		assertNull(ContentServlet.parseRange("bytes=10", SIZE));
+		assertNull(ContentServlet.parseRange("bytes=-", SIZE));
+		assertNull(ContentServlet.parseRange("bytes=a-b", SIZE));
+		assertNull(ContentServlet.parseRange("bytes=--5", SIZE));
+		assertNull(ContentServlet.parseRange("bytes=20-10", SIZE));
+		assertNull(ContentServlet.parseRange("bytes=-10-20", SIZE));
+	}
+}
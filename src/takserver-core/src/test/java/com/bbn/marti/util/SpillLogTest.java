@@ -0,0 +1,236 @@
+package com.bbn.marti.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class SpillLogTest {
+
+	// length, crc, time appended
+	private static final int HEADER_BYTES = 16;
+
+	private Path directory;
+
+	@Before
+	public void init() throws IOException {
+		directory = Files.createTempDirectory("spill-log-test");
+	}
+
+	@After
+	public void cleanup() throws IOException {
+		try (Stream<Path> files = Files.walk(directory)) {
+			files.sorted(Comparator.reverseOrder()).forEach(file -> file.toFile().delete());
+		}
+	}
+
+	@Test
+	public void readUntilCommitted() throws IOException {
+		try (SpillLog log = new SpillLog(directory, 4096, 4096 * 4)) {
+			long before = System.currentTimeMillis();
+
+			assertTrue(log.append(bytes("a")));
+			assertTrue(log.append(bytes("b")));
+			assertTrue(log.append(bytes("c")));
+
+			assertEquals(3, log.getPendingRecords().get());
+			assertEquals(3 * (HEADER_BYTES + 1), log.getPendingBytes().get());
+			assertTrue(log.getOldestPending() >= before);
+
+			SpillLog.Batch batch = log.read(2);
+
+			assertEquals(List.of("a", "b"), payloads(batch));
+			assertTrue(batch.getRecords().get(0).getAppended() >= before);
+
+			// read again until committed
+			assertEquals(List.of("a", "b"), payloads(log.read(2)));
+
+			log.commit(batch);
+
+			assertEquals(1, log.getPendingRecords().get());
+			assertEquals(HEADER_BYTES + 1, log.getPendingBytes().get());
+			assertEquals(List.of("c"), payloads(log.read(10)));
+
+			log.commit(log.read(10));
+
+			assertEquals(0, log.getPendingRecords().get());
+			assertEquals(0, log.getPendingBytes().get());
+			assertEquals(0, log.getOldestPending());
+			assertTrue(log.read(10).isEmpty());
+		}
+	}
+
+	@Test
+	public void checkpointRecovery() throws IOException {
+		SpillLog log = new SpillLog(directory, 4096, 4096 * 4);
+
+		for (String payload : new String[] { "a", "b", "c", "d", "e" }) {
+			assertTrue(log.append(bytes(payload)));
+		}
+
+		log.commit(log.read(2));
+		log.close();
+
+		// appends go to a new segment after a restart
+		try (SpillLog reopened = new SpillLog(directory, 4096, 4096 * 4)) {
+			assertEquals(3, reopened.getPendingRecords().get());
+			assertEquals(3 * (HEADER_BYTES + 1), reopened.getPendingBytes().get());
+
+			assertTrue(reopened.append(bytes("f")));
+
+			assertEquals(List.of("c", "d", "e", "f"), payloads(reopened.read(10)));
+		}
+	}
+
+	@Test
+	public void recoveryWithoutClose() throws IOException {
+		// as after a crash: the checkpoint from the last commit, and whatever reached the segment
+		SpillLog log = new SpillLog(directory, 4096, 4096 * 4);
+
+		assertTrue(log.append(bytes("a")));
+		assertTrue(log.append(bytes("b")));
+
+		log.commit(log.read(1));
+
+		assertTrue(log.append(bytes("c")));
+		log.force();
+
+		try (SpillLog reopened = new SpillLog(directory, 4096, 4096 * 4)) {
+			assertEquals(List.of("b", "c"), payloads(reopened.read(10)));
+		}
+	}
+
+	@Test
+	public void corruptRecord() throws IOException {
+		try (SpillLog log = new SpillLog(directory, 4096, 4096 * 4)) {
+			assertTrue(log.append(bytes("first")));
+			assertTrue(log.append(bytes("second")));
+			assertTrue(log.append(bytes("third")));
+		}
+
+		// flip a byte of the second payload, so that it fails its checksum
+		Path segment = segments().get(0);
+		int second = HEADER_BYTES + "first".length();
+		writeBytes(segment, second + HEADER_BYTES, new byte[] { 'S' });
+
+		// the segment ends at the corrupt record, so the good one after it is discarded too
+		try (SpillLog log = new SpillLog(directory, 4096, 4096 * 4)) {
+			assertEquals(1, log.getPendingRecords().get());
+
+			assertTrue(log.append(bytes("fourth")));
+
+			assertEquals(List.of("first", "fourth"), payloads(log.read(10)));
+		}
+	}
+
+	@Test
+	public void tornTail() throws IOException {
+		try (SpillLog log = new SpillLog(directory, 4096, 4096 * 4)) {
+			assertTrue(log.append(bytes("first")));
+		}
+
+		// the length of a record written, but not its checksum or payload
+		Path segment = segments().get(0);
+		writeBytes(segment, HEADER_BYTES + "first".length(), ByteBuffer.allocate(4).putInt(100).array());
+
+		try (SpillLog log = new SpillLog(directory, 4096, 4096 * 4)) {
+			assertEquals(1, log.getPendingRecords().get());
+			assertEquals(List.of("first"), payloads(log.read(10)));
+		}
+
+		// and a length running past the end of the segment
+		writeBytes(segment, HEADER_BYTES + "first".length(), ByteBuffer.allocate(4).putInt(4096).array());
+
+		try (SpillLog log = new SpillLog(directory, 4096, 4096 * 4)) {
+			assertEquals(List.of("first"), payloads(log.read(10)));
+		}
+	}
+
+	@Test
+	public void segmentRollover() throws IOException {
+		// one record of 20 bytes per segment, and at most three segments from the read position
+		int segmentBytes = 64;
+		byte[] payload = new byte[20];
+
+		try (SpillLog log = new SpillLog(directory, segmentBytes, segmentBytes * 3)) {
+			assertTrue(log.append(payload));
+			assertTrue(log.append(payload));
+			assertTrue(log.append(payload));
+
+			// the next would be past the maximum
+			assertFalse(log.append(payload));
+			assertEquals(3, log.getPendingRecords().get());
+			assertEquals(3, segments().size());
+
+			// a segment is deleted once all of its records are committed
+			log.commit(log.read(2));
+
+			assertEquals(2, segments().size());
+			assertEquals(1, log.getPendingRecords().get());
+
+			assertTrue(log.append(payload));
+			assertEquals(3, segments().size());
+
+			log.commit(log.read(10));
+
+			assertEquals(0, log.getPendingRecords().get());
+			assertEquals(1, segments().size());
+
+			// larger than a segment
+			assertFalse(log.append(new byte[segmentBytes - HEADER_BYTES + 1]));
+			assertTrue(log.append(new byte[segmentBytes - HEADER_BYTES]));
+		}
+	}
+
+	@Test
+	public void closed() throws IOException {
+		SpillLog log = new SpillLog(directory, 4096, 4096 * 4);
+		log.append(bytes("a"));
+		log.close();
+
+		assertFalse(log.append(bytes("b")));
+		assertTrue(log.read(10).isEmpty());
+	}
+
+	private List<Path> segments() throws IOException {
+		try (Stream<Path> files = Files.list(directory)) {
+			return files.filter(file -> file.getFileName().toString().endsWith(".log")).sorted().collect(Collectors.toList());
+		}
+	}
+
+	private static void writeBytes(Path file, int offset, byte[] bytes) throws IOException {
+		try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+			channel.write(ByteBuffer.wrap(bytes), offset);
+		}
+	}
+
+	private static byte[] bytes(String payload) {
+		return payload.getBytes(StandardCharsets.UTF_8);
+	}
+
+	private static List<String> payloads(SpillLog.Batch batch) {
+		List<String> payloads = new ArrayList<>();
+
+		for (SpillLog.Record record : batch.getRecords()) {
+			payloads.add(new String(record.getPayload(), StandardCharsets.UTF_8));
+		}
+
+		return payloads;
+	}
+}
@@ -0,0 +1,175 @@
+package tak.server;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+import tak.server.qos.DeliveryTimestampTable;
+
+public class DeliveryTimestampTableTest {
+
+	private static final long INTERVAL = 1000L;
+
+	private static final long RETAIN = 5000L;
+
+	@Test
+	public void updateWithinInterval() {
+		DeliveryTimestampTable table = new DeliveryTimestampTable(-1);
+
+		assertEquals(DeliveryTimestampTable.NO_TIMESTAMP, table.update("sender", "receiver", 10000L, INTERVAL, RETAIN));
+
+		// within the interval, the first timestamp is kept
+		assertEquals(10000L, table.update("sender", "receiver", 10500L, INTERVAL, RETAIN));
+		assertEquals(10000L, table.update("sender", "receiver", 11000L, INTERVAL, RETAIN));
+
+		// past the interval, now is recorded
+		assertEquals(10000L, table.update("sender", "receiver", 11001L, INTERVAL, RETAIN));
+		assertEquals(11001L, table.update("sender", "receiver", 11500L, INTERVAL, RETAIN));
+
+		assertEquals(1, table.size());
+	}
+
+	@Test
+	public void separateSendersAndReceivers() {
+		DeliveryTimestampTable table = new DeliveryTimestampTable(-1);
+
+		table.update("sender1", "receiver1", 10000L, INTERVAL, RETAIN);
+		table.update("sender2", "receiver1", 10100L, INTERVAL, RETAIN);
+		table.update("sender1", "receiver2", 10200L, INTERVAL, RETAIN);
+
+		assertEquals(10000L, table.update("sender1", "receiver1", 10300L, INTERVAL, RETAIN));
+		assertEquals(10100L, table.update("sender2", "receiver1", 10300L, INTERVAL, RETAIN));
+		assertEquals(10200L, table.update("sender1", "receiver2", 10300L, INTERVAL, RETAIN));
+		assertEquals(DeliveryTimestampTable.NO_TIMESTAMP, table.update("sender2", "receiver2", 10300L, INTERVAL, RETAIN));
+
+		assertEquals(4, table.size());
+		assertEquals(2, table.receiverCount());
+		assertEquals(2, table.senderCount());
+	}
+
+	@Test
+	public void growPastInitialCapacity() {
+		DeliveryTimestampTable table = new DeliveryTimestampTable(-1);
+
+		for (int i = 0; i < 100; i++) {
+			table.update("sender" + i, "receiver", 10000L + i, INTERVAL, RETAIN);
+		}
+
+		assertEquals(100, table.size());
+
+		for (int i = 0; i < 100; i++) {
+			assertEquals(10000L + i, table.update("sender" + i, "receiver", 10100L, INTERVAL, RETAIN));
+		}
+	}
+
+	@Test
+	public void purgeExpired() {
+		DeliveryTimestampTable table = new DeliveryTimestampTable(-1);
+
+		table.update("sender1", "receiver1", 10000L, INTERVAL, RETAIN);
+		table.update("sender2", "receiver1", 14000L, INTERVAL, RETAIN);
+		table.update("sender1", "receiver2", 10000L, INTERVAL, RETAIN);
+
+		table.purge(16000L, RETAIN);
+
+		// receiver2 had no live timestamps left
+		assertEquals(1, table.size());
+		assertEquals(1, table.receiverCount());
+
+		assertEquals(DeliveryTimestampTable.NO_TIMESTAMP, table.update("sender1", "receiver1", 16000L, INTERVAL, RETAIN));
+		assertEquals(14000L, table.update("sender2", "receiver1", 16000L, INTERVAL, RETAIN));
+
+		// a purged receiver is recorded again on its next update
+		assertEquals(DeliveryTimestampTable.NO_TIMESTAMP, table.update("sender1", "receiver2", 16000L, INTERVAL, RETAIN));
+		assertEquals(16000L, table.update("sender1", "receiver2", 16500L, INTERVAL, RETAIN));
+
+		assertEquals(2, table.receiverCount());
+	}
+
+	@Test
+	public void maxEntries() {
+		DeliveryTimestampTable table = new DeliveryTimestampTable(20);
+
+		for (int i = 0; i < 100; i++) {
+			table.update("sender" + i, "receiver" + (i % 4), 10000L, INTERVAL, RETAIN);
+		}
+
+		assertTrue(table.size() <= 20);
+		assertTrue(table.getResetCount() > 0);
+	}
+
+	@Test
+	public void concurrentUpdateAndPurge() throws Exception {
+		DeliveryTimestampTable table = new DeliveryTimestampTable(-1);
+
+		final int threadCount = 4;
+		final int updates = 20000;
+
+		CountDownLatch start = new CountDownLatch(1);
+
+		AtomicInteger lost = new AtomicInteger();
+
+		AtomicBoolean done = new AtomicBoolean();
+
+		List<Thread> threads = new ArrayList<>();
+
+		for (int t = 0; t < threadCount; t++) {
+			final String receiver = "receiver" + t;
+
+			threads.add(new Thread(() -> {
+				try {
+					start.await();
+				} catch (InterruptedException e) {
+					return;
+				}
+
+				for (int i = 0; i < updates; i++) {
+					long now = 100000L + i;
+
+					table.update("sender", receiver + "-" + i, now, INTERVAL, RETAIN);
+
+					// the timestamp must not have gone to a map dropped by a concurrent purge
+					if (table.update("sender", receiver + "-" + i, now, INTERVAL, RETAIN) != now) {
+						lost.incrementAndGet();
+					}
+				}
+			}));
+		}
+
+		Thread purger = new Thread(() -> {
+			try {
+				start.await();
+			} catch (InterruptedException e) {
+				return;
+			}
+
+			// nothing is expired, so only the maps of receivers not yet updated are empty
+			while (!done.get()) {
+				table.purge(0L, RETAIN);
+			}
+		});
+
+		threads.forEach(Thread::start);
+		purger.start();
+
+		start.countDown();
+
+		for (Thread thread : threads) {
+			thread.join();
+		}
+
+		done.set(true);
+		purger.join();
+
+		assertEquals(0, lost.get());
+		assertEquals(threadCount * updates, table.size());
+		assertEquals(threadCount * updates, table.receiverCount());
+	}
+}
@@ -0,0 +1,251 @@
+package tak.server;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.junit.Test;
+
+import com.bbn.marti.nio.netty.handlers.NioNettyFrameDecoder;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufUtil;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.embedded.EmbeddedChannel;
+
+public class NioNettyFrameDecoderTest {
+
+	private static final String EVENT = "<event uid=\"a\"><detail/></event>";
+
+	@Test
+	public void protobufPartialFrames() {
+		EmbeddedChannel channel = new EmbeddedChannel(new NioNettyFrameDecoder(() -> true));
+
+		byte[] message = message(300);
+		byte[] framed = frame(message);
+
+		// magic byte, then the two byte size a byte at a time, then the message in two parts
+		channel.writeInbound(Unpooled.wrappedBuffer(framed, 0, 1));
+		channel.writeInbound(Unpooled.wrappedBuffer(framed, 1, 1));
+		channel.writeInbound(Unpooled.wrappedBuffer(framed, 2, 1));
+		channel.writeInbound(Unpooled.wrappedBuffer(framed, 3, 100));
+		assertNull(channel.readInbound());
+
+		channel.writeInbound(Unpooled.wrappedBuffer(framed, 103, framed.length - 103));
+
+		assertFrame(channel.readInbound(), message, true);
+		assertNull(channel.readInbound());
+
+		assertFalse(channel.finish());
+	}
+
+	@Test
+	public void protobufFramesPerBuffer() {
+		EmbeddedChannel channel = new EmbeddedChannel(new NioNettyFrameDecoder(() -> true));
+
+		byte[] first = message(10);
+		byte[] second = message(200);
+		byte[] third = message(1);
+
+		// two whole frames and the start of the third in one read
+		byte[] framed = concat(frame(first), frame(second), frame(third));
+		int split = framed.length - 1;
+
+		channel.writeInbound(Unpooled.wrappedBuffer(framed, 0, split));
+
+		assertFrame(channel.readInbound(), first, true);
+		assertFrame(channel.readInbound(), second, true);
+		assertNull(channel.readInbound());
+
+		channel.writeInbound(Unpooled.wrappedBuffer(framed, split, 1));
+
+		assertFrame(channel.readInbound(), third, true);
+
+		assertFalse(channel.finish());
+	}
+
+	@Test
+	public void protobufSkipsToMagic() {
+		EmbeddedChannel channel = new EmbeddedChannel(new NioNettyFrameDecoder(() -> true));
+
+		byte[] message = message(5);
+
+		channel.writeInbound(Unpooled.wrappedBuffer(concat(new byte[] { 1, 2, 3 }, frame(message))));
+
+		assertFrame(channel.readInbound(), message, true);
+		assertTrue(channel.isOpen());
+
+		assertFalse(channel.finish());
+	}
+
+	@Test
+	public void protobufOversize() {
+		byte[] message = message(NioNettyFrameDecoder.MAX_FRAME_SIZE + 1);
+
+		// no limit by default, as before the frame decoder
+		EmbeddedChannel unlimited = new EmbeddedChannel(new NioNettyFrameDecoder(() -> true));
+
+		unlimited.writeInbound(Unpooled.wrappedBuffer(frame(message)));
+
+		assertFrame(unlimited.readInbound(), message, true);
+		assertTrue(unlimited.isOpen());
+		assertFalse(unlimited.finish());
+
+		// with a limit, a larger message closes the connection
+		EmbeddedChannel limited = new EmbeddedChannel(new NioNettyFrameDecoder(() -> true, 1000));
+
+		byte[] framed = frame(message(1001));
+
+		limited.writeInbound(Unpooled.wrappedBuffer(framed, 0, 3));
+
+		assertNull(limited.readInbound());
+		assertFalse(limited.isOpen());
+
+		EmbeddedChannel atLimit = new EmbeddedChannel(new NioNettyFrameDecoder(() -> true, 1000));
+
+		byte[] largest = message(1000);
+
+		atLimit.writeInbound(Unpooled.wrappedBuffer(frame(largest)));
+
+		assertFrame(atLimit.readInbound(), largest, true);
+		assertTrue(atLimit.isOpen());
+		assertFalse(atLimit.finish());
+	}
+
+	@Test
+	public void xmlPartialFrames() {
+		EmbeddedChannel channel = new EmbeddedChannel(new NioNettyFrameDecoder(() -> false));
+
+		byte[] event = EVENT.getBytes(StandardCharsets.UTF_8);
+
+		// end tag split across reads
+		int split = event.length - 4;
+
+		channel.writeInbound(Unpooled.wrappedBuffer(event, 0, split));
+		assertNull(channel.readInbound());
+
+		channel.writeInbound(Unpooled.wrappedBuffer(event, split, event.length - split));
+
+		assertFrame(channel.readInbound(), event, false);
+
+		assertFalse(channel.finish());
+	}
+
+	@Test
+	public void xmlFramesPerBuffer() {
+		EmbeddedChannel channel = new EmbeddedChannel(new NioNettyFrameDecoder(() -> false));
+
+		byte[] first = EVENT.getBytes(StandardCharsets.UTF_8);
+		byte[] second = ("\n" + EVENT.replace("\"a\"", "\"b\"")).getBytes(StandardCharsets.UTF_8);
+
+		channel.writeInbound(Unpooled.wrappedBuffer(concat(first, second, "<event".getBytes(StandardCharsets.UTF_8))));
+
+		// anything ahead of the next event is left for the handler
+		assertFrame(channel.readInbound(), first, false);
+		assertFrame(channel.readInbound(), second, false);
+		assertNull(channel.readInbound());
+
+		channel.finish();
+	}
+
+	@Test
+	public void xmlOversize() {
+		EmbeddedChannel channel = new EmbeddedChannel(new NioNettyFrameDecoder(() -> false));
+
+		byte[] filler = new byte[NioNettyFrameDecoder.MAX_FRAME_SIZE + 1];
+		Arrays.fill(filler, (byte) 'x');
+
+		// discarded, but the connection stays open for the next message
+		channel.writeInbound(Unpooled.wrappedBuffer(filler));
+		assertNull(channel.readInbound());
+		assertTrue(channel.isOpen());
+
+		byte[] event = EVENT.getBytes(StandardCharsets.UTF_8);
+
+		channel.writeInbound(Unpooled.wrappedBuffer(event));
+
+		assertFrame(channel.readInbound(), event, false);
+
+		assertFalse(channel.finish());
+	}
+
+	@Test
+	public void modeCheckedPerFrame() {
+		AtomicBoolean protobuf = new AtomicBoolean(false);
+
+		EmbeddedChannel channel = new EmbeddedChannel(new NioNettyFrameDecoder(protobuf::get));
+
+		byte[] event = EVENT.getBytes(StandardCharsets.UTF_8);
+		byte[] message = message(20);
+
+		channel.writeInbound(Unpooled.wrappedBuffer(event));
+
+		assertFrame(channel.readInbound(), event, false);
+
+		// switched to protobuf after negotiation
+		protobuf.set(true);
+
+		channel.writeInbound(Unpooled.wrappedBuffer(frame(message)));
+
+		assertFrame(channel.readInbound(), message, true);
+
+		assertFalse(channel.finish());
+	}
+
+	private static void assertFrame(Object read, byte[] expected, boolean protobuf) {
+		NioNettyFrameDecoder.Frame frame = (NioNettyFrameDecoder.Frame) read;
+
+		try {
+			assertEquals(protobuf, frame.isProtobuf());
+			assertArrayEquals(expected, ByteBufUtil.getBytes(frame.content()));
+		} finally {
+			frame.release();
+		}
+	}
+
+	private static byte[] message(int size) {
+		byte[] message = new byte[size];
+
+		for (int i = 0; i < size; i++) {
+			message[i] = (byte) (i * 31);
+		}
+
+		return message;
+	}
+
+	// magic byte and varint size, followed by the message
+	private static byte[] frame(byte[] message) {
+		ByteBuf buf = Unpooled.buffer();
+
+		buf.writeByte(NioNettyFrameDecoder.MAGIC);
+
+		int size = message.length;
+
+		while ((size & ~0x7F) != 0) {
+			buf.writeByte((size & 0x7F) | 0x80);
+			size >>>= 7;
+		}
+
+		buf.writeByte(size);
+		buf.writeBytes(message);
+
+		return ByteBufUtil.getBytes(buf);
+	}
+
+	private static byte[] concat(byte[]... parts) {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+		for (byte[] part : parts) {
+			out.write(part, 0, part.length);
+		}
+
+		return out.toByteArray();
+	}
+}
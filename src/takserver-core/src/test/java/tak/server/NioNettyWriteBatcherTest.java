@@ -0,0 +1,183 @@
+package tak.server;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+import com.bbn.marti.nio.netty.handlers.NioNettyWriteBatcher;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufUtil;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInboundHandlerAdapter;
+import io.netty.channel.ChannelOutboundHandlerAdapter;
+import io.netty.channel.embedded.EmbeddedChannel;
+
+public class NioNettyWriteBatcherTest {
+
+	// counts the flushes that reach the channel
+	private static class FlushCounter extends ChannelOutboundHandlerAdapter {
+
+		int flushes = 0;
+
+		@Override
+		public void flush(ChannelHandlerContext ctx) {
+			flushes++;
+			ctx.flush();
+		}
+	}
+
+	// stands in for the connection handler, which the batcher writes through
+	private static class ContextHolder extends ChannelInboundHandlerAdapter {
+
+		ChannelHandlerContext ctx;
+
+		@Override
+		public void handlerAdded(ChannelHandlerContext ctx) {
+			this.ctx = ctx;
+		}
+	}
+
+	@Test
+	public void flushOnSize() {
+		FlushCounter counter = new FlushCounter();
+		ContextHolder handler = new ContextHolder();
+		EmbeddedChannel channel = new EmbeddedChannel(counter, handler);
+		channel.freezeTime();
+
+		NioNettyWriteBatcher batcher = new NioNettyWriteBatcher(handler.ctx, 10, 1000, Integer.MAX_VALUE);
+
+		assertTrue(batcher.write(new byte[] { 1, 2, 3, 4 }));
+		assertTrue(batcher.write(new byte[] { 5, 6, 7 }));
+
+		// under the batch size - waits for the delay
+		channel.runPendingTasks();
+		assertNull(channel.readOutbound());
+		assertEquals(7, batcher.getPendingBytes());
+
+		// reaching the batch size drains right away, in one write and flush
+		assertTrue(batcher.write(new byte[] { 8, 9, 10 }));
+		channel.runPendingTasks();
+
+		assertBatch(channel.readOutbound(), 1, 2, 3, 4, 5, 6, 7, 8, 9, 10);
+		assertNull(channel.readOutbound());
+		assertEquals(1, counter.flushes);
+		assertEquals(0, batcher.getPendingBytes());
+
+		// the delayed drain finds nothing left to write
+		channel.advanceTimeBy(1000, TimeUnit.MILLISECONDS);
+		channel.runScheduledPendingTasks();
+		assertNull(channel.readOutbound());
+		assertEquals(1, counter.flushes);
+
+		assertFalse(channel.finish());
+	}
+
+	@Test
+	public void flushOnDelay() {
+		FlushCounter counter = new FlushCounter();
+		ContextHolder handler = new ContextHolder();
+		EmbeddedChannel channel = new EmbeddedChannel(counter, handler);
+		channel.freezeTime();
+
+		NioNettyWriteBatcher batcher = new NioNettyWriteBatcher(handler.ctx, 1000, 50, Integer.MAX_VALUE);
+
+		assertTrue(batcher.write(new byte[] { 1 }));
+		channel.advanceTimeBy(20, TimeUnit.MILLISECONDS);
+		assertTrue(batcher.write(new byte[] { 2 }));
+
+		channel.runPendingTasks();
+		assertNull(channel.readOutbound());
+
+		// the drain scheduled with the first message takes both
+		channel.advanceTimeBy(30, TimeUnit.MILLISECONDS);
+		channel.runScheduledPendingTasks();
+
+		assertBatch(channel.readOutbound(), 1, 2);
+		assertNull(channel.readOutbound());
+		assertEquals(1, counter.flushes);
+
+		// and the next message schedules another
+		assertTrue(batcher.write(new byte[] { 3 }));
+		channel.advanceTimeBy(49, TimeUnit.MILLISECONDS);
+		channel.runScheduledPendingTasks();
+		assertNull(channel.readOutbound());
+
+		channel.advanceTimeBy(1, TimeUnit.MILLISECONDS);
+		channel.runScheduledPendingTasks();
+
+		assertBatch(channel.readOutbound(), 3);
+		assertEquals(2, counter.flushes);
+
+		assertFalse(channel.finish());
+	}
+
+	@Test
+	public void noDelay() {
+		FlushCounter counter = new FlushCounter();
+		ContextHolder handler = new ContextHolder();
+		EmbeddedChannel channel = new EmbeddedChannel(counter, handler);
+
+		NioNettyWriteBatcher batcher = new NioNettyWriteBatcher(handler.ctx, 1000, 0, Integer.MAX_VALUE);
+
+		// written as soon as the event loop gets to it, with anything else queued by then
+		assertTrue(batcher.write(new byte[] { 1 }));
+		assertTrue(batcher.write(new byte[] { 2 }));
+		channel.runPendingTasks();
+
+		assertBatch(channel.readOutbound(), 1, 2);
+		assertEquals(1, counter.flushes);
+
+		assertFalse(channel.finish());
+	}
+
+	@Test
+	public void pendingLimit() {
+		FlushCounter counter = new FlushCounter();
+		ContextHolder handler = new ContextHolder();
+		EmbeddedChannel channel = new EmbeddedChannel(counter, handler);
+		channel.freezeTime();
+
+		NioNettyWriteBatcher batcher = new NioNettyWriteBatcher(handler.ctx, 1000, 1000, 3);
+
+		assertTrue(batcher.write(new byte[] { 1, 2 }));
+		assertTrue(batcher.write(new byte[] { 3, 4 }));
+
+		// over the limit - dropped
+		assertFalse(batcher.write(new byte[] { 5 }));
+
+		// unless it has to be sent, like a negotiation response
+		batcher.enqueue(new byte[] { 6 });
+
+		channel.advanceTimeBy(1000, TimeUnit.MILLISECONDS);
+		channel.runScheduledPendingTasks();
+
+		assertBatch(channel.readOutbound(), 1, 2, 3, 4, 6);
+
+		// accepted again once written
+		assertTrue(batcher.write(new byte[] { 7 }));
+
+		assertFalse(channel.finish());
+	}
+
+	private static void assertBatch(Object written, int... expected) {
+		ByteBuf batch = (ByteBuf) written;
+
+		try {
+			byte[] bytes = new byte[expected.length];
+			for (int i = 0; i < expected.length; i++) {
+				bytes[i] = (byte) expected[i];
+			}
+
+			assertArrayEquals(bytes, ByteBufUtil.getBytes(batch));
+		} finally {
+			batch.release();
+		}
+	}
+}
@@ -23,6 +23,7 @@ import com.bbn.cot.CotParserCreator;
 import atakmap.commoncommo.protobuf.v1.Takmessage.TakMessage;
 import tak.server.cot.CotEventContainer;
 import tak.server.cot.CotParser;
+import tak.server.cot.EncodingCache;
 import tak.server.proto.StreamingProtoBufHelper;
 
 @RunWith(SpringJUnit4ClassRunner.class)
@@ -96,4 +97,171 @@ public class ProtoAndCotMessageConversionTests {
 		// so just consider the xmlDetail string as a whole
 		org.junit.Assert.assertTrue(xmlDetail.contains("coolata"));
 	}
+	
+	@Test
+	public void protobufBackedSA() throws DocumentException  {
+		
+		TakMessage sa = cotProtoConverter.cot2protoBuf(new CotEventContainer(parser.parse(SA)));
+		
+		byte[] saBytes = sa.toByteArray();
+		
+		CotEventContainer eager = StreamingProtoBufHelper.proto2cot(sa);
+		CotEventContainer lazy = StreamingProtoBufHelper.proto2cot(sa, saBytes);
+		
+		// read access doesn't change the protobuf backing
+		org.junit.Assert.assertEquals(eager.getUid(), lazy.getUid());
+		org.junit.Assert.assertEquals(eager.getType(), lazy.getType());
+		org.junit.Assert.assertEquals(eager.getTime(), lazy.getTime());
+		org.junit.Assert.assertEquals(eager.getStale(), lazy.getStale());
+		org.junit.Assert.assertEquals(eager.getLat(), lazy.getLat());
+		org.junit.Assert.assertEquals(eager.getCallsign(), lazy.getCallsign());
+		org.junit.Assert.assertEquals(eager.getEndpoint(), lazy.getEndpoint());
+		org.junit.Assert.assertEquals(eager.asXml(), lazy.asXml());
+		org.junit.Assert.assertTrue(lazy.matchXPath("/event/detail/uid[@Droid='coolata']"));
+		org.junit.Assert.assertSame(saBytes, lazy.getTakMessageBytes());
+		org.junit.Assert.assertSame(saBytes, lazy.copy().getTakMessageBytes());
+		
+		// modified through the protobuf - no longer the bytes as received
+		org.junit.Assert.assertTrue(lazy.appendXmlDetail("<_flow-tags_ TAK-Server-test=\"2020-02-12T13:16:07Z\"/>"));
+		org.junit.Assert.assertNull(lazy.getTakMessageBytes());
+		org.junit.Assert.assertTrue(lazy.matchXPath("/event/detail/_flow-tags_[@TAK-Server-test]"));
+		
+		// the document may be modified once handed out, so the protobuf backing is dropped
+		lazy.getDocument();
+		org.junit.Assert.assertNull(lazy.getTakMessage());
+		org.junit.Assert.assertFalse(lazy.appendXmlDetail("<remarks/>"));
+	}
+
+	@Test
+	public void sharedCopyChat() throws DocumentException  {
+		
+		CotEventContainer original = new CotEventContainer(parser.parse(CHAT_TO_MISSION));
+		
+		CotEventContainer repositoryCopy = original.sharedCopy();
+		CotEventContainer repeaterCopy = original.sharedCopy();
+		
+		// read access doesn't clone the document
+		org.junit.Assert.assertTrue(repositoryCopy.matchXPath("/event/detail/marti/dest[@mission='jimmy']"));
+		org.junit.Assert.assertEquals(original.asXml(), repeaterCopy.asXml());
+		org.junit.Assert.assertSame(original.getReadOnlyDocument(), repeaterCopy.getReadOnlyDocument());
+		
+		// modifying one copy clones the document first, so the others are unaffected
+		repositoryCopy.setType("b-t-f-d");
+		repositoryCopy.getDocument().getRootElement().element("detail").element("marti").detach();
+		
+		org.junit.Assert.assertEquals("b-t-f-d", repositoryCopy.getType());
+		org.junit.Assert.assertFalse(repositoryCopy.matchXPath("/event/detail/marti"));
+		
+		org.junit.Assert.assertEquals("b-t-f", original.getType());
+		org.junit.Assert.assertEquals("b-t-f", repeaterCopy.getType());
+		org.junit.Assert.assertTrue(original.matchXPath("/event/detail/marti/dest[@mission='jimmy']"));
+		org.junit.Assert.assertTrue(repeaterCopy.matchXPath("/event/detail/marti/dest[@mission='jimmy']"));
+		
+		// as does modifying the original
+		original.setTime("2017-06-19T17:14:00.000Z");
+		org.junit.Assert.assertEquals("2017-06-19T17:13:53.047Z", repeaterCopy.getTime());
+	}
+
+	@Test
+	public void sharedCopyFrozen() throws Exception  {
+		
+		CotEventContainer original = new CotEventContainer(parser.parse(CHAT_TO_MISSION));
+		
+		// as parsed, single children and attributes are held inline, and only moved to a list when first read
+		org.junit.Assert.assertFalse(isFrozen(original.getReadOnlyDocument().getRootElement()));
+		
+		CotEventContainer copy = original.sharedCopy();
+		
+		// shared copies can be read on different threads, so reading must not modify the document any more
+		org.junit.Assert.assertSame(original.getReadOnlyDocument(), copy.getReadOnlyDocument());
+		org.junit.Assert.assertTrue(isFrozen(copy.getReadOnlyDocument().getRootElement()));
+		org.junit.Assert.assertTrue(copy.matchXPath("/event/detail/marti/dest[@mission='jimmy']"));
+		org.junit.Assert.assertEquals(new CotEventContainer(parser.parse(CHAT_TO_MISSION)).asXml(), copy.asXml());
+	}
+	
+	private static boolean isFrozen(org.dom4j.Element element) throws ReflectiveOperationException {
+		
+		java.lang.reflect.Field content = org.dom4j.tree.DefaultElement.class.getDeclaredField("content");
+		java.lang.reflect.Field attributes = org.dom4j.tree.DefaultElement.class.getDeclaredField("attributes");
+		content.setAccessible(true);
+		attributes.setAccessible(true);
+		
+		if (!(content.get(element) instanceof java.util.List) || !(attributes.get(element) instanceof java.util.List)) {
+			return false;
+		}
+		
+		for (org.dom4j.Element child : element.elements()) {
+			if (!isFrozen(child)) {
+				return false;
+			}
+		}
+		
+		return true;
+	}
+
+	@Test
+	public void encodingCachedPerFormat() throws DocumentException  {
+		
+		CotEventContainer cot = new CotEventContainer(parser.parse(CHAT_TO_MISSION));
+		
+		// each format is encoded once, and shared
+		byte[] xml = cot.getOrInstantiateEncoding();
+		org.junit.Assert.assertSame(xml, cot.getOrInstantiateEncoding());
+		org.junit.Assert.assertSame(xml, cot.getOrInstantiateBufferEncoding().array());
+		
+		TakMessage takMessage = cot.getOrInstantiateEncoding(EncodingCache.Format.TAK_MESSAGE, () -> StreamingProtoBufHelper.cot2protoBuf(cot));
+		org.junit.Assert.assertSame(takMessage, cot.getOrInstantiateEncoding(EncodingCache.Format.TAK_MESSAGE, () -> StreamingProtoBufHelper.cot2protoBuf(cot)));
+		
+		// modifying the message drops its encodings
+		cot.setTime("2017-06-19T17:14:00.000Z");
+		org.junit.Assert.assertNull(cot.getEncoding());
+		org.junit.Assert.assertTrue(new String(cot.getOrInstantiateEncoding()).contains("2017-06-19T17:14:00.000Z"));
+	}
+	
+	@Test
+	public void protobufBackedSetTime() throws DocumentException  {
+		
+		TakMessage sa = cotProtoConverter.cot2protoBuf(new CotEventContainer(parser.parse(SA)));
+		
+		CotEventContainer lazy = StreamingProtoBufHelper.proto2cot(sa, sa.toByteArray());
+		
+		// the server time is only carried by the XML form, so the bytes as received can no longer be sent on
+		lazy.setServerTime("2020-02-12T13:16:08Z");
+		org.junit.Assert.assertNull(lazy.getTakMessageBytes());
+		org.junit.Assert.assertNotNull(lazy.getTakMessage());
+		org.junit.Assert.assertEquals("2020-02-12T13:16:08Z", lazy.getTime());
+		org.junit.Assert.assertTrue(lazy.matchXPath("/event[@time='2020-02-12T13:16:08Z']"));
+		org.junit.Assert.assertNull(lazy.copy().getTakMessageBytes());
+	}
+	
+	@Test
+	public void protobufBackedXmlDetailElements() throws DocumentException  {
+		
+		TakMessage sa = cotProtoConverter.cot2protoBuf(new CotEventContainer(parser.parse(SA)));
+		
+		CotEventContainer lazy = StreamingProtoBufHelper.proto2cot(sa, sa.toByteArray());
+		
+		// track is a protobuf detail field, uid is only in the xml detail
+		org.junit.Assert.assertTrue(lazy.hasXmlDetailElement("uid"));
+		org.junit.Assert.assertFalse(lazy.hasXmlDetailElement("track"));
+		org.junit.Assert.assertFalse(lazy.hasXmlDetailElement("marti"));
+		org.junit.Assert.assertFalse(lazy.hasXmlDetailElement("_flow-tags_"));
+		
+		org.junit.Assert.assertTrue(lazy.appendXmlDetail("<_flow-tags_ TAK-Server-test=\"2020-02-12T13:16:07Z\"/>"));
+		org.junit.Assert.assertTrue(lazy.hasXmlDetailElement("_flow-tags_"));
+		
+		// only top level elements count - not nested ones, text, comments, attributes or element names with the same prefix
+		org.junit.Assert.assertTrue(lazy.appendXmlDetail("<remarks source=\"&lt;marti\"><![CDATA[<marti><dest uid='x'/></marti>]]><!-- <marti/> --><marti/></remarks><martini/><trackx/>"));
+		org.junit.Assert.assertFalse(lazy.hasXmlDetailElement("marti"));
+		org.junit.Assert.assertFalse(lazy.hasXmlDetailElement("track"));
+		org.junit.Assert.assertTrue(lazy.hasXmlDetailElement("martini"));
+		
+		// anything that can't be parsed is assumed to have the element, so that the document is checked instead
+		CotEventContainer malformed = StreamingProtoBufHelper.proto2cot(sa, sa.toByteArray());
+		org.junit.Assert.assertTrue(malformed.appendXmlDetail("<remarks>"));
+		org.junit.Assert.assertTrue(malformed.hasXmlDetailElement("marti"));
+		
+		// not protobuf backed - the caller has to check the document
+		org.junit.Assert.assertTrue(new CotEventContainer(parser.parse(SA)).hasXmlDetailElement("marti"));
+	}
 }
@@ -0,0 +1,262 @@
+package tak.server;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.NavigableSet;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import com.bbn.marti.remote.groups.Direction;
+import com.bbn.marti.remote.groups.Group;
+import com.bbn.marti.service.SubscriptionMatchingIndex;
+
+public class SubscriptionMatchingIndexTest {
+
+	private final List<TestSubscription> subscriptions = new CopyOnWriteArrayList<>();
+
+	private SubscriptionMatchingIndex<TestSubscription> index;
+
+	@Before
+	public void setup() {
+		subscriptions.clear();
+
+		index = new SubscriptionMatchingIndex<>(() -> subscriptions, subscriptions::contains, s -> s.receiver, s -> s.groups, s -> s.federate);
+
+		SubscriptionMatchingIndex.invalidate();
+	}
+
+	@Test
+	public void matchByOutGroup() {
+		TestSubscription a = add("a", false, 0);
+		TestSubscription b = add("b", false, 1);
+		TestSubscription c = add("c", false, 0, 2);
+
+		List<TestSubscription> candidates = candidates(true, 0);
+
+		assertEquals(2, candidates.size());
+		assertTrue(candidates.contains(a));
+		assertTrue(candidates.contains(c));
+		assertFalse(candidates.contains(b));
+
+		assertEquals(1, candidates(true, 1).size());
+		assertTrue(candidates(true, 3).isEmpty());
+		assertEquals(3, index.size());
+	}
+
+	@Test
+	public void addAndRemove() {
+		TestSubscription a = add("a", false, 0);
+
+		assertEquals(1, candidates(true, 0).size());
+
+		// each change is in the index as soon as the subscription is refreshed, without a rebuild
+		TestSubscription b = add("b", false, 0);
+
+		List<TestSubscription> candidates = candidates(true, 0);
+
+		assertEquals(2, candidates.size());
+		assertTrue(candidates.contains(b));
+
+		subscriptions.remove(a);
+		index.refresh(a);
+
+		candidates = candidates(true, 0);
+
+		assertEquals(1, candidates.size());
+		assertFalse(candidates.contains(a));
+		assertTrue(candidates.contains(b));
+		assertEquals(1, index.size());
+
+		// refreshing a subscription that isn't present does nothing
+		index.refresh(a);
+
+		assertEquals(1, candidates(true, 0).size());
+	}
+
+	@Test
+	public void receiverGroupsChange() {
+		TestSubscription a = add("a", false, 0);
+		TestSubscription b = add("b", false, 1);
+
+		b.receiver = a.receiver;
+
+		SubscriptionMatchingIndex.invalidateSubscription(b);
+
+		// a moves from bit 0 to bits 2 and 3. Only the subscriptions of its receiver are re-indexed.
+		a.groups.clear();
+		a.groups.add(group(2, Direction.OUT));
+		a.groups.add(group(3, Direction.OUT));
+
+		b.groups.clear();
+		b.groups.add(group(3, Direction.OUT));
+
+		SubscriptionMatchingIndex.invalidateReceiver(a.receiver);
+
+		assertTrue(candidates(true, 0).isEmpty());
+		assertTrue(candidates(true, 1).isEmpty());
+		assertEquals(1, candidates(true, 2).size());
+
+		List<TestSubscription> candidates = candidates(true, 3, 2);
+
+		assertEquals(2, candidates.size());
+		assertTrue(candidates.contains(a));
+		assertTrue(candidates.contains(b));
+
+		// a receiver without groups isn't a candidate
+		a.groups.clear();
+
+		SubscriptionMatchingIndex.invalidateReceiver(a.receiver);
+
+		assertEquals(1, candidates(true, 2, 3).size());
+		assertEquals(1, index.size());
+	}
+
+	@Test
+	public void refreshMatchesRebuild() {
+		List<TestSubscription> added = new ArrayList<>();
+
+		for (int i = 0; i < 200; i++) {
+			added.add(add("s" + i, i % 7 == 0, i % 5, (i * 3) % 11));
+		}
+
+		for (int i = 0; i < 200; i += 3) {
+			subscriptions.remove(added.get(i));
+			index.refresh(added.get(i));
+		}
+
+		for (int bit = 0; bit < 12; bit++) {
+			List<TestSubscription> refreshed = candidates(true, bit);
+
+			SubscriptionMatchingIndex.invalidate();
+
+			List<TestSubscription> rebuilt = candidates(true, bit);
+
+			assertEquals(rebuilt.size(), refreshed.size());
+			assertTrue(refreshed.containsAll(rebuilt));
+		}
+	}
+
+	@Test
+	public void visitOnce() {
+		TestSubscription a = add("a", false, 0, 1);
+		add("b", false, 1);
+
+		List<TestSubscription> candidates = candidates(true, 0, 1);
+
+		assertEquals(2, candidates.size());
+		assertEquals(1, candidates.stream().filter(s -> s == a).count());
+	}
+
+	@Test
+	public void excludeFederates() {
+		TestSubscription local = add("local", false, 0);
+		TestSubscription federate = add("federate", true, 0);
+
+		List<TestSubscription> all = candidates(true, 0);
+
+		assertEquals(2, all.size());
+		assertTrue(all.contains(federate));
+
+		List<TestSubscription> localOnly = candidates(false, 0);
+
+		assertEquals(1, localOnly.size());
+		assertTrue(localOnly.contains(local));
+	}
+
+	@Test
+	public void unindexedReceiverIsAlwaysCandidate() {
+		TestSubscription unindexed = new TestSubscription("unindexed", false);
+		unindexed.groups.add(new Group("nobit", Direction.OUT));
+		subscriptions.add(unindexed);
+		index.refresh(unindexed);
+
+		add("a", false, 0);
+
+		assertTrue(candidates(true, 5).contains(unindexed));
+		assertEquals(2, candidates(true, 0).size());
+	}
+
+	@Test
+	public void receiverWithoutGroupsIsNeverCandidate() {
+		subscriptions.add(new TestSubscription("none", false));
+
+		assertTrue(candidates(true, 0).isEmpty());
+		assertEquals(0, index.size());
+	}
+
+	@Test
+	public void sourceWithoutBitposFallsBack() {
+		add("a", false, 0);
+
+		NavigableSet<Group> srcGroups = new ConcurrentSkipListSet<>();
+		srcGroups.add(new Group("nobit", Direction.IN));
+
+		List<TestSubscription> visited = new ArrayList<>();
+
+		assertFalse(index.forEachCandidate(srcGroups, true, visited::add));
+		assertTrue(visited.isEmpty());
+	}
+
+	private TestSubscription add(String name, boolean federate, int... bitpos) {
+		TestSubscription subscription = new TestSubscription(name, federate);
+
+		for (int bit : bitpos) {
+			subscription.groups.add(group(bit, Direction.IN));
+			subscription.groups.add(group(bit, Direction.OUT));
+		}
+
+		subscriptions.add(subscription);
+		index.refresh(subscription);
+
+		return subscription;
+	}
+
+	private List<TestSubscription> candidates(boolean includeFederates, int... bitpos) {
+		NavigableSet<Group> srcGroups = new ConcurrentSkipListSet<>();
+
+		for (int bit : bitpos) {
+			srcGroups.add(group(bit, Direction.IN));
+		}
+
+		List<TestSubscription> visited = new ArrayList<>();
+
+		assertTrue(index.forEachCandidate(srcGroups, includeFederates, visited::add));
+
+		return visited;
+	}
+
+	private static Group group(int bitpos, Direction direction) {
+		Group group = new Group("group" + bitpos, direction);
+		group.setBitpos(bitpos);
+
+		return group;
+	}
+
+	private static class TestSubscription {
+
+		final String name;
+
+		final boolean federate;
+
+		final NavigableSet<Group> groups = new ConcurrentSkipListSet<>();
+
+		Object receiver = new Object();
+
+		TestSubscription(String name, boolean federate) {
+			this.name = name;
+			this.federate = federate;
+		}
+
+		@Override
+		public String toString() {
+			return name;
+		}
+	}
+}
@@ -9,9 +9,11 @@ import javax.xml.parsers.SAXParserFactory;
 
 import org.dom4j.Document;
 import org.dom4j.DocumentException;
+import org.dom4j.DocumentHelper;
 import org.dom4j.Element;
 import org.dom4j.Node;
 import org.dom4j.io.SAXReader;
+import org.junit.Assert;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.slf4j.Logger;
@@ -24,7 +26,9 @@ import org.xml.sax.SAXException;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
 
+import tak.server.cot.CompiledXPath;
 import tak.server.cot.CotEventContainer;
+import tak.server.cot.XPathCache;
 
 @RunWith(SpringJUnit4ClassRunner.class)
 @ContextConfiguration(classes = {TakServerTestApplicationConfig.class})
@@ -114,4 +118,65 @@ public class XPathPerformanceTest {
 
 
 	}
+
+	@Test
+	public void compiledXpathMatchesDom4j() throws DocumentException, ParserConfigurationException, SAXException {
+
+		CotEventContainer chatCot = new CotEventContainer(parseXML(CHAT_TO_MISSION));
+
+		String[] expressions = {
+				"*",
+				"/event[starts-with(@type, 'b-t')]",
+				"/event[starts-with(@type,\"a-f\")]",
+				"/event[@type='b-t-f']",
+				"/event[@type = 'a-f-G-U-C']",
+				"/event[@uid='GeoChat.ANDROID-358982072593830.Green.2b4fb2c4-300d-41e6-9df3-f21b597b87e3']",
+				"/event[@uid='ANDROID-358982072593830']",
+				"/event/detail/marti/dest[@mission]" };
+
+		for (String expression : expressions) {
+			CompiledXPath compiled = XPathCache.compile(expression);
+
+			Assert.assertEquals(expression, DocumentHelper.createXPath(expression).booleanValueOf(chatCot.getDocument()), compiled.matches(chatCot));
+			Assert.assertEquals(expression, !expression.startsWith("/event/detail"), compiled.isSimple());
+			Assert.assertSame(compiled, XPathCache.compile(expression));
+		}
+
+		for (int i = 0; i < 10; i++) {
+			long start = System.nanoTime();
+			chatCot.matchXPath("/event[starts-with(@type, 'b-t')]");
+			long end = System.nanoTime();
+
+			logger.info("cached type prefix XPath timing: " + (end - start) + " ns");
+		}
+	}
+
+	@Test
+	public void xpathCacheBounded() {
+
+		try {
+			XPathCache.setMaxSize(10);
+
+			long evictions = XPathCache.getEvictionCount();
+
+			for (int i = 0; i < 100; i++) {
+				XPathCache.compile("/event[@uid='" + i + "']");
+				Assert.assertTrue(XPathCache.size() <= 10);
+			}
+
+			Assert.assertTrue(XPathCache.getEvictionCount() - evictions >= 90);
+
+			CompiledXPath compiled = XPathCache.compile("/event[@uid='99']");
+			Assert.assertSame(compiled, XPathCache.compile("/event[@uid='99']"));
+
+			// 0 disables caching
+			XPathCache.setMaxSize(0);
+
+			Assert.assertEquals(0, XPathCache.size());
+			Assert.assertNotSame(XPathCache.compile("/event[@uid='99']"), XPathCache.compile("/event[@uid='99']"));
+			Assert.assertEquals(0, XPathCache.size());
+		} finally {
+			XPathCache.setMaxSize(XPathCache.DEFAULT_MAX_SIZE);
+		}
+	}
 }
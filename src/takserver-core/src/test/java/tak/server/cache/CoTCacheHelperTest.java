@@ -0,0 +1,92 @@
+package tak.server.cache;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.fail;
+
+import java.io.StringReader;
+import java.lang.reflect.Field;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+
+import org.dom4j.io.SAXReader;
+import org.junit.Before;
+import org.junit.Test;
+import org.xml.sax.InputSource;
+
+import com.bbn.marti.remote.exception.TakException;
+import com.bbn.marti.remote.util.RemoteUtil;
+
+import tak.server.cot.CotEventContainer;
+import tak.server.ignite.cache.LatestSAIndex;
+import tak.server.proto.StreamingProtoBufHelper;
+
+public class CoTCacheHelperTest {
+
+	private static final String SA = "<event version=\"2.0\" uid=\"%s\" type=\"a-f-G-U-C\" how=\"m-g\" time=\"2020-02-12T13:16:07Z\" start=\"2020-02-12T13:16:05Z\" stale=\"2020-02-12T13:16:50Z\"><point lat=\"40.255716\" lon=\"-72.045306\" hae=\"-22.2\" ce=\"4.9\" le=\"9999999.0\"/><detail><contact callsign=\"coolata\"/></detail></event>";
+
+	private final Map<String, LatestSAIndex.Entry> index = new HashMap<>();
+
+	private CoTCacheHelper helper;
+
+	@Before
+	public void init() throws Exception {
+		// the latest SA index, without ignite, and with the CoT cache disabled since there's no configuration
+		helper = new CoTCacheHelper() {
+			@Override
+			Map<String, LatestSAIndex.Entry> readLatestSAIndex(Set<String> uids) {
+				Map<String, LatestSAIndex.Entry> entries = new HashMap<>(index);
+				entries.keySet().retainAll(uids);
+				return entries;
+			}
+		};
+
+		Field remoteUtil = CoTCacheHelper.class.getDeclaredField("remoteUtil");
+		remoteUtil.setAccessible(true);
+		remoteUtil.set(helper, RemoteUtil.getInstance());
+	}
+
+	@Test
+	public void indexedAllowed() throws Exception {
+		index("indexed", "0101");
+
+		// a request in any of the groups of the sender
+		CotCacheWrapper wrapper = helper.getLatestCotWrapperForUid("indexed", "0001");
+
+		assertNotNull(wrapper);
+		assertEquals("indexed", wrapper.getUid());
+		assertEquals("0101", wrapper.getGroupsBitVectorString());
+		assertEquals("a-f-G-U-C", wrapper.getCotElement().cottype);
+		assertEquals("0101", wrapper.getCotElement().groupString);
+		assertEquals("coolata", wrapper.getUidDetails().callsign);
+
+		// including a shorter vector, from before groups were added
+		assertNotNull(helper.getLatestCotWrapperForUid("indexed", "00100"));
+	}
+
+	@Test
+	public void indexedNotAllowed() throws Exception {
+		index("indexed", "0101");
+
+		// not passed on to the database, which could return an older event that is visible
+		assertNotAllowed("indexed", "1010");
+		assertNotAllowed("indexed", "0000");
+	}
+
+	private void assertNotAllowed(String uid, String groupVector) {
+		try {
+			helper.getLatestCotWrapperForUid(uid, groupVector);
+			fail("expected uid " + uid + " not to be allowed for " + groupVector);
+		} catch (TakException e) {
+			assertEquals("not allowed", e.getMessage());
+		}
+	}
+
+	private void index(String uid, String groupVector) throws Exception {
+		CotEventContainer cot = new CotEventContainer(new SAXReader().read(new InputSource(new StringReader(String.format(SA, uid)))));
+		byte[] takMessageBytes = StreamingProtoBufHelper.cot2protoBuf(cot).toByteArray();
+
+		index.put(uid, new LatestSAIndex.Entry(uid, takMessageBytes, groupVector, cot.getTimeLong(), cot.getStaleLong()));
+	}
+}
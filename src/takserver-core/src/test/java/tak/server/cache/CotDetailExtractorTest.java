@@ -0,0 +1,206 @@
+package tak.server.cache;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+
+import org.junit.Test;
+
+import com.bbn.marti.sync.model.UidDetails;
+
+import tak.server.cot.CotElement;
+
+public class CotDetailExtractorTest {
+
+	private static final String SA_DETAIL = "<detail>"
+			+ "<__group name=\"Cyan\" role=\"Team Member\"/>"
+			+ "<contact endpoint=\"*:-1:stcp\" callsign=\"A&amp;B\"/>"
+			+ "<uid Droid=\"droid\" callsign=\"other\"/>"
+			+ "<track course=\"344.5\" speed=\"1.5\"/>"
+			+ "<color argb=\"-1\"/>"
+			+ "<usericon iconsetpath=\"f7f71666-8b28-4b57-9fbb-e38e61d33b79/Google/hiker.png\"/>"
+			+ "</detail>";
+
+	@Test
+	public void situationalAwareness() {
+		CotElement cot = cot("a-f-G-U-C", SA_DETAIL);
+		UidDetails details = CotDetailExtractor.hydrate(new UidDetails(), cot);
+
+		assertEquals("a-f-G-U-C", details.type);
+		assertEquals(Double.valueOf(40.0), details.location.lat);
+
+		// the contact callsign, kept escaped in the CotElement and unescaped in the details
+		assertEquals("A&amp;B", cot.callsign);
+		assertEquals("A&B", details.callsign);
+
+		assertEquals(344.5, cot.course, 0);
+		assertEquals(1.5, cot.speed, 0);
+
+		assertEquals("-1", details.color);
+		assertEquals(Long.valueOf(-1), cot.iconArgbColor);
+
+		assertEquals("f7f71666-8b28-4b57-9fbb-e38e61d33b79/Google/hiker.png", details.iconsetPath);
+		assertEquals("f7f71666-8b28-4b57-9fbb-e38e61d33b79", cot.iconSetUid);
+		assertEquals("Google", cot.iconGroup);
+		assertEquals("hiker.png", cot.iconName);
+
+		assertFalse(cot.hasImage);
+	}
+
+	@Test
+	public void missingDetail() {
+		// no detail text at all - only the fields of the CotElement
+		CotElement cot = cot("a-f-G", null);
+		UidDetails details = CotDetailExtractor.hydrate(new UidDetails(), cot);
+
+		assertEquals("a-f-G", details.type);
+		assertNull(details.callsign);
+		assertNull(cot.callsign);
+
+		// detail text without a detail element, or with more than one
+		assertNull(CotDetailExtractor.hydrate(new UidDetails(), cot("a-f-G", "<event/>")));
+		assertNull(CotDetailExtractor.hydrate(new UidDetails(), cot("a-f-G", "<root><detail/><detail/></root>")));
+		assertNull(CotDetailExtractor.hydrate(new UidDetails(), cot("a-f-G", "<detail><detail/></detail>")));
+
+		// an empty detail
+		cot = cot("a-f-G", "<detail/>");
+		details = CotDetailExtractor.hydrate(new UidDetails(), cot);
+
+		assertNull(details.callsign);
+		assertTrue(Double.isNaN(cot.course));
+	}
+
+	@Test
+	public void firstTrackWins() {
+		// a duplicate track is ignored
+		CotElement cot = cot("a-f-G", "<detail><track course=\"10\" speed=\"2\"/><track course=\"20\" speed=\"3\"/></detail>");
+		CotDetailExtractor.hydrate(new UidDetails(), cot);
+
+		assertEquals(10, cot.course, 0);
+		assertEquals(2, cot.speed, 0);
+
+		// a track is read from anywhere in the detail
+		cot = cot("a-f-G", "<detail><link><track course=\"30\" speed=\"4\"/></link><track course=\"40\"/></detail>");
+		CotDetailExtractor.hydrate(new UidDetails(), cot);
+
+		assertEquals(30, cot.course, 0);
+		assertEquals(4, cot.speed, 0);
+	}
+
+	@Test
+	public void trackValues() {
+		// blank or missing values leave the CotElement as it was, and invalid ones are NaN
+		CotElement cot = cot("a-f-G", "<detail><track course=\" \"/></detail>");
+		cot.course = 5;
+		cot.speed = 6;
+
+		CotDetailExtractor.hydrate(new UidDetails(), cot);
+
+		assertEquals(5, cot.course, 0);
+		assertEquals(6, cot.speed, 0);
+
+		cot = cot("a-f-G", "<detail><track course=\"north\" speed=\"7\"/></detail>");
+		CotDetailExtractor.hydrate(new UidDetails(), cot);
+
+		assertTrue(Double.isNaN(cot.course));
+		assertEquals(7, cot.speed, 0);
+	}
+
+	@Test
+	public void group() {
+		// __group is neither a callsign nor a UID detail
+		CotElement cot = cot("a-f-G", "<detail><__group name=\"Cyan\" role=\"Team Member\"/></detail>");
+		UidDetails details = CotDetailExtractor.hydrate(new UidDetails(), cot);
+
+		assertNull(details.callsign);
+		assertNull(details.color);
+		assertNull(cot.callsign);
+	}
+
+	@Test
+	public void callsign() {
+		// without a contact there's no KML callsign, though the details fall back to the title
+		CotElement cot = cot("a-f-G", "<detail><uid callsign=\"other\"/><title title=\"titled\"/></detail>");
+		UidDetails details = CotDetailExtractor.hydrate(new UidDetails(), cot);
+
+		assertNull(cot.callsign);
+		assertEquals("titled", details.callsign);
+
+		// a contact without a callsign takes the first callsign anywhere in the detail
+		cot = cot("a-f-G", "<detail><uid callsign=\"first\"/><contact endpoint=\"x\"/><x callsign=\"second\"/></detail>");
+		CotDetailExtractor.hydrate(new UidDetails(), cot);
+
+		assertEquals("first", cot.callsign);
+
+		// and a medevac title takes precedence in the details
+		cot = cot("b-r-f-h-c", "<detail><contact callsign=\"medic\"/><_medevac_ title=\"MEDEVAC 1\"/></detail>");
+		details = CotDetailExtractor.hydrate(new UidDetails(), cot);
+
+		assertEquals("medic", cot.callsign);
+		assertEquals("MEDEVAC 1", details.callsign);
+	}
+
+	@Test
+	public void image() {
+		assertFalse(hasImage("<detail><contact callsign=\"x\"/><remarks>nothing here</remarks></detail>"));
+
+		// in an element name, an attribute name or value, or text
+		assertTrue(hasImage("<detail><image mime=\"jpeg\"/></detail>"));
+		assertTrue(hasImage("<detail><sensor_image/></detail>"));
+		assertTrue(hasImage("<detail><link imageUrl=\"x\"/></detail>"));
+		assertTrue(hasImage("<detail><link type=\"image/png\"/></detail>"));
+		assertTrue(hasImage("<detail><remarks>see image</remarks></detail>"));
+		assertTrue(hasImage("<detail><remarks><![CDATA[<image>]]></remarks></detail>"));
+	}
+
+	@Test
+	public void attachmentsAndColors() {
+		CotElement cot = cot("u-d-f", "<detail><strokeColor value=\"-256\"/><attachment_list hashes=\"[&quot;abc&quot;,&quot;def&quot;]\"/></detail>");
+		UidDetails details = CotDetailExtractor.hydrate(new UidDetails(), cot);
+
+		assertEquals("-256", details.color);
+		assertEquals(Arrays.asList("abc", "def"), details.attachments);
+
+		// vehicle models are only read for their type
+		details = CotDetailExtractor.hydrate(new UidDetails(), cot("u-d-v-m", "<detail><model name=\"truck\" category=\"vehicle\"/></detail>"));
+
+		assertEquals("truck", details.name);
+		assertEquals("vehicle", details.category);
+
+		details = CotDetailExtractor.hydrate(new UidDetails(), cot("u-d-f", "<detail><model name=\"truck\" category=\"vehicle\"/></detail>"));
+
+		assertNull(details.name);
+	}
+
+	@Test
+	public void malformedXml() {
+		CotElement cot = cot("a-f-G", "<detail><contact callsign=\"x\"></detail>");
+		UidDetails uidDetails = new UidDetails();
+
+		// logged, and the details are returned with what was set before the detail was read
+		assertSame(uidDetails, CotDetailExtractor.hydrate(uidDetails, cot));
+
+		assertEquals("a-f-G", uidDetails.type);
+		assertNull(uidDetails.callsign);
+		assertNull(cot.callsign);
+	}
+
+	private static boolean hasImage(String detail) {
+		CotElement cot = cot("a-f-G", detail);
+		CotDetailExtractor.hydrate(new UidDetails(), cot);
+		return cot.hasImage;
+	}
+
+	private static CotElement cot(String type, String detail) {
+		CotElement cot = new CotElement();
+		cot.cottype = type;
+		cot.lat = 40.0;
+		cot.lon = -72.0;
+		cot.detailtext = detail;
+		return cot;
+	}
+}
@@ -0,0 +1,204 @@
+package tak.server.cache;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import com.bbn.marti.remote.sync.MissionChangeType;
+import com.bbn.marti.sync.model.Mission;
+import com.bbn.marti.sync.model.MissionChange;
+import com.bbn.marti.sync.model.MissionChangeDelta;
+import com.bbn.marti.sync.repository.MissionChangeRepository;
+import com.bbn.marti.sync.service.MissionService;
+
+public class MissionChangeLogTest {
+
+	private static final long MISSION_ID = 1L;
+
+	// old enough to have settled
+	private static final Date SETTLED_TIME = new Date(System.currentTimeMillis() - 60000);
+
+	private MissionChangeLog missionChangeLog;
+
+	private final List<MissionChange> table = new ArrayList<>();
+
+	private Mission mission;
+
+	@Before
+	public void init() throws Exception {
+		table.clear();
+
+		mission = new Mission();
+		mission.setId(MISSION_ID);
+		mission.setName("test");
+
+		// the tail query, against the changes in table
+		MissionChangeRepository missionChangeRepository = fake(MissionChangeRepository.class, (method, args) -> {
+			if (!method.equals("changesForMissionAfter") || !Long.valueOf(MISSION_ID).equals(args[0])) {
+				throw new UnsupportedOperationException(method);
+			}
+
+			long after = (long) args[1];
+			int limit = (int) args[2];
+
+			return table.stream()
+					.filter(change -> change.getId() > after)
+					.limit(limit)
+					.collect(Collectors.toList());
+		});
+
+		// hydrating a change needs nothing from the mission service here
+		MissionService missionService = fake(MissionService.class, (method, args) -> null);
+
+		missionChangeLog = new MissionChangeLog();
+		inject("missionChangeRepository", missionChangeRepository);
+		inject("missionService", missionService);
+	}
+
+	@Test
+	public void squashKeepsLatestChangeToEachContent() {
+		List<MissionChange> changes = Arrays.asList(
+				change(1, MissionChangeType.CREATE_MISSION, null, null),
+				change(2, MissionChangeType.ADD_CONTENT, "hash1", null),
+				change(3, MissionChangeType.ADD_CONTENT, null, "uid1"),
+				change(4, MissionChangeType.REMOVE_CONTENT, "hash1", null),
+				change(5, MissionChangeType.ADD_CONTENT, "hash2", null),
+				change(6, MissionChangeType.REMOVE_CONTENT, null, "uid1"),
+				change(7, MissionChangeType.DELETE_MISSION, null, null));
+
+		assertEquals(Arrays.asList(1L, 4L, 5L, 6L, 7L), ids(MissionChangeLog.squash(changes)));
+	}
+
+	@Test
+	public void squashKeepsEveryMissionCreateAndDelete() {
+		List<MissionChange> changes = Arrays.asList(
+				change(1, MissionChangeType.CREATE_MISSION, null, null),
+				change(2, MissionChangeType.DELETE_MISSION, null, null),
+				change(3, MissionChangeType.CREATE_MISSION, null, null));
+
+		assertEquals(Arrays.asList(1L, 2L, 3L), ids(MissionChangeLog.squash(changes)));
+		assertTrue(MissionChangeLog.squash(new ArrayList<>()).isEmpty());
+	}
+
+	@Test
+	public void pageThroughSettledChanges() {
+		addChanges(1, 2500, SETTLED_TIME);
+
+		MissionChangeDelta delta = missionChangeLog.getChangesSince(mission, 0, false);
+
+		assertEquals(MissionChangeLog.PAGE_SIZE, delta.getChanges().size());
+		assertEquals(1L, (long) delta.getChanges().get(0).getId());
+		assertEquals(1000L, delta.getCursor());
+		assertTrue(delta.isMore());
+
+		delta = missionChangeLog.getChangesSince(mission, delta.getCursor(), false);
+
+		assertEquals(1001L, (long) delta.getChanges().get(0).getId());
+		assertEquals(2000L, delta.getCursor());
+		assertTrue(delta.isMore());
+
+		delta = missionChangeLog.getChangesSince(mission, delta.getCursor(), false);
+
+		assertEquals(500, delta.getChanges().size());
+		assertEquals(2500L, delta.getCursor());
+		assertFalse(delta.isMore());
+
+		delta = missionChangeLog.getChangesSince(mission, delta.getCursor(), false);
+
+		assertTrue(delta.getChanges().isEmpty());
+		assertEquals(2500L, delta.getCursor());
+		assertFalse(delta.isMore());
+	}
+
+	@Test
+	public void cursorStopsAtFirstUnsettledChange() {
+		addChanges(1, 599, SETTLED_TIME);
+		addChanges(600, 1500, new Date());
+
+		MissionChangeDelta delta = missionChangeLog.getChangesSince(mission, 0, false);
+
+		// the page is full, but the cursor doesn't pass the unsettled changes, so there is no next page yet
+		assertEquals(MissionChangeLog.PAGE_SIZE, delta.getChanges().size());
+		assertEquals(599L, delta.getCursor());
+		assertFalse(delta.isMore());
+	}
+
+	@Test
+	public void cursorOlderThanLog() {
+		addChanges(1, 1200, SETTLED_TIME);
+
+		// the log starts at the first cursor seen
+		MissionChangeDelta delta = missionChangeLog.getChangesSince(mission, 500, false);
+
+		assertEquals(700, delta.getChanges().size());
+		assertEquals(1200L, delta.getCursor());
+
+		// so an older cursor is answered from the database, and paged the same way
+		delta = missionChangeLog.getChangesSince(mission, 0, false);
+
+		assertEquals(MissionChangeLog.PAGE_SIZE, delta.getChanges().size());
+		assertEquals(1000L, delta.getCursor());
+		assertTrue(delta.isMore());
+	}
+
+	@Test
+	public void squashedDelta() {
+		table.add(change(1, MissionChangeType.ADD_CONTENT, "hash1", null));
+		table.add(change(2, MissionChangeType.ADD_CONTENT, "hash2", null));
+		table.add(change(3, MissionChangeType.REMOVE_CONTENT, "hash1", null));
+
+		MissionChangeDelta delta = missionChangeLog.getChangesSince(mission, 0, true);
+
+		assertEquals(Arrays.asList(2L, 3L), ids(delta.getChanges()));
+		assertEquals(3L, delta.getCursor());
+	}
+
+	private void addChanges(long from, long to, Date serverTime) {
+		for (long id = from; id <= to; id++) {
+			MissionChange change = change(id, MissionChangeType.ADD_CONTENT, null, "uid" + id);
+			change.setServerTime(serverTime);
+			table.add(change);
+		}
+	}
+
+	private MissionChange change(long id, MissionChangeType type, String hash, String uid) {
+		MissionChange change = new MissionChange(type, mission);
+		change.setId(id);
+		change.setContentHash(hash);
+		change.setContentUid(uid);
+		change.setServerTime(SETTLED_TIME);
+
+		return change;
+	}
+
+	private interface Answer {
+		Object answer(String method, Object[] args);
+	}
+
+	private static <T> T fake(Class<T> type, Answer answer) {
+		return type.cast(Proxy.newProxyInstance(MissionChangeLogTest.class.getClassLoader(), new Class<?>[] { type },
+				(proxy, method, args) -> answer.answer(method.getName(), args)));
+	}
+
+	// the fields are autowired in the application
+	private void inject(String name, Object value) throws ReflectiveOperationException {
+		Field field = MissionChangeLog.class.getDeclaredField(name);
+		field.setAccessible(true);
+		field.set(missionChangeLog, value);
+	}
+
+	private static List<Long> ids(List<MissionChange> changes) {
+		return changes.stream().map(MissionChange::getId).collect(Collectors.toList());
+	}
+}
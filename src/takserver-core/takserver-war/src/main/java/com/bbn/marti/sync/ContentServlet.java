@@ -5,6 +5,10 @@ package com.bbn.marti.sync;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.SeekableByteChannel;
+import java.nio.channels.WritableByteChannel;
 import java.sql.SQLException;
 import java.util.Arrays;
 import java.util.List;
@@ -162,6 +166,11 @@ public class ContentServlet extends EnterpriseSyncServlet {
 				}
 			}
 
+			if (contentStream instanceof StoredContentInputStream) {
+				sendStoredContent(request, response, (StoredContentInputStream) contentStream, offset, method);
+				return;
+			}
+
 			response.setStatus(HttpServletResponse.SC_OK);
 
 			if (method == HttpMethod.GET) {
@@ -223,6 +232,132 @@ public class ContentServlet extends EnterpriseSyncServlet {
 		}
 	}
 
+	/*
+	 * Content in the content store has a known size and can be read from any position, so it's served with a length and in byte
+	 * ranges, and copied straight from the file to the response.
+	 */
+	private void sendStoredContent(HttpServletRequest request, HttpServletResponse response, StoredContentInputStream contentStream,
+			Integer offset, HttpMethod method) throws IOException {
+
+		long size = contentStream.size();
+		long start = offset != null && offset > 0 ? Math.min(offset, size) : 0;
+		long end = size - 1;
+
+		response.setHeader("Accept-Ranges", "bytes");
+
+		// the content can't be checked against an If-Range validator, so those requests get all of it
+		String range = request.getHeader("Range");
+
+		long[] bounds = range == null || request.getHeader("If-Range") != null ? null : parseRange(range, size);
+
+		if (bounds != null && bounds.length == 0) {
+			response.setHeader("Content-Range", "bytes */" + size);
+			response.sendError(HttpServletResponse.SC_REQUESTED_RANGE_NOT_SATISFIABLE);
+			return;
+		}
+
+		if (bounds != null) {
+			start = bounds[0];
+			end = bounds[1];
+
+			response.setStatus(HttpServletResponse.SC_PARTIAL_CONTENT);
+			response.setHeader("Content-Range", "bytes " + start + "-" + end + "/" + size);
+		} else {
+			response.setStatus(HttpServletResponse.SC_OK);
+		}
+
+		long length = Math.max(end - start + 1, 0);
+
+		response.setContentLengthLong(length);
+
+		if (method != HttpMethod.GET) {
+			return;
+		}
+
+		if (logger.isDebugEnabled()) {
+			logger.debug("sending " + length + " bytes of stored content starting at " + start);
+		}
+
+		try (OutputStream outStream = response.getOutputStream()) {
+
+			SeekableByteChannel channel = contentStream.getChannel();
+
+			if (channel instanceof FileChannel) {
+				WritableByteChannel outChannel = Channels.newChannel(outStream);
+
+				long position = start;
+				long remaining = length;
+
+				while (remaining > 0) {
+					long sent = ((FileChannel) channel).transferTo(position, remaining, outChannel);
+
+					if (sent <= 0) {
+						break;
+					}
+
+					position += sent;
+					remaining -= sent;
+				}
+			} else {
+				channel.position(start);
+				ByteStreams.copy(ByteStreams.limit(Channels.newInputStream(channel), length), outStream);
+			}
+		}
+	}
+
+	/*
+	 * Parses a single byte range (RFC 7233) against content of the given size. Returns the first and last positions in the range, an
+	 * empty array if the range can't be satisfied, or null if the header should be ignored and all of the content sent - when it's
+	 * malformed or asks for more than one range.
+	 */
+	static long[] parseRange(String range, long size) {
+
+		if (!range.startsWith("bytes=") || range.indexOf(',') != -1) {
+			return null;
+		}
+
+		String spec = range.substring("bytes=".length()).trim();
+		int dash = spec.indexOf('-');
+
+		if (dash == -1) {
+			return null;
+		}
+
+		try {
+			if (dash == 0) {
+				// last n bytes
+				long suffix = Long.parseLong(spec.substring(1));
+
+				if (suffix < 0) {
+					return null;
+				}
+
+				if (suffix == 0 || size == 0) {
+					return new long[0];
+				}
+
+				return new long[] { Math.max(size - suffix, 0), size - 1 };
+			}
+
+			long first = Long.parseLong(spec.substring(0, dash));
+			boolean openEnded = dash == spec.length() - 1;
+			long last = openEnded ? size - 1 : Long.parseLong(spec.substring(dash + 1));
+
+			// an open-ended range of empty content is unsatisfiable, not malformed
+			if (first < 0 || (!openEnded && last < first)) {
+				return null;
+			}
+
+			if (first >= size) {
+				return new long[0];
+			}
+
+			return new long[] { first, Math.min(last, size - 1) };
+		} catch (NumberFormatException e) {
+			return null;
+		}
+	}
+
 	/**
 	 * Get the content for the resource identified by UID or primary key.
 	 * Request parameters must include exactly one of: <code>Metadata.Field.UID</code>
@@ -1,7 +1,9 @@
 package com.bbn.marti.sync;
 
+import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.nio.channels.SeekableByteChannel;
 import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
@@ -23,6 +25,7 @@ import com.bbn.marti.JDBCQueryAuditLogHelper;
 import com.bbn.marti.config.Cluster;
 import com.bbn.marti.remote.config.CoreConfigFacade;
 import com.bbn.marti.remote.exception.TakException;
+import com.bbn.marti.remote.sync.ResourceContentStore;
 import com.github.benmanes.caffeine.cache.Caffeine;
 import com.google.common.base.Strings;
 
@@ -45,6 +48,9 @@ public class EnterpriseSyncCacheHelper {
 	@Autowired
 	private CacheManager cacheManager;
 
+	@Autowired
+	private ResourceContentStore contentStore;
+
 	private final ConcurrentHashMap<String, Semaphore> resourceHashAvailableMap = new ConcurrentHashMap<>();
 
 	private boolean esyncEnableCache = false;
@@ -191,7 +197,10 @@ public class EnterpriseSyncCacheHelper {
 				fileWrapper = new FileWrapper();
 
 				if (queryResults.next()) {
-					fileWrapper.setContents(queryResults.getBytes(1));
+					byte[] contents = queryResults.getBytes(1);
+
+					// null when the content is in the content store
+					fileWrapper.setContents(contents != null ? contents : readStoredContent(hash));
 					fileWrapper.setHash(hash);
 					fileWrapper.setGroupVector(queryResults.getString(2));
 				} else {
@@ -218,7 +227,7 @@ public class EnterpriseSyncCacheHelper {
 		FileWrapper fileWrapper = null;
 
 		try (Connection connection = dataSource.getConnection(); PreparedStatement query = queryHelper.prepareStatement(
-				"SELECT data, groups, length(data) FROM resource r WHERE hash = ? ORDER BY submissionTime limit 1", connection)) {
+				"SELECT data, groups, coalesce(length(data), content_length) FROM resource r WHERE hash = ? ORDER BY submissionTime limit 1", connection)) {
 
 			query.setString(1, hash.toLowerCase());
 			logger.debug("getInputStreamFileWrapperFromDB Executing SQL: {}",  query.toString());
@@ -232,9 +241,13 @@ public class EnterpriseSyncCacheHelper {
 					InputStream contentStream = queryResults.getBinaryStream(1);
 					long contentLen = queryResults.getLong(3);
 					
+					if (contentStream == null) {
+						contentStream = openStoredContent(hash);
+					}
+
 					logger.debug("content length {}, stream {}, ", contentLen, contentStream);
 					
-					fileWrapper.setInputStream(queryResults.getBinaryStream(1));
+					fileWrapper.setInputStream(contentStream);
 					fileWrapper.setHash(hash);
 					fileWrapper.setGroupVector(queryResults.getString(2));
 				} else {
@@ -261,7 +274,7 @@ public class EnterpriseSyncCacheHelper {
 		FileWrapper fileWrapper = null;
 
 		try (Connection connection = dataSource.getConnection(); PreparedStatement query = queryHelper.prepareStatement(
-				"SELECT data, groups FROM resource r WHERE uid = ? ORDER BY submissionTime desc limit 1", connection)) {
+				"SELECT data, groups, hash FROM resource r WHERE uid = ? ORDER BY submissionTime desc limit 1", connection)) {
 
 			query.setString(1, uid.toLowerCase());
 			logger.debug("getInputStreamFileWrapperFromDBbyUid Executing SQL: {}",  query.toString());
@@ -271,7 +284,13 @@ public class EnterpriseSyncCacheHelper {
 				fileWrapper = new FileWrapper();
 
 				if (queryResults.next()) {
-					fileWrapper.setInputStream(queryResults.getBinaryStream(1));
+					InputStream contentStream = queryResults.getBinaryStream(1);
+
+					if (contentStream == null && queryResults.getString(3) != null) {
+						contentStream = openStoredContent(queryResults.getString(3));
+					}
+
+					fileWrapper.setInputStream(contentStream);
 					fileWrapper.setUid(uid);
 					fileWrapper.setGroupVector(queryResults.getString(2));
 				} else {
@@ -289,6 +308,37 @@ public class EnterpriseSyncCacheHelper {
 
 	}
 
+	// content kept in the content store instead of its resource row, or null if the store doesn't have it
+	public InputStream openStoredContent(String hash) {
+		try {
+			SeekableByteChannel channel = contentStore.open(hash);
+
+			if (channel == null) {
+				logger.error("content for hash {} is missing from the content store", hash);
+				return null;
+			}
+
+			return new StoredContentInputStream(channel);
+		} catch (IOException e) {
+			throw new TakException("exception opening content for hash " + hash + " in the content store", e);
+		}
+	}
+
+	public byte[] readStoredContent(String hash) {
+
+		InputStream contentStream = openStoredContent(hash);
+
+		if (contentStream == null) {
+			return null;
+		}
+
+		try (contentStream) {
+			return contentStream.readAllBytes();
+		} catch (IOException e) {
+			throw new TakException("exception reading content for hash " + hash + " from the content store", e);
+		}
+	}
+
 	private boolean isCacheEsync() {
 		return esyncEnableCache || (clusterConfig.isEnabled() && clusterConfig.isKubernetes());
 	}
@@ -13,6 +13,7 @@ import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Statement;
 import java.sql.Timestamp;
+import java.sql.Types;
 import java.text.DecimalFormat;
 import java.text.ParseException;
 import java.text.SimpleDateFormat;
@@ -30,6 +31,7 @@ import java.util.TreeMap;
 import java.util.UUID;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -58,8 +60,12 @@ import com.bbn.marti.config.Cluster;
 import com.bbn.marti.logging.AuditLogUtil;
 import com.bbn.marti.remote.CoreConfig;
 import com.bbn.marti.remote.service.RetentionPolicyConfig;
+import com.bbn.marti.remote.sync.FileSystemResourceContentStore;
+import com.bbn.marti.remote.sync.ResourceContentStore;
+import com.bbn.marti.remote.sync.ResourceContentStore.StoredContent;
 import com.bbn.marti.remote.util.RemoteUtil;
 import com.bbn.marti.sync.Metadata.Field;
+import com.bbn.marti.excheck.ExCheckService;
 import com.bbn.marti.util.CommonUtil;
 import com.google.common.base.Strings;
 
@@ -98,10 +104,24 @@ public class JDBCEnterpriseSyncService implements EnterpriseSyncService {
 	@Autowired
 	private EnterpriseSyncCacheHelper enterpriseSyncCacheHelper;
 
+	@Autowired
+	private ResourceContentStore contentStore;
+
+	private static final int ORPHAN_BATCH_SIZE = 500;
+
+	private volatile boolean orphanCleanupScheduled = false;
+
 	@EventListener({ContextRefreshedEvent.class})
 	public void init() throws RemoteException {
 		clusterConfig = CoreConfigFacade.getInstance().getRemoteConfiguration().getCluster();
 
+		// also when content is back in the database, so content left in the store is still cleaned up once unreferenced
+		if (!orphanCleanupScheduled && (isFileStore() || (contentStore instanceof FileSystemResourceContentStore
+				&& ((FileSystemResourceContentStore) contentStore).getRoot().toFile().isDirectory()))) {
+			orphanCleanupScheduled = true;
+			CommonUtil.newScheduledExecutor("esync-content-cleanup", 1).scheduleWithFixedDelay(this::deleteOrphanedContent, 1, 10, TimeUnit.MINUTES);
+		}
+
 		// 0 means false, disable esync cache
 		if (CoreConfigFacade.getInstance().getRemoteConfiguration().getNetwork().getEsyncEnableCache() == 0) {
 			esyncEnableCache = false;
@@ -454,7 +474,14 @@ public class JDBCEnterpriseSyncService implements EnterpriseSyncService {
 					logger.debug("query: " + queryBuilder.toString());
 					logger.debug("binding binary stream to the database query");
 				}
-				statement.setBinaryStream(1, contentStream);
+				StoredContent stored = null;
+
+				if (isFileStore(metadata)) {
+					stored = contentStore.store(contentStream);
+					statement.setNull(1, Types.BINARY);
+				} else {
+					statement.setBinaryStream(1, contentStream);
+				}
 
 				int columnIndex = 2;
 				for (TypeValuePair toStore : metadataColumns) {
@@ -537,7 +564,16 @@ public class JDBCEnterpriseSyncService implements EnterpriseSyncService {
 
 				queryHelper.auditLog(queryBuilder.toString());
 
-				int insertResult = statement.executeUpdate();
+				int insertResult;
+
+				try {
+					insertResult = statement.executeUpdate();
+				} catch (SQLException e) {
+					if (stored != null) {
+						queueOrphanedContent(stored.getHash());
+					}
+					throw e;
+				}
 
 				if (logger.isDebugEnabled()) {
 					logger.debug("insertResult: " + insertResult);
@@ -567,6 +603,18 @@ public class JDBCEnterpriseSyncService implements EnterpriseSyncService {
 					throw new IllegalArgumentException("null primary key returned from file insert - unable to set hash");
 				}
 
+				if (stored != null) {
+					// the hash was computed while storing the content
+					String hash = setStoredContent(connection, primaryKey, stored, metadata.getUid() == null);
+
+					metadataResult.set(Field.Hash, hash);
+					if (metadataResult.getUid() == null) {
+						metadataResult.set(Field.UID, hash);
+					}
+
+					return metadataResult;
+				}
+
 				String updateHashUidSql = "update resource set hash = encode(digest(data, 'sha256'), 'hex') where id = ? returning hash;";
 
 				if (metadata.getUid() != null) {
@@ -704,8 +752,27 @@ public class JDBCEnterpriseSyncService implements EnterpriseSyncService {
 			try (Connection connection = dataSource.getConnection(); PreparedStatement statement = queryHelper.prepareInsert(queryBuilder.toString(), connection)) {
 
 				// bind input stream to database
-				log.fine("binding binary stream with content length " + contentLen + " to the database query");
-				statement.setBinaryStream(1, contentStream, contentLen);
+				StoredContent stored = null;
+
+				if (isFileStore(metadata)) {
+					stored = contentStore.store(contentStream);
+
+					// the row keeps the hash it was given, so content that doesn't match it stays in the database. The only caller
+					// passes a ByteArrayInputStream, which can be read again.
+					if (!stored.getHash().equalsIgnoreCase(metadata.getHash()) && contentStream.markSupported()) {
+						logger.warn("hash " + metadata.getHash() + " doesn't match content hash " + stored.getHash() + " - storing the content in the database");
+						queueOrphanedContent(stored.getHash());
+						contentStream.reset();
+						stored = null;
+					}
+				}
+
+				if (stored != null) {
+					statement.setNull(1, Types.BINARY);
+				} else {
+					log.fine("binding binary stream with content length " + contentLen + " to the database query");
+					statement.setBinaryStream(1, contentStream, contentLen);
+				}
 
 				int columnIndex = 2;
 				for (TypeValuePair toStore : metadataColumns) {
@@ -784,7 +851,14 @@ public class JDBCEnterpriseSyncService implements EnterpriseSyncService {
 				columnIndex++;
 				statement.setString(columnIndex, groupVector);
 
-				queryHelper.doUpdate(statement);
+				try {
+					queryHelper.doUpdate(statement);
+				} catch (SQLException e) {
+					if (stored != null) {
+						queueOrphanedContent(stored.getHash());
+					}
+					throw e;
+				}
 
 				try (ResultSet generatedKeys = queryHelper.getGeneratedKeys(statement)) {
 					generatedKeys.next();
@@ -797,6 +871,10 @@ public class JDBCEnterpriseSyncService implements EnterpriseSyncService {
 
 					returnedMetadata.set(Field.SubmissionDateTime,
 							new SimpleDateFormat(tak.server.Constants.COT_DATE_FORMAT).format(submissionTime));
+
+					if (stored != null) {
+						setStoredContent(connection, primaryKey, stored, false);
+					}
 				}
 
 			} catch (Exception e) {
@@ -1231,7 +1309,7 @@ public class JDBCEnterpriseSyncService implements EnterpriseSyncService {
 		}
 
 		byte[] result = null;
-		try (Connection connection = dataSource.getConnection(); PreparedStatement query = queryHelper.prepareStatement("SELECT " + Column.data.toString() + " FROM "
+		try (Connection connection = dataSource.getConnection(); PreparedStatement query = queryHelper.prepareStatement("SELECT " + Column.data.toString() + ", " + Column.hash.toString() + " FROM "
 				+ RESOURCE_TABLE + " r WHERE " + Column.uid.toString()
 				+ " = ? "
 				+ RemoteUtil.getInstance().getGroupAndClause()
@@ -1244,7 +1322,7 @@ public class JDBCEnterpriseSyncService implements EnterpriseSyncService {
 
 			try (ResultSet queryResults = query.executeQuery()) {
 				if (queryResults.next()) {
-					result = queryResults.getBytes(1);
+					result = getContent(queryResults);
 				}
 			}
 		}
@@ -1261,7 +1339,7 @@ public class JDBCEnterpriseSyncService implements EnterpriseSyncService {
 
 		byte[] result = null;
 		//		DbQueryWrapper wrapper = new DbQueryWrapper();
-		try (Connection connection = dataSource.getConnection(); PreparedStatement query = queryHelper.prepareStatement("SELECT " + Column.data.toString() + " FROM "
+		try (Connection connection = dataSource.getConnection(); PreparedStatement query = queryHelper.prepareStatement("SELECT " + Column.data.toString() + ", " + Column.hash.toString() + " FROM "
 				+ RESOURCE_TABLE + " r WHERE " + Column.uid.toString()
 				+ " = ? "
 				+ " and " + Column.submissiontime.toString() + " <= ? "
@@ -1276,7 +1354,7 @@ public class JDBCEnterpriseSyncService implements EnterpriseSyncService {
 
 			try (ResultSet queryResults = query.executeQuery()) {
 				if (queryResults.next()) {
-					result = queryResults.getBytes(1);
+					result = getContent(queryResults);
 				}
 			}
 		}
@@ -1297,7 +1375,7 @@ public class JDBCEnterpriseSyncService implements EnterpriseSyncService {
 		}
 
 		byte[] result = null;
-		try (Connection connection = dataSource.getConnection(); PreparedStatement query = queryHelper.prepareStatement("SELECT " + Column.data.toString() + " FROM "
+		try (Connection connection = dataSource.getConnection(); PreparedStatement query = queryHelper.prepareStatement("SELECT " + Column.data.toString() + ", " + Column.hash.toString() + " FROM "
 				+ LATEST_RESOURCE_VIEW + " r WHERE " + Column.uid.toString()
 				+ " ~ ? "
 				+ " and tool = ? "
@@ -1312,7 +1390,7 @@ public class JDBCEnterpriseSyncService implements EnterpriseSyncService {
 
 			try (ResultSet queryResults = query.executeQuery()) {
 				if (queryResults.next()) {
-					result = queryResults.getBytes(1);
+					result = getContent(queryResults);
 				}
 			}
 		}
@@ -1369,7 +1447,7 @@ public class JDBCEnterpriseSyncService implements EnterpriseSyncService {
 		}
 
 		byte[] result = null;
-		try (Connection connection = dataSource.getConnection(); PreparedStatement query = queryHelper.prepareStatement("SELECT " + Column.data.toString() + " FROM "
+		try (Connection connection = dataSource.getConnection(); PreparedStatement query = queryHelper.prepareStatement("SELECT " + Column.data.toString() + ", " + Column.hash.toString() + " FROM "
 				+ RESOURCE_TABLE + " r WHERE " + Column.hash.toString()
 				+ " = ? "
 				+ RemoteUtil.getInstance().getGroupAndClause()
@@ -1382,7 +1460,7 @@ public class JDBCEnterpriseSyncService implements EnterpriseSyncService {
 
 			try (ResultSet queryResults = query.executeQuery()) {
 				if (queryResults.next()) {
-					result = queryResults.getBytes(1);
+					result = getContent(queryResults);
 				} else {
 					logger.debug("getContentByHash no results");
 				}
@@ -1586,7 +1664,7 @@ public class JDBCEnterpriseSyncService implements EnterpriseSyncService {
 			builder.append(",");
 
 		}
-		builder.append(" octet_length(r.data)");
+		builder.append(" coalesce(octet_length(r.data), r.content_length)");
 		return builder.toString();
 	}
 
@@ -1652,6 +1730,126 @@ public class JDBCEnterpriseSyncService implements EnterpriseSyncService {
 		}
 	}
 
+	// reads the content of a row selected as data, hash. Content in the content store has no data in its row.
+	private byte[] getContent(ResultSet results) throws SQLException {
+
+		byte[] data = results.getBytes(1);
+
+		if (data == null && results.getString(2) != null) {
+			return enterpriseSyncCacheHelper.readStoredContent(results.getString(2));
+		}
+
+		return data;
+	}
+
+	private boolean isFileStore() {
+		return "filesystem".equals(CoreConfigFacade.getInstance().getRemoteConfiguration().getNetwork().getEsyncContentStore());
+	}
+
+	// ExCheck content stays in the database, since ExCheck queries it with xpath
+	private boolean isFileStore(Metadata metadata) {
+		return isFileStore() && !ExCheckService.EXCHECK_TOOL.equals(metadata.getFirst(Field.Tool));
+	}
+
+	// points the inserted row at its stored content, returning the hash
+	private String setStoredContent(Connection connection, Integer primaryKey, StoredContent stored, boolean hashAsUid) throws SQLException {
+
+		String sql = hashAsUid ? "update resource set hash = ?, content_length = ?, uid = ? where id = ? returning hash;"
+				: "update resource set hash = ?, content_length = ? where id = ? returning hash;";
+
+		try (PreparedStatement statement = connection.prepareStatement(sql)) {
+			int index = 1;
+			statement.setString(index++, stored.getHash());
+			statement.setLong(index++, stored.getLength());
+			if (hashAsUid) {
+				statement.setString(index++, stored.getHash());
+			}
+			statement.setInt(index, primaryKey);
+
+			try (ResultSet results = statement.executeQuery()) {
+				if (!results.next()) {
+					throw new IllegalArgumentException("resource " + primaryKey + " not found - unable to set hash");
+				}
+
+				return results.getString(1);
+			}
+		}
+	}
+
+	// stored content that no row ended up referencing is deleted along with content of deleted rows
+	private void queueOrphanedContent(String hash) {
+		try (Connection connection = dataSource.getConnection(); PreparedStatement statement = connection.prepareStatement(
+				"insert into resource_content_orphan (hash) values (?) on conflict (hash) do update set queued = now();")) {
+			statement.setString(1, hash);
+			statement.executeUpdate();
+		} catch (Exception e) {
+			logger.error("exception queueing orphaned content " + hash, e);
+		}
+	}
+
+	/*
+	 * Deletes stored content that no resource row references anymore. The database queues the hash of every deleted row that
+	 * referenced stored content, including rows deleted by the retention service.
+	 */
+	private void deleteOrphanedContent() {
+		try {
+			int deleted = 0;
+
+			while (true) {
+				List<String> hashes = new LinkedList<>();
+				List<String> unreferenced = new LinkedList<>();
+
+				try (Connection connection = dataSource.getConnection(); PreparedStatement query = connection.prepareStatement(
+						"select o.hash, not exists (select 1 from resource r where r.hash = o.hash and r.content_length is not null) "
+						+ "from resource_content_orphan o where o.queued < now() - ? * interval '1 millisecond' limit ?;")) {
+					query.setLong(1, FileSystemResourceContentStore.DELETE_GRACE_MILLIS);
+					query.setInt(2, ORPHAN_BATCH_SIZE);
+
+					try (ResultSet results = query.executeQuery()) {
+						while (results.next()) {
+							hashes.add(results.getString(1));
+							if (results.getBoolean(2)) {
+								unreferenced.add(results.getString(1));
+							}
+						}
+					}
+				}
+
+				if (hashes.isEmpty()) {
+					break;
+				}
+
+				for (String hash : unreferenced) {
+					if (contentStore.delete(hash)) {
+						deleted++;
+					}
+				}
+
+				// content still referenced, or stored again since it was queued, is dequeued too. It's queued again when the rows
+				// referencing it are deleted.
+				try (Connection connection = dataSource.getConnection(); PreparedStatement delete = connection.prepareStatement(
+						"delete from resource_content_orphan where hash = any (?);")) {
+					delete.setArray(1, connection.createArrayOf("text", hashes.toArray()));
+					delete.executeUpdate();
+				}
+
+				if (hashes.size() < ORPHAN_BATCH_SIZE) {
+					break;
+				}
+			}
+
+			if (contentStore instanceof FileSystemResourceContentStore) {
+				((FileSystemResourceContentStore) contentStore).deleteStaleTemporaryFiles();
+			}
+
+			if (deleted > 0) {
+				logger.info("deleted " + deleted + " unreferenced Enterprise Sync content files");
+			}
+		} catch (Exception e) {
+			logger.error("exception deleting orphaned Enterprise Sync content", e);
+		}
+	}
+
 	private boolean isCacheEsync() {
 		return esyncEnableCache || (clusterConfig.isEnabled() && clusterConfig.isKubernetes());
 	}
@@ -0,0 +1,25 @@
+package com.bbn.marti.sync;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.nio.channels.Channels;
+import java.nio.channels.SeekableByteChannel;
+
+// Enterprise Sync content read from the content store. The channel allows serving ranges of it without reading up to them.
+public class StoredContentInputStream extends FilterInputStream {
+
+	private final SeekableByteChannel channel;
+
+	public StoredContentInputStream(SeekableByteChannel channel) {
+		super(Channels.newInputStream(channel));
+		this.channel = channel;
+	}
+
+	public SeekableByteChannel getChannel() {
+		return channel;
+	}
+
+	public long size() throws IOException {
+		return channel.size();
+	}
+}
@@ -87,6 +87,7 @@ import com.bbn.marti.sync.model.ExternalMissionData;
 import com.bbn.marti.sync.model.LogEntry;
 import com.bbn.marti.sync.model.Mission;
 import com.bbn.marti.sync.model.MissionChange;
+import com.bbn.marti.sync.model.MissionChangeDelta;
 import com.bbn.marti.sync.model.MissionFeed;
 import com.bbn.marti.sync.model.MissionInvitation;
 import com.bbn.marti.sync.model.MissionLayer;
@@ -1301,8 +1302,7 @@ public class MissionApi extends BaseRestController {
 
 		logger.debug("archiving mission");
 
-		byte[] archive = missionService.archiveMission(mission.getGuidAsUUID(), groupVector, request.getServerName());
-		missionService.addMissionArchiveToEsync(mission.getName(), archive, mission.getGroupVector(), true);
+		missionService.archiveMissionToEsync(mission.getGuidAsUUID(), mission.getName(), groupVector, mission.getGroupVector(), request.getServerName(), true);
 
 		logger.debug("added archived mission to esync " + mission.getName());
 
@@ -1396,8 +1396,7 @@ public class MissionApi extends BaseRestController {
 			}
 		}
 
-		byte[] archive = missionService.archiveMission(mission.getGuidAsUUID(), groupVector, request.getServerName());
-		missionService.addMissionArchiveToEsync(mission.getName(), archive, groupVector, true);
+		missionService.archiveMissionToEsync(mission.getGuidAsUUID(), mission.getName(), groupVector, groupVector, request.getServerName(), true);
 
 		logger.debug("added archived mission to esync " + mission.getName());
 
@@ -1417,7 +1416,7 @@ public class MissionApi extends BaseRestController {
 	 */
 	@PreAuthorize("hasPermission(#request, 'MISSION_READ')")
 	@RequestMapping(value = "/missions/{name:.+}/archive", method = RequestMethod.GET)
-	byte[] getMissionArchive(@PathVariable("name") @NotNull String name, HttpServletRequest request) throws ValidationException, IntrusionException {
+	void getMissionArchive(@PathVariable("name") @NotNull String name, HttpServletRequest request) throws ValidationException, IntrusionException, IOException {
 
 		if (Strings.isNullOrEmpty(name)) {
 			throw new IllegalArgumentException("empty 'name' path parameter");
@@ -1432,13 +1431,13 @@ public class MissionApi extends BaseRestController {
 		Mission mission = missionService.getMissionByNameCheckGroups(name, groupVector);
 		missionService.validateMissionByGuid(mission);
 
-		byte[] archive = missionService.archiveMission(mission.getGuidAsUUID(), groupVector, request.getServerName());
-
+		response.setContentType("application/zip");
 		response.addHeader(
 				"Content-Disposition",
 				"attachment; filename=" + name + ".zip");
 
-		return archive;
+		// stream the archive to the client as it's built
+		missionService.archiveMission(mission.getGuidAsUUID(), groupVector, request.getServerName(), response.getOutputStream());
 	}
 
 	/*
@@ -1471,9 +1470,8 @@ public class MissionApi extends BaseRestController {
 
 		String groupVector = martiUtil.getGroupVectorBitString(request);
 
-		byte[] archive = missionService.archiveMission(mission.getGuidAsUUID(), groupVector, request.getServerName());
-
-		String shaHash = missionService.addMissionArchiveToEsync(missionName, archive, groupVector, false);
+		Metadata archive = missionService.archiveMissionToEsync(mission.getGuidAsUUID(), missionName, groupVector, groupVector, request.getServerName(), false);
+		String shaHash = archive.getHash();
 
 		String requestUrl = request.getRequestURL().toString();
 		String url = requestUrl.substring(0, requestUrl.indexOf(request.getServletPath()))
@@ -1486,7 +1484,7 @@ public class MissionApi extends BaseRestController {
 				/*String callsign*/  SecurityContextHolder.getContext().getAuthentication().getName(),
 				/*String filename*/ missionName + ".zip",
 				/*String url*/ url,
-				/*long sizeInBytes*/ archive.length,
+				/*long sizeInBytes*/ archive.getSize(),
 				/*String[] contacts*/ contactUids);
 
 		try {
@@ -1527,11 +1525,10 @@ public class MissionApi extends BaseRestController {
 
 		String groupVector = martiUtil.getGroupVectorBitString(request);
 
-		byte[] archive = missionService.archiveMission(mission.getGuidAsUUID(), groupVector, request.getServerName());
-		
 		String archiveName = mission.getName() + "_" + mission.getGuid().toString(); // include the guid in the archive zipo name for uniqueness
 
-		String shaHash = missionService.addMissionArchiveToEsync(archiveName, archive, groupVector, false);
+		Metadata archive = missionService.archiveMissionToEsync(mission.getGuidAsUUID(), archiveName, groupVector, groupVector, request.getServerName(), false);
+		String shaHash = archive.getHash();
 
 		String requestUrl = request.getRequestURL().toString();
 		String url = requestUrl.substring(0, requestUrl.indexOf(request.getServletPath()))
@@ -1544,7 +1541,7 @@ public class MissionApi extends BaseRestController {
 				/*String callsign*/  SecurityContextHolder.getContext().getAuthentication().getName(),
 				/*String filename*/ archiveName + ".zip",
 				/*String url*/ url,
-				/*long sizeInBytes*/ archive.length,
+				/*long sizeInBytes*/ archive.getSize(),
 				/*String[] contacts*/ contactUids);
 
 		try {
@@ -1780,6 +1777,36 @@ public class MissionApi extends BaseRestController {
 		}
 	}
 
+	/*
+	 * get the changes to a mission made after a cursor, and the cursor to request the next changes with
+	 *
+	 */
+	@PreAuthorize("hasPermission(#request, 'MISSION_READ')")
+	@RequestMapping(value = "/missions/{name:.+}/changes/feed", method = RequestMethod.GET)
+	ApiResponse<MissionChangeDelta> getMissionChangesSince(
+			@PathVariable("name") @NotNull String name,
+			@RequestParam(value = "since", required = false, defaultValue = "0") long since,
+			@RequestParam(value = "squashed", required = false, defaultValue = "true") boolean squashed,
+			HttpServletRequest request) {
+
+		MissionChangeDelta delta = missionService.getMissionChangesSince(name, martiUtil.getGroupVectorBitString(request), since, squashed);
+
+		return new ApiResponse<MissionChangeDelta>(Constants.API_VERSION, MissionChangeDelta.class.getSimpleName(), delta);
+	}
+
+	@PreAuthorize("hasPermission(#request, 'MISSION_READ')")
+	@RequestMapping(value = "/missions/guid/{guid:.+}/changes/feed", method = RequestMethod.GET)
+	ApiResponse<MissionChangeDelta> getMissionChangesSinceByGuid(
+			@PathVariable("guid") @NotNull String guid,
+			@RequestParam(value = "since", required = false, defaultValue = "0") long since,
+			@RequestParam(value = "squashed", required = false, defaultValue = "true") boolean squashed,
+			HttpServletRequest request) {
+
+		MissionChangeDelta delta = missionService.getMissionChangesSinceByGuid(parseGuid(guid), martiUtil.getGroupVectorBitString(request), since, squashed);
+
+		return new ApiResponse<MissionChangeDelta>(Constants.API_VERSION, MissionChangeDelta.class.getSimpleName(), delta);
+	}
+
 
 	/*
 	 * mission keywords
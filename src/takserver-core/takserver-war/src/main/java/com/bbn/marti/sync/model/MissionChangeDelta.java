@@ -0,0 +1,55 @@
+package com.bbn.marti.sync.model;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/*
+ * Changes to a mission after a cursor, oldest first. Request the next delta with the returned cursor. Changes made around the time
+ * of a request may be returned again by the next one, but none are skipped.
+ */
+public class MissionChangeDelta {
+
+    private long cursor;
+
+    private boolean more;
+
+    private List<MissionChange> changes = new ArrayList<>();
+
+    public MissionChangeDelta() { }
+
+    public MissionChangeDelta(long cursor, boolean more, List<MissionChange> changes) {
+        this.cursor = cursor;
+        this.more = more;
+        this.changes = changes;
+    }
+
+    public long getCursor() {
+        return cursor;
+    }
+
+    public void setCursor(long cursor) {
+        this.cursor = cursor;
+    }
+
+    // true if the delta was truncated, and more changes can be requested right away with the cursor
+    public boolean isMore() {
+        return more;
+    }
+
+    public void setMore(boolean more) {
+        this.more = more;
+    }
+
+    public List<MissionChange> getChanges() {
+        return changes;
+    }
+
+    public void setChanges(List<MissionChange> changes) {
+        this.changes = changes;
+    }
+
+    @Override
+    public String toString() {
+        return "MissionChangeDelta [cursor=" + cursor + ", more=" + more + ", changes=" + changes + "]";
+    }
+}
@@ -210,6 +210,14 @@ public interface MissionChangeRepository extends JpaRepository<MissionChange, Lo
     @Query(value = MISSION_CHANGES_FULL_HISTORY, nativeQuery = true)
     Set<MissionChange> changesForMission(@Param("missionId") Long missionId, @Param("start") Date start, @Param("end") Date end);
     
+    // every change to a mission after a given change, in the order they were made
+    @Query(value = "select mc.id as id, mc.remote_federated_change as remote_federated_change, change_type, hash, ts, servertime, uid, mc.creatoruid as creatoruid, null as mission_id, mc.mission_name as mission_name, to_timestamp(0) as mission_createTime, external_data_uid, external_data_name, external_data_tool, external_data_token, external_data_notes, mission_feed_uid, map_layer_uid \n" +
+            "from mission_change mc \n" +
+            "where mc.mission_id = :missionId and mc.id > :afterId \n" +
+            "order by mc.id limit :limit",
+            nativeQuery = true)
+    List<MissionChange> changesForMissionAfter(@Param("missionId") Long missionId, @Param("afterId") long afterId, @Param("limit") int limit);
+
     List<MissionChange> findByTypeAndMissionIdAndContentHashOrderByIdAsc(MissionChangeType type, Long missionId, String contentHash);
 
     @Query(value = "select * from (" +
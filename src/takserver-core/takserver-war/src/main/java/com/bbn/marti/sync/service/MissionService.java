@@ -1,5 +1,7 @@
 package com.bbn.marti.sync.service;
 
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.util.Collection;
 import java.util.Date;
 import java.util.List;
@@ -14,10 +16,12 @@ import com.bbn.marti.config.GeospatialFilter;
 import com.bbn.marti.maplayer.model.MapLayer;
 import com.bbn.marti.remote.groups.Group;
 import com.bbn.marti.remote.sync.MissionContent;
+import com.bbn.marti.sync.Metadata;
 import com.bbn.marti.sync.model.ExternalMissionData;
 import com.bbn.marti.sync.model.LogEntry;
 import com.bbn.marti.sync.model.Mission;
 import com.bbn.marti.sync.model.MissionChange;
+import com.bbn.marti.sync.model.MissionChangeDelta;
 import com.bbn.marti.sync.model.MissionFeed;
 import com.bbn.marti.sync.model.MissionInvitation;
 import com.bbn.marti.sync.model.MissionLayer;
@@ -128,7 +132,8 @@ public interface MissionService {
 
     Mission deleteMissionContentAtTime(UUID missionGuid, String hash, String uid, String creatorUid, String groupVector, Date date);
 
-    byte[] archiveMission(UUID missionGuid, String groupVector, String serverName);
+    // write the mission to out as a mission package
+    void archiveMission(UUID missionGuid, String groupVector, String serverName, OutputStream out);
 
     void setParent(UUID childMissionGuid, UUID parentMissionGuid, String groupVector);
 
@@ -162,7 +167,10 @@ public interface MissionService {
 
     ExternalMissionData hydrate(String externalDataUid, String externalDataName, String externalDataTool, String externalDataToken, String externalDataNotes);
 
-    String addMissionArchiveToEsync(String archiveName, byte[] archiveBytes, String groupVector, boolean archivedWhenDeleting);
+    Metadata addMissionArchiveToEsync(String archiveName, InputStream archive, String groupVector, boolean archivedWhenDeleting);
+
+    // archive the mission as groupVector, and add the archive to enterprise sync as esyncGroupVector. Returns the archive's hash.
+    Metadata archiveMissionToEsync(UUID missionGuid, String archiveName, String groupVector, String esyncGroupVector, String serverName, boolean archivedWhenDeleting);
 
     String trimName(String name);
 
@@ -184,6 +192,11 @@ public interface MissionService {
     
     Set<MissionChange> getMissionChangesByGuid(UUID missionGuid, String groupVector, Long secago, Date start, Date end, boolean squashed);
 
+    // changes made after the change with id since, for clients that poll for changes with a cursor
+    MissionChangeDelta getMissionChangesSince(String missionName, String groupVector, long since, boolean squashed);
+
+    MissionChangeDelta getMissionChangesSinceByGuid(UUID missionGuid, String groupVector, long since, boolean squashed);
+
     String getMissionKml(String missionName, String urlBase, String groupVector);
 
     String getMissionKml(UUID missionGuid, String urlBase, String groupVector);
@@ -1,6 +1,11 @@
 package com.bbn.marti.sync.service;
 
 import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.rmi.RemoteException;
 import java.security.PrivateKey;
 import java.sql.Array;
@@ -34,7 +39,6 @@ import java.util.stream.Collectors;
 import javax.sql.DataSource;
 
 import org.apache.commons.lang3.ArrayUtils;
-import org.apache.commons.lang3.StringEscapeUtils;
 import org.apache.commons.lang3.StringUtils;
 import org.apache.commons.validator.routines.EmailValidator;
 import org.dom4j.DocumentException;
@@ -64,10 +68,6 @@ import org.springframework.security.access.AccessDeniedException;
 import org.springframework.security.core.context.SecurityContextHolder;
 import org.springframework.security.crypto.bcrypt.BCrypt;
 import org.springframework.transaction.annotation.Transactional;
-import org.w3c.dom.Document;
-import org.w3c.dom.NamedNodeMap;
-import org.w3c.dom.Node;
-import org.w3c.dom.NodeList;
 
 import com.bbn.marti.classification.service.ClassificationService;
 import com.bbn.marti.config.GeospatialFilter;
@@ -97,13 +97,10 @@ import com.bbn.marti.remote.sync.MissionChangeType;
 import com.bbn.marti.remote.sync.MissionContent;
 import com.bbn.marti.remote.util.DateUtil;
 import com.bbn.marti.remote.util.RemoteUtil;
-import com.bbn.marti.remote.util.SecureXmlParser;
 import com.bbn.marti.remote.util.SpringContextBeanForApi;
 import com.bbn.marti.service.kml.KMLService;
-import com.bbn.marti.service.kml.KmlIconStrategyJaxb;
 import com.bbn.marti.sync.Metadata;
 import com.bbn.marti.sync.model.ExternalMissionData;
-import com.bbn.marti.sync.model.Location;
 import com.bbn.marti.sync.model.LogEntry;
 import com.bbn.marti.sync.model.MinimalMission;
 import com.bbn.marti.sync.model.MinimalMissionFeed;
@@ -111,6 +108,7 @@ import com.bbn.marti.sync.model.Mission;
 import com.bbn.marti.sync.model.Mission.MissionAdd;
 import com.bbn.marti.sync.model.Mission.MissionAddDetails;
 import com.bbn.marti.sync.model.MissionChange;
+import com.bbn.marti.sync.model.MissionChangeDelta;
 import com.bbn.marti.sync.model.MissionChanges;
 import com.bbn.marti.sync.model.MissionFeed;
 import com.bbn.marti.sync.model.MissionInvitation;
@@ -150,8 +148,10 @@ import jakarta.persistence.EntityNotFoundException;
 import jakarta.servlet.http.HttpServletRequest;
 import tak.server.Constants;
 import tak.server.cache.CoTCacheHelper;
+import tak.server.cache.CotDetailExtractor;
 import tak.server.cache.CotCacheWrapper;
 import tak.server.cache.MissionCacheHelper;
+import tak.server.cache.MissionChangeLog;
 import tak.server.cache.UnproxyHelper;
 import tak.server.cache.resolvers.AllCopMissionCacheResolver;
 import tak.server.cache.resolvers.AllMissionCacheResolver;
@@ -241,6 +241,9 @@ public class MissionServiceDefaultImpl implements MissionService {
 	@Autowired
 	DataFeedCotService dataFeedCotService;
 
+	@Autowired
+	private MissionChangeLog missionChangeLog;
+
 	private final ThreadLocal<CotParser> cotParser = new ThreadLocal<>();
 
 	public MissionServiceDefaultImpl(
@@ -1190,109 +1193,7 @@ public class MissionServiceDefaultImpl implements MissionService {
 			}
 		}
 
-		uidDetails.type = cot.cottype;
-
-		try {
-			if (cot.lat != 0 && cot.lon != 0) {
-				uidDetails.location = new Location(cot.lat, cot.lon);
-			}
-
-			Document doc = SecureXmlParser.makeDocument(cot.detailtext);
-
-			NodeList nodeList = doc.getElementsByTagName("detail");
-			if (nodeList == null || nodeList.getLength() != 1) {
-				return null;
-			}
-
-			nodeList = nodeList.item(0).getChildNodes();
-
-			String medevacTitle = null;
-
-			for (int i = 0; i < nodeList.getLength(); i++) {
-				Node node = nodeList.item(i);
-				if (node.getNodeType() != Node.ELEMENT_NODE) {
-					continue;
-				}
-
-				String name = node.getNodeName();
-				NamedNodeMap namedNodeMap = node.getAttributes();
-
-				Node colorAttr;
-				Node titleAttr;
-				Node attachmentAttr;
-
-				if (name.compareTo("color") == 0) {
-					if ((colorAttr = namedNodeMap.getNamedItem("argb")) != null) {
-						uidDetails.color = colorAttr.getNodeValue();
-					} else if ((colorAttr = namedNodeMap.getNamedItem("value")) != null) {
-						uidDetails.color = colorAttr.getNodeValue();
-					}
-				} else if (name.compareTo("strokeColor") == 0) {
-					if ((colorAttr = namedNodeMap.getNamedItem("value")) != null) {
-						uidDetails.color = colorAttr.getNodeValue();
-					}
-				} else if (name.compareTo("link_attr") == 0) {
-					if ((colorAttr = namedNodeMap.getNamedItem("color")) != null) {
-						uidDetails.color = colorAttr.getNodeValue();
-					}
-				} else if (name.compareTo("bullseye") == 0 && uidDetails.type.equals("u-r-b-bullseye")) {
-					if ((colorAttr = namedNodeMap.getNamedItem("edgeToCenter")) != null) {
-						uidDetails.color = colorAttr.getNodeValue().equals("true") ? "-65536" : "-16711936";
-					}
-				} else if (name.compareTo("attachment_list") == 0) {
-					if ((attachmentAttr = namedNodeMap.getNamedItem("hashes")) != null) {
-						String attachmentJson = attachmentAttr.getNodeValue();
-						// trim off [ ]
-						attachmentJson = attachmentJson.substring(1, attachmentJson.length() - 1);
-						// remove all quotes (they get automatically decoded from &quot; to " by selectSingleNode)
-						attachmentJson = attachmentJson.replace("\"", "");
-						// we're left with a comma separated list to split
-						uidDetails.attachments = Arrays.asList(attachmentJson.split(","));
-					}
-				} else if (name.compareTo("title") == 0) {
-					if ((titleAttr = namedNodeMap.getNamedItem("title")) != null) {
-						uidDetails.title = titleAttr.getNodeValue();
-					}
-				} else if (name.compareTo("_medevac_") == 0) {
-					if ((titleAttr = namedNodeMap.getNamedItem("title")) != null) {
-						medevacTitle = titleAttr.getNodeValue();
-					}
-				} else if (name.compareTo("model") == 0 && uidDetails.type.equals("u-d-v-m")) {
-					Node modelAttr;
-
-					if ((modelAttr = namedNodeMap.getNamedItem("name")) != null) {
-						uidDetails.name = modelAttr.getNodeValue();
-					}
-
-					if ((modelAttr = namedNodeMap.getNamedItem("category")) != null) {
-						uidDetails.category = modelAttr.getNodeValue();
-					}
-				}
-			}
-
-			KmlIconStrategyJaxb.ParseUserIcon(doc, cot);
-			JDBCCachingKMLDao.ParseDetailText(cot);
-
-			// we need to unescape the callsign here to prevent double encoding of &'s by the serialization layer
-			uidDetails.callsign = StringEscapeUtils.unescapeXml(cot.callsign);
-
-			if (cot.iconSetPath != CotElement.errorMessage) {
-				uidDetails.iconsetPath = cot.iconSetPath;
-			}
-
-			if (uidDetails.callsign == null && uidDetails.title != null) {
-				uidDetails.callsign = uidDetails.title;
-			}
-
-			if (!Strings.isNullOrEmpty(medevacTitle)) {
-				uidDetails.callsign = medevacTitle;
-			}
-
-		} catch (Exception ex) {
-			logger.error("Exception parsing cot detail!", ex);
-		}
-
-		return uidDetails;
+		return CotDetailExtractor.hydrate(uidDetails, cot);
 	}
 
 
@@ -2434,13 +2335,13 @@ public class MissionServiceDefaultImpl implements MissionService {
 	@Override
 	@Transactional
 	@CacheEvict(cacheResolver = MissionCacheResolver.MISSION_CACHE_RESOLVER, allEntries = true)
-	public byte[] archiveMission(UUID missionGuid, String groupVector, String serverName) {
+	public void archiveMission(UUID missionGuid, String groupVector, String serverName, OutputStream out) {
 		try {
 			// This query considers the vector, so you can only delete missions with which you share common group membership.
 			Mission mission = getMissionService().getMissionByGuidCheckGroups(missionGuid, groupVector);
 			validateMissionByGuid(mission);
 
-			MissionPackage mp = new MissionPackage(mission.getName() + "_" + mission.getGuid() + ".zip");
+			MissionPackage mp = new MissionPackage(mission.getName() + "_" + mission.getGuid() + ".zip", out);
 			mp.addParameter("uid", UUID.randomUUID().toString());
 			mp.addParameter("name", mission.getName());
 			mp.addParameter("mission_guid", mission.getGuid());
@@ -2492,7 +2393,7 @@ public class MissionServiceDefaultImpl implements MissionService {
 
 			int ndx = 0;
 			for (Resource resource : mission.getContents()) {
-				byte[] content = syncStore.getContentByHash(resource.getHash(), groupVector);
+				InputStream content = syncStore.getContentStreamByHash(resource.getHash(), groupVector);
 
 				// this is a hack because for some reason the resources from mission.getContents()
 				// don't return keywords
@@ -2516,10 +2417,12 @@ public class MissionServiceDefaultImpl implements MissionService {
 				}
 
 
-				mp.addContentFile("contents/" + filename, content, resourceToContentType(resource));
+				try (InputStream contentStream = content) {
+					mp.addContentFile("contents/" + filename, contentStream, resourceToContentType(resource));
+				}
 			}
 
-			return mp.save();
+			mp.finish();
 		} catch (Exception e) {
 			String msg = "Exception in archiveMission!";
 			logger.error(msg, e);
@@ -2580,7 +2483,7 @@ public class MissionServiceDefaultImpl implements MissionService {
 	@Override
 	@Transactional
 	@CacheEvict(cacheResolver = MissionCacheResolver.MISSION_CACHE_RESOLVER, allEntries = true)
-	public String addMissionArchiveToEsync(String archiveName, byte[] archiveBytes, String groupVector, boolean archivedWhenDeleting) {
+	public Metadata addMissionArchiveToEsync(String archiveName, InputStream archive, String groupVector, boolean archivedWhenDeleting) {
 		try {
 			// build up the metadata for adding to enterprise sync
 			Metadata toStore = new Metadata();
@@ -2594,13 +2497,45 @@ public class MissionServiceDefaultImpl implements MissionService {
 
 			// add mission package to enterprise sync
 
-			toStore = syncStore.insertResource(toStore, archiveBytes, groupVector);
-			return toStore.getHash();
+			return syncStore.insertResourceStream(toStore, archive, groupVector);
 		} catch (Exception e) {
 			throw new TakException("Exception in addMissionArchiveToEsync!", e);
 		}
 	}
 
+	@Override
+	public Metadata archiveMissionToEsync(UUID missionGuid, String archiveName, String groupVector, String esyncGroupVector, String serverName, boolean archivedWhenDeleting) {
+		Path archive = null;
+		try {
+			// stage the archive on disk, so that it's never held in memory
+			archive = Files.createTempFile("mission-archive", ".zip");
+
+			try (OutputStream out = Files.newOutputStream(archive)) {
+				getMissionService().archiveMission(missionGuid, groupVector, serverName, out);
+			}
+
+			Metadata stored;
+
+			try (InputStream in = Files.newInputStream(archive)) {
+				stored = getMissionService().addMissionArchiveToEsync(archiveName, in, esyncGroupVector, archivedWhenDeleting);
+			}
+
+			stored.set(Metadata.Field.Size, Files.size(archive));
+
+			return stored;
+		} catch (IOException e) {
+			throw new TakException("Exception in archiveMissionToEsync!", e);
+		} finally {
+			if (archive != null) {
+				try {
+					Files.deleteIfExists(archive);
+				} catch (IOException e) {
+					logger.warn("unable to delete temporary mission archive " + archive, e);
+				}
+			}
+		}
+	}
+
 	@Override
 	@CacheEvict(cacheResolver = MissionCacheResolver.MISSION_CACHE_RESOLVER, allEntries = true)
 	public Mission deleteMission(String name, String creatorUid, String groupVector, boolean deepDelete) {
@@ -3570,6 +3505,32 @@ public class MissionServiceDefaultImpl implements MissionService {
 		}
 	}
 
+	@Override
+	public MissionChangeDelta getMissionChangesSince(String missionName, String groupVector, long since, boolean squashed) {
+
+		if (Strings.isNullOrEmpty(missionName)) {
+			throw new IllegalArgumentException("empty 'name' path parameter");
+		}
+
+		Mission mission = getMissionService().getMissionByNameCheckGroups(trimName(missionName), groupVector);
+		validateMission(mission, missionName);
+
+		return missionChangeLog.getChangesSince(mission, since, squashed);
+	}
+
+	@Override
+	public MissionChangeDelta getMissionChangesSinceByGuid(UUID missionGuid, String groupVector, long since, boolean squashed) {
+
+		if (missionGuid == null) {
+			throw new IllegalArgumentException("empty mission guid parameter");
+		}
+
+		Mission mission = getMissionService().getMissionByGuidCheckGroups(missionGuid, groupVector);
+		validateMissionByGuid(mission);
+
+		return missionChangeLog.getChangesSince(mission, since, squashed);
+	}
+
 	@Override
 	@Cacheable(cacheResolver = MissionCacheResolver.MISSION_CACHE_RESOLVER)
 	public String getMissionKml(String missionName, String urlBase, String groupVector) {
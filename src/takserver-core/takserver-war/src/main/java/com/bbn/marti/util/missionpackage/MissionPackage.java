@@ -4,6 +4,8 @@ import java.io.BufferedInputStream;
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.io.StringWriter;
 import java.util.HashMap;
 import java.util.zip.ZipEntry;
@@ -23,9 +25,14 @@ public class MissionPackage {
     public byte[] getByteArray() { return bos.toByteArray(); }
 
     public MissionPackage(String filename) throws IOException, JAXBException {
+        this(filename, new ByteArrayOutputStream());
+    }
+
+    // write the package to out as it's built, rather than to a byte array. finish() the package to complete it.
+    public MissionPackage(String filename, OutputStream out) throws IOException, JAXBException {
         this.filename = filename;
-        this.bos = new ByteArrayOutputStream();
-        this.zos = new ZipOutputStream(bos);
+        this.bos = out instanceof ByteArrayOutputStream ? (ByteArrayOutputStream) out : null;
+        this.zos = new ZipOutputStream(out);
 
         manifest = new MissionPackageManifest();
         manifest.setVersion("2");
@@ -81,6 +88,14 @@ public class MissionPackage {
         }
         zos.closeEntry();
     }
+
+    private void addEntry(String filename, InputStream contents) throws IOException {
+        ZipEntry newEntry = new ZipEntry(filename);
+        newEntry.setTime(0);
+        zos.putNextEntry(newEntry);
+        contents.transferTo(zos);
+        zos.closeEntry();
+    }
     
     public ContentType addFile(String filename, byte[] contents) throws IOException {
         return addContentFile(filename, contents, new ContentType());
@@ -95,6 +110,15 @@ public class MissionPackage {
         return contentType;
     }
 
+    public ContentType addContentFile(String filename, InputStream contents, ContentType contentType) throws IOException {
+        addEntry(filename, contents);
+
+        contentType.setZipEntry(filename);
+        contentType.setIgnore(false);
+        manifest.getContents().getContent().add(contentType);
+        return contentType;
+    }
+
     public void addCotFile(String filename, byte[] contents, String uid) throws IOException {
     	ContentType contentType = addContentFile(filename, contents, new ContentType());
 
@@ -109,6 +133,17 @@ public class MissionPackage {
     }
 
     public byte[] save() throws IOException, JAXBException {
+        finish();
+
+        zos.close();
+        bos.flush();
+        bos.close();
+
+        return getByteArray();
+    }
+
+    // write the manifest and the end of the package, leaving the output stream open
+    public void finish() throws IOException, JAXBException {
         JAXBContext jc = JAXBContext.newInstance(MissionPackageManifest.class);
         Marshaller marshaller = jc.createMarshaller();
         marshaller.setProperty(Marshaller.JAXB_FORMATTED_OUTPUT, Boolean.TRUE);
@@ -120,11 +155,7 @@ public class MissionPackage {
         addFile("MANIFEST/manifest.xml", manifest.getBytes());
 
         zos.finish();
-        zos.close();
-        bos.flush();
-        bos.close();
-
-        return getByteArray();
+        zos.flush();
     }
 
     private static final long MAX_UNCOMPRESSED_ENTRY_SIZE = 50 * 1024 * 1024;  // 50 MB per entry
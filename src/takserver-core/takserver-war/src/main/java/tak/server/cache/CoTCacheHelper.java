@@ -4,8 +4,9 @@ import java.sql.Array;
 import java.sql.Connection;
 import java.sql.ResultSet;
 import java.sql.SQLException;
-import java.util.Arrays;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
 import java.util.LinkedList;
@@ -18,7 +19,6 @@ import jakarta.annotation.PostConstruct;
 import javax.sql.DataSource;
 
 import com.bbn.marti.remote.config.CoreConfigFacade;
-import org.apache.commons.lang3.StringEscapeUtils;
 import org.apache.ignite.Ignite;
 import org.apache.ignite.IgniteCache;
 import org.apache.ignite.cache.CacheAtomicityMode;
@@ -33,27 +33,19 @@ import org.springframework.context.event.ContextRefreshedEvent;
 import org.springframework.context.event.EventListener;
 import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.jdbc.core.ResultSetExtractor;
-import org.w3c.dom.Document;
-import org.w3c.dom.NamedNodeMap;
-import org.w3c.dom.Node;
-import org.w3c.dom.NodeList;
 
-import com.bbn.marti.dao.kml.JDBCCachingKMLDao;
 import com.bbn.marti.logging.AuditLogUtil;
 import com.bbn.marti.remote.CoreConfig;
 import com.bbn.marti.remote.exception.NotFoundException;
 import com.bbn.marti.remote.exception.TakException;
 import com.bbn.marti.remote.util.RemoteUtil;
-import com.bbn.marti.remote.util.SecureXmlParser;
-import com.bbn.marti.service.kml.KmlIconStrategyJaxb;
-import com.bbn.marti.sync.model.Location;
 import com.bbn.marti.sync.model.UidDetails;
-import com.google.common.base.Strings;
 import com.google.common.collect.Sets;
 
 import tak.server.Constants;
 import tak.server.cot.CotElement;
 import tak.server.cot.CotEventContainer;
+import tak.server.ignite.cache.LatestSAIndex;
 
 @SuppressWarnings("deprecation")
 public class CoTCacheHelper {
@@ -177,123 +169,7 @@ public class CoTCacheHelper {
 	}
 
 	private UidDetails generateUidDetails(@NotNull UidDetails uidDetails, @NotNull CotElement cotElement) {
-
-		if (uidDetails == null) {
-			throw new IllegalArgumentException("null uidDetails");
-		}
-
-
-		if (cotElement == null) {
-			throw new IllegalArgumentException("null cotElement");
-		}
-
-		uidDetails.type = cotElement.cottype;
-
-		try {
-			if (cotElement.lat != 0 && cotElement.lon != 0) {
-				uidDetails.location = new Location(cotElement.lat, cotElement.lon);
-			}
-
-			String medevacTitle = null;
-
-			if (cotElement.detailtext != null) {
-				Document doc = SecureXmlParser.makeDocument(cotElement.detailtext);
-
-				NodeList nodeList = doc.getElementsByTagName("detail");
-				if (nodeList == null || nodeList.getLength() != 1) {
-					return null;
-				}
-
-				nodeList = nodeList.item(0).getChildNodes();
-
-
-
-				for (int i = 0; i < nodeList.getLength(); i++) {
-					Node node = nodeList.item(i);
-					if (node.getNodeType() != Node.ELEMENT_NODE) {
-						continue;
-					}
-
-					String name = node.getNodeName();
-					NamedNodeMap namedNodeMap = node.getAttributes();
-
-					Node colorAttr;
-					Node titleAttr;
-					Node attachmentAttr;
-
-					if (name.compareTo("color") == 0) {
-						if ((colorAttr = namedNodeMap.getNamedItem("argb")) != null) {
-							uidDetails.color = colorAttr.getNodeValue();
-						} else if ((colorAttr = namedNodeMap.getNamedItem("value")) != null) {
-							uidDetails.color = colorAttr.getNodeValue();
-						}
-					} else if (name.compareTo("strokeColor") == 0) {
-						if ((colorAttr = namedNodeMap.getNamedItem("value")) != null) {
-							uidDetails.color = colorAttr.getNodeValue();
-						}
-					} else if (name.compareTo("link_attr") == 0) {
-						if ((colorAttr = namedNodeMap.getNamedItem("color")) != null) {
-							uidDetails.color = colorAttr.getNodeValue();
-						}
-					} else if (name.compareTo("bullseye") == 0 && uidDetails.type.equals("u-r-b-bullseye")) {
-						if ((colorAttr = namedNodeMap.getNamedItem("edgeToCenter")) != null) {
-							uidDetails.color = colorAttr.getNodeValue().equals("true") ? "-65536" : "-16711936";
-						}
-					}  else if (name.compareTo("attachment_list") == 0) {
-						if ((attachmentAttr = namedNodeMap.getNamedItem("hashes")) != null) {
-							String attachmentJson = attachmentAttr.getNodeValue();
-							// trim off [ ]
-							attachmentJson = attachmentJson.substring(1, attachmentJson.length() - 1);
-							// remove all quotes (they get automatically decoded from &quot; to " by selectSingleNode)
-							attachmentJson = attachmentJson.replace("\"", "");
-							// we're left with a comma separated list to split
-							uidDetails.attachments = Arrays.asList(attachmentJson.split(","));
-						}
-					} else if (name.compareTo("title") == 0) {
-						if ((titleAttr = namedNodeMap.getNamedItem("title")) != null) {
-							uidDetails.title = titleAttr.getNodeValue();
-						}
-					} else if (name.compareTo("_medevac_") == 0) {
-						if ((titleAttr = namedNodeMap.getNamedItem("title")) != null) {
-							medevacTitle = titleAttr.getNodeValue();
-						}
-					} else if (name.compareTo("model") == 0 && uidDetails.type.equals("u-d-v-m")) {
-						Node modelAttr;
-
-						if ((modelAttr = namedNodeMap.getNamedItem("name")) != null) {
-							uidDetails.name = modelAttr.getNodeValue();
-						}
-
-						if ((modelAttr = namedNodeMap.getNamedItem("category")) != null) {
-							uidDetails.category = modelAttr.getNodeValue();
-						}
-					}
-				}
-
-				KmlIconStrategyJaxb.ParseUserIcon(doc, cotElement);
-				JDBCCachingKMLDao.ParseDetailText(cotElement);
-			}
-
-			// we need to unescape the callsign here to prevent double encoding of &'s by the serialization layer
-			uidDetails.callsign = StringEscapeUtils.unescapeXml(cotElement.callsign);
-
-			if (cotElement.iconSetPath != CotElement.errorMessage) {
-				uidDetails.iconsetPath = cotElement.iconSetPath;
-			}
-
-			if (uidDetails.callsign == null && uidDetails.title != null) {
-				uidDetails.callsign = uidDetails.title;
-			}
-
-			if (!Strings.isNullOrEmpty(medevacTitle)) {
-				uidDetails.callsign = medevacTitle;
-			}
-
-		} catch (Exception ex) {
-			logger.error("Exception parsing cot detail!", ex);
-		}
-
-		return uidDetails;
+		return CotDetailExtractor.hydrate(uidDetails, cotElement);
 	}
 
 	public CotCacheWrapper getLatestCotWrapperForUid(String uid, String groupVector) {
@@ -326,6 +202,21 @@ public class CoTCacheHelper {
 			}
 		}
 
+		CotCacheWrapper indexed = getIndexedCotWrappers(Collections.singleton(uid), true).get(uid);
+
+		if (indexed != null) {
+
+			if (!isDisabled()) {
+				getCoTCache().put(uid, indexed);
+			}
+
+			if (remoteUtil.isGroupVectorAllowed(groupVector, indexed.getGroupsBitVectorString())) {
+				return indexed;
+			}
+
+			throw new TakException("not allowed");
+		}
+
 		CotElement cotElement = queryLatestCotElementForUid(uid, groupVector);
 
 		if (cotElement == null) {
@@ -378,7 +269,15 @@ public class CoTCacheHelper {
 
 			Map<Object, Object> cachePutMap = new ConcurrentHashMap<>();
 
-			Collection<CotElement> cot = queryLatestCotElementsForUids(uids, groupVector);
+			Map<String, CotCacheWrapper> indexed = getIndexedCotWrappers(uids, addDetails);
+
+			for (CotCacheWrapper wrapper : indexed.values()) {
+				if (addDetails || remoteUtil.isGroupVectorAllowed(groupVector, wrapper.getGroupsBitVectorString())) {
+					results.add(wrapper);
+				}
+			}
+
+			Collection<CotElement> cot = queryLatestCotElementsForUids(Sets.difference(uids, indexed.keySet()), groupVector);
 			Iterator it = cot.iterator();
 			while (it.hasNext()) {
 				CotElement cotElement = (CotElement)it.next();
@@ -427,9 +326,9 @@ public class CoTCacheHelper {
 			logger.trace("uids not cached: " + uidsNotCached);
 		}
 
-		Map<Object, Object> cachePutMap = new ConcurrentHashMap<>();
+		Map<Object, Object> cachePutMap = new ConcurrentHashMap<>(getIndexedCotWrappers(uidsNotCached, true));
 
-		for (CotElement cotElement : queryLatestCotElementsForUids(uidsNotCached, groupVector)) {
+		for (CotElement cotElement : queryLatestCotElementsForUids(Sets.difference(uidsNotCached, cachePutMap.keySet()), groupVector)) {
 			UidDetails uidDetails = generateUidDetails(new UidDetails(), cotElement);
 
 			CotCacheWrapper wrapper = new CotCacheWrapper();
@@ -465,6 +364,72 @@ public class CoTCacheHelper {
 
 	}
 
+	/*
+	 * Latest events for uids from the latest SA index, which has the latest brokered event for each uid until it goes stale, whether
+	 * or not it was archived. Uids not in the result are left to the database.
+	 */
+	private Map<String, CotCacheWrapper> getIndexedCotWrappers(Set<String> uids, boolean addDetails) {
+
+		Map<String, CotCacheWrapper> wrappers = new HashMap<>();
+
+		if (uids.isEmpty()) {
+			return wrappers;
+		}
+
+		Map<String, LatestSAIndex.Entry> entries;
+
+		try {
+			entries = readLatestSAIndex(uids);
+		} catch (Exception e) {
+			if (logger.isDebugEnabled()) {
+				logger.debug("exception reading latest SA index", e);
+			}
+			return wrappers;
+		}
+
+		for (LatestSAIndex.Entry entry : entries.values()) {
+			try {
+				CotEventContainer cot = entry.toCotEventContainer();
+
+				if (cot == null) {
+					continue;
+				}
+
+				CotElement cotElement = cot.asCotElement();
+				cotElement.groupString = entry.getGroupsBitVectorString();
+
+				CotCacheWrapper wrapper = new CotCacheWrapper();
+
+				wrapper.setGroupsBitVectorString(entry.getGroupsBitVectorString());
+				wrapper.setUid(entry.getUid());
+				wrapper.setCotElement(cotElement);
+				wrapper.setUidDetails(addDetails ? generateUidDetails(new UidDetails(), cotElement) : null);
+
+				wrappers.put(entry.getUid(), wrapper);
+			} catch (Exception e) {
+				if (logger.isDebugEnabled()) {
+					logger.debug("exception reading indexed CoT for uid " + entry.getUid(), e);
+				}
+			}
+		}
+
+		if (logger.isTraceEnabled()) {
+			logger.trace("latest SA index hits: " + wrappers.size() + " of " + uids.size());
+		}
+
+		return wrappers;
+	}
+
+	// entries of the latest SA index for uids, or none when the index is disabled
+	Map<String, LatestSAIndex.Entry> readLatestSAIndex(Set<String> uids) {
+
+		if (!LatestSAIndex.isEnabled()) {
+			return Collections.emptyMap();
+		}
+
+		return LatestSAIndex.getAll(uids);
+	}
+
 	private CotElement queryLatestCotElementForUid(String uid, String groupVector) {
 
 		try {
@@ -0,0 +1,354 @@
+package tak.server.cache;
+
+import java.io.StringReader;
+import java.util.Arrays;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+import org.apache.commons.lang3.StringEscapeUtils;
+import org.jetbrains.annotations.NotNull;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.bbn.marti.model.kml.Icon;
+import com.bbn.marti.model.kml.Icon.IconParts;
+import com.bbn.marti.sync.model.Location;
+import com.bbn.marti.sync.model.UidDetails;
+import com.google.common.base.Strings;
+
+import tak.server.cot.CotElement;
+
+/*
+ *
+ * Fills in the UID details of a CoT event, along with the icon and KML fields of its CotElement, in a single streaming pass
+ * over the detail text. This takes the place of parsing the detail text into a DOM for the details, unmarshalling it again
+ * with JAXB for the user icon (KmlIconStrategyJaxb.ParseUserIcon), and scanning it for the callsign and track
+ * (JDBCCachingKMLDao.ParseDetailText), and sets the same fields those do.
+ *
+ */
+@SuppressWarnings("deprecation")
+public final class CotDetailExtractor {
+
+	private static final Logger logger = LoggerFactory.getLogger(CotDetailExtractor.class);
+
+	// XMLInputFactory isn't guaranteed to be thread-safe
+	private static final ThreadLocal<XMLInputFactory> inputFactory = ThreadLocal.withInitial(() -> {
+		XMLInputFactory factory = XMLInputFactory.newInstance();
+		factory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+		factory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+		// names are matched with their prefixes, as the DOM parser did
+		factory.setProperty(XMLInputFactory.IS_NAMESPACE_AWARE, false);
+		return factory;
+	});
+
+	private CotDetailExtractor() { }
+
+	/**
+	 * Populates uidDetails from the CotElement, and sets the icon and KML fields of the CotElement.
+	 *
+	 * @return uidDetails, or null if the detail text doesn't contain exactly one detail element
+	 */
+	public static UidDetails hydrate(@NotNull UidDetails uidDetails, @NotNull CotElement cotElement) {
+
+		if (uidDetails == null) {
+			throw new IllegalArgumentException("null uidDetails");
+		}
+
+		if (cotElement == null) {
+			throw new IllegalArgumentException("null cotElement");
+		}
+
+		uidDetails.type = cotElement.cottype;
+
+		try {
+			if (cotElement.lat != 0 && cotElement.lon != 0) {
+				uidDetails.location = new Location(cotElement.lat, cotElement.lon);
+			}
+
+			String medevacTitle = null;
+
+			if (cotElement.detailtext != null) {
+				Detail detail = parse(cotElement.detailtext, uidDetails);
+
+				if (detail == null) {
+					return null;
+				}
+
+				detail.apply(cotElement);
+
+				medevacTitle = detail.medevacTitle;
+			}
+
+			// we need to unescape the callsign here to prevent double encoding of &'s by the serialization layer
+			uidDetails.callsign = StringEscapeUtils.unescapeXml(cotElement.callsign);
+
+			if (cotElement.iconSetPath != CotElement.errorMessage) {
+				uidDetails.iconsetPath = cotElement.iconSetPath;
+			}
+
+			if (uidDetails.callsign == null && uidDetails.title != null) {
+				uidDetails.callsign = uidDetails.title;
+			}
+
+			if (!Strings.isNullOrEmpty(medevacTitle)) {
+				uidDetails.callsign = medevacTitle;
+			}
+
+		} catch (Exception ex) {
+			logger.error("Exception parsing cot detail!", ex);
+		}
+
+		return uidDetails;
+	}
+
+	// returns null if there isn't exactly one detail element
+	private static Detail parse(String detailText, UidDetails uidDetails) throws XMLStreamException {
+
+		Detail detail = new Detail();
+
+		XMLStreamReader reader = inputFactory.get().createXMLStreamReader(new StringReader(detailText));
+
+		try {
+			int depth = 0;
+			int detailDepth = -1;
+			int detailCount = 0;
+			boolean inDetail = false;
+
+			while (reader.hasNext()) {
+				switch (reader.next()) {
+				case XMLStreamConstants.START_ELEMENT:
+					String name = reader.getLocalName();
+
+					if (name.equals("detail")) {
+						if (++detailCount == 1) {
+							detailDepth = depth;
+							inDetail = true;
+						}
+					} else if (inDetail && depth == detailDepth + 1) {
+						detailChild(reader, name, uidDetails, detail, detailDepth == 0);
+					}
+
+					anyElement(reader, name, detail);
+
+					depth++;
+					break;
+				case XMLStreamConstants.END_ELEMENT:
+					depth--;
+
+					if (depth == detailDepth) {
+						inDetail = false;
+					}
+					break;
+				case XMLStreamConstants.CHARACTERS:
+				case XMLStreamConstants.CDATA:
+					if (!detail.hasImage) {
+						detail.hasImage = reader.getText().contains("image");
+					}
+					break;
+				default:
+					break;
+				}
+			}
+
+			return detailCount == 1 ? detail : null;
+		} finally {
+			reader.close();
+		}
+	}
+
+	// child elements of detail hold the UID details. The icon is only read from the children of a root detail element.
+	private static void detailChild(XMLStreamReader reader, String name, UidDetails uidDetails, Detail detail, boolean readIcon) {
+
+		String value;
+
+		switch (name) {
+		case "color":
+			if ((value = reader.getAttributeValue(null, "argb")) != null) {
+				uidDetails.color = value;
+			} else if ((value = reader.getAttributeValue(null, "value")) != null) {
+				uidDetails.color = value;
+			}
+
+			if (readIcon) {
+				detail.hasIconColor = true;
+				detail.iconColor = reader.getAttributeValue(null, "argb");
+			}
+			break;
+		case "strokeColor":
+			if ((value = reader.getAttributeValue(null, "value")) != null) {
+				uidDetails.color = value;
+			}
+			break;
+		case "link_attr":
+			if ((value = reader.getAttributeValue(null, "color")) != null) {
+				uidDetails.color = value;
+			}
+			break;
+		case "bullseye":
+			if ("u-r-b-bullseye".equals(uidDetails.type) && (value = reader.getAttributeValue(null, "edgeToCenter")) != null) {
+				uidDetails.color = value.equals("true") ? "-65536" : "-16711936";
+			}
+			break;
+		case "attachment_list":
+			if ((value = reader.getAttributeValue(null, "hashes")) != null) {
+				// trim off [ ]
+				value = value.substring(1, value.length() - 1);
+				// remove all quotes (the parser decodes &quot; to ")
+				value = value.replace("\"", "");
+				// we're left with a comma separated list to split
+				uidDetails.attachments = Arrays.asList(value.split(","));
+			}
+			break;
+		case "title":
+			if ((value = reader.getAttributeValue(null, "title")) != null) {
+				uidDetails.title = value;
+			}
+			break;
+		case "_medevac_":
+			if ((value = reader.getAttributeValue(null, "title")) != null) {
+				detail.medevacTitle = value;
+			}
+			break;
+		case "model":
+			if ("u-d-v-m".equals(uidDetails.type)) {
+				if ((value = reader.getAttributeValue(null, "name")) != null) {
+					uidDetails.name = value;
+				}
+
+				if ((value = reader.getAttributeValue(null, "category")) != null) {
+					uidDetails.category = value;
+				}
+			}
+			break;
+		case "usericon":
+			if (readIcon) {
+				detail.hasUsericon = true;
+				detail.iconSetPath = reader.getAttributeValue(null, "iconsetpath");
+			}
+			break;
+		default:
+			break;
+		}
+	}
+
+	// the KML fields come from anywhere in the detail
+	private static void anyElement(XMLStreamReader reader, String name, Detail detail) {
+
+		if (name.equals("contact")) {
+			detail.hasContact = true;
+		}
+
+		if (!detail.hasImage && name.contains("image")) {
+			detail.hasImage = true;
+		}
+
+		for (int i = 0; i < reader.getAttributeCount(); i++) {
+			String attributeName = reader.getAttributeLocalName(i);
+			String attributeValue = reader.getAttributeValue(i);
+
+			if (!detail.hasImage && (attributeName.contains("image") || attributeValue.contains("image"))) {
+				detail.hasImage = true;
+			}
+
+			if (attributeName.equals("callsign")) {
+				if (detail.callsign == null) {
+					detail.callsign = attributeValue;
+				}
+
+				if (name.equals("contact") && detail.contactCallsign == null) {
+					detail.contactCallsign = attributeValue;
+				}
+			}
+		}
+
+		if (name.equals("track") && !detail.hasTrack) {
+			detail.hasTrack = true;
+			detail.course = parseTrackValue(reader.getAttributeValue(null, "course"));
+			detail.speed = parseTrackValue(reader.getAttributeValue(null, "speed"));
+		}
+	}
+
+	// null if the attribute is missing or blank, which leaves the CotElement field as it was
+	private static Double parseTrackValue(String value) {
+
+		if (value == null || value.trim().isEmpty()) {
+			return null;
+		}
+
+		try {
+			return Double.valueOf(value);
+		} catch (NumberFormatException e) {
+			return Double.NaN;
+		}
+	}
+
+	private static class Detail {
+
+		String medevacTitle;
+
+		boolean hasUsericon;
+		String iconSetPath;
+
+		boolean hasIconColor;
+		String iconColor;
+
+		boolean hasImage;
+
+		boolean hasContact;
+		String callsign;
+		String contactCallsign;
+
+		boolean hasTrack;
+		Double course;
+		Double speed;
+
+		void apply(CotElement cotElement) {
+
+			if (hasUsericon) {
+				cotElement.iconSetPath = iconSetPath;
+
+				try {
+					IconParts iconParts = Icon.parseIconPath(iconSetPath);
+
+					cotElement.iconSetUid = iconParts.iconsetUid;
+					cotElement.iconGroup = iconParts.group;
+					cotElement.iconName = iconParts.name;
+				} catch (Throwable t) {
+					if (logger.isDebugEnabled()) {
+						logger.debug("exception parsing iconsetpath: " + iconSetPath, t);
+					}
+				}
+			}
+
+			if (hasIconColor && iconColor != null) {
+				try {
+					cotElement.iconArgbColor = Long.parseLong(iconColor);
+				} catch (NumberFormatException e) {
+					logger.trace("exception parsing iconColorString " + iconColor + " to long");
+				}
+			}
+
+			cotElement.hasImage = hasImage;
+
+			if (hasContact && (contactCallsign != null || callsign != null)) {
+				// kept escaped as it appears in the detail text, as the KML code expects
+				cotElement.callsign = escape(contactCallsign != null ? contactCallsign : callsign);
+			}
+
+			if (course != null) {
+				cotElement.course = course;
+			}
+
+			if (speed != null) {
+				cotElement.speed = speed;
+			}
+		}
+
+		private static String escape(String value) {
+			return value.replace("&", "&amp;").replace("<", "&lt;").replace(">", "&gt;").replace("\"", "&quot;");
+		}
+	}
+}
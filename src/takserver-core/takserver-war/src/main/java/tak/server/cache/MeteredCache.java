@@ -0,0 +1,103 @@
+package tak.server.cache;
+
+import java.util.concurrent.Callable;
+
+import org.springframework.cache.Cache;
+
+/*
+ * Mission cache that counts hits, misses and evictions for its MissionCacheRegion.
+ */
+public class MeteredCache implements Cache {
+
+	private final Cache delegate;
+	private final MissionCacheRegion region;
+
+	private MeteredCache(Cache delegate) {
+		this.delegate = delegate;
+		this.region = MissionCacheRegion.of(delegate.getName());
+	}
+
+	public static Cache of(Cache cache) {
+		if (cache == null || cache instanceof MeteredCache) {
+			return cache;
+		}
+
+		return new MeteredCache(cache);
+	}
+
+	@Override
+	public String getName() {
+		return delegate.getName();
+	}
+
+	@Override
+	public Object getNativeCache() {
+		return delegate.getNativeCache();
+	}
+
+	@Override
+	public ValueWrapper get(Object key) {
+		ValueWrapper value = delegate.get(key);
+		region.lookup(value != null);
+		return value;
+	}
+
+	@Override
+	public <T> T get(Object key, Class<T> type) {
+		T value = delegate.get(key, type);
+		region.lookup(value != null);
+		return value;
+	}
+
+	@Override
+	public <T> T get(Object key, Callable<T> valueLoader) {
+		boolean[] loaded = { false };
+
+		T value = delegate.get(key, () -> {
+			loaded[0] = true;
+			return valueLoader.call();
+		});
+
+		region.lookup(!loaded[0]);
+
+		return value;
+	}
+
+	@Override
+	public void put(Object key, Object value) {
+		delegate.put(key, value);
+	}
+
+	@Override
+	public ValueWrapper putIfAbsent(Object key, Object value) {
+		return delegate.putIfAbsent(key, value);
+	}
+
+	@Override
+	public void evict(Object key) {
+		delegate.evict(key);
+		region.evicted();
+	}
+
+	@Override
+	public boolean evictIfPresent(Object key) {
+		boolean evicted = delegate.evictIfPresent(key);
+		if (evicted) {
+			region.evicted();
+		}
+		return evicted;
+	}
+
+	@Override
+	public void clear() {
+		delegate.clear();
+		region.evicted();
+	}
+
+	@Override
+	public boolean invalidate() {
+		boolean invalidated = delegate.invalidate();
+		region.evicted();
+		return invalidated;
+	}
+}
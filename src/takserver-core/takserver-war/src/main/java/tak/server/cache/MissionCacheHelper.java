@@ -8,6 +8,7 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.cache.Cache;
 import org.springframework.cache.Cache.ValueWrapper;
 import org.springframework.cache.CacheManager;
 import org.springframework.cache.support.SimpleValueWrapper;
@@ -60,7 +61,7 @@ public class MissionCacheHelper {
 
 		Mission mission = null;
 
-		ValueWrapper wrapper = getCacheManager().getCache(missionName).get(key);
+		ValueWrapper wrapper = getCache(missionName.toLowerCase()).get(key);
 		mission = unwrapMission(wrapper);
 		
 		if (mission != null) {
@@ -81,7 +82,7 @@ public class MissionCacheHelper {
 			lock.acquire();
 
 			// double-checked cache get
-			wrapper = getCacheManager().getCache(missionName).get(key);	
+			wrapper = getCache(missionName.toLowerCase()).get(key);	
 			mission = unwrapMission(wrapper);
 
 			if (mission != null) {
@@ -99,7 +100,7 @@ public class MissionCacheHelper {
 				UnproxyHelper.unproxyMission(mission);
 
 				// cache the mission with the appropriate key
-				getCacheManager().getCache(missionName).put(key, mission);
+				getCache(missionName.toLowerCase()).put(key, mission);
 			}
 		} catch (InterruptedException e) {
 			logger.error("interrupted", e);
@@ -129,7 +130,7 @@ public class MissionCacheHelper {
 		
 		Mission mission = null;
 
-		ValueWrapper wrapper = getCacheManager().getCache(guid.toString()).get(key);	
+		ValueWrapper wrapper = getCache(MissionCacheRegion.GUID_PREFIX + guid).get(key);	
 		mission = unwrapMission(wrapper);
 		
 		if (mission != null) {
@@ -150,7 +151,7 @@ public class MissionCacheHelper {
 			lock.acquire();
 
 			// double-checked cache get
-			wrapper = getCacheManager().getCache(guid.toString()).get(key);	
+			wrapper = getCache(MissionCacheRegion.GUID_PREFIX + guid).get(key);	
 			mission = unwrapMission(wrapper);
 
 			if (mission != null) {
@@ -170,7 +171,7 @@ public class MissionCacheHelper {
 				UnproxyHelper.unproxyMission(mission);
 
 				// cache the mission with the appropriate key
-				getCacheManager().getCache("mg-" + guid.toString()).put(key, mission);
+				getCache(MissionCacheRegion.GUID_PREFIX + guid).put(key, mission);
 			}
 		} catch (InterruptedException e) {
 			logger.error("interrupted", e);
@@ -261,6 +262,10 @@ public class MissionCacheHelper {
     		return caffineCacheManager;
     	}
     }
+    
+    private Cache getCache(String name) {
+    	return MeteredCache.of(getCacheManager().getCache(name));
+    }
 	
     private final ConcurrentHashMap<String, Semaphore> missionAvailableMap = new ConcurrentHashMap<>();
 	
@@ -0,0 +1,77 @@
+package tak.server.cache;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Metrics;
+import tak.server.Constants;
+import tak.server.cache.resolvers.MissionChangeCacheResolver;
+import tak.server.cache.resolvers.MissionLayerCacheResolver;
+
+/*
+ * Kinds of mission cache. Each mission has its own caches, named after the mission (by name, or by guid with the mg- prefix),
+ * so hits, misses and evictions are counted per kind of cache rather than per mission.
+ */
+public enum MissionCacheRegion {
+
+	// results of mission service methods, by mission name
+	MISSION("mission"),
+
+	// results of mission service methods, by mission guid
+	MISSION_GUID("mission-guid"),
+
+	MISSION_LAYERS("mission-layers"),
+
+	MISSION_CHANGES("mission-changes"),
+
+	ALL_MISSIONS("all-missions"),
+
+	ALL_COPS("all-cops");
+
+	public static final String GUID_PREFIX = "mg-";
+
+	private final Counter hits;
+	private final Counter misses;
+	private final Counter evictions;
+
+	MissionCacheRegion(String region) {
+		hits = Metrics.counter(Constants.METRIC_MISSION_CACHE_HIT, "region", region);
+		misses = Metrics.counter(Constants.METRIC_MISSION_CACHE_MISS, "region", region);
+		evictions = Metrics.counter(Constants.METRIC_MISSION_CACHE_EVICTION, "region", region);
+	}
+
+	public static MissionCacheRegion of(String cacheName) {
+
+		if (cacheName.endsWith(MissionLayerCacheResolver.SUFFIX)) {
+			return MISSION_LAYERS;
+		}
+
+		if (cacheName.endsWith(MissionChangeCacheResolver.SUFFIX)) {
+			return MISSION_CHANGES;
+		}
+
+		if (cacheName.equals(Constants.ALL_MISSION_CACHE)) {
+			return ALL_MISSIONS;
+		}
+
+		if (cacheName.equals(Constants.ALL_COPS_MISSION_CACHE)) {
+			return ALL_COPS;
+		}
+
+		if (cacheName.startsWith(GUID_PREFIX)) {
+			return MISSION_GUID;
+		}
+
+		return MISSION;
+	}
+
+	void lookup(boolean hit) {
+		if (hit) {
+			hits.increment();
+		} else {
+			misses.increment();
+		}
+	}
+
+	void evicted() {
+		evictions.increment();
+	}
+}
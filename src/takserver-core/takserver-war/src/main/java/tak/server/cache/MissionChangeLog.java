@@ -0,0 +1,240 @@
+package tak.server.cache;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.Lazy;
+
+import com.bbn.marti.sync.model.Mission;
+import com.bbn.marti.sync.model.MissionChange;
+import com.bbn.marti.sync.model.MissionChangeDelta;
+import com.bbn.marti.sync.repository.MissionChangeRepository;
+import com.bbn.marti.sync.service.MissionService;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+
+/*
+ *
+ * Recent changes to each mission, in the order they were made, for serving the changes after a cursor without re-querying the
+ * whole change history. The cursor is a mission_change id.
+ *
+ * Each mission's log is a window onto the mission_change table, brought up to date from it before it's read, so changes made
+ * through any node in a cluster are seen. Change ids are assigned before the change is committed, so a change may become visible
+ * after one with a higher id. Changes made within the last few seconds are therefore loaded again on each refresh, and the cursor
+ * handed to clients stays behind them.
+ *
+ */
+public class MissionChangeLog {
+
+	private static final Logger logger = LoggerFactory.getLogger(MissionChangeLog.class);
+
+	// most changes returned at once, and loaded from the database at once
+	static final int PAGE_SIZE = 1000;
+
+	// most changes kept per mission
+	private static final int MAX_LOG_CHANGES = 5000;
+
+	// changes older than this are assumed to have been committed
+	private static final long SETTLE_MILLIS = 5000;
+
+	// clients polling the same mission share a refresh within this interval
+	private static final long REFRESH_MILLIS = 500;
+
+	@Autowired
+	private MissionChangeRepository missionChangeRepository;
+
+	@Autowired
+	@Lazy
+	private MissionService missionService;
+
+	private final Cache<Long, MissionLog> logs = Caffeine.newBuilder()
+			.maximumSize(1000)
+			.expireAfterAccess(10, TimeUnit.MINUTES)
+			.build();
+
+	private static class MissionLog {
+
+		// every change after floor that has been loaded, by id
+		private final TreeMap<Long, MissionChange> changes = new TreeMap<>();
+
+		private long floor;
+
+		// changes after this may not all have been visible when last loaded
+		private long rescanFrom;
+
+		private long refreshed;
+
+		MissionLog(long floor) {
+			this.floor = floor;
+			this.rescanFrom = floor;
+		}
+	}
+
+	/*
+	 * The changes to the mission after the change with id since. When squashed, only the latest change to each piece of mission
+	 * content is returned.
+	 */
+	public MissionChangeDelta getChangesSince(Mission mission, long since, boolean squashed) {
+
+		if (mission.getId() == null) {
+			throw new IllegalArgumentException("null mission id in getChangesSince()");
+		}
+
+		MissionLog log = logs.get(mission.getId(), id -> new MissionLog(Math.max(0, since)));
+
+		List<MissionChange> changes = new ArrayList<>();
+		long settled;
+
+		synchronized (log) {
+			if (since < log.floor) {
+				// older than the log holds, so read the changes straight from the database
+				for (MissionChange change : missionChangeRepository.changesForMissionAfter(mission.getId(), since, PAGE_SIZE + 1)) {
+					missionService.hydrateMissionChange(change);
+					changes.add(change);
+				}
+
+				settled = settled(changes, since, System.currentTimeMillis());
+			} else {
+				refresh(mission.getId(), log);
+
+				for (MissionChange change : log.changes.tailMap(since, false).values()) {
+					changes.add(change);
+
+					if (changes.size() > PAGE_SIZE) {
+						break;
+					}
+				}
+
+				settled = log.rescanFrom;
+			}
+		}
+
+		boolean truncated = changes.size() > PAGE_SIZE;
+
+		if (truncated) {
+			changes.remove(PAGE_SIZE);
+		}
+
+		long last = changes.isEmpty() ? since : changes.get(changes.size() - 1).getId();
+
+		// stop before the first unsettled change, even within a page, so that a change committed later with a lower id isn't skipped
+		long cursor = Math.max(since, changes.isEmpty() ? settled : Math.min(settled, last));
+
+		// only offer the next page right away when this one was settled to the end, since otherwise the next request repeats most of it
+		boolean more = truncated && cursor == last;
+
+		if (squashed) {
+			changes = squash(changes);
+		}
+
+		if (logger.isDebugEnabled()) {
+			logger.debug("{} changes to mission {} since {}, cursor {}", changes.size(), mission.getName(), since, cursor);
+		}
+
+		return new MissionChangeDelta(cursor, more, changes);
+	}
+
+	private void refresh(Long missionId, MissionLog log) {
+
+		long now = System.currentTimeMillis();
+
+		if (now - log.refreshed < REFRESH_MILLIS) {
+			return;
+		}
+
+		log.refreshed = now;
+
+		long after = log.rescanFrom;
+		List<MissionChange> loaded;
+
+		do {
+			loaded = missionChangeRepository.changesForMissionAfter(missionId, after, PAGE_SIZE);
+
+			for (MissionChange change : loaded) {
+				if (!log.changes.containsKey(change.getId())) {
+					missionService.hydrateMissionChange(change);
+					log.changes.put(change.getId(), change);
+				}
+
+				after = change.getId();
+			}
+
+			while (log.changes.size() > MAX_LOG_CHANGES) {
+				log.floor = log.changes.pollFirstEntry().getKey();
+			}
+		} while (loaded.size() == PAGE_SIZE);
+
+		log.rescanFrom = Math.max(log.floor, settled(log.changes.tailMap(log.rescanFrom, false).values(), log.rescanFrom, now));
+	}
+
+	// id of the last change, from the start of changes, that's old enough to have been committed along with every change before it
+	private static long settled(Collection<MissionChange> changes, long since, long now) {
+
+		long settled = since;
+
+		for (MissionChange change : changes) {
+			if (change.getServerTime() == null || now - change.getServerTime().getTime() < SETTLE_MILLIS) {
+				break;
+			}
+
+			settled = change.getId();
+		}
+
+		return settled;
+	}
+
+	// latest change to each piece of content, in order
+	static List<MissionChange> squash(List<MissionChange> changes) {
+
+		List<MissionChange> squashed = new ArrayList<>(changes.size());
+		Set<String> seen = new HashSet<>();
+
+		for (int i = changes.size() - 1; i >= 0; i--) {
+			MissionChange change = changes.get(i);
+			String key = contentKey(change);
+
+			// mission creates and deletes are always kept
+			if (key == null || seen.add(key)) {
+				squashed.add(change);
+			}
+		}
+
+		Collections.reverse(squashed);
+
+		return squashed;
+	}
+
+	private static String contentKey(MissionChange change) {
+
+		if (change.getContentHash() != null) {
+			return "hash:" + change.getContentHash();
+		}
+
+		if (change.getContentUid() != null) {
+			return "uid:" + change.getContentUid();
+		}
+
+		if (change.getExternalDataUid() != null) {
+			return "external:" + change.getExternalDataUid();
+		}
+
+		if (change.getMissionFeedUid() != null) {
+			return "feed:" + change.getMissionFeedUid();
+		}
+
+		if (change.getMapLayerUid() != null) {
+			return "layer:" + change.getMapLayerUid();
+		}
+
+		return null;
+	}
+}
@@ -22,7 +22,7 @@ public class AllCopMissionCacheResolver extends TakCacheManagerResolver {
 	private List<Cache> getCaches() {
 		List<Cache> caches = new CopyOnWriteArrayList<>();
 		                        
-		Cache cache = getCacheManager().getCache(Constants.ALL_COPS_MISSION_CACHE);
+		Cache cache = getCache(Constants.ALL_COPS_MISSION_CACHE);
 		caches.add(cache);
 		return caches;
 	}
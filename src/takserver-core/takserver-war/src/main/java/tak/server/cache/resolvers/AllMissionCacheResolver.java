@@ -23,7 +23,7 @@ public class AllMissionCacheResolver extends TakCacheManagerResolver implements
 	private List<Cache> getCaches() {
 		List<Cache> caches = new CopyOnWriteArrayList<>();
 		                        
-		Cache cache = getCacheManager().getCache(Constants.ALL_MISSION_CACHE);
+		Cache cache = getCache(Constants.ALL_MISSION_CACHE);
 		caches.add(cache);
 		return caches;
 	}
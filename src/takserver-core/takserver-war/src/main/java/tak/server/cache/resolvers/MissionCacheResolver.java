@@ -1,100 +1,128 @@
 package tak.server.cache.resolvers;
 
 import java.util.Collection;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Set;
 import java.util.UUID;
 import java.util.concurrent.CopyOnWriteArrayList;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.cache.Cache;
 import org.springframework.cache.interceptor.CacheEvictOperation;
 import org.springframework.cache.interceptor.CacheOperation;
 import org.springframework.cache.interceptor.CacheOperationInvocationContext;
+import org.springframework.context.annotation.Lazy;
 
-import tak.server.cache.MissionCacheHelper;
+import com.bbn.marti.sync.model.Mission;
+import com.bbn.marti.sync.repository.MissionRepository;
+
+import tak.server.cache.MissionCacheRegion;
 
 public class MissionCacheResolver extends TakCacheManagerResolver {
 
     public static final String MISSION_CACHE_RESOLVER = "missionCacheResolver";
     private static final Logger logger = LoggerFactory.getLogger(MissionCacheResolver.class);
 
+    @Autowired
+    @Lazy
+    private MissionRepository missionRepository;
+
     public MissionCacheResolver() { }
 
     @Override
     public Collection<? extends Cache> resolveCaches(CacheOperationInvocationContext<?> context) {
-        try {        	
-            logger.debug("resolveCaches args {} method {}", context.getArgs(), context.getMethod().getName());
-
-        	// basic case for old behavior
-        	if (context.getArgs()[0] instanceof String) { 
-        		logger.debug("basic case");
-        		String cacheName = ((String) context.getArgs()[0]);
-        		
-            	List<Cache> caches = new CopyOnWriteArrayList<>();
-                caches.add(getCacheManager().getCache(cacheName.toLowerCase()));
-
-                if ((CacheOperation)context.getOperation() instanceof CacheEvictOperation) {
-                    caches.add(getCacheManager().getCache(cacheName + MissionLayerCacheResolver.SUFFIX));	
-                }
-                
-                return caches;
-        	}
-               	
-        	
-            // can alter behavior here by method if there are issues with different parameters, using the method name
-            
-            String cacheNameMissionGuid = null;
-        	String cacheNameMissionName = null;
-
-            if ((context.getArgs()[0] != null) && context.getArgs()[0] instanceof UUID) {
-            	// adding toString() for the UUID case - which can't be cast as a String.
-            	cacheNameMissionGuid = "mg-" + ((String) context.getArgs()[0].toString());
-            } else {
-            	cacheNameMissionName = ((String) context.getArgs()[0].toString()); // name
-            }
-            
-            if (cacheNameMissionName == null) {
-            	if (context.getArgs().length > 1 && (context.getArgs()[1] != null)) {
-            		cacheNameMissionName = ((String) context.getArgs()[1].toString());
-            	}
-            }
+        try {
+            Object[] args = context.getArgs();
 
-            if (cacheNameMissionName != null) {
-                cacheNameMissionName = cacheNameMissionName.toLowerCase();
+            logger.debug("resolveCaches args {} method {}", args, context.getMethod().getName());
+
+            Set<String> cacheNames = new LinkedHashSet<>();
+
+            if ((CacheOperation) context.getOperation() instanceof CacheEvictOperation) {
+                cacheNames.addAll(evictCacheNames(context));
+            } else if (args[0] instanceof UUID) {
+                cacheNames.add(MissionCacheRegion.GUID_PREFIX + args[0]);
+            } else if (args[0] != null) {
+                cacheNames.add(args[0].toString().toLowerCase());
             }
 
+            logger.debug("mission cache operation for caches {} args {}", cacheNames, args);
+
             List<Cache> caches = new CopyOnWriteArrayList<>();
-            
-            if (cacheNameMissionGuid != null) {
-            	caches.add(getCacheManager().getCache(cacheNameMissionGuid));
-            }
 
-            logger.debug("mission cache operation for cache name guid {} cache name name {} cache context {} args {}", cacheNameMissionGuid, cacheNameMissionName, context.getArgs());
-            
-            if ((CacheOperation)context.getOperation() instanceof CacheEvictOperation) {
-                caches.add(getCacheManager().getCache(cacheNameMissionGuid + MissionLayerCacheResolver.SUFFIX));
-                
-                caches.add(getCacheManager().getCache(cacheNameMissionGuid));
-                
-                if (context.getArgs()[0] instanceof UUID) {
-                	caches.add(getCacheManager().getCache(MissionCacheHelper.getKeyGuid(((UUID) context.getArgs()[0]), false)));
-                	caches.add(getCacheManager().getCache(MissionCacheHelper.getKeyGuid(((UUID) context.getArgs()[0]), true)));
-                }
-                
-                if (cacheNameMissionName != null) {
-                    caches.add(getCacheManager().getCache(cacheNameMissionName + MissionLayerCacheResolver.SUFFIX));
-                    caches.add(getCacheManager().getCache(cacheNameMissionName));
-                    
-                    caches.add(getCacheManager().getCache(MissionCacheHelper.getKey(cacheNameMissionName, false)));
-                    caches.add(getCacheManager().getCache(MissionCacheHelper.getKey(cacheNameMissionName, true)));
+            for (String cacheName : cacheNames) {
+                Cache cache = getCache(cacheName);
+                if (cache != null) {
+                    caches.add(cache);
                 }
             }
-            
+
             return caches;
         } catch (Exception e) {
             logger.error("exception in resolveCaches!", e);
             return null;
         }
     }
+
+    /*
+     * Every cache holding data for the mission that the method changes, and only those. The mission is identified by a Mission
+     * argument if there is one, otherwise by a leading name or guid argument.
+     */
+    private Set<String> evictCacheNames(CacheOperationInvocationContext<?> context) {
+
+        Object[] args = context.getArgs();
+
+        String missionName = null;
+        UUID missionGuid = null;
+
+        for (Object arg : args) {
+            if (arg instanceof Mission) {
+                Mission mission = (Mission) arg;
+                missionName = mission.getName();
+                missionGuid = mission.getGuid() == null ? null : mission.getGuidAsUUID();
+                break;
+            }
+        }
+
+        if (missionName == null && missionGuid == null) {
+            if (args[0] instanceof UUID) {
+                missionGuid = (UUID) args[0];
+
+                // invalidateMissionCache(UUID, String) names the mission too
+                if (args.length > 1 && args[1] instanceof String && context.getMethod().getName().equals("invalidateMissionCache")) {
+                    missionName = (String) args[1];
+                }
+            } else if (args[0] instanceof String) {
+                missionName = (String) args[0];
+            }
+        }
+
+        if (missionName == null && missionGuid != null) {
+            try {
+                missionName = missionRepository.getMissionNameForMissionGuid(missionGuid);
+            } catch (Exception e) {
+                logger.debug("no mission name for guid {}", missionGuid, e);
+            }
+        }
+
+        Set<String> cacheNames = new LinkedHashSet<>();
+
+        if (missionGuid != null) {
+            cacheNames.add(MissionCacheRegion.GUID_PREFIX + missionGuid);
+            cacheNames.add(MissionCacheRegion.GUID_PREFIX + missionGuid + MissionLayerCacheResolver.SUFFIX);
+        }
+
+        if (missionName != null) {
+            cacheNames.add(missionName.toLowerCase());
+
+            // layer caches are named after the mission name as given
+            cacheNames.add(missionName + MissionLayerCacheResolver.SUFFIX);
+            cacheNames.add(missionName.toLowerCase() + MissionLayerCacheResolver.SUFFIX);
+        }
+
+        return cacheNames;
+    }
 }
@@ -12,6 +12,8 @@ import org.springframework.cache.interceptor.CacheEvictOperation;
 import org.springframework.cache.interceptor.CacheOperation;
 import org.springframework.cache.interceptor.CacheOperationInvocationContext;
 
+import tak.server.cache.MissionCacheRegion;
+
 public class MissionCacheResolverGuid extends TakCacheManagerResolver {
 
     public static final String MISSION_CACHE_RESOLVER_GUID = "missionCacheResolverGuid";
@@ -24,10 +26,10 @@ public class MissionCacheResolverGuid extends TakCacheManagerResolver {
         try {
 			UUID cacheName = ((UUID) context.getArgs()[0]);
             List<Cache> caches = new CopyOnWriteArrayList<>();
-            caches.add(getCacheManager().getCache("mg-" + cacheName.toString()));
+            caches.add(getCache(MissionCacheRegion.GUID_PREFIX + cacheName.toString()));
 
             if ((CacheOperation)context.getOperation() instanceof CacheEvictOperation) {
-                caches.add(getCacheManager().getCache("mg-" + cacheName + MissionLayerCacheResolver.SUFFIX));	
+                caches.add(getCache(MissionCacheRegion.GUID_PREFIX + cacheName + MissionLayerCacheResolver.SUFFIX));	
             }
 
             return caches;
@@ -23,7 +23,7 @@ public class MissionLayerCacheResolver extends TakCacheManagerResolver {
         try {
             String cacheName = (String) context.getArgs()[0] + SUFFIX;
             List<Cache> caches = new CopyOnWriteArrayList<>();
-            caches.add(getCacheManager().getCache(cacheName));
+            caches.add(getCache(cacheName));
 
             return caches;
         } catch (Exception e) {
@@ -2,11 +2,13 @@ package tak.server.cache.resolvers;
 
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.cache.Cache;
 import org.springframework.cache.CacheManager;
 import org.springframework.cache.interceptor.CacheResolver;
 
 import com.bbn.marti.remote.config.CoreConfigFacade;
 
+import tak.server.cache.MeteredCache;
 import tak.server.cache.SpringCacheOperationUpdater;
 
 public abstract class TakCacheManagerResolver implements CacheResolver {
@@ -28,4 +30,9 @@ public abstract class TakCacheManagerResolver implements CacheResolver {
     		return caffineCacheManager;
     	}
     }
+    
+    // mission cache, counting hits, misses and evictions for its region
+    protected Cache getCache(String name) {
+    	return MeteredCache.of(getCacheManager().getCache(name));
+    }
 }
@@ -76,7 +76,7 @@ private static final Logger logger = LoggerFactory.getLogger(FileManagerServiceD
 	}
 	 
 	public List<Resource> getMissionPackageResources(int limit, int offset, String sort, Boolean ascending, String name, String groupVector){
-		String sql = "select hash, name, octet_length(data), submitter, groups, submissiontime, mimetype, expiration, uid "
+		String sql = "select hash, name, coalesce(octet_length(data), content_length), submitter, groups, submissiontime, mimetype, expiration, uid "
 				   + "from resource where 'missionpackage' = ANY(keywords) AND " + RemoteUtil.getInstance().getGroupClause();
 		List<Object> params = new ArrayList<>();
 		params.add(groupVector);
@@ -112,7 +112,7 @@ private static final Logger logger = LoggerFactory.getLogger(FileManagerServiceD
 	}
 	
 	public List<Resource> findAllFiles(int limit, int offset, String sort, Boolean ascending, String groupVector){
-		String sql = "select hash, name, octet_length(data), submitter, groups, submissiontime, mimetype, expiration, uid "
+		String sql = "select hash, name, coalesce(octet_length(data), content_length), submitter, groups, submissiontime, mimetype, expiration, uid "
 				   + "from resource where " + RemoteUtil.getInstance().getGroupClause();;
 		List<Object> params = new ArrayList<>();
 		params.add(groupVector);
@@ -144,7 +144,7 @@ private static final Logger logger = LoggerFactory.getLogger(FileManagerServiceD
 	}
 	
 	public List<Resource> findByName(int limit, int offset, String sort, Boolean ascending, String name, String groupVector){
-		String sql = "select hash, name, octet_length(data), submitter, groups, submissiontime, mimetype, expiration, uid "
+		String sql = "select hash, name, coalesce(octet_length(data), content_length), submitter, groups, submissiontime, mimetype, expiration, uid "
 				   + "from resource where " + RemoteUtil.getInstance().getGroupClause();;
 		List<Object> params = new ArrayList<>();
 		params.add(groupVector);
@@ -182,7 +182,7 @@ private static final Logger logger = LoggerFactory.getLogger(FileManagerServiceD
 
 	@Override
 	public List<Resource> getResourcesByMission(String mission, int limit, int offset, String sort, Boolean ascending, String name, String groupVector) {
-		String sql = "select r.hash, r.name, octet_length(data), r.submitter, r.groups, r.submissiontime, r.mimetype, r.expiration, r.uid "
+		String sql = "select r.hash, r.name, coalesce(octet_length(r.data), r.content_length), r.submitter, r.groups, r.submissiontime, r.mimetype, r.expiration, r.uid "
 				   + "from resource r inner join mission_resource mr on r.id = mr.resource_id "
 				   + "inner join mission mi on mr.mission_id = mi.id where mi.name = ? AND " + RemoteUtil.getInstance().getGroupClause("r");;
 		List<Object> params = new ArrayList<>();
@@ -290,7 +290,7 @@ private static final Logger logger = LoggerFactory.getLogger(FileManagerServiceD
 		  case "submissionTime":
 		     return "submissiontime";
 		  case "size":
-			  return "octet_length(data)";
+			  return "coalesce(octet_length(data), content_length)";
 		  default:
 		    return "";
 		}
@@ -261,7 +261,7 @@ public class Resource implements Serializable, Comparable<Resource> {
         this.hash = hash;
     }
     
-    @Formula("octet_length(data)")
+    @Formula("coalesce(octet_length(data), content_length)")
     public Long getSize() {
         return size;
     }
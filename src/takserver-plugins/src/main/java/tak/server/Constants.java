@@ -122,6 +122,7 @@ public class Constants {
 	public static final String IGNITE_USER_OUTBOUND_GROUP_CACHE = "ignite-user-outbound-group-cache";
 	public static final String IGNITE_USER_INBOUND_GROUP_CACHE = "ignite-user-inbound-group-cache";
 	public static final String LATEST_COT_CACHE = "latest-cot-cache";
+	public static final String LATEST_SA_CACHE = "latest-sa-cache";
 	public static final String CLIENT_MSG_TS_CACHE = "client-msg-ts-cache";
 	public static final String CERTIFICATE_CACHE = "certificate-cache";
 	public static final String VIDEO_CACHE = "video-cache";
@@ -226,6 +227,7 @@ public class Constants {
     public static final String METRIC_MESSAGE_READ_COUNT = "message.read";
     public static final String METRIC_MESSAGE_WRITE_COUNT = "message.write";
     public static final String METRIC_MESSAGE_PRECONVERT_COUNT = "message.preconverted";
+    public static final String METRIC_MESSAGE_PROTOBUF_PASSTHROUGH_COUNT = "message.protobuf.passthrough";
 
 
     public static final String METRIC_FED_DATA_MESSAGE_READ_COUNT = "fed.message.read.data";
@@ -237,6 +239,14 @@ public class Constants {
     public static final String METRIC_FED_CONTACT_MESSAGE_READ_COUNT = "fed.message.read.contact";
     public static final String METRIC_FED_CONTACT_MESSAGE_WRITE_COUNT = "fed.message.write.contact";
 
+    public static final String METRIC_FED_OUTBOUND_QUEUE_DEPTH = "fed.outbound.queue.depth";
+    public static final String METRIC_FED_OUTBOUND_QUEUE_DROP = "fed.outbound.queue.drop";
+    public static final String METRIC_FED_EVENT_BATCH_SIZE = "fed.event.batch.size";
+    public static final String METRIC_FED_EVENT_WIRE_BYTES = "fed.event.wire.bytes";
+    public static final String METRIC_FED_REPLAY_APPEND_COUNT = "fed.replay.append";
+    public static final String METRIC_FED_REPLAY_SEND_COUNT = "fed.replay.send";
+    public static final String METRIC_FED_REPLAY_DROP_COUNT = "fed.replay.drop";
+
     public static final String METRIC_MESSAGE_QOS_READ_SKIP_COUNT = "message.qos.read.skip";
     public static final String METRIC_MESSAGE_QOS_DELIVERY_SKIP_COUNT = "message.qos.delivery.skip";
     public static final String METRIC_MESSAGE_QOS_DOS_SKIP_COUNT = "message.qos.dos.skip";
@@ -253,15 +263,43 @@ public class Constants {
     public static final String METRIC_DOS_ACTIVE_RATE_LIMIT_THRESHOLD = "message.dos.active.rate.limit.threshold";
     public static final String METRIC_CLIENT_COUNT = "messaging.clients.connected";
     public static final String METRIC_MESSAGE_WRITE_LATENCY = "message.write.latency-ms";
+    public static final String METRIC_MESSAGE_WRITE_BATCH_SIZE = "message.write.batch.size";
 
 
     public static final String METRIC_FEDERATE_ROL_SKIP = "federation.rol.skip";
-    public static final String METRIC_QOS_DELIVERY_CACHE_PUT_SKIP = "qos.delivery.cache.skip";
+    public static final String METRIC_QOS_DELIVERY_TIMESTAMP_COUNT = "qos.delivery.timestamp.count";
 
     public static final String METRIC_CLIENT_CONNECT = "client.connect";
     public static final String METRIC_CLIENT_DISCONNECT = "client.disconnect";
 
     public static final String METRIC_REPOSITORY_QUEUE_FULL_SKIP = "message.repository.q.skip";
+    public static final String METRIC_REPOSITORY_COPY_FALLBACK = "message.repository.copy.fallback";
+    public static final String METRIC_REPOSITORY_SPILL = "message.repository.spill";
+    public static final String METRIC_REPOSITORY_SPILL_DROP = "message.repository.spill.drop";
+    public static final String METRIC_REPOSITORY_SPILL_REPLAY = "message.repository.spill.replay";
+    public static final String METRIC_REPOSITORY_SPILL_SIZE = "message.repository.spill.size";
+    public static final String METRIC_REPOSITORY_SPILL_BYTES = "message.repository.spill.bytes";
+    public static final String METRIC_REPOSITORY_SPILL_REPLAY_LAG = "message.repository.spill.replay.lag";
+
+    public static final String METRIC_MISSION_CACHE_HIT = "mission.cache.hit";
+    public static final String METRIC_MISSION_CACHE_MISS = "mission.cache.miss";
+    public static final String METRIC_MISSION_CACHE_EVICTION = "mission.cache.eviction";
+
+    public static final String METRIC_MESSAGE_SHARED_COPY_COUNT = "message.copy.shared";
+    public static final String METRIC_MESSAGE_DOCUMENT_CLONE_COUNT = "message.copy.document.clone";
+    public static final String METRIC_MESSAGE_ENCODE_COUNT = "message.encoding.encode";
+    public static final String METRIC_MESSAGE_ENCODING_REUSE_COUNT = "message.encoding.reuse";
+
+    public static final String METRIC_XPATH_CACHE_HIT_COUNT = "xpath.cache.hit";
+    public static final String METRIC_XPATH_CACHE_MISS_COUNT = "xpath.cache.miss";
+    public static final String METRIC_XPATH_CACHE_EVICTION_COUNT = "xpath.cache.eviction";
+    public static final String METRIC_XPATH_CACHE_SIZE = "xpath.cache.size";
+
+    public static final String METRIC_RETENTION_DELETE_ROWS = "retention.delete.rows";
+    public static final String METRIC_RETENTION_DELETE_RATE = "retention.delete.rate";
+    public static final String METRIC_RETENTION_DELETE_REMAINING = "retention.delete.remaining";
+    public static final String METRIC_RETENTION_DELETE_LOCK_WAIT = "retention.delete.lock.wait.seconds";
+    public static final String METRIC_RETENTION_DELETE_LOCK_TIMEOUT = "retention.delete.lock.timeout";
 
     // Provenance keys used in Message
     public static final String PLUGIN_MANAGER_PROVENANCE = "PluginManager";
@@ -0,0 +1,121 @@
+package tak.server.cot;
+
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.dom4j.Document;
+import org.dom4j.DocumentHelper;
+import org.dom4j.XPath;
+
+/*
+ *
+ * XPath expression compiled once, for repeated evaluation against messages (see XPathCache).
+ *
+ * A few simple expressions that are common in subscriptions are recognized, and evaluated against a CotEventContainer using its
+ * getters, so that the document doesn't have to be traversed (or, for a protobuf backed message, built):
+ *
+ *   *
+ *   /event[starts-with(@type, 'a-f')]
+ *   /event[@type='a-f-G-U-C']
+ *   /event[@uid='ANDROID-1234']
+ *
+ * Anything else is evaluated by dom4j.
+ *
+ */
+public final class CompiledXPath {
+
+	private static final Pattern TYPE_PREFIX = Pattern.compile("^\\s*/event\\[\\s*starts-with\\(\\s*@type\\s*,\\s*(['\"])([^'\"]*)\\1\\s*\\)\\s*\\]\\s*$");
+
+	private static final Pattern ATTRIBUTE_EQUALS = Pattern.compile("^\\s*/event\\[\\s*@(type|uid)\\s*=\\s*(['\"])([^'\"]*)\\2\\s*\\]\\s*$");
+
+	private enum Kind {
+		ANY,
+		TYPE_PREFIX,
+		TYPE_EQUALS,
+		UID_EQUALS,
+		XPATH
+	}
+
+	private final String expression;
+
+	private final Kind kind;
+
+	private final String value;
+
+	private final XPath xpath;
+
+	private CompiledXPath(String expression, Kind kind, String value, XPath xpath) {
+		this.expression = expression;
+		this.kind = kind;
+		this.value = value;
+		this.xpath = xpath;
+	}
+
+	/*
+	 * Compile an expression. Throws org.dom4j.InvalidXPathException if the expression is invalid.
+	 */
+	public static CompiledXPath compile(String expression) {
+
+		// the dom4j XPath is always compiled, so that invalid expressions fail here rather than at match time
+		XPath xpath = DocumentHelper.createXPath(expression);
+
+		if (expression.trim().equals("*")) {
+			return new CompiledXPath(expression, Kind.ANY, null, xpath);
+		}
+
+		Matcher matcher = TYPE_PREFIX.matcher(expression);
+		if (matcher.matches()) {
+			return new CompiledXPath(expression, Kind.TYPE_PREFIX, matcher.group(2), xpath);
+		}
+
+		matcher = ATTRIBUTE_EQUALS.matcher(expression);
+		if (matcher.matches()) {
+			return new CompiledXPath(expression, matcher.group(1).equals("type") ? Kind.TYPE_EQUALS : Kind.UID_EQUALS, matcher.group(3), xpath);
+		}
+
+		return new CompiledXPath(expression, Kind.XPATH, null, xpath);
+	}
+
+	public boolean matches(XmlContainer container) {
+
+		if (kind != Kind.XPATH && container instanceof CotEventContainer) {
+			CotEventContainer cot = (CotEventContainer) container;
+
+			switch (kind) {
+			case ANY:
+				return true;
+			case TYPE_PREFIX:
+				String type = cot.getType();
+				return type != null && type.startsWith(value);
+			case TYPE_EQUALS:
+				return value.equals(cot.getType());
+			case UID_EQUALS:
+				return value.equals(cot.getUid());
+			default:
+				break;
+			}
+		}
+
+		Document document = container.readDocument();
+
+		return document != null && xpath.booleanValueOf(document);
+	}
+
+	public String getExpression() {
+		return expression;
+	}
+
+	public XPath getXPath() {
+		return xpath;
+	}
+
+	// true if this expression is evaluated without dom4j
+	public boolean isSimple() {
+		return kind != Kind.XPATH;
+	}
+
+	@Override
+	public String toString() {
+		return "CompiledXPath [expression=" + expression + ", kind=" + kind + "]";
+	}
+}
@@ -3,17 +3,29 @@
 package tak.server.cot;
 
 import java.io.Serializable;
+import java.io.StringReader;
 import java.nio.ByteBuffer;
 import java.nio.charset.Charset;
 import java.sql.Timestamp;
+import java.util.Collections;
 import java.util.Date;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
 
 import org.dom4j.Attribute;
+import org.dom4j.Branch;
 import org.dom4j.Document;
 import org.dom4j.Element;
+import org.dom4j.Node;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -22,8 +34,12 @@ import com.google.common.base.Charsets;
 import com.google.common.base.Strings;
 
 import tak.server.Constants;
+import tak.server.proto.StreamingProtoBufHelper;
 import tak.server.util.NumericUtil;
 
+import atakmap.commoncommo.protobuf.v1.Cotevent.CotEvent;
+import atakmap.commoncommo.protobuf.v1.DetailOuterClass.Detail;
+import atakmap.commoncommo.protobuf.v1.Takmessage.TakMessage;
 import gov.tak.cop.proto.v1.Binarypayload;
 
 
@@ -62,7 +78,6 @@ public class CotEventContainer extends XmlContainer implements Serializable {
 	public static final String CACHE_IMAGE_HIT_TIME_KEY = "cache_image_hit_time";
 
 	protected String uid = null;
-	protected byte[] encoding = null;
 	protected boolean hasServerTime = false;
 	
 	private long start = -1L;
@@ -91,9 +106,37 @@ public class CotEventContainer extends XmlContainer implements Serializable {
 	// Flag to track whether this is a new message, or stored message (as is the case with Latest SA)
 	private boolean stored = false;
 	
-	private ByteBuffer protoBufBytes = null;
+	// encodings shared by the subscribers this message is sent to
+	private transient volatile EncodingCache encodings = new EncodingCache();
 
 	private List<Binarypayload.BinaryPayload> binaryPayloads = null;
+
+	// TAK protocol backing. While set, the protobuf message is authoritative, and doc is only a read-only copy built on demand (see readDocument).
+	private volatile TakMessage takMessage = null;
+
+	// takMessage serialized exactly as received, or null once takMessage has been modified
+	private byte[] takMessageBytes = null;
+
+	// time attribute set on a protobuf backed message (see setTime)
+	private volatile String timeAttribute = null;
+
+	// top level element names of the xml detail of xmlDetailElementsSource (see hasXmlDetailElement), null if it is not well formed
+	private transient Set<String> xmlDetailElements = null;
+	private transient TakMessage xmlDetailElementsSource = null;
+
+	// true while doc may be shared with other copies of this message (see sharedCopy). Cloned before the first modification.
+	private volatile boolean documentShared = false;
+
+	private static final LongAdder sharedCopyCount = new LongAdder();
+	private static final LongAdder documentCloneCount = new LongAdder();
+
+	private static final XMLInputFactory xmlDetailInputFactory = XMLInputFactory.newFactory();
+
+	static {
+		xmlDetailInputFactory.setProperty(XMLInputFactory.IS_NAMESPACE_AWARE, false);
+		xmlDetailInputFactory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+		xmlDetailInputFactory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+	}
 	
 	public CotEventContainer() {
 		super();
@@ -107,7 +150,9 @@ public class CotEventContainer extends XmlContainer implements Serializable {
 	}
 
 	public CotEventContainer(CotEventContainer src) {
-		super(src);
+		super();
+		context = new ConcurrentHashMap<>(src.context);
+		copyDocument(src, false);
 		copyInstanceVariables(src);
 		if (Strings.isNullOrEmpty(this.uid)) {
 			setUid(getRootAttribute("uid"));
@@ -119,6 +164,11 @@ public class CotEventContainer extends XmlContainer implements Serializable {
 
 	// Copy the object, optionally with the XML document object only, and no context key-value map
 	public CotEventContainer(CotEventContainer src, boolean copyContext) {
+		this(src, copyContext, false);
+	}
+
+	// Copy the object, optionally sharing the XML document object with the source rather than cloning it (see sharedCopy)
+	private CotEventContainer(CotEventContainer src, boolean copyContext, boolean shareDocument) {
 		
 		if (logger.isTraceEnabled()) {
 			logger.trace("message keys on full copy: " + src.getContext().keySet(), new Exception("full copy"));
@@ -129,7 +179,7 @@ public class CotEventContainer extends XmlContainer implements Serializable {
 		} else {
 			context = new ConcurrentHashMap<>();
 		}
-		doc = (Document) src.doc.clone();
+		copyDocument(src, shareDocument);
 		copyInstanceVariables(src);
 		
 		if (Strings.isNullOrEmpty(this.uid)) {
@@ -170,12 +220,140 @@ public class CotEventContainer extends XmlContainer implements Serializable {
 		}
 	}
 
+	// Message received from a TAK protocol client. The XML document is not built until something asks for it.
+	public CotEventContainer(TakMessage takMessage, byte[] takMessageBytes) {
+		super();
+		this.takMessage = takMessage;
+		this.takMessageBytes = takMessageBytes;
+		if (Strings.isNullOrEmpty(this.uid)) {
+			setUid(getRootAttribute("uid"));
+		}
+		if (creationTime == -1) {
+			creationTime = new Date().getTime();
+		}
+	}
+
+	/*
+	 * The caller may modify the returned document, so a protobuf backed message gives up its protobuf backing here, and will be
+	 * converted from the document from now on.
+	 */
+	@Override
+	public Document getDocument() {
+		if (takMessage != null) {
+			synchronized (this) {
+				readDocument();
+				takMessage = null;
+				takMessageBytes = null;
+				timeAttribute = null;
+			}
+		}
+
+		return writableDocument();
+	}
+
+	/*
+	 * The document, for reading only. Unlike getDocument, this neither clones a shared document nor gives up the protobuf backing, so
+	 * callers that only sometimes modify the document should check here before calling getDocument.
+	 */
+	public Document getReadOnlyDocument() {
+		return readDocument();
+	}
+
+	// doc, cloned first if it is shared with other copies of this message
+	private Document writableDocument() {
+		if (documentShared) {
+			synchronized (this) {
+				if (documentShared) {
+					if (doc != null) {
+						doc = (Document) doc.clone();
+						documentCloneCount.increment();
+					}
+					documentShared = false;
+				}
+			}
+		}
+
+		return doc;
+	}
+
+	@Override
+	public Document document() {
+		return getDocument();
+	}
+
+	@Override
+	protected Document readDocument() {
+		if (takMessage == null) {
+			return doc;
+		}
+
+		synchronized (this) {
+			if (doc == null && takMessage != null) {
+				try {
+					Document built = StreamingProtoBufHelper.proto2document(takMessage);
+					if (timeAttribute != null) {
+						built.getRootElement().addAttribute("time", timeAttribute);
+					}
+					doc = built;
+				} catch (Exception e) {
+					throw new IllegalStateException("unable to build document for protobuf message " + getUid(), e);
+				}
+			}
+
+			return doc;
+		}
+	}
+
+	// protobuf backing of this message, or null if the message is not (or no longer) protobuf backed
+	public TakMessage getTakMessage() {
+		return takMessage;
+	}
+
+	// protobuf backing of this message exactly as it was received, or null if the message is not protobuf backed or has been modified
+	public synchronized byte[] getTakMessageBytes() {
+		return takMessage == null ? null : takMessageBytes;
+	}
+
+	/*
+	 * Append elements to the xml detail of a protobuf backed message, without building the document. Returns false if the message is
+	 * not protobuf backed, in which case the caller has to modify the document instead.
+	 */
+	public synchronized boolean appendXmlDetail(String xml) {
+		if (takMessage == null) {
+			return false;
+		}
+
+		CotEvent event = takMessage.getCotEvent();
+		Detail detail = event.getDetail();
+
+		takMessage = takMessage.toBuilder()
+				.setCotEvent(event.toBuilder()
+						.setDetail(detail.toBuilder().setXmlDetail(detail.getXmlDetail() + xml)))
+				.build();
+
+		takMessageBytes = null;
+
+		// rebuilt from the modified message on next use
+		doc = null;
+		documentShared = false;
+
+		clearEncodings();
+
+		return true;
+	}
+
 	public String getAccess() {
 		return getRootAttribute("access");
 	}
 
 	public String getCallsign() {
-		Attribute callsignAttr = (Attribute) doc.selectSingleNode("/event/detail/contact/@callsign");
+		TakMessage backing = takMessage;
+		if (backing != null && !hasXmlDetailElement(backing, "contact")) {
+			Detail detail = backing.getCotEvent().getDetail();
+			return detail.hasContact() ? detail.getContact().getCallsign() : null;
+		}
+
+		Attribute callsignAttr = (Attribute) readDocument().selectSingleNode("/event/detail/contact/@callsign");
 		if (callsignAttr != null) {
 			return callsignAttr.getValue();
 		} else {
@@ -188,7 +366,7 @@ public class CotEventContainer extends XmlContainer implements Serializable {
 	}
 
 	public String getDetailXml() {
-		Element detailElem = (Element) doc.selectSingleNode("/event/detail");
+		Element detailElem = (Element) readDocument().selectSingleNode("/event/detail");
 		if (detailElem != null) {
 			return detailElem.asXML();
 		} else {
@@ -201,10 +379,18 @@ public class CotEventContainer extends XmlContainer implements Serializable {
 		if (endpoint == null) {
 			synchronized(this) {
 				if (endpoint == null) {
-					Attribute endpointAttr = (Attribute) doc.selectSingleNode("/event/detail/contact/@endpoint");
-					if (endpointAttr != null) {
-						endpoint = endpointAttr.getValue();
-					} 
+					TakMessage backing = takMessage;
+					if (backing != null && !hasXmlDetailElement(backing, "contact")) {
+						Detail detail = backing.getCotEvent().getDetail();
+						if (detail.hasContact()) {
+							endpoint = Strings.emptyToNull(detail.getContact().getEndpoint());
+						}
+					} else {
+						Attribute endpointAttr = (Attribute) readDocument().selectSingleNode("/event/detail/contact/@endpoint");
+						if (endpointAttr != null) {
+							endpoint = endpointAttr.getValue();
+						}
+					}
 				}
 			}			
 		}
@@ -235,7 +421,26 @@ public class CotEventContainer extends XmlContainer implements Serializable {
 	}
 
 	private String getPointAttribute(String attribute) {
-		return doc.getRootElement().element("point").attributeValue(attribute);
+		TakMessage backing = takMessage;
+		if (backing != null) {
+			CotEvent event = backing.getCotEvent();
+			switch (attribute) {
+			case "lat":
+				return Double.toString(event.getLat());
+			case "lon":
+				return Double.toString(event.getLon());
+			case "hae":
+				return Double.toString(event.getHae());
+			case "ce":
+				return Double.toString(event.getCe());
+			case "le":
+				return Double.toString(event.getLe());
+			default:
+				break;
+			}
+		}
+
+		return readDocument().getRootElement().element("point").attributeValue(attribute);
 	}
 
 	public String getQos() {
@@ -250,7 +455,99 @@ public class CotEventContainer extends XmlContainer implements Serializable {
 	}
 
 	private String getRootAttribute(String attribute) {
-		return doc.getRootElement().attributeValue(attribute);
+		TakMessage backing = takMessage;
+		if (backing != null) {
+			// same values that StreamingProtoBufHelper.proto2document writes to the event element
+			CotEvent event = backing.getCotEvent();
+			switch (attribute) {
+			case "uid":
+				return event.getUid();
+			case "type":
+				return event.getType();
+			case "how":
+				return event.getHow();
+			case "time":
+				String time = timeAttribute;
+				return time != null ? time : DateUtil.toCotTime(event.getSendTime());
+			case "start":
+				return DateUtil.toCotTime(event.getStartTime());
+			case "stale":
+				return DateUtil.toCotTime(event.getStaleTime());
+			case "caveat":
+				return Strings.emptyToNull(event.getCaveat());
+			case "releaseableTo":
+				return Strings.emptyToNull(event.getReleaseableTo());
+			case "opex":
+				return Strings.emptyToNull(event.getOpex());
+			case "qos":
+				return Strings.emptyToNull(event.getQos());
+			case "access":
+				return Strings.emptyToNull(event.getAccess());
+			default:
+				break;
+			}
+		}
+
+		return readDocument().getRootElement().attributeValue(attribute);
+	}
+
+	/*
+	 * True if the xml detail of a protobuf backed message has a top level element with the given name (which overrides the protobuf
+	 * detail field of the same name), or if the xml detail can't be parsed. Always true if the message is not protobuf backed, since
+	 * the caller then has to look at the document anyway.
+	 */
+	public boolean hasXmlDetailElement(String name) {
+		TakMessage backing = takMessage;
+		return backing == null || hasXmlDetailElement(backing, name);
+	}
+
+	private synchronized boolean hasXmlDetailElement(TakMessage backing, String name) {
+		// parsed once per backing message, since copies and later modifications (appendXmlDetail) replace the backing
+		if (xmlDetailElementsSource != backing) {
+			xmlDetailElements = xmlDetailElements(backing.getCotEvent().getDetail().getXmlDetail());
+			xmlDetailElementsSource = backing;
+		}
+
+		return xmlDetailElements == null || xmlDetailElements.contains(name);
+	}
+
+	// names of the top level elements of an xml detail, or null if it isn't well formed
+	static Set<String> xmlDetailElements(String xmlDetail) {
+		if (xmlDetail.isEmpty()) {
+			return Collections.emptySet();
+		}
+
+		Set<String> names = new HashSet<>();
+
+		try {
+			XMLStreamReader reader = xmlDetailInputFactory.createXMLStreamReader(new StringReader("<detail>" + xmlDetail + "</detail>"));
+			try {
+				int depth = 0;
+				while (reader.hasNext()) {
+					switch (reader.next()) {
+					case XMLStreamConstants.START_ELEMENT:
+						if (++depth == 2) {
+							names.add(reader.getLocalName());
+						}
+						break;
+					case XMLStreamConstants.END_ELEMENT:
+						depth--;
+						break;
+					default:
+						break;
+					}
+				}
+			} finally {
+				reader.close();
+			}
+		} catch (XMLStreamException e) {
+			if (logger.isDebugEnabled()) {
+				logger.debug("unable to parse xml detail", e);
+			}
+			return null;
+		}
+
+		return names;
 	}
 
 	public String getStale() {
@@ -287,12 +584,27 @@ public class CotEventContainer extends XmlContainer implements Serializable {
 	}
 
 	public void setStale(String stale) {
-		doc.getRootElement().addAttribute("stale", stale);
+		getDocument().getRootElement().addAttribute("stale", stale);
+		clearEncodings();
 	}
 
 	public void setTime(String time) {
-		doc.getRootElement().addAttribute("time", time);
+		synchronized (this) {
+			if (takMessage != null) {
+				// like the time long below, the protobuf send time is left alone - only the XML form carries the new time
+				timeAttribute = time;
+
+				// modified, so no longer sent on as received
+				takMessageBytes = null;
+			}
+
+			if (doc != null || takMessage == null) {
+				writableDocument().getRootElement().addAttribute("time", time);
+			}
+		}
 		
+		clearEncodings();
+
 		try {
 			this.time = Long.parseLong(time);
 		} catch (Exception e) {	}
@@ -308,42 +620,94 @@ public class CotEventContainer extends XmlContainer implements Serializable {
 	}
 	
 	public void setType(String type) {
-		doc.getRootElement().addAttribute("type", type);
+		getDocument().getRootElement().addAttribute("type", type);
+
+		// keep the cached type in step, since type predicates are evaluated against it (see CompiledXPath)
+		synchronized (this) {
+			this.type = type;
+		}
+
+		clearEncodings();
 	}
 
 	public CotEventContainer copy() {
 		return new CotEventContainer(this);
 	}
 
+	/*
+	 * Copy the message, sharing the document with this one rather than cloning it. The document is treated as read-only by both
+	 * messages, and whichever one is modified through getDocument (or setTime, setStale, setType) first takes a private clone of it.
+	 * The document is frozen (see freeze) before it is first shared, so that the messages can be read on different threads.
+	 * Document references obtained before the copy was made must not be used to modify either message.
+	 *
+	 */
+	public CotEventContainer sharedCopy() {
+		sharedCopyCount.increment();
+		return new CotEventContainer(this, true, true);
+	}
+
+	// number of copies made with sharedCopy
+	public static long getSharedCopyCount() {
+		return sharedCopyCount.sum();
+	}
+
+	// number of shared documents cloned on modification
+	public static long getDocumentCloneCount() {
+		return documentCloneCount.sum();
+	}
+
 	public String partial() {
 		return "CoT msg: type: " + this.getType() + " uid: " + this.getUid() + " sender: " + this.getContext(Constants.SOURCE_TRANSPORT_KEY);
 	}
 	public byte[] getEncoding() {
-		return this.encoding;
+		return encodings().peek(EncodingCache.Format.COT_XML);
 	}
 
 	public byte[] getOrInstantiateEncoding() {
-		if (this.encoding == null) {
-			this.encoding = this.asXml().getBytes();
-		}
-
-		return this.encoding;
+		return getOrInstantiateEncoding(EncodingCache.Format.COT_XML, () -> this.asXml().getBytes(Charsets.UTF_8));
 	}
 
-	ByteBuffer bufferEncoding = null;
-
 	public ByteBuffer getOrInstantiateBufferEncoding(Charset encoder) {
-		if (this.bufferEncoding == null) {
-			this.bufferEncoding = encoder.encode(this.asXml());
+		if (Charsets.UTF_8.equals(encoder)) {
+			return ByteBuffer.wrap(getOrInstantiateEncoding());
 		}
 
-		return bufferEncoding.duplicate();
+		return encoder.encode(this.asXml());
 	}
 
 	public ByteBuffer getOrInstantiateBufferEncoding() {
 		return getOrInstantiateBufferEncoding(Charsets.UTF_8);
 	}
 
+	/*
+	 * Get the encoding of this message in a wire format, encoding it with encoder if it hasn't already been. The encoding is shared
+	 * by everything this message is sent to, so it must not be modified.
+	 */
+	public <T> T getOrInstantiateEncoding(EncodingCache.Format format, Supplier<T> encoder) {
+		return encodings().get(format, encoder);
+	}
+
+	// drop any encodings of this message, after modifying its document
+	public void clearEncodings() {
+		encodings().clear();
+	}
+
+	private EncodingCache encodings() {
+		EncodingCache current = encodings;
+
+		if (current == null) {
+			// deserialized
+			synchronized (this) {
+				if (encodings == null) {
+					encodings = new EncodingCache();
+				}
+				current = encodings;
+			}
+		}
+
+		return current;
+	}
+
 	public CotElement toCotElement() {
 
 		CotElement cotElement = new CotElement();
@@ -477,11 +841,11 @@ public class CotEventContainer extends XmlContainer implements Serializable {
 	}
 	
 	public ByteBuffer getProtoBufBytes() {
-		return protoBufBytes;
+		return encodings().peek(EncodingCache.Format.TAK_PROTO);
 	}
 
 	public void setProtoBufBytes(ByteBuffer protoBufBytes) {
-		this.protoBufBytes = protoBufBytes;
+		encodings().set(EncodingCache.Format.TAK_PROTO, protoBufBytes);
 	}
 
 	public List<Binarypayload.BinaryPayload> getBinaryPayloads() {
@@ -492,6 +856,39 @@ public class CotEventContainer extends XmlContainer implements Serializable {
 		this.binaryPayloads = binaryPayloads;
 	}
 
+	private void copyDocument(CotEventContainer src, boolean share) {
+		synchronized (src) {
+			if (share) {
+				// a protobuf backed message that hasn't built its document yet has nothing to share. Each copy builds its own if needed.
+				doc = src.doc;
+				if (doc != null && !src.documentShared) {
+					freeze(doc);
+				}
+				documentShared = src.documentShared = doc != null;
+			} else {
+				doc = src.doc == null ? null : (Document) src.doc.clone();
+			}
+			takMessage = src.takMessage;
+			takMessageBytes = src.takMessageBytes;
+			timeAttribute = src.timeAttribute;
+		}
+	}
+
+	/*
+	 * dom4j documents are not safe to read from several threads as they are: an element keeps a single child node or attribute
+	 * inline, and moves it into a list the first time the content or attributes are listed, which XPath evaluation and asXML do.
+	 * Listing them for the whole tree once, before the document is shared, leaves nothing for the readers to write.
+	 */
+	static void freeze(Branch branch) {
+		for (Node node : branch.content()) {
+			if (node instanceof Element) {
+				Element element = (Element) node;
+				element.attributes();
+				freeze(element);
+			}
+		}
+	}
+
 	private void copyInstanceVariables(CotEventContainer toCopy) {
 		this.start = toCopy.getStartLong();
 		this.stale = toCopy.getStaleLong();
@@ -510,7 +907,7 @@ public class CotEventContainer extends XmlContainer implements Serializable {
 		
 		this.submissionTime = toCopy.getSubmissionTime();
 		this.creationTime = toCopy.creationTime;
-		this.protoBufBytes = toCopy.getProtoBufBytes();
+		setProtoBufBytes(toCopy.getProtoBufBytes());
 		this.binaryPayloads = toCopy.getBinaryPayloads();
 	}
 	
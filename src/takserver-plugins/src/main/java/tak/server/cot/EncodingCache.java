@@ -0,0 +1,95 @@
+package tak.server.cot;
+
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/*
+ *
+ * Encodings of a message, at most one per wire format. A message brokered to many subscribers is encoded once for each format in use,
+ * and the encoded form is shared by reference between the subscribers, so it must not be modified.
+ *
+ * Encodings are cleared when the message is modified through CotEventContainer's setters. Code that modifies the document directly
+ * after the message may have been encoded has to call CotEventContainer.clearEncodings.
+ *
+ */
+public final class EncodingCache {
+
+	public enum Format {
+		// framed TAK protocol message, subject to the streaming size limit (ByteBuffer)
+		TAK_PROTO,
+		// framed TAK protocol message, without the size limit, for websocket clients (ByteBuffer)
+		TAK_PROTO_UNLIMITED,
+		// TAK protocol message object, for gRPC streams (TakMessage)
+		TAK_MESSAGE,
+		// CoT XML, UTF-8 encoded (byte[])
+		COT_XML,
+		// federated event payload (GeoEvent)
+		FEDERATED_EVENT,
+		// cluster and websocket payload message (Message)
+		CLUSTER_MESSAGE
+	}
+
+	private static final Format[] FORMATS = Format.values();
+
+	private static final LongAdder encodeCount = new LongAdder();
+	private static final LongAdder reuseCount = new LongAdder();
+
+	private final AtomicReferenceArray<Object> encodings = new AtomicReferenceArray<>(FORMATS.length);
+
+	/*
+	 * Get the encoding in a format, encoding it if it hasn't been. If encoder returns null, nothing is cached.
+	 */
+	@SuppressWarnings("unchecked")
+	public <T> T get(Format format, Supplier<T> encoder) {
+
+		Object encoding = encodings.get(format.ordinal());
+
+		if (encoding == null) {
+			synchronized (this) {
+				encoding = encodings.get(format.ordinal());
+
+				if (encoding == null) {
+					encoding = encoder.get();
+					encodeCount.increment();
+
+					if (encoding != null) {
+						encodings.set(format.ordinal(), encoding);
+					}
+
+					return (T) encoding;
+				}
+			}
+		}
+
+		reuseCount.increment();
+
+		return (T) encoding;
+	}
+
+	// the encoding in a format, or null if it hasn't been encoded
+	@SuppressWarnings("unchecked")
+	public <T> T peek(Format format) {
+		return (T) encodings.get(format.ordinal());
+	}
+
+	public void set(Format format, Object encoding) {
+		encodings.set(format.ordinal(), encoding);
+	}
+
+	public void clear() {
+		for (int i = 0; i < FORMATS.length; i++) {
+			encodings.set(i, null);
+		}
+	}
+
+	// number of encodings made through get
+	public static long getEncodeCount() {
+		return encodeCount.sum();
+	}
+
+	// number of times get returned an existing encoding
+	public static long getReuseCount() {
+		return reuseCount.sum();
+	}
+}
@@ -0,0 +1,107 @@
+package tak.server.cot;
+
+import java.util.concurrent.atomic.LongAdder;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+
+/*
+ *
+ * Bounded cache of compiled XPath expressions, keyed by expression string. Subscription, filter and mission XPath expressions are
+ * drawn from a small set that is evaluated for every message, so compiling each one once avoids reparsing it per match.
+ *
+ * When the cache is full the least recently used entries are evicted. The hit, miss and eviction counts are exposed as metrics by
+ * the subscription manager.
+ *
+ */
+public final class XPathCache {
+
+	public static final int DEFAULT_MAX_SIZE = 1000;
+
+	private static final LongAdder hits = new LongAdder();
+	private static final LongAdder misses = new LongAdder();
+	private static final LongAdder evictions = new LongAdder();
+
+	private static volatile Cache<String, CompiledXPath> cache = newCache(DEFAULT_MAX_SIZE);
+
+	private static volatile int maxSize = DEFAULT_MAX_SIZE;
+
+	private XPathCache() { }
+
+	/*
+	 * Get the compiled form of an expression, compiling and caching it if necessary. Throws org.dom4j.InvalidXPathException if the
+	 * expression is invalid (invalid expressions are not cached).
+	 */
+	public static CompiledXPath compile(String expression) {
+
+		Cache<String, CompiledXPath> current = cache;
+
+		CompiledXPath compiled = current.getIfPresent(expression);
+
+		if (compiled != null) {
+			hits.increment();
+			return compiled;
+		}
+
+		misses.increment();
+
+		compiled = CompiledXPath.compile(expression);
+
+		if (maxSize > 0) {
+			CompiledXPath existing = current.asMap().putIfAbsent(expression, compiled);
+
+			if (existing != null) {
+				return existing;
+			}
+		}
+
+		return compiled;
+	}
+
+	private static Cache<String, CompiledXPath> newCache(int size) {
+		return CacheBuilder.newBuilder()
+				.maximumSize(size)
+				.removalListener(notification -> {
+					if (notification.wasEvicted()) {
+						evictions.increment();
+					}
+				})
+				.build();
+	}
+
+	/*
+	 * Set the maximum number of cached expressions. 0 disables caching.
+	 */
+	public static synchronized void setMaxSize(int size) {
+		size = Math.max(0, size);
+
+		if (size != maxSize) {
+			maxSize = size;
+			cache = newCache(size);
+		}
+	}
+
+	public static int getMaxSize() {
+		return maxSize;
+	}
+
+	public static int size() {
+		return (int) cache.size();
+	}
+
+	public static long getHitCount() {
+		return hits.sum();
+	}
+
+	public static long getMissCount() {
+		return misses.sum();
+	}
+
+	public static long getEvictionCount() {
+		return evictions.sum();
+	}
+
+	public static void clear() {
+		cache.invalidateAll();
+	}
+}
@@ -6,7 +6,6 @@ import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
 
 import org.dom4j.Document;
-import org.dom4j.DocumentHelper;
 import org.dom4j.XPath;
 
 public class XmlContainer
@@ -23,7 +22,7 @@ public class XmlContainer
   
   public XmlContainer(XmlContainer src) {
     context = new ConcurrentHashMap<String,Object>(src.context);
-    doc = (Document) src.doc.clone();
+    doc = src.doc == null ? null : (Document) src.doc.clone();
   }
 
   public XmlContainer(Document xml) {
@@ -32,7 +31,7 @@ public class XmlContainer
   }
   
   public String asXml() {
-    return doc.asXML();
+    return readDocument().asXML();
   }
   
   public Document getDocument() {
@@ -44,13 +43,26 @@ public class XmlContainer
   }
 
   public boolean matchXPath(String b) {
-    if (doc != null) {
-      XPath xpath = DocumentHelper.createXPath(b);
-      return xpath.booleanValueOf(doc);
+    return XPathCache.compile(b).matches(this);
+  }
+
+  public boolean matchXPath(CompiledXPath xpath) {
+    return xpath.matches(this);
+  }
+
+  public boolean matchXPath(XPath xpath) {
+    Document document = readDocument();
+    if (document != null) {
+      return xpath.booleanValueOf(document);
     }
     return false;
   }
 
+  // document for read-only access. Subclasses that build the document lazily override this.
+  protected Document readDocument() {
+    return doc;
+  }
+
   public boolean hasContextKey(String key) {
     return context.containsKey(key);
   }
@@ -6,6 +6,7 @@ import java.util.Date;
 
 import org.dom4j.Attribute;
 import org.dom4j.Document;
+import org.dom4j.DocumentException;
 import org.dom4j.DocumentHelper;
 import org.dom4j.Element;
 import org.dom4j.io.SAXReader;
@@ -54,6 +55,12 @@ public class StreamingProtoBufHelper {
                 return null;
             }
 
+            // protobuf backed message - no need to go through the document
+            TakMessage backing = cot.getTakMessage();
+            if (backing != null) {
+                return setMessageTimes(backing.toBuilder(), cot).build();
+            }
+
             if (cot.getDocument() == null) {
                 logger.error("cot2protoBuf unable to get document for CotEventContainer");
                 return null;
@@ -409,16 +416,7 @@ public class StreamingProtoBufHelper {
             TakMessage.Builder takMessageBuilder = TakMessage.newBuilder();
             takMessageBuilder.setCotEvent(cotEvent);
 
-            Date submitTime = cot.getSubmissionTime();
-            long submitMillis;
-            if (submitTime != null && (submitMillis = submitTime.getTime()) > 0) {
-                takMessageBuilder.setSubmissionTime(submitMillis);
-            }
-
-            long creationTime = cot.getCreationTime();
-            if (creationTime > 0) {
-                takMessageBuilder.setCreationTime(creationTime);
-            }
+            setMessageTimes(takMessageBuilder, cot);
 
             TakMessage takMessage = takMessageBuilder.build();
 
@@ -437,194 +435,227 @@ public class StreamingProtoBufHelper {
 		        }
 		    };
 
+    private static TakMessage.Builder setMessageTimes(TakMessage.Builder takMessageBuilder, CotEventContainer cot) {
+        Date submitTime = cot.getSubmissionTime();
+        long submitMillis;
+        if (submitTime != null && (submitMillis = submitTime.getTime()) > 0) {
+            takMessageBuilder.setSubmissionTime(submitMillis);
+        }
+
+        long creationTime = cot.getCreationTime();
+        if (creationTime > 0) {
+            takMessageBuilder.setCreationTime(creationTime);
+        }
+
+        return takMessageBuilder;
+    }
+
     public static CotEventContainer proto2cot(TakMessage takMessage) {
         try {
-            CotEvent cotEvent = takMessage.getCotEvent();
-            Document document = DocumentHelper.createDocument();
+            CotEventContainer cotEventContainer = new CotEventContainer(proto2document(takMessage));
+            setInstanceVariables(cotEventContainer, takMessage);
+            return cotEventContainer;
 
-            //
-            // event
-            //
-            Element eventElement = document.addElement("event");
-            eventElement.addAttribute("version", "2.0")
-                    .addAttribute("uid", cotEvent.getUid())
-                    .addAttribute("type", cotEvent.getType())
-                    .addAttribute("how", cotEvent.getHow())
-                    .addAttribute("time", DateUtil.toCotTime(cotEvent.getSendTime()))
-                    .addAttribute("start", DateUtil.toCotTime(cotEvent.getStartTime()))
-                    .addAttribute("stale", DateUtil.toCotTime(cotEvent.getStaleTime()));
-
-            String caveat = cotEvent.getCaveat();
-            if (caveat != null && caveat.length() > 0) {
-                eventElement.addAttribute("caveat", caveat);
-            }
+        } catch (Exception e) {
+            logger.error("exception in proto2cot!", e);
+            return null;
+        }
+    }
 
-            String releaseableTo = cotEvent.getReleaseableTo();
-            if (releaseableTo != null && releaseableTo.length() > 0) {
-                eventElement.addAttribute("releaseableTo", releaseableTo);
-            }
+    /*
+     * Protobuf backed conversion. The document is only built if something needs it, and takMessageBytes, the serialized takMessage as received
+     * (may be null), can be sent on as is to other TAK protocol clients while the message is unmodified.
+     */
+    public static CotEventContainer proto2cot(TakMessage takMessage, byte[] takMessageBytes) {
+        try {
+            CotEventContainer cotEventContainer = new CotEventContainer(takMessage, takMessageBytes);
+            setInstanceVariables(cotEventContainer, takMessage);
+            return cotEventContainer;
 
-            String opex = cotEvent.getOpex();
-            if (opex != null && opex.length() > 0) {
-                eventElement.addAttribute("opex", opex);
-            }
+        } catch (Exception e) {
+            logger.error("exception in proto2cot!", e);
+            return null;
+        }
+    }
 
-            String qos = cotEvent.getQos();
-            if (qos != null && qos.length() > 0) {
-                eventElement.addAttribute("qos", qos);
-            }
+    private static void setInstanceVariables(CotEventContainer cotEventContainer, TakMessage takMessage) {
+        CotEvent cotEvent = takMessage.getCotEvent();
+        Detail detail = cotEvent.getDetail();
 
-            String access = cotEvent.getAccess();
-            if (access != null && access.length() > 0) {
-                eventElement.addAttribute("access", access);
-            }
+        cotEventContainer.setTimeLong(cotEvent.getSendTime());
+        cotEventContainer.setStartLong(cotEvent.getStartTime());
+        cotEventContainer.setStaleLong(cotEvent.getStaleTime());
+        if (takMessage.getSubmissionTime() > 0) {
+            cotEventContainer.setSubmissionTime(new Date(takMessage.getSubmissionTime()));
+        }
+        if (takMessage.getCreationTime() > 0) {
+            cotEventContainer.setCreationTime(takMessage.getCreationTime());
+        }
+        cotEventContainer.setLatDouble(cotEvent.getLat());
+        cotEventContainer.setLonDouble(cotEvent.getLon());
+        cotEventContainer.setHaeDouble(cotEvent.getHae());
+        cotEventContainer.setCeDouble(cotEvent.getCe());
+        cotEventContainer.setLeDouble(cotEvent.getLe());
+        cotEventContainer.setBatteryInt(detail.hasStatus() ? detail.getStatus().getBattery() : -1);
+        cotEventContainer.setSpeedDouble(detail.hasTrack() ? detail.getTrack().getSpeed() : -1.0);
+        cotEventContainer.setCourseDouble(detail.hasTrack() ? detail.getTrack().getCourse() : -1.0);
+    }
 
-            //
-            // point
-            //
-            eventElement.addElement("point")
-                    .addAttribute("lat", Double.toString(cotEvent.getLat()))
-                    .addAttribute("lon", Double.toString(cotEvent.getLon()))
-                    .addAttribute("hae", Double.toString(cotEvent.getHae()))
-                    .addAttribute("ce", Double.toString(cotEvent.getCe()))
-                    .addAttribute("le", Double.toString(cotEvent.getLe()));
-
-            double speed = -1.0;
-            double course = -1.0;
-            int battery = -1;
-            
-            //
-            // detail
-            //
-            Detail detail = cotEvent.getDetail();
-            if (detail != null) {
-                Element detailElement = eventElement.addElement("detail");
+    public static Document proto2document(TakMessage takMessage) throws DocumentException {
+        CotEvent cotEvent = takMessage.getCotEvent();
+        Document document = DocumentHelper.createDocument();
+
+        //
+        // event
+        //
+        Element eventElement = document.addElement("event");
+        eventElement.addAttribute("version", "2.0")
+                .addAttribute("uid", cotEvent.getUid())
+                .addAttribute("type", cotEvent.getType())
+                .addAttribute("how", cotEvent.getHow())
+                .addAttribute("time", DateUtil.toCotTime(cotEvent.getSendTime()))
+                .addAttribute("start", DateUtil.toCotTime(cotEvent.getStartTime()))
+                .addAttribute("stale", DateUtil.toCotTime(cotEvent.getStaleTime()));
+
+        String caveat = cotEvent.getCaveat();
+        if (caveat != null && caveat.length() > 0) {
+            eventElement.addAttribute("caveat", caveat);
+        }
 
-                //
-                // contact
-                //
-                if (detail.hasContact()) {
-                    Contact contact = detail.getContact();
-                    Element contactElement = detailElement.addElement(CONTACT)
-                            .addAttribute("callsign", contact.getCallsign());
+        String releaseableTo = cotEvent.getReleaseableTo();
+        if (releaseableTo != null && releaseableTo.length() > 0) {
+            eventElement.addAttribute("releaseableTo", releaseableTo);
+        }
 
-                    if (contact.getEndpoint() != null && contact.getEndpoint().length() > 0) {
-                        contactElement.addAttribute("endpoint", contact.getEndpoint());
-                    }
-                }
+        String opex = cotEvent.getOpex();
+        if (opex != null && opex.length() > 0) {
+            eventElement.addAttribute("opex", opex);
+        }
 
-                //
-                // group
-                //
-                if (detail.hasGroup()) {
-                    Group group = detail.getGroup();
-                    detailElement.addElement(GROUP)
-                            .addAttribute("name", group.getName())
-                            .addAttribute("role", group.getRole());
-                }
+        String qos = cotEvent.getQos();
+        if (qos != null && qos.length() > 0) {
+            eventElement.addAttribute("qos", qos);
+        }
 
-                //
-                // precision location
-                //
-                if (detail.hasPrecisionLocation()) {
-                    PrecisionLocation precisionLocation = detail.getPrecisionLocation();
-                    detailElement.addElement(PRECISION_LOCATION)
-                            .addAttribute("geopointsrc", precisionLocation.getGeopointsrc())
-                            .addAttribute("altsrc", precisionLocation.getAltsrc());
-                }
+        String access = cotEvent.getAccess();
+        if (access != null && access.length() > 0) {
+            eventElement.addAttribute("access", access);
+        }
 
-                //
-                // status
-                //
-                if (detail.hasStatus()) {
-                    Status status = detail.getStatus();
-                    battery = status.getBattery();
-                    detailElement.addElement(STATUS)
-                            .addAttribute("battery", Integer.toString(battery));
-                }
+        //
+        // point
+        //
+        eventElement.addElement("point")
+                .addAttribute("lat", Double.toString(cotEvent.getLat()))
+                .addAttribute("lon", Double.toString(cotEvent.getLon()))
+                .addAttribute("hae", Double.toString(cotEvent.getHae()))
+                .addAttribute("ce", Double.toString(cotEvent.getCe()))
+                .addAttribute("le", Double.toString(cotEvent.getLe()));
+
+        //
+        // detail
+        //
+        Detail detail = cotEvent.getDetail();
+        if (detail != null) {
+            Element detailElement = eventElement.addElement("detail");
 
-                //
-                // takv
-                //
-                if (detail.hasTakv()) {
-                    Takv takv = detail.getTakv();
-                    detailElement.addElement(TAKV)
-                            .addAttribute("device", takv.getDevice())
-                            .addAttribute("platform", takv.getPlatform())
-                            .addAttribute("os", takv.getOs())
-                            .addAttribute("version", takv.getVersion());
-                }
+            //
+            // contact
+            //
+            if (detail.hasContact()) {
+                Contact contact = detail.getContact();
+                Element contactElement = detailElement.addElement(CONTACT)
+                        .addAttribute("callsign", contact.getCallsign());
 
-                //
-                // track
-                //
-                if (detail.hasTrack()) {
-                    Track track = detail.getTrack();
-                    course = track.getCourse();
-                    speed = track.getSpeed();
-                    detailElement.addElement(TRACK)
-                            .addAttribute("speed", Double.toString(speed))
-                            .addAttribute("course", Double.toString(course));
+                if (contact.getEndpoint() != null && contact.getEndpoint().length() > 0) {
+                    contactElement.addAttribute("endpoint", contact.getEndpoint());
                 }
+            }
 
-                //
-                // xmlDetail
-                //
-                String xmlDetail = detail.getXmlDetail();
-                if (xmlDetail != null && xmlDetail.length() > 0) {
-                    xmlDetail = "<?xml version=\"1.0\" encoding=\"UTF-8\"?><detail>" + xmlDetail + "</detail>";
-                    Document doc = reader.get().read(new ByteArrayInputStream(xmlDetail.getBytes()));
-                    Element xmlDetailElement = doc.getRootElement();
-                    for (Object subElement : xmlDetailElement.elements()) {
-
-                        String name = ((Element)subElement).getName();
-
-                        // if we see one of the currently defined detail types appear in the xmlDetail section
-                        // then the xmlDetail contents shall override whatever appeared in the proto message.
-                        if (0 == name.compareTo(CONTACT)
-                        || 0 == name.compareTo(GROUP)
-                        || 0 == name.compareTo(PRECISION_LOCATION)
-                        || 0 == name.compareTo(STATUS)
-                        || 0 == name.compareTo(TAKV)
-                        || 0 == name.compareTo(TRACK)) {
-                            Element existing = detailElement.element(name);
-                            if (existing != null) {
-                                // go ahead and delete what came from the explicit proto message
-                                detailElement.remove(existing);
-                            }
-                        }
+            //
+            // group
+            //
+            if (detail.hasGroup()) {
+                Group group = detail.getGroup();
+                detailElement.addElement(GROUP)
+                        .addAttribute("name", group.getName())
+                        .addAttribute("role", group.getRole());
+            }
 
-                        detailElement.add(((Element) subElement).createCopy());
-                    }
-                }
+            //
+            // precision location
+            //
+            if (detail.hasPrecisionLocation()) {
+                PrecisionLocation precisionLocation = detail.getPrecisionLocation();
+                detailElement.addElement(PRECISION_LOCATION)
+                        .addAttribute("geopointsrc", precisionLocation.getGeopointsrc())
+                        .addAttribute("altsrc", precisionLocation.getAltsrc());
             }
 
-            CotEventContainer cotEventContainer = new CotEventContainer(document);
-            
-            cotEventContainer.setTimeLong(cotEvent.getSendTime());
-            cotEventContainer.setStartLong(cotEvent.getStartTime());
-            cotEventContainer.setStaleLong(cotEvent.getStaleTime());
-            if (takMessage.getSubmissionTime() > 0) {
-                cotEventContainer.setSubmissionTime(new Date(takMessage.getSubmissionTime()));
+            //
+            // status
+            //
+            if (detail.hasStatus()) {
+                Status status = detail.getStatus();
+                detailElement.addElement(STATUS)
+                        .addAttribute("battery", Integer.toString(status.getBattery()));
             }
-            if (takMessage.getCreationTime() > 0) {
-                cotEventContainer.setCreationTime(takMessage.getCreationTime());
+
+            //
+            // takv
+            //
+            if (detail.hasTakv()) {
+                Takv takv = detail.getTakv();
+                detailElement.addElement(TAKV)
+                        .addAttribute("device", takv.getDevice())
+                        .addAttribute("platform", takv.getPlatform())
+                        .addAttribute("os", takv.getOs())
+                        .addAttribute("version", takv.getVersion());
             }
-            cotEventContainer.setLatDouble(cotEvent.getLat());
-            cotEventContainer.setLonDouble(cotEvent.getLon());
-            cotEventContainer.setHaeDouble(cotEvent.getHae());
-            cotEventContainer.setCeDouble(cotEvent.getCe());
-            cotEventContainer.setLeDouble(cotEvent.getLe());
-            cotEventContainer.setBatteryInt(battery);
-            cotEventContainer.setSpeedDouble(speed);
-            cotEventContainer.setCourseDouble(course);
-                        
-            return cotEventContainer;
 
-        } catch (Exception e) {
-            logger.error("exception in proto2cot!", e);
-            return null;
+            //
+            // track
+            //
+            if (detail.hasTrack()) {
+                Track track = detail.getTrack();
+                detailElement.addElement(TRACK)
+                        .addAttribute("speed", Double.toString(track.getSpeed()))
+                        .addAttribute("course", Double.toString(track.getCourse()));
+            }
+
+            //
+            // xmlDetail
+            //
+            String xmlDetail = detail.getXmlDetail();
+            if (xmlDetail != null && xmlDetail.length() > 0) {
+                xmlDetail = "<?xml version=\"1.0\" encoding=\"UTF-8\"?><detail>" + xmlDetail + "</detail>";
+                Document doc = reader.get().read(new ByteArrayInputStream(xmlDetail.getBytes()));
+                Element xmlDetailElement = doc.getRootElement();
+                for (Object subElement : xmlDetailElement.elements()) {
+
+                    String name = ((Element)subElement).getName();
+
+                    // if we see one of the currently defined detail types appear in the xmlDetail section
+                    // then the xmlDetail contents shall override whatever appeared in the proto message.
+                    if (0 == name.compareTo(CONTACT)
+                    || 0 == name.compareTo(GROUP)
+                    || 0 == name.compareTo(PRECISION_LOCATION)
+                    || 0 == name.compareTo(STATUS)
+                    || 0 == name.compareTo(TAKV)
+                    || 0 == name.compareTo(TRACK)) {
+                        Element existing = detailElement.element(name);
+                        if (existing != null) {
+                            // go ahead and delete what came from the explicit proto message
+                            detailElement.remove(existing);
+                        }
+                    }
+
+                    detailElement.add(((Element) subElement).createCopy());
+                }
+            }
         }
+
+        return document;
     }
 
     public static int readVarint(ByteBuffer buffer) {
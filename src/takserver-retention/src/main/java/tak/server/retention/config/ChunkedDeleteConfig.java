@@ -0,0 +1,78 @@
+package tak.server.retention.config;
+
+
+import java.io.Serializable;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.PropertySource;
+
+// kept out of retention-service.yml, which is rewritten when the schedule is changed
+@Configuration
+@ConfigurationProperties(prefix = "chunked-delete")
+@PropertySource(name="retention-delete", factory=YamlPropertySourceFactory.class, value="file:conf/retention/retention-delete.yml", ignoreResourceNotFound = true)
+public class ChunkedDeleteConfig implements Serializable {
+
+    private static final long serialVersionUID = -4418201663950870712L;
+
+    private int chunkSize = 5000;
+
+    private int parallelism = 2;
+
+    private long pauseMillis = 50;
+
+    private int sliceMinutes = 60;
+
+    private long lockTimeoutMillis = 5000;
+
+    public int getChunkSize() {
+        return chunkSize;
+    }
+
+    public void setChunkSize(int chunkSize) {
+        this.chunkSize = chunkSize;
+    }
+
+    public int getParallelism() {
+        return parallelism;
+    }
+
+    public void setParallelism(int parallelism) {
+        this.parallelism = parallelism;
+    }
+
+    public long getPauseMillis() {
+        return pauseMillis;
+    }
+
+    public void setPauseMillis(long pauseMillis) {
+        this.pauseMillis = pauseMillis;
+    }
+
+    public int getSliceMinutes() {
+        return sliceMinutes;
+    }
+
+    public void setSliceMinutes(int sliceMinutes) {
+        this.sliceMinutes = sliceMinutes;
+    }
+
+    public long getLockTimeoutMillis() {
+        return lockTimeoutMillis;
+    }
+
+    public void setLockTimeoutMillis(long lockTimeoutMillis) {
+        this.lockTimeoutMillis = lockTimeoutMillis;
+    }
+
+    @Override
+    public String toString() {
+        return "ChunkedDeleteConfig{" +
+                "chunkSize=" + chunkSize +
+                ", parallelism=" + parallelism +
+                ", pauseMillis=" + pauseMillis +
+                ", sliceMinutes=" + sliceMinutes +
+                ", lockTimeoutMillis=" + lockTimeoutMillis +
+                '}';
+    }
+}
@@ -1,11 +1,21 @@
 package tak.server.retention.scheduler;
 
+import java.util.Arrays;
+
+import jakarta.annotation.PostConstruct;
+
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.scheduling.annotation.EnableScheduling;
 import org.springframework.stereotype.Service;
+
+import io.micrometer.core.instrument.Metrics;
+import io.micrometer.core.instrument.Tags;
+import tak.server.Constants;
 import tak.server.retention.config.RetentionPolicy;
+import tak.server.retention.service.ChunkedRetentionExecutor;
+import tak.server.retention.service.ChunkedRetentionExecutor.Progress;
 import tak.server.retention.service.LocalQueryService;
 
 import com.bbn.marti.remote.service.RetentionQueryService;
@@ -31,6 +41,26 @@ public class ScheduledRetentionService implements Runnable{
     @Autowired
     LocalQueryService localQueryService;
 
+    @Autowired
+    ChunkedRetentionExecutor chunkedRetentionExecutor;
+
+    // progress of the chunked deletes. Rate and remaining are for the delete running now, or else the last one.
+    @PostConstruct
+    private void registerMetrics() {
+        for (String name : Arrays.asList(LocalQueryService.COT, LocalQueryService.FILES, LocalQueryService.FILES_BY_EXPIRATION,
+                LocalQueryService.GEO_CHAT, LocalQueryService.LEGACY_GEO_CHAT)) {
+
+            Progress progress = chunkedRetentionExecutor.getProgress(name);
+            Tags tags = Tags.of("takserver", "retention", "delete", name);
+
+            Metrics.gauge(Constants.METRIC_RETENTION_DELETE_ROWS, tags, progress, Progress::getDeleted);
+            Metrics.gauge(Constants.METRIC_RETENTION_DELETE_RATE, tags, progress, Progress::getRowsPerSecond);
+            Metrics.gauge(Constants.METRIC_RETENTION_DELETE_REMAINING, tags, progress, Progress::getRemainingEstimate);
+            Metrics.gauge(Constants.METRIC_RETENTION_DELETE_LOCK_WAIT, tags, progress, Progress::getLockWaitSeconds);
+            Metrics.gauge(Constants.METRIC_RETENTION_DELETE_LOCK_TIMEOUT, tags, progress, Progress::getLockTimeouts);
+        }
+    }
+
     @Override
     public void run() {
         try {
@@ -52,6 +82,8 @@ public class ScheduledRetentionService implements Runnable{
             retentionQueryService.deleteMissionByTtl(retentionPolicy.getDataRetentionMap().get(MISSIONS));
 
             localQueryService.deleteFilesByTtl(retentionPolicy.getDataRetentionMap().get(FILES));
+            // keep future partitions of a partitioned cot_router created, whether or not there's a cot ttl
+            localQueryService.createCotPartitions();
             localQueryService.deleteCotByTtl(retentionPolicy.getDataRetentionMap().get(COT));
             localQueryService.deleteGeoChatByTtl(retentionPolicy.getDataRetentionMap().get(GEO_CHAT));
             // delete geo chat messages from legacy cot_router table
@@ -0,0 +1,361 @@
+package tak.server.retention.service;
+
+import java.sql.Array;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.sql.DataSource;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+import tak.server.retention.config.ChunkedDeleteConfig;
+
+/*
+ *
+ * Deletes rows in bounded slices instead of with one statement, so retention doesn't hold locks on a whole table or write a burst of
+ * WAL, and ingest isn't blocked while it runs. A table is divided into slices by time (or id), which are deleted from in parallel,
+ * each in chunks of at most chunkSize rows, with a pause between chunks. Each chunk is its own transaction.
+ *
+ * Rows that another transaction has locked are skipped, and a slice is given up on if a lock can't be had within lockTimeoutMillis.
+ * Either way they're deleted on a later run.
+ *
+ */
+@Service
+public class ChunkedRetentionExecutor {
+    private static final Logger logger = LoggerFactory.getLogger(ChunkedRetentionExecutor.class);
+
+    private static final String LOCK_NOT_AVAILABLE = "55P03";
+
+    // slices are made longer if there would be more than this many
+    private static final int MAX_SLICES = 10000;
+
+    @Autowired
+    private DataSource dataSource;
+
+    @Autowired
+    private ChunkedDeleteConfig config;
+
+    private ExecutorService sliceExecutor;
+
+    private final Map<String, Progress> progress = new ConcurrentHashMap<>();
+
+    @PostConstruct
+    private void init() {
+        if (logger.isDebugEnabled()) {
+            logger.debug(" chunked delete config " + config);
+        }
+
+        sliceExecutor = Executors.newFixedThreadPool(Math.max(1, config.getParallelism()),
+                new ThreadFactoryBuilder().setNameFormat("retention-delete-%d").setDaemon(true).build());
+    }
+
+    @PreDestroy
+    private void destroy() {
+        sliceExecutor.shutdownNow();
+    }
+
+    /**
+     * Delete the rows of table that are older than ttl seconds by timeColumn, and that match condition.
+     *
+     * @param name names the delete in its progress and log messages
+     * @param condition SQL condition on the row, as x, or null. It's part of the statement, so it must not come from user input.
+     * @return the number of rows deleted
+     */
+    public long deleteOlderThan(String name, String table, String timeColumn, String condition, int ttl) throws SQLException {
+
+        Timestamp cutoff;
+        Timestamp oldest;
+
+        try (Connection connection = dataSource.getConnection();
+             PreparedStatement select = connection.prepareStatement("select now() - (? * interval '1 second'), (select min(" + timeColumn + ") from " + table + ")")) {
+            select.setInt(1, ttl);
+
+            try (ResultSet results = select.executeQuery()) {
+                results.next();
+                cutoff = results.getTimestamp(1);
+                oldest = results.getTimestamp(2);
+            }
+        }
+
+        List<Object[]> slices = new ArrayList<>();
+
+        if (oldest != null && oldest.before(cutoff)) {
+            long span = cutoff.getTime() - oldest.getTime();
+            long sliceMillis = Math.max(TimeUnit.MINUTES.toMillis(Math.max(1, config.getSliceMinutes())), span / MAX_SLICES + 1);
+
+            for (long start = oldest.getTime(); start < cutoff.getTime(); start += sliceMillis) {
+                slices.add(new Object[] { new Timestamp(start), new Timestamp(Math.min(start + sliceMillis, cutoff.getTime())) });
+            }
+        }
+
+        return deleteSlices(name, table, timeColumn, condition, slices);
+    }
+
+    /**
+     * Delete the rows of table that match condition, in slices of the id column.
+     *
+     * @param condition SQL condition on the row, as x. It's part of the statement, so it must not come from user input.
+     * @param parameters values for the parameters of condition, which come after those of the slice
+     * @return the number of rows deleted
+     */
+    public long deleteById(String name, String table, String condition, Object... parameters) throws SQLException {
+
+        List<Object[]> slices = new ArrayList<>();
+
+        try (Connection connection = dataSource.getConnection();
+             Statement select = connection.createStatement();
+             ResultSet results = select.executeQuery("select min(id), max(id) from " + table)) {
+            results.next();
+            long lowest = results.getLong(1);
+            long highest = results.getLong(2);
+
+            if (!results.wasNull()) {
+                long sliceIds = Math.max(Math.max(1, config.getChunkSize()), (highest - lowest) / MAX_SLICES + 1);
+
+                for (long start = lowest; start <= highest; start += sliceIds) {
+                    slices.add(new Object[] { start, start + sliceIds });
+                }
+            }
+        }
+
+        return deleteSlices(name, table, "id", condition, slices, parameters);
+    }
+
+    // progress of each named delete, for the one running now or else the last to run
+    public Map<String, Progress> getProgress() {
+        return progress;
+    }
+
+    public Progress getProgress(String name) {
+        return progress.computeIfAbsent(name, Progress::new);
+    }
+
+    private long deleteSlices(String name, String table, String sliceColumn, String condition, List<Object[]> slices, Object... parameters) throws SQLException {
+
+        Progress current = getProgress(name);
+
+        current.start(slices.size());
+
+        String where = " x." + sliceColumn + " >= ? and x." + sliceColumn + " < ?" + (condition == null ? "" : " and " + condition);
+
+        // skip locked rows, instead of waiting for ingest or another slice
+        String lockChunk = "select x.id from " + table + " x where" + where + " limit ? for update skip locked";
+
+        // the slice bounds let a partitioned table be pruned to the partitions holding the slice
+        String deleteChunk = "delete from " + table + " x where x." + sliceColumn + " >= ? and x." + sliceColumn + " < ? and x.id = any (?)";
+
+        List<Future<?>> futures = new ArrayList<>(slices.size());
+
+        for (Object[] slice : slices) {
+            futures.add(sliceExecutor.submit(() -> {
+                deleteSlice(current, slice, lockChunk, deleteChunk, parameters);
+                return null;
+            }));
+        }
+
+        SQLException failure = null;
+
+        for (Future<?> future : futures) {
+            try {
+                future.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                futures.forEach(f -> f.cancel(true));
+                throw new SQLException("interrupted deleting from " + table, e);
+            } catch (ExecutionException e) {
+                if (failure == null) {
+                    failure = e.getCause() instanceof SQLException ? (SQLException) e.getCause() : new SQLException(e.getCause());
+                }
+            }
+        }
+
+        current.finish();
+
+        if (current.getDeleted() > 0 || current.getLockTimeouts() > 0) {
+            logger.info(" " + name + ", Number of rows deleted " + current.getDeleted() + " in " + slices.size() + " slices (" + Math.round(current.getRowsPerSecond()) +
+                    " rows/s, lock wait " + Math.round(current.getLockWaitSeconds() * 1000) + " ms, slices left for lock timeouts " + current.getLockTimeouts() + ")");
+        }
+
+        if (failure != null) {
+            throw failure;
+        }
+
+        return current.getDeleted();
+    }
+
+    private void deleteSlice(Progress current, Object[] slice, String lockChunk, String deleteChunk, Object[] parameters) throws SQLException, InterruptedException {
+
+        try (Connection connection = dataSource.getConnection()) {
+            connection.setAutoCommit(false);
+
+            try {
+                while (true) {
+                    try (Statement timeout = connection.createStatement()) {
+                        timeout.execute("set local lock_timeout = " + Math.max(0, config.getLockTimeoutMillis()));
+                    }
+
+                    List<Long> ids = new ArrayList<>();
+
+                    long lockStart = System.nanoTime();
+
+                    try (PreparedStatement lock = connection.prepareStatement(lockChunk)) {
+                        int i = 1;
+                        lock.setObject(i++, slice[0]);
+                        lock.setObject(i++, slice[1]);
+                        for (Object parameter : parameters) {
+                            lock.setObject(i++, parameter);
+                        }
+                        lock.setInt(i, Math.max(1, config.getChunkSize()));
+
+                        try (ResultSet results = lock.executeQuery()) {
+                            while (results.next()) {
+                                ids.add(results.getLong(1));
+                            }
+                        }
+                    }
+
+                    current.lockWaitNanos.add(System.nanoTime() - lockStart);
+
+                    if (ids.isEmpty()) {
+                        connection.commit();
+                        break;
+                    }
+
+                    int deleted;
+
+                    try (PreparedStatement delete = connection.prepareStatement(deleteChunk)) {
+                        Array idArray = connection.createArrayOf("bigint", ids.toArray());
+                        delete.setObject(1, slice[0]);
+                        delete.setObject(2, slice[1]);
+                        delete.setArray(3, idArray);
+                        deleted = delete.executeUpdate();
+                    }
+
+                    connection.commit();
+
+                    current.deleted.add(deleted);
+
+                    if (ids.size() < config.getChunkSize()) {
+                        break;
+                    }
+
+                    if (config.getPauseMillis() > 0) {
+                        Thread.sleep(config.getPauseMillis());
+                    }
+                }
+            } catch (SQLException e) {
+                connection.rollback();
+
+                if (!LOCK_NOT_AVAILABLE.equals(e.getSQLState())) {
+                    throw e;
+                }
+
+                // leave the rest of the slice for the next run
+                current.lockTimeouts.incrementAndGet();
+
+                if (logger.isDebugEnabled()) {
+                    logger.debug(" lock timeout deleting slice " + slice[0] + " - " + slice[1], e);
+                }
+            } finally {
+                connection.setAutoCommit(true);
+            }
+        } finally {
+            current.slicesDone.incrementAndGet();
+        }
+    }
+
+    public static class Progress {
+
+        private final String name;
+
+        private final LongAdder deleted = new LongAdder();
+        private final LongAdder lockWaitNanos = new LongAdder();
+        private final AtomicInteger slices = new AtomicInteger();
+        private final AtomicInteger slicesDone = new AtomicInteger();
+        private final AtomicInteger lockTimeouts = new AtomicInteger();
+
+        private volatile long startNanos = System.nanoTime();
+        private volatile long endNanos = startNanos;
+        private volatile boolean running = false;
+
+        Progress(String name) {
+            this.name = name;
+        }
+
+        void start(int sliceCount) {
+            deleted.reset();
+            lockWaitNanos.reset();
+            slices.set(sliceCount);
+            slicesDone.set(0);
+            lockTimeouts.set(0);
+            startNanos = System.nanoTime();
+            running = true;
+        }
+
+        void finish() {
+            endNanos = System.nanoTime();
+            running = false;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public boolean isRunning() {
+            return running;
+        }
+
+        public long getDeleted() {
+            return deleted.sum();
+        }
+
+        public double getRowsPerSecond() {
+            long elapsed = (running ? System.nanoTime() : endNanos) - startNanos;
+            return elapsed <= 0 ? 0 : getDeleted() / (elapsed / 1e9);
+        }
+
+        // rows left to delete, estimated from the rows per slice so far. Zero once the delete is done.
+        public double getRemainingEstimate() {
+            int done = slicesDone.get();
+            int left = slices.get() - done;
+
+            if (!running || done == 0 || left <= 0) {
+                return 0;
+            }
+
+            return (double) getDeleted() / done * left;
+        }
+
+        // time taken to lock the rows of each chunk
+        public double getLockWaitSeconds() {
+            return lockWaitNanos.sum() / 1e9;
+        }
+
+        public int getLockTimeouts() {
+            return lockTimeouts.get();
+        }
+    }
+}
@@ -1,4 +1,6 @@
 package tak.server.retention.service;
+import java.sql.SQLException;
+import java.sql.Statement;
 import java.sql.Timestamp;
 import java.util.HashMap;
 import java.util.List;
@@ -11,11 +13,16 @@ import org.jetbrains.annotations.NotNull;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.UncategorizedSQLException;
+import org.springframework.jdbc.core.ConnectionCallback;
 import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
 import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
 import org.springframework.stereotype.Service;
 
+import com.google.common.primitives.Ints;
+
 @Service
 public class LocalQueryService {
     private static final Logger logger = LoggerFactory.getLogger(LocalQueryService.class);
@@ -24,12 +31,22 @@ public class LocalQueryService {
     private static final String DELETE_BY_TTL = " < now() - (:ttl * INTERVAL '1 second')";
     private static final String WHERE_EXPIRATION_NOT_NULL = " where expiration is not null and expiration > -1";
 
+    // names of the chunked deletes, for their progress metrics
+    public static final String COT = "cot";
+    public static final String FILES = "files";
+    public static final String FILES_BY_EXPIRATION = "files-expiration";
+    public static final String GEO_CHAT = "geochat";
+    public static final String LEGACY_GEO_CHAT = "legacy-geochat";
+
     @Autowired
     private JdbcTemplate jdbcTemplate;
 
     @Autowired
     private NamedParameterJdbcTemplate namedParameterJdbcTemplate;
 
+    @Autowired
+    private ChunkedRetentionExecutor chunkedRetentionExecutor;
+
     @Autowired
     public void setDataSource(final DataSource dataSource) {
         this.jdbcTemplate = new JdbcTemplate(dataSource);
@@ -38,62 +55,125 @@ public class LocalQueryService {
 
     public int deleteCotByTtl(@NotNull Integer ttl) {
 
-        String deleteQuery = "delete from cot_router using cot_router cr left outer join mission_uid mu on mu.uid=cr.uid " +
-                "where cot_router.id = cr.id and mu.uid is null and cot_router.cot_type != 'b-t-f' and cot_router.servertime" + DELETE_BY_TTL;
-
         int count = 0;
         if (ttl == null) {
             logger.info(" delete cot by time to live is null, nothing to do");
             return count;
         }
-        MapSqlParameterSource namedParameters = new MapSqlParameterSource("ttl", ttl);
-        count = namedParameterJdbcTemplate.update(deleteQuery, namedParameters);
 
-        if (count > 0) {
-            logger.info(" deleteCotByTtl, Number of rows deleted  " + count);
+        if (isCotPartitioned()) {
+            // what's left to delete row by row is in the partition holding the cutoff, and in expired partitions that can't be
+            // dropped
+            dropExpiredCotPartitions(ttl);
         }
+
+        count = deleteOlderThan(COT, "cot_router", "servertime",
+                "x.cot_type != 'b-t-f' and not exists (select 1 from mission_uid mu where mu.uid = x.uid)", ttl);
+
         return count;
     }
 
-    public int deleteFilesByExpiration(@NotNull Long expiration) {
+    public boolean isCotPartitioned() {
+        Boolean partitioned = jdbcTemplate.queryForObject(
+                "select coalesce((select relkind = 'p' from pg_class where oid = to_regclass('cot_router')), false)", Boolean.class);
+        return partitioned != null && partitioned;
+    }
 
-        String deleteQuery = "delete from resource where" + DELETE_BY_EXPIRATION;
+    // create the future cot_router partitions, if cot_router is partitioned (SchemaManager partition-cot)
+    public int createCotPartitions() {
+        if (!isCotPartitioned()) {
+            return 0;
+        }
 
-        if (expiration == null || (expiration.longValue() <= -1)) {
-            throw new IllegalArgumentException("invalid expiration: " + expiration);
+        Integer count = jdbcTemplate.queryForObject("select cot_router_create_partitions()", Integer.class);
+
+        if (count != null && count > 0) {
+            logger.info(" createCotPartitions, Number of partitions created " + count);
         }
+        return count == null ? 0 : count;
+    }
 
-        MapSqlParameterSource namedParameters = new MapSqlParameterSource("expiration", expiration);
-        int count = namedParameterJdbcTemplate.update(deleteQuery, namedParameters);
+    /*
+     * Detach and drop the cot_router partitions that are entirely older than the ttl, unless they hold messages that
+     * have to be kept: ones with the UID of a mission's content, and chat messages, which have their own ttl. Each
+     * partition is dropped in its own transaction, with the data_feed_cot rows that refer to it.
+     */
+    public int dropExpiredCotPartitions(@NotNull Integer ttl) {
+
+        String expiredPartitions = "select partition_name from cot_router_partitions() where upper_bound" + DELETE_BY_TTL;
 
-        if (count > 0) {
-            logger.info(" deleteFilesByExpiration,  Number of rows deleted  " + count);
+        List<String> partitions = namedParameterJdbcTemplate.queryForList(expiredPartitions, new MapSqlParameterSource("ttl", ttl), String.class);
+
+        int count = 0;
+        for (String partition : partitions) {
+            String table = "\"" + partition.replace("\"", "\"\"") + "\"";
+
+            Boolean retained = jdbcTemplate.queryForObject("select exists (select 1 from " + table + " cr join mission_uid mu on mu.uid = cr.uid) " +
+                    "or exists (select 1 from " + table + " where cot_type = 'b-t-f')", Boolean.class);
+
+            if (retained != null && retained) {
+                if (logger.isDebugEnabled()) {
+                    logger.debug(" not dropping cot_router partition " + partition + ", it holds mission or chat messages");
+                }
+                continue;
+            }
+
+            // data_feed_cot has no foreign key to cot_router, so its rows for the partition are deleted here, along with it
+            jdbcTemplate.execute((ConnectionCallback<Void>) connection -> {
+                connection.setAutoCommit(false);
+
+                try (Statement statement = connection.createStatement()) {
+                    statement.execute("delete from data_feed_cot where cot_router_id in (select id from " + table + ")");
+                    statement.execute("alter table cot_router detach partition " + table);
+                    statement.execute("drop table " + table);
+                    connection.commit();
+                } catch (SQLException e) {
+                    connection.rollback();
+                    throw e;
+                } finally {
+                    connection.setAutoCommit(true);
+                }
+                return null;
+            });
+            count++;
+
+            logger.info(" dropExpiredCotPartitions, dropped partition " + partition);
         }
         return count;
     }
 
+    public int deleteFilesByExpiration(@NotNull Long expiration) {
+
+        if (expiration == null || (expiration.longValue() <= -1)) {
+            throw new IllegalArgumentException("invalid expiration: " + expiration);
+        }
+
+        try {
+            // resource has no index on expiration, so it's sliced by id
+            return Ints.saturatedCast(chunkedRetentionExecutor.deleteById(FILES_BY_EXPIRATION, "resource",
+                    "x.expiration is not null and x.expiration > -1 and x.expiration <= ?", expiration));
+        } catch (SQLException e) {
+            throw translate("deleteFilesByExpiration", e);
+        }
+    }
+
     public int deleteFilesByTtl(@NotNull Integer ttl) {
 
-        String deleteQuery = "delete from resource using resource r left outer join mission_resource mr on mr.resource_id=r.id " +
-                "where resource.id = r.id and mr.resource_id is null and resource.submissiontime" + DELETE_BY_TTL;
         int count = 0;
 
         if (ttl == null) {
             logger.info(" delete files by time to live is null, nothing to do");
             return count;
         }
-        MapSqlParameterSource namedParameters = new MapSqlParameterSource("ttl", ttl);
-        count = namedParameterJdbcTemplate.update(deleteQuery, namedParameters);
 
-        if (count > 0) {
-            logger.info("  delete files by time to live, Number of rows deleted  " + count);
-        }
+        count = deleteOlderThan(FILES, "resource", "submissiontime",
+                "not exists (select 1 from mission_resource mr where mr.resource_id = x.id)", ttl);
+
         return count;
     }
 
     public int deleteGeoChatByTtl(@NotNull Integer ttl) {
 
-        String deleteQuery = "delete from cot_router_chat where servertime " + DELETE_BY_TTL;
         int count = 0;
 
         if (ttl == null) {
@@ -101,18 +181,13 @@ public class LocalQueryService {
             return count;
         }
 
-        MapSqlParameterSource namedParameters = new MapSqlParameterSource("ttl", ttl);
-        count = namedParameterJdbcTemplate.update(deleteQuery, namedParameters);
+        count = deleteOlderThan(GEO_CHAT, "cot_router_chat", "servertime", null, ttl);
 
-        if (count > 0) {
-            logger.info(" deleteGeoChatByTtl, Number of rows deleted  " + count);
-        }
         return count;
     }
 
     public int deleteLegacyGeoChatByTtl(@NotNull Integer ttl) {
 
-        String deleteQuery = "delete from cot_router where cot_type = 'b-t-f' and servertime " + DELETE_BY_TTL;
         int count = 0;
 
         if (ttl == null) {
@@ -120,15 +195,25 @@ public class LocalQueryService {
             return count;
         }
 
-        MapSqlParameterSource namedParameters = new MapSqlParameterSource("ttl", ttl);
-        count = namedParameterJdbcTemplate.update(deleteQuery, namedParameters);
+        count = deleteOlderThan(LEGACY_GEO_CHAT, "cot_router", "servertime", "x.cot_type = 'b-t-f'", ttl);
 
-        if (count > 0) {
-            logger.info(" delete legacy geochat from cot_router table, Number of rows deleted  " + count);
-        }
         return count;
     }
 
+    // delete in bounded chunks, so retention doesn't lock the table for the whole delete
+    private int deleteOlderThan(String name, String table, String timeColumn, String condition, int ttl) {
+        try {
+            return Ints.saturatedCast(chunkedRetentionExecutor.deleteOlderThan(name, table, timeColumn, condition, ttl));
+        } catch (SQLException e) {
+            throw translate(name, e);
+        }
+    }
+
+    private DataAccessException translate(String task, SQLException e) {
+        DataAccessException translated = jdbcTemplate.getExceptionTranslator().translate(task, null, e);
+        return translated != null ? translated : new UncategorizedSQLException(task, null, e);
+    }
+
     public int deleteMissionPackageByExpiration(@NotNull Long expiration) {
 
         String deleteQuery = "delete from resource where keywords = '{\"missionpackage\"}' and" + DELETE_BY_EXPIRATION;
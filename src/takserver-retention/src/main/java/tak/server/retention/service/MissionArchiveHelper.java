@@ -1,18 +1,20 @@
 package tak.server.retention.service;
 
-import java.io.BufferedInputStream;
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.File;
-import java.io.FileInputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
 import java.sql.Timestamp;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Date;
+import java.util.Enumeration;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -20,7 +22,7 @@ import java.util.Optional;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.stream.Collectors;
 import java.util.zip.ZipEntry;
-import java.util.zip.ZipInputStream;
+import java.util.zip.ZipFile;
 
 import org.apache.commons.lang3.StringUtils;
 import org.dom4j.Document;
@@ -57,6 +59,12 @@ public class MissionArchiveHelper {
 	private static final int MAX_ZIP_ENTRIES = 1024;
 	private static final long MAX_COMPRESSION_RATIO = 100;
 
+	// archives and content are passed to and from the server in chunks of this size
+	private static final int TRANSFER_CHUNK_SIZE = 4 * 1024 * 1024;
+
+	// CoT events restored per call to the server
+	private static final int COT_BATCH_SIZE = 100;
+
 	// per-archive-entry lock to prevent concurrent restores of the same mission
 	private final ConcurrentHashMap<Integer, Object> restoreLocks = new ConcurrentHashMap<>();
 
@@ -130,12 +138,16 @@ public class MissionArchiveHelper {
     		Timestamp archiveTime = new Timestamp(new Date().getTime());
     		
     		logger.info("Trying to archive mission " + missionName);
-    		byte[] zip = retentionQueryService.getArchivedMission(missionName, groupVector, "");
+    		String transferId = retentionQueryService.getArchivedMission(missionName, groupVector, "");
     		
-    		String filename = sanitizeFilenameComponent(createtime.toString()) + "_" + sanitizeFilenameComponent(missionName) + ".zip";
-    		filename = filename.replace(":", "-");
-    		logger.info("Writing " + filename + " to disk");
-    		writeMissionToArchive(filename, missionName, createtime, archiveTime, zip);
+    		try {
+	    		String filename = sanitizeFilenameComponent(createtime.toString()) + "_" + sanitizeFilenameComponent(missionName) + ".zip";
+	    		filename = filename.replace(":", "-");
+	    		logger.info("Writing " + filename + " to disk");
+	    		writeMissionToArchive(filename, missionName, createtime, archiveTime, transferId);
+    		} finally {
+    			retentionQueryService.deleteTransfer(transferId);
+    		}
     		
     		logger.info("Write successful, removing " + missionName + " and its contents from database");
     		retentionQueryService.deleteMission(missionName, creatoruid, groupVector, false);
@@ -159,119 +171,101 @@ public class MissionArchiveHelper {
 			MissionArchiveStoreEntry matchingEntry = matchingEntryOp.get();
 			String filename = ARCHIVE_DIR + sanitizeFilenameComponent(matchingEntry.getCreateTime().toString()) + "_" + sanitizeFilenameComponent(matchingEntry.getMissionName()) + ".zip";
 			
-			Map<String, byte[]> files = new HashMap<>();
-			ZipEntry entry;
-			final int BUFFER = 2048;
-			long totalBytes = 0;
-			int entryCount = 0;
-			FileInputStream fis = new FileInputStream(filename);
-			BufferedInputStream bis = new BufferedInputStream(fis);
-			ZipInputStream zis = new ZipInputStream(new BufferedInputStream(bis));
-			while ((entry = zis.getNextEntry()) != null) {
-
-				if (++entryCount > MAX_ZIP_ENTRIES) {
-					throw new IOException("ZIP archive exceeds maximum entry count of " + MAX_ZIP_ENTRIES);
-				}
+			try (ZipFile zip = new ZipFile(filename)) {
 
-				String entryName = entry.getName();
-				if (entryName.contains("..") || entryName.startsWith("/") || entryName.startsWith("\\")) {
-					throw new IOException("ZIP entry has illegal path: " + entryName);
-				}
+				// one buffer for reading every entry of the archive
+				byte[] buffer = new byte[TRANSFER_CHUNK_SIZE];
 
-				// skip directories
-				if (entry.isDirectory()) {
-					continue;
-				}
+				// check the whole archive before restoring any of it
+				validateArchive(zip, buffer);
 
-				// load in the file
-				int count;
-				long entryBytes = 0;
-				long compressedSize = entry.getCompressedSize();
-				byte data[] = new byte[BUFFER];
-				ByteArrayOutputStream bos = new ByteArrayOutputStream();
-				while ((count = zis.read(data, 0, BUFFER)) != -1) {
-					entryBytes += count;
-					totalBytes += count;
-					if (entryBytes > MAX_UNCOMPRESSED_ENTRY_SIZE) {
-						throw new IOException("ZIP entry exceeds maximum uncompressed size");
-					}
-					if (totalBytes > MAX_UNCOMPRESSED_TOTAL_SIZE) {
-						throw new IOException("ZIP archive exceeds maximum total uncompressed size");
+				MissionPackageManifest manifest = null;
+				try {
+					ZipEntry manifestEntry = zip.getEntry("MANIFEST/manifest.xml");
+
+					if (manifestEntry == null) {
+						logger.info("Could not find mission manifest");
+						return "Could not find mission manifest file";
 					}
-					if (compressedSize > 0 && entryBytes / compressedSize > MAX_COMPRESSION_RATIO) {
-						throw new IOException("ZIP entry compression ratio exceeds maximum, possible zip bomb");
+
+					SAXReader reader = new SAXReader();
+					Document doc = reader.read(new ByteArrayInputStream(readEntry(zip, manifestEntry, buffer)));
+					
+					if (doc == null) {
+						logger.info("Could not find mission manifest");
+						return "Could not find mission manifest file";
 					}
-					bos.write(data, 0, count);
+					
+					manifest = new MissionPackageManifest(doc);
+				} catch (Exception e) {
+					logger.info("Could not find mission manifest");
+					return "Error reading mission manifest file";
 				}
-				bos.flush();
-				bos.close();
-				files.put(entry.getName(), bos.toByteArray());
-			}
-			zis.close();
-			
-			MissionPackageManifest manifest = null;
-			try {
-				SAXReader reader = new SAXReader();
-				Document doc = reader.read(new ByteArrayInputStream(files.get("MANIFEST/manifest.xml")));
 				
-				if (doc == null) {
-					logger.info("Could not find mission manifest");
-					return "Could not find mission manifest file";
+				Map<String, String> props = new HashMap<>();
+				manifest.getConfigurations().forEach(config-> {
+					props.put(config.name, config.value);
+				});
+							
+				String defaultRole = null;
+				List<String> defaultPermissions = new ArrayList<>();
+				if (!StringUtils.isEmpty(manifest.getRole())) {
+					defaultRole = manifest.getRole();
+					defaultPermissions = manifest.getPermissions();
 				}
 				
-				manifest = new MissionPackageManifest(doc);
-			} catch (Exception e) {
-				logger.info("Could not find mission manifest");
-				return "Error reading mission manifest file";
-			}
-			
-			Map<String, String> props = new HashMap<>();
-			manifest.getConfigurations().forEach(config-> {
-				props.put(config.name, config.value);
-			});
-						
-			String defaultRole = null;
-			List<String> defaultPermissions = new ArrayList<>();
-			if (!StringUtils.isEmpty(manifest.getRole())) {
-				defaultRole = manifest.getRole();
-				defaultPermissions = manifest.getPermissions();
-			}
-			
-			List<String> groups =  manifest.getGroups();
+				List<String> groups =  manifest.getGroups();
+							
+				boolean success = retentionQueryService.restoreMission(props, groups, defaultRole, defaultPermissions);
+				
+				if (success) {
+					String missionName = props.get("mission_name");
+
+					List<byte[]> cotEvents = new ArrayList<>();
+					for (Element missionContent : manifest.getContents()) {
+						String zipEntry =  missionContent.attributeValue("zipEntry");
+						ZipEntry entry = zip.getEntry(zipEntry);
+
+						if (entry == null) {
+							logger.warn("mission archive {} has no entry {}", filename, zipEntry);
+							continue;
+						}
 						
-			boolean success = retentionQueryService.restoreMission(files, props, groups, defaultRole, defaultPermissions);
-			
-			if (success) {
-				List<byte[]> cotEvents = new ArrayList<>();
-				for (Element missionContent : manifest.getContents()) {
-					String zipEntry =  missionContent.attributeValue("zipEntry");
+						if (zipEntry.endsWith(".cot")) {
+							cotEvents.add(readEntry(zip, entry, buffer));
+
+							if (cotEvents.size() >= COT_BATCH_SIZE) {
+								retentionQueryService.restoreCoT(missionName, cotEvents, groups);
+								cotEvents = new ArrayList<>();
+							}
+						} else {
+							retentionQueryService.restoreContent(missionName, transferEntry(zip, entry, buffer), missionContent, groups);
+						}
+					}
 					
-					if (zipEntry.endsWith(".cot")) {
-						cotEvents.add(files.get(zipEntry));
-					} else {
-						retentionQueryService.restoreContent(props.get("mission_name"), files.get(zipEntry), missionContent, groups);
+					if (!cotEvents.isEmpty()) {
+						retentionQueryService.restoreCoT(missionName, cotEvents, groups);
 					}
+					
+			        ObjectMapper mapper = new ObjectMapper(new YAMLFactory().enable(YAMLGenerator.Feature.MINIMIZE_QUOTES));
+			        File file = new File(MISSION_STORE_FILE);
+					
+					// remove the mission from the mission store index			
+					missionArchiveStore.getMissionArchiveStoreEntries().remove(matchingEntry);
+					MissionArchiveStoreConfig newMissionArchiveStoreConfig = new MissionArchiveStoreConfig();
+			        newMissionArchiveStoreConfig.setMissionArchiveStoreEntries(missionArchiveStore.getMissionArchiveStoreEntries());
+			        mapper.writeValue(file, newMissionArchiveStoreConfig);
+				} else {
+					// mission already exists — do NOT delete it, just report the conflict
+					logger.warn("Cannot restore mission '{}' — a mission with that name already exists", props.get("mission_name"));
+					return "Mission name already exists. Cannot restore.";
 				}
-				
-				retentionQueryService.restoreCoT(props.get("mission_name"), cotEvents, groups);
-				
-		        ObjectMapper mapper = new ObjectMapper(new YAMLFactory().enable(YAMLGenerator.Feature.MINIMIZE_QUOTES));
-		        File file = new File(MISSION_STORE_FILE);
-				
-				// remove the mission from the mission store index			
-				missionArchiveStore.getMissionArchiveStoreEntries().remove(matchingEntry);
-				MissionArchiveStoreConfig newMissionArchiveStoreConfig = new MissionArchiveStoreConfig();
-		        newMissionArchiveStoreConfig.setMissionArchiveStoreEntries(missionArchiveStore.getMissionArchiveStoreEntries());
-		        mapper.writeValue(file, newMissionArchiveStoreConfig);
-				
-				// lastly, remove the zip archive file
+
+				// lastly, remove the zip archive file, once it's closed
+				zip.close();
 				File missionArchiveFileToDelete = new File(filename);
 				missionArchiveFileToDelete.delete();
 				return props.get("mission_name") + " Restored";
-			} else {
-				// mission already exists — do NOT delete it, just report the conflict
-				logger.warn("Cannot restore mission '{}' — a mission with that name already exists", props.get("mission_name"));
-				return "Mission name already exists. Cannot restore.";
 			}
 		} catch (Exception e) {
 			logger.info("Error reading mission zip from archive",e);
@@ -282,8 +276,92 @@ public class MissionArchiveHelper {
 		} // end synchronized
     }
 
+	// reads through every entry, enforcing the entry, size and compression limits without keeping the contents
+	void validateArchive(ZipFile zip, byte[] buffer) throws IOException {
+		int entryCount = 0;
+		long[] totalBytes = { 0 };
+
+		Enumeration<? extends ZipEntry> entries = zip.entries();
+		while (entries.hasMoreElements()) {
+			ZipEntry entry = entries.nextElement();
+
+			if (++entryCount > MAX_ZIP_ENTRIES) {
+				throw new IOException("ZIP archive exceeds maximum entry count of " + MAX_ZIP_ENTRIES);
+			}
+
+			String entryName = entry.getName();
+			if (entryName.contains("..") || entryName.startsWith("/") || entryName.startsWith("\\")) {
+				throw new IOException("ZIP entry has illegal path: " + entryName);
+			}
+
+			// skip directories
+			if (entry.isDirectory()) {
+				continue;
+			}
+
+			copyEntry(zip, entry, buffer, totalBytes, (data, count) -> { });
+		}
+	}
+
+	// contents of a small entry, such as the manifest or a CoT event
+	byte[] readEntry(ZipFile zip, ZipEntry entry, byte[] buffer) throws IOException {
+		ByteArrayOutputStream bos = new ByteArrayOutputStream();
+		copyEntry(zip, entry, buffer, new long[] { 0 }, (data, count) -> bos.write(data, 0, count));
+		return bos.toByteArray();
+	}
+
+	// uploads the entry to a transfer in chunks, returning the transfer id
+	String transferEntry(ZipFile zip, ZipEntry entry, byte[] buffer) throws Exception {
+		String transferId = retentionQueryService.createTransfer();
+
+		try {
+			copyEntry(zip, entry, buffer, new long[] { 0 }, (data, count) -> {
+				try {
+					retentionQueryService.appendTransfer(transferId, Arrays.copyOf(data, count));
+				} catch (IOException e) {
+					throw e;
+				} catch (Exception e) {
+					throw new IOException(e);
+				}
+			});
+		} catch (Exception e) {
+			retentionQueryService.deleteTransfer(transferId);
+			throw e;
+		}
+
+		return transferId;
+	}
+
+	private interface ChunkConsumer {
+		void accept(byte[] data, int count) throws IOException;
+	}
+
+	// reads the entry a buffer at a time, passing each chunk to consumer, which must be done with it before returning
+	private void copyEntry(ZipFile zip, ZipEntry entry, byte[] data, long[] totalBytes, ChunkConsumer consumer) throws IOException {
+		int count;
+		long entryBytes = 0;
+		long compressedSize = entry.getCompressedSize();
+
+		try (InputStream is = zip.getInputStream(entry)) {
+			while ((count = is.readNBytes(data, 0, data.length)) > 0) {
+				entryBytes += count;
+				totalBytes[0] += count;
+				if (entryBytes > MAX_UNCOMPRESSED_ENTRY_SIZE) {
+					throw new IOException("ZIP entry exceeds maximum uncompressed size");
+				}
+				if (totalBytes[0] > MAX_UNCOMPRESSED_TOTAL_SIZE) {
+					throw new IOException("ZIP archive exceeds maximum total uncompressed size");
+				}
+				if (compressedSize > 0 && entryBytes / compressedSize > MAX_COMPRESSION_RATIO) {
+					throw new IOException("ZIP entry compression ratio exceeds maximum, possible zip bomb");
+				}
+				consumer.accept(data, count);
+			}
+		}
+	}
+
 	private void writeMissionToArchive(String filename, String missionName, Timestamp createTime,
-			Timestamp archiveTime, byte[] zip) throws Exception {
+			Timestamp archiveTime, String transferId) throws Exception {
 		String zipPath = ARCHIVE_DIR + filename;
 
 		File archiveDir = new File(ARCHIVE_DIR).getCanonicalFile();
@@ -295,7 +373,22 @@ public class MissionArchiveHelper {
 		if (targetFile.exists()) {
 			return;
 		} else {
-			Files.write(targetFile.toPath(), zip);
+			// copy the archive a chunk at a time, and only move it into place once it's complete
+			Path partFile = Paths.get(targetFile.getPath() + ".part");
+
+			try (OutputStream out = Files.newOutputStream(partFile)) {
+				long offset = 0;
+				byte[] chunk;
+				while ((chunk = retentionQueryService.readTransfer(transferId, offset, TRANSFER_CHUNK_SIZE)).length > 0) {
+					out.write(chunk);
+					offset += chunk.length;
+				}
+			} catch (Exception e) {
+				Files.deleteIfExists(partFile);
+				throw e;
+			}
+
+			Files.move(partFile, targetFile.toPath(), StandardCopyOption.ATOMIC_MOVE);
 		}
 		
         ObjectMapper mapper = new ObjectMapper(new YAMLFactory().enable(YAMLGenerator.Feature.MINIMIZE_QUOTES));
@@ -0,0 +1,451 @@
+package tak.server.retention.service;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Array;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.sql.DataSource;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import tak.server.retention.config.ChunkedDeleteConfig;
+import tak.server.retention.service.ChunkedRetentionExecutor.Progress;
+
+public class ChunkedRetentionExecutorTest {
+
+    private static final long NOW = TimeUnit.DAYS.toMillis(20000);
+
+    private static final long HOUR = TimeUnit.HOURS.toMillis(1);
+
+    private FakeTable table;
+
+    private ChunkedDeleteConfig config;
+
+    private ChunkedRetentionExecutor executor;
+
+    @Before
+    public void setUp() throws Exception {
+        table = new FakeTable();
+
+        config = new ChunkedDeleteConfig();
+        config.setPauseMillis(0);
+
+        executor = new ChunkedRetentionExecutor();
+        inject("dataSource", table.dataSource());
+        inject("config", config);
+        invoke("init");
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        invoke("destroy");
+    }
+
+    @Test
+    public void slicedByTime() throws Exception {
+        // three hours of expired rows, in one hour slices, and rows newer than the ttl of one day
+        for (long id = 1; id <= 30; id++) {
+            table.row(id, NOW - TimeUnit.DAYS.toMillis(1) - 1 - (id - 1) * TimeUnit.MINUTES.toMillis(6));
+        }
+        for (long id = 31; id <= 35; id++) {
+            table.row(id, NOW - id);
+        }
+
+        assertEquals(30, executor.deleteOlderThan("cot", "cot_router", "servertime", null, 86400));
+
+        assertEquals(Arrays.asList(31L, 32L, 33L, 34L, 35L), table.ids());
+
+        // contiguous slices from the oldest row to the cutoff
+        List<Object[]> slices = table.slices();
+        long oldest = NOW - TimeUnit.DAYS.toMillis(1) - 1 - 29 * TimeUnit.MINUTES.toMillis(6);
+        long cutoff = NOW - TimeUnit.DAYS.toMillis(1);
+
+        assertEquals(3, slices.size());
+        assertEquals(new Timestamp(oldest), slices.get(0)[0]);
+        assertEquals(new Timestamp(oldest + HOUR), slices.get(0)[1]);
+        assertEquals(slices.get(0)[1], slices.get(1)[0]);
+        assertEquals(slices.get(1)[1], slices.get(2)[0]);
+        assertEquals(new Timestamp(cutoff), slices.get(2)[1]);
+
+        Progress progress = executor.getProgress("cot");
+
+        assertFalse(progress.isRunning());
+        assertEquals(30, progress.getDeleted());
+        assertEquals(0, progress.getLockTimeouts());
+        assertEquals(0, progress.getRemainingEstimate(), 0);
+    }
+
+    @Test
+    public void nothingExpired() throws Exception {
+        assertEquals(0, executor.deleteOlderThan("cot", "cot_router", "servertime", null, 86400));
+
+        table.row(1, NOW - 1);
+
+        assertEquals(0, executor.deleteOlderThan("cot", "cot_router", "servertime", null, 86400));
+
+        assertTrue(table.slices().isEmpty());
+        assertEquals(Collections.singletonList(1L), table.ids());
+    }
+
+    @Test
+    public void chunks() throws Exception {
+        config.setChunkSize(2);
+
+        for (long id = 1; id <= 5; id++) {
+            table.row(id, NOW - TimeUnit.DAYS.toMillis(1) - 10 + id);
+        }
+
+        assertEquals(5, executor.deleteOlderThan("cot", "cot_router", "servertime", "x.cot_type != 'b-t-f'", 86400));
+
+        // chunks of 2, 2 and 1 in one slice, each committed, with the limit and condition in the lock
+        assertEquals(Arrays.asList(2, 2, 1), table.chunks);
+        assertEquals(3, table.commits.get());
+        assertEquals(0, table.rollbacks.get());
+        assertTrue(table.lockSql, table.lockSql.endsWith("and x.cot_type != 'b-t-f' limit ? for update skip locked"));
+        assertTrue(table.lockTimeoutStatements.contains("set local lock_timeout = 5000"));
+    }
+
+    @Test
+    public void slicesCapped() throws Exception {
+        config.setSliceMinutes(1);
+
+        // a year of rows at one minute slices is more than MAX_SLICES, so the slices are made longer
+        table.row(1, NOW - TimeUnit.DAYS.toMillis(366));
+        table.row(2, NOW - TimeUnit.DAYS.toMillis(2));
+
+        assertEquals(2, executor.deleteOlderThan("cot", "cot_router", "servertime", null, 86400));
+
+        List<Object[]> slices = table.slices();
+
+        assertTrue(String.valueOf(slices.size()), slices.size() <= 10000);
+        assertTrue(String.valueOf(slices.size()), slices.size() >= 9999);
+
+        long sliceMillis = ((Timestamp) slices.get(0)[1]).getTime() - ((Timestamp) slices.get(0)[0]).getTime();
+
+        assertEquals(TimeUnit.DAYS.toMillis(365) / 10000 + 1, sliceMillis);
+    }
+
+    @Test
+    public void slicedById() throws Exception {
+        config.setChunkSize(10);
+
+        for (long id = 1; id <= 100; id++) {
+            table.row(id, id % 2 == 0 ? 1 : 0);
+        }
+
+        assertEquals(50, executor.deleteById("files", "resource", "x.expiration <= ?", 0L));
+
+        // chunk size slices of ids, with the parameters of the condition after the slice
+        assertEquals(10, table.slices().size());
+        assertEquals(Arrays.asList(1L, 11L), Arrays.asList(table.slices().get(0)));
+        assertEquals(Arrays.asList(91L, 101L), Arrays.asList(table.slices().get(9)));
+        assertEquals(50, table.ids().size());
+        assertTrue(table.ids().stream().allMatch(id -> id % 2 == 0));
+
+        // a million ids is more than MAX_SLICES of the chunk size
+        table = new FakeTable();
+        inject("dataSource", table.dataSource());
+
+        table.row(1, 0);
+        table.row(1000000, 0);
+
+        assertEquals(2, executor.deleteById("files", "resource", "x.expiration <= ?", 0L));
+        assertEquals(10000, table.slices().size());
+        assertEquals(Arrays.asList(1L, 101L), Arrays.asList(table.slices().get(0)));
+
+        // and an empty table has no slices
+        table = new FakeTable();
+        inject("dataSource", table.dataSource());
+
+        assertEquals(0, executor.deleteById("files", "resource", "x.expiration <= ?", 0L));
+        assertTrue(table.slices().isEmpty());
+    }
+
+    @Test
+    public void lockTimeoutLeavesSlice() throws Exception {
+        for (long id = 1; id <= 3; id++) {
+            table.row(id, NOW - TimeUnit.DAYS.toMillis(1) - id * HOUR + 1);
+        }
+
+        // the lock for the slice holding row 2 isn't had within lock_timeout
+        table.lockNotAvailable = 2L;
+
+        assertEquals(2, executor.deleteOlderThan("cot", "cot_router", "servertime", null, 86400));
+
+        // rolled back and left for the next run, while the other slices are deleted
+        assertEquals(Collections.singletonList(2L), table.ids());
+        assertEquals(1, table.rollbacks.get());
+        assertEquals(1, executor.getProgress("cot").getLockTimeouts());
+        assertEquals(2, executor.getProgress("cot").getDeleted());
+
+        table.lockNotAvailable = null;
+
+        assertEquals(1, executor.deleteOlderThan("cot", "cot_router", "servertime", null, 86400));
+        assertEquals(0, executor.getProgress("cot").getLockTimeouts());
+        assertTrue(table.ids().isEmpty());
+    }
+
+    @Test
+    public void otherFailureThrown() throws Exception {
+        for (long id = 1; id <= 3; id++) {
+            table.row(id, NOW - TimeUnit.DAYS.toMillis(1) - id * HOUR + 1);
+        }
+
+        table.lockNotAvailable = 2L;
+        table.lockFailureState = "40P01";
+
+        try {
+            executor.deleteOlderThan("cot", "cot_router", "servertime", null, 86400);
+            fail("expected the deadlock to be thrown");
+        } catch (SQLException e) {
+            assertEquals("40P01", e.getSQLState());
+        }
+
+        // the other slices still run
+        assertEquals(Collections.singletonList(2L), table.ids());
+        assertEquals(0, executor.getProgress("cot").getLockTimeouts());
+        assertFalse(executor.getProgress("cot").isRunning());
+    }
+
+    private void inject(String field, Object value) throws Exception {
+        Field f = ChunkedRetentionExecutor.class.getDeclaredField(field);
+        f.setAccessible(true);
+        f.set(executor, value);
+    }
+
+    private void invoke(String method) throws Exception {
+        Method m = ChunkedRetentionExecutor.class.getDeclaredMethod(method);
+        m.setAccessible(true);
+        m.invoke(executor);
+    }
+
+    // a table of ids and times, deleted from by the chunk statements, and the statements and transaction calls made on it
+    private static class FakeTable {
+
+        private final Map<Long, Long> rows = new ConcurrentHashMap<>();
+
+        // bounds of each slice locked, by its start
+        private final Map<Object, Object[]> slices = new ConcurrentHashMap<>();
+
+        final List<Integer> chunks = Collections.synchronizedList(new ArrayList<>());
+        final Set<String> lockTimeoutStatements = ConcurrentHashMap.newKeySet();
+        final AtomicInteger commits = new AtomicInteger();
+        final AtomicInteger rollbacks = new AtomicInteger();
+
+        volatile String lockSql;
+
+        // the id of a row whose slice fails to lock, and how
+        volatile Long lockNotAvailable;
+        volatile String lockFailureState = "55P03";
+
+        void row(long id, long timeMillis) {
+            rows.put(id, timeMillis);
+        }
+
+        List<Long> ids() {
+            List<Long> ids = new ArrayList<>(rows.keySet());
+            Collections.sort(ids);
+            return ids;
+        }
+
+        @SuppressWarnings({ "unchecked", "rawtypes" })
+        List<Object[]> slices() {
+            List<Object[]> sorted = new ArrayList<>(slices.values());
+            sorted.sort((a, b) -> ((Comparable) a[0]).compareTo(b[0]));
+            return sorted;
+        }
+
+        DataSource dataSource() {
+            return proxy(DataSource.class, (proxy, method, args) -> {
+                if (method.getName().equals("getConnection")) {
+                    return connection();
+                }
+                return defaultValue(method.getReturnType());
+            });
+        }
+
+        private Connection connection() {
+            return proxy(Connection.class, (proxy, method, args) -> {
+                switch (method.getName()) {
+                case "createStatement":
+                    return statement(null);
+                case "prepareStatement":
+                    return statement((String) args[0]);
+                case "createArrayOf":
+                    return array((Object[]) args[1]);
+                case "commit":
+                    commits.incrementAndGet();
+                    return null;
+                case "rollback":
+                    rollbacks.incrementAndGet();
+                    return null;
+                default:
+                    return defaultValue(method.getReturnType());
+                }
+            });
+        }
+
+        private Statement statement(String prepared) {
+            Map<Integer, Object> parameters = new HashMap<>();
+            Class<? extends Statement> type = prepared == null ? Statement.class : PreparedStatement.class;
+
+            return proxy(type, (proxy, method, args) -> {
+                switch (method.getName()) {
+                case "setObject":
+                case "setInt":
+                case "setArray":
+                    parameters.put((Integer) args[0], args[1]);
+                    return null;
+                case "execute":
+                    lockTimeoutStatements.add((String) args[0]);
+                    return false;
+                case "executeQuery":
+                    return query(prepared == null ? (String) args[0] : prepared, parameters);
+                case "executeUpdate":
+                    return delete(parameters);
+                default:
+                    return defaultValue(method.getReturnType());
+                }
+            });
+        }
+
+        private ResultSet query(String sql, Map<Integer, Object> parameters) throws SQLException {
+            if (sql.startsWith("select now()")) {
+                long cutoff = NOW - ((Integer) parameters.get(1)) * 1000L;
+                Long oldest = rows.values().stream().min(Long::compare).orElse(null);
+                return resultSet(Collections.singletonList(new Object[] { new Timestamp(cutoff), oldest == null ? null : new Timestamp(oldest) }));
+            }
+
+            if (sql.startsWith("select min(id), max(id)")) {
+                Long lowest = rows.keySet().stream().min(Long::compare).orElse(null);
+                Long highest = rows.keySet().stream().max(Long::compare).orElse(null);
+                return resultSet(Collections.singletonList(new Object[] { lowest, highest }));
+            }
+
+            // select x.id ... for update skip locked
+            lockSql = sql;
+
+            Object start = parameters.get(1);
+            Object end = parameters.get(2);
+            slices.put(start, new Object[] { start, end });
+
+            boolean byId = sql.contains("x.id >= ?");
+            int limit = (Integer) parameters.get(parameters.size());
+
+            List<Object[]> ids = new ArrayList<>();
+
+            for (Long id : ids()) {
+                Long time = rows.get(id);
+
+                if (time == null || !inSlice(byId ? id : time, start, end)) {
+                    continue;
+                }
+
+                if (id.equals(lockNotAvailable)) {
+                    throw new SQLException("canceling statement due to lock timeout", lockFailureState);
+                }
+
+                // the parameter of the condition is the largest time to delete
+                if (byId && time > ((Number) parameters.get(3)).longValue()) {
+                    continue;
+                }
+
+                if (ids.size() < limit) {
+                    ids.add(new Object[] { id });
+                }
+            }
+
+            return resultSet(ids);
+        }
+
+        private int delete(Map<Integer, Object> parameters) throws SQLException {
+            Object[] ids = (Object[]) ((Array) parameters.get(3)).getArray();
+
+            int deleted = 0;
+            for (Object id : ids) {
+                if (rows.remove(id) != null) {
+                    deleted++;
+                }
+            }
+
+            chunks.add(deleted);
+            return deleted;
+        }
+
+        private static boolean inSlice(long value, Object start, Object end) {
+            long from = start instanceof Timestamp ? ((Timestamp) start).getTime() : (Long) start;
+            long to = end instanceof Timestamp ? ((Timestamp) end).getTime() : (Long) end;
+            return value >= from && value < to;
+        }
+
+        private static Array array(Object[] elements) {
+            return proxy(Array.class, (proxy, method, args) ->
+                    method.getName().equals("getArray") ? elements : defaultValue(method.getReturnType()));
+        }
+
+        private static ResultSet resultSet(List<Object[]> rows) {
+            int[] row = { -1 };
+            Object[] last = { null };
+
+            return proxy(ResultSet.class, (proxy, method, args) -> {
+                switch (method.getName()) {
+                case "next":
+                    return ++row[0] < rows.size();
+                case "getTimestamp":
+                case "getObject":
+                    return last[0] = rows.get(row[0])[(Integer) args[0] - 1];
+                case "getLong":
+                    last[0] = rows.get(row[0])[(Integer) args[0] - 1];
+                    return last[0] == null ? 0L : ((Number) last[0]).longValue();
+                case "wasNull":
+                    return last[0] == null;
+                default:
+                    return defaultValue(method.getReturnType());
+                }
+            });
+        }
+
+        @SuppressWarnings("unchecked")
+        private static <T> T proxy(Class<T> type, InvocationHandler handler) {
+            return (T) Proxy.newProxyInstance(ChunkedRetentionExecutorTest.class.getClassLoader(), new Class<?>[] { type }, handler);
+        }
+
+        private static Object defaultValue(Class<?> type) {
+            if (type == boolean.class) {
+                return false;
+            }
+            if (type == int.class) {
+                return 0;
+            }
+            if (type == long.class) {
+                return 0L;
+            }
+            return null;
+        }
+    }
+}
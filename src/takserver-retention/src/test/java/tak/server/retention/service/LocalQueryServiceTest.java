@@ -0,0 +1,237 @@
+package tak.server.retention.service;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.sql.DataSource;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.dao.DataAccessException;
+
+public class LocalQueryServiceTest {
+
+    private FakeDatabase database;
+
+    private LocalQueryService service;
+
+    @Before
+    public void setUp() {
+        database = new FakeDatabase();
+
+        service = new LocalQueryService();
+        service.setDataSource(database.dataSource());
+    }
+
+    @Test
+    public void notPartitioned() {
+        database.result("relkind = 'p'", false);
+
+        assertEquals(0, service.createCotPartitions());
+
+        assertEquals(Collections.singletonList(
+                "select coalesce((select relkind = 'p' from pg_class where oid = to_regclass('cot_router')), false)"), database.statements);
+    }
+
+    @Test
+    public void createPartitions() {
+        database.result("relkind = 'p'", true);
+        database.result("cot_router_create_partitions()", 2);
+
+        assertEquals(2, service.createCotPartitions());
+        assertEquals("select cot_router_create_partitions()", database.statements.get(1));
+    }
+
+    @Test
+    public void dropExpiredPartitions() {
+        database.result("from cot_router_partitions()", "cot_router_p20260101", "cot_router_p20260201");
+        database.result("from \"cot_router_p20260101\" cr join mission_uid", false);
+        database.result("from \"cot_router_p20260201\" cr join mission_uid", false);
+
+        assertEquals(2, service.dropExpiredCotPartitions(86400));
+
+        assertEquals("select partition_name from cot_router_partitions() where upper_bound < now() - (? * INTERVAL '1 second')", database.statements.get(0));
+
+        // the dependent data_feed_cot rows go in the same transaction as the partition
+        assertEquals(Arrays.asList(
+                "set autocommit false",
+                "delete from data_feed_cot where cot_router_id in (select id from \"cot_router_p20260101\")",
+                "alter table cot_router detach partition \"cot_router_p20260101\"",
+                "drop table \"cot_router_p20260101\"",
+                "commit",
+                "set autocommit true"), database.statements.subList(2, 8));
+
+        assertEquals("drop table \"cot_router_p20260201\"", database.statements.get(12));
+        assertEquals("commit", database.statements.get(13));
+        assertEquals(15, database.statements.size());
+    }
+
+    @Test
+    public void retainedPartitionNotDropped() {
+        database.result("from cot_router_partitions()", "cot_router_p20260101", "cot_router_p20260201");
+        database.result("from \"cot_router_p20260101\" cr join mission_uid", true);
+        database.result("from \"cot_router_p20260201\" cr join mission_uid", false);
+
+        assertEquals(1, service.dropExpiredCotPartitions(86400));
+
+        for (String statement : database.statements) {
+            assertTrue(statement, !statement.startsWith("drop table") || statement.equals("drop table \"cot_router_p20260201\""));
+            assertTrue(statement, !statement.startsWith("delete") || statement.contains("cot_router_p20260201"));
+        }
+    }
+
+    @Test
+    public void failedDropRolledBack() {
+        database.result("from cot_router_partitions()", "cot_router_p20260101");
+        database.result("from \"cot_router_p20260101\" cr join mission_uid", false);
+        database.fail("drop table");
+
+        try {
+            service.dropExpiredCotPartitions(86400);
+            throw new AssertionError("expected the failed drop to be thrown");
+        } catch (DataAccessException e) {
+            // expected
+        }
+
+        int drop = database.statements.indexOf("drop table \"cot_router_p20260101\"");
+
+        assertEquals(Arrays.asList("rollback", "set autocommit true"), database.statements.subList(drop + 1, drop + 3));
+        assertTrue(!database.statements.contains("commit"));
+    }
+
+    // answers queries with the results given for them, and records the statements run and the transaction calls
+    private static class FakeDatabase {
+
+        final List<String> statements = new ArrayList<>();
+
+        private final Map<String, Object[]> results = new HashMap<>();
+
+        private String failure;
+
+        void result(String sqlContains, Object... rows) {
+            results.put(sqlContains, rows);
+        }
+
+        void fail(String sqlPrefix) {
+            failure = sqlPrefix;
+        }
+
+        DataSource dataSource() {
+            return proxy(DataSource.class, (proxy, method, args) -> {
+                if (method.getName().equals("getConnection")) {
+                    return connection();
+                }
+                return defaultValue(method.getReturnType());
+            });
+        }
+
+        private Connection connection() {
+            return proxy(Connection.class, (proxy, method, args) -> {
+                switch (method.getName()) {
+                case "createStatement":
+                    return statement(null);
+                case "prepareStatement":
+                    return statement((String) args[0]);
+                case "setAutoCommit":
+                    statements.add("set autocommit " + args[0]);
+                    return null;
+                case "commit":
+                case "rollback":
+                    statements.add(method.getName());
+                    return null;
+                default:
+                    return defaultValue(method.getReturnType());
+                }
+            });
+        }
+
+        private Statement statement(String prepared) {
+            Class<? extends Statement> type = prepared == null ? Statement.class : PreparedStatement.class;
+
+            return proxy(type, (proxy, method, args) -> {
+                switch (method.getName()) {
+                case "execute":
+                case "executeQuery":
+                case "executeUpdate":
+                    String sql = prepared == null ? (String) args[0] : prepared;
+                    statements.add(sql);
+
+                    if (failure != null && sql.startsWith(failure)) {
+                        throw new SQLException("failed: " + sql, "XX000");
+                    }
+
+                    if (method.getName().equals("executeQuery")) {
+                        return resultSet(sql);
+                    }
+                    return method.getName().equals("execute") ? false : 0;
+                default:
+                    return defaultValue(method.getReturnType());
+                }
+            });
+        }
+
+        private ResultSet resultSet(String sql) {
+            Object[] rows = results.entrySet().stream()
+                    .filter(entry -> sql.contains(entry.getKey()))
+                    .map(Map.Entry::getValue)
+                    .findFirst()
+                    .orElse(new Object[0]);
+
+            int[] row = { -1 };
+
+            ResultSetMetaData metaData = proxy(ResultSetMetaData.class, (proxy, method, args) ->
+                    method.getName().equals("getColumnCount") ? 1 : defaultValue(method.getReturnType()));
+
+            return proxy(ResultSet.class, (proxy, method, args) -> {
+                switch (method.getName()) {
+                case "next":
+                    return ++row[0] < rows.length;
+                case "getMetaData":
+                    return metaData;
+                case "getObject":
+                case "getString":
+                    return rows[row[0]] == null ? null : method.getName().equals("getString") ? rows[row[0]].toString() : rows[row[0]];
+                case "getBoolean":
+                    return rows[row[0]];
+                case "getInt":
+                    return ((Number) rows[row[0]]).intValue();
+                default:
+                    return defaultValue(method.getReturnType());
+                }
+            });
+        }
+
+        @SuppressWarnings("unchecked")
+        private static <T> T proxy(Class<T> type, InvocationHandler handler) {
+            return (T) Proxy.newProxyInstance(LocalQueryServiceTest.class.getClassLoader(), new Class<?>[] { type }, handler);
+        }
+
+        private static Object defaultValue(Class<?> type) {
+            if (type == boolean.class) {
+                return false;
+            }
+            if (type == int.class) {
+                return 0;
+            }
+            if (type == long.class) {
+                return 0L;
+            }
+            return null;
+        }
+    }
+}
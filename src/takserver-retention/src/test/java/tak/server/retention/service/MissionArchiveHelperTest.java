@@ -0,0 +1,239 @@
+package tak.server.retention.service;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.reflect.Proxy;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+import java.util.zip.ZipOutputStream;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.bbn.marti.remote.service.RetentionQueryService;
+
+import tak.server.retention.config.MissionArchiveStoreConfig;
+import tak.server.retention.config.MissionArchiveStoreConfig.MissionArchiveStoreEntry;
+
+public class MissionArchiveHelperTest {
+
+	private static final String MANIFEST = "<MissionPackageManifest version=\"2\">"
+			+ "<Configuration><Parameter name=\"mission_name\" value=\"test\"/></Configuration>"
+			+ "<Groups><Group name=\"__ANON__\"/></Groups>"
+			+ "<Role name=\"MISSION_SUBSCRIBER\"><Permissions name=\"MISSION_READ\"/></Role>"
+			+ "<Contents><Content zipEntry=\"content/data.bin\"/><Content zipEntry=\"cot/a.cot\"/><Content zipEntry=\"missing.bin\"/><Content zipEntry=\"cot/b.cot\"/></Contents>"
+			+ "</MissionPackageManifest>";
+
+	// archives are restored from, and the mission store is written to, mission-archive under the working directory
+	private static final Path ARCHIVE_DIR = Paths.get("mission-archive");
+	private static final Path ARCHIVE = ARCHIVE_DIR.resolve("created_test.zip");
+	private static final Path MISSION_STORE = ARCHIVE_DIR.resolve("mission-store.yml");
+
+	private Path directory;
+
+	private boolean createdArchiveDir;
+
+	private MissionArchiveHelper helper;
+
+	private final Map<String, List<byte[]>> transfers = new LinkedHashMap<>();
+	private final List<byte[]> restoredCot = new ArrayList<>();
+	private final Map<String, String> restoredContent = new HashMap<>();
+
+	@Before
+	public void init() throws IOException {
+		directory = Files.createTempDirectory("mission-archive-test");
+
+		helper = new MissionArchiveHelper();
+		helper.missionArchiveStore = new MissionArchiveStoreConfig();
+
+		helper.retentionQueryService = (RetentionQueryService) Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[] { RetentionQueryService.class },
+				(proxy, method, args) -> {
+					switch (method.getName()) {
+					case "createTransfer":
+						String transferId = "transfer" + transfers.size();
+						transfers.put(transferId, new ArrayList<>());
+						return transferId;
+					case "appendTransfer":
+						transfers.get(args[0]).add((byte[]) args[1]);
+						return null;
+					case "deleteTransfer":
+						transfers.remove(args[0]);
+						return null;
+					case "restoreMission":
+						return true;
+					case "restoreCoT":
+						@SuppressWarnings("unchecked")
+						List<byte[]> events = (List<byte[]>) args[1];
+						restoredCot.addAll(events);
+						return null;
+					case "restoreContent":
+						restoredContent.put(((org.dom4j.Element) args[2]).attributeValue("zipEntry"), (String) args[1]);
+						return null;
+					default:
+						throw new UnsupportedOperationException(method.getName());
+					}
+				});
+	}
+
+	@After
+	public void cleanup() throws IOException {
+		Files.deleteIfExists(ARCHIVE);
+
+		if (createdArchiveDir) {
+			Files.deleteIfExists(MISSION_STORE);
+			Files.deleteIfExists(ARCHIVE_DIR);
+		}
+
+		for (File file : directory.toFile().listFiles()) {
+			file.delete();
+		}
+		Files.delete(directory);
+	}
+
+	@Test
+	public void readEntryAcrossBuffers() throws IOException {
+		byte[] content = random(1000);
+
+		try (ZipFile zip = zip(Map.of("data.bin", content))) {
+			// a buffer much smaller than the entry, reused for each read
+			assertArrayEquals(content, helper.readEntry(zip, zip.getEntry("data.bin"), new byte[7]));
+			assertArrayEquals(content, helper.readEntry(zip, zip.getEntry("data.bin"), new byte[content.length]));
+		}
+	}
+
+	@Test
+	public void transferEntryCopiesEachChunk() throws Exception {
+		byte[] content = random(1000);
+
+		try (ZipFile zip = zip(Map.of("data.bin", content))) {
+			String transferId = helper.transferEntry(zip, zip.getEntry("data.bin"), new byte[300]);
+
+			// the buffer is overwritten by each read, so every chunk has to be a copy
+			List<byte[]> chunks = transfers.get(transferId);
+
+			assertEquals(4, chunks.size());
+			assertEquals(100, chunks.get(3).length);
+			assertArrayEquals(content, concat(chunks));
+		}
+	}
+
+	@Test
+	public void validateArchive() throws IOException {
+		try (ZipFile zip = zip(Map.of("MANIFEST/manifest.xml", bytes(MANIFEST), "cot/a.cot", random(100)))) {
+			helper.validateArchive(zip, new byte[64]);
+		}
+
+		assertInvalid(zip(Map.of("../escape.cot", random(10))), "illegal path");
+		assertInvalid(zip(Map.of("/absolute.cot", random(10))), "illegal path");
+
+		// highly compressible, like a zip bomb
+		assertInvalid(zip(Map.of("zeros.bin", new byte[1024 * 1024])), "compression ratio");
+
+		Map<String, byte[]> entries = new LinkedHashMap<>();
+		for (int i = 0; i <= 1024; i++) {
+			entries.put("entry" + i, new byte[] { (byte) i });
+		}
+
+		assertInvalid(zip(entries), "maximum entry count");
+	}
+
+	@Test
+	public void restore() throws IOException {
+		byte[] content = random(5 * 1024 * 1024);
+		byte[] a = bytes("<event uid=\"a\"/>");
+		byte[] b = bytes("<event uid=\"b\"/>");
+
+		Map<String, byte[]> entries = new LinkedHashMap<>();
+		entries.put("MANIFEST/manifest.xml", bytes(MANIFEST));
+		entries.put("content/data.bin", content);
+		entries.put("cot/a.cot", a);
+		entries.put("cot/b.cot", b);
+
+		createdArchiveDir = !Files.exists(ARCHIVE_DIR);
+		Files.createDirectories(ARCHIVE_DIR);
+		Files.move(writeZip(entries), ARCHIVE);
+
+		MissionArchiveStoreEntry entry = new MissionArchiveStoreEntry();
+		entry.setId(42);
+		entry.setMissionName("test");
+		entry.setCreateTime("created");
+		helper.missionArchiveStore.addMissionEntry(entry);
+
+		assertEquals("test Restored", helper.restoreMissionFromArchive(42));
+
+		// content is passed on in transfer chunks, and CoT events as a batch, each read through the one buffer
+		String transferId = restoredContent.get("content/data.bin");
+
+		assertEquals(2, transfers.get(transferId).size());
+		assertArrayEquals(content, concat(transfers.get(transferId)));
+
+		assertEquals(2, restoredCot.size());
+		assertArrayEquals(a, restoredCot.get(0));
+		assertArrayEquals(b, restoredCot.get(1));
+
+		assertTrue(helper.missionArchiveStore.getMissionArchiveStoreEntries().isEmpty());
+		assertFalse(Files.exists(ARCHIVE));
+	}
+
+	private void assertInvalid(ZipFile zip, String message) throws IOException {
+		try (zip) {
+			helper.validateArchive(zip, new byte[4096]);
+			fail("expected the archive to be rejected for " + message);
+		} catch (IOException e) {
+			assertTrue(e.getMessage(), e.getMessage().contains(message));
+		}
+	}
+
+	private ZipFile zip(Map<String, byte[]> entries) throws IOException {
+		return new ZipFile(writeZip(entries).toFile());
+	}
+
+	private Path writeZip(Map<String, byte[]> entries) throws IOException {
+		Path file = Files.createTempFile(directory, "archive", ".zip");
+
+		try (OutputStream out = Files.newOutputStream(file); ZipOutputStream zip = new ZipOutputStream(out)) {
+			for (Map.Entry<String, byte[]> entry : entries.entrySet()) {
+				zip.putNextEntry(new ZipEntry(entry.getKey()));
+				zip.write(entry.getValue());
+				zip.closeEntry();
+			}
+		}
+
+		return file;
+	}
+
+	private static byte[] random(int size) {
+		byte[] bytes = new byte[size];
+		new Random(size).nextBytes(bytes);
+		return bytes;
+	}
+
+	private static byte[] bytes(String s) {
+		return s.getBytes(StandardCharsets.UTF_8);
+	}
+
+	private static byte[] concat(List<byte[]> chunks) {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		chunks.forEach(chunk -> out.write(chunk, 0, chunk.length));
+		return out.toByteArray();
+	}
+}
@@ -0,0 +1,267 @@
+package com.bbn.tak.schema;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Stream;
+
+import org.slf4j.LoggerFactory;
+
+import com.bbn.marti.remote.sync.FileSystemResourceContentStore;
+import com.bbn.marti.remote.sync.ResourceContentStore.StoredContent;
+import com.beust.jcommander.Parameter;
+import com.beust.jcommander.Parameters;
+
+@Parameters(commandDescription = "move Enterprise Sync content from the resource table to the filesystem content store, "
+		+ "leaving only the metadata in the database. ExCheck content stays in the database. "
+		+ "Safe to run while TAK server is running, and to run again after it's interrupted.", separators = "=")
+public class MigrateEsyncCommand extends Command {
+	public static final String name = "migrate-esync";
+
+	private static final String EXCHECK_TOOL = "ExCheck";
+
+	MigrateEsyncCommand(SchemaManager manager) {
+		super(manager, LoggerFactory.getLogger(MigrateEsyncCommand.class));
+	}
+
+	@Parameter(names = {"-directory"}, description = "content store directory. Defaults to esyncFileStoreDirectory in CoreConfig.xml")
+	private String directory = null;
+
+	@Parameter(names = {"-batch"}, description = "number of resources to move per query")
+	private int batch = 100;
+
+	@Parameter(names = {"-prune"}, description = "instead of moving content, delete stored content that no resource references")
+	private boolean prune = false;
+
+	/**
+	 * Moves the content of each resource into the content store, then clears its data column.
+	 * @return true if the command executed successfully
+	 */
+	@Override
+	public boolean execute() throws IllegalStateException {
+		if (batch <= 0) {
+			logger.error("Invalid batch " + batch + ".");
+			return false;
+		}
+
+		FileSystemResourceContentStore store = new FileSystemResourceContentStore(getDirectory());
+
+		String database = schemaManager.commonOptions.database;
+
+		try (Connection connection = schemaManager.getConnection()) {
+			if (prune) {
+				return prune(connection, store);
+			}
+
+			logger.info("Moving Enterprise Sync content in database '" + database + "' to " + store.getRoot() + ". This may take a while for a large table.");
+
+			long lastId = 0;
+			long moved = 0;
+			long skipped = 0;
+			long bytes = 0;
+
+			while (true) {
+				List<Long> ids = new ArrayList<>();
+				List<String> hashes = new ArrayList<>();
+
+				try (PreparedStatement select = connection.prepareStatement("SELECT id, hash FROM resource WHERE data IS NOT NULL "
+						+ "AND tool IS DISTINCT FROM ? AND id > ? ORDER BY id LIMIT ?")) {
+					select.setString(1, EXCHECK_TOOL);
+					select.setLong(2, lastId);
+					select.setInt(3, batch);
+
+					try (ResultSet results = select.executeQuery()) {
+						while (results.next()) {
+							ids.add(results.getLong(1));
+							hashes.add(results.getString(2));
+						}
+					}
+				}
+
+				if (ids.isEmpty()) {
+					break;
+				}
+
+				for (int i = 0; i < ids.size(); i++) {
+					long id = ids.get(i);
+					String hash = hashes.get(i);
+
+					StoredContent stored = store(connection, store, id);
+
+					if (stored == null) {
+						continue;
+					}
+
+					// reads look content up by the hash in the row
+					if (hash == null || !hash.equalsIgnoreCase(stored.getHash())) {
+						logger.warn("Resource " + id + " has hash " + hash + " but its content hashes to " + stored.getHash() + ". Leaving it in the database.");
+						queueOrphan(connection, stored.getHash());
+						skipped++;
+						continue;
+					}
+
+					try (PreparedStatement update = connection.prepareStatement("UPDATE resource SET data = NULL, content_length = ? WHERE id = ? AND data IS NOT NULL")) {
+						update.setLong(1, stored.getLength());
+						update.setLong(2, id);
+
+						if (update.executeUpdate() > 0) {
+							moved++;
+							bytes += stored.getLength();
+						} else {
+							// deleted or changed since it was selected
+							queueOrphan(connection, stored.getHash());
+						}
+					}
+				}
+
+				lastId = ids.get(ids.size() - 1);
+
+				logger.info("Moved " + moved + " resources (" + bytes + " bytes) so far.");
+			}
+
+			logger.info("Moved " + moved + " resources (" + bytes + " bytes) in database '" + database + "' to " + store.getRoot()
+					+ (skipped > 0 ? ". " + skipped + " resources with mismatched hashes were left in the database." : "."));
+			logger.info("Run VACUUM FULL on the resource table to return the space to the operating system.");
+			return true;
+		} catch (IOException | SQLException ex) {
+			logger.error("Failure moving Enterprise Sync content in database '" + database + "'. " + ex.getMessage());
+			if (logger.isDebugEnabled()) {
+				ex.printStackTrace();
+			}
+			return false;
+		}
+	}
+
+	// copies the content of one resource into the store, or returns null if it's gone
+	private StoredContent store(Connection connection, FileSystemResourceContentStore store, long id) throws SQLException, IOException {
+		try (PreparedStatement select = connection.prepareStatement("SELECT data FROM resource WHERE id = ? AND data IS NOT NULL")) {
+			select.setLong(1, id);
+
+			try (ResultSet results = select.executeQuery()) {
+				if (!results.next()) {
+					return null;
+				}
+
+				try (InputStream data = results.getBinaryStream(1)) {
+					return store.store(data);
+				}
+			}
+		}
+	}
+
+	/*
+	 * Deletes stored content that no resource references, in two passes: the hashes TAK server queued when it deleted resources, then
+	 * every file in the store. Content stored recently is kept, since a resource referencing it may be about to be inserted.
+	 */
+	private boolean prune(Connection connection, FileSystemResourceContentStore store) throws SQLException, IOException {
+
+		logger.info("Deleting unreferenced content from " + store.getRoot() + ".");
+
+		long deleted = 0;
+
+		while (true) {
+			List<String> queued = new ArrayList<>();
+
+			try (PreparedStatement select = connection.prepareStatement("SELECT hash FROM resource_content_orphan LIMIT ?")) {
+				select.setInt(1, batch);
+
+				try (ResultSet results = select.executeQuery()) {
+					while (results.next()) {
+						queued.add(results.getString(1));
+					}
+				}
+			}
+
+			if (queued.isEmpty()) {
+				break;
+			}
+
+			deleted += deleteUnreferenced(connection, store, queued);
+
+			try (PreparedStatement delete = connection.prepareStatement("DELETE FROM resource_content_orphan WHERE hash = ANY (?)")) {
+				delete.setArray(1, connection.createArrayOf("text", queued.toArray()));
+				delete.executeUpdate();
+			}
+		}
+
+		try (Stream<String> hashes = store.hashes()) {
+			Iterator<String> iterator = hashes.iterator();
+
+			while (iterator.hasNext()) {
+				List<String> page = new ArrayList<>();
+
+				while (iterator.hasNext() && page.size() < batch) {
+					page.add(iterator.next());
+				}
+
+				deleted += deleteUnreferenced(connection, store, page);
+			}
+		}
+
+		store.deleteStaleTemporaryFiles();
+
+		logger.info("Deleted " + deleted + " unreferenced content files from " + store.getRoot() + ".");
+		return true;
+	}
+
+	private long deleteUnreferenced(Connection connection, FileSystemResourceContentStore store, List<String> hashes) throws SQLException, IOException {
+
+		Set<String> referenced = new HashSet<>();
+
+		try (PreparedStatement select = connection.prepareStatement("SELECT DISTINCT hash FROM resource WHERE hash = ANY (?) AND content_length IS NOT NULL")) {
+			select.setArray(1, connection.createArrayOf("text", hashes.toArray()));
+
+			try (ResultSet results = select.executeQuery()) {
+				while (results.next()) {
+					referenced.add(results.getString(1));
+				}
+			}
+		}
+
+		long deleted = 0;
+
+		for (String hash : hashes) {
+			if (!referenced.contains(hash) && store.delete(hash)) {
+				deleted++;
+			}
+		}
+
+		return deleted;
+	}
+
+	// TAK server deletes queued content once no resource references it
+	private void queueOrphan(Connection connection, String hash) throws SQLException {
+		try (PreparedStatement insert = connection.prepareStatement("INSERT INTO resource_content_orphan (hash) VALUES (?) "
+				+ "ON CONFLICT (hash) DO UPDATE SET queued = now()")) {
+			insert.setString(1, hash);
+			insert.executeUpdate();
+		}
+	}
+
+	private Path getDirectory() {
+
+		String path = directory;
+
+		if (path == null) {
+			path = schemaManager.configuration != null ? schemaManager.configuration.getNetwork().getEsyncFileStoreDirectory() : "esync-store";
+		}
+
+		// relative to the TAK server home directory, as for TAK server
+		if (!new File(path).isAbsolute()) {
+			return Paths.get(SchemaManager.DEFAULT_TAK_HOME, path);
+		}
+
+		return Paths.get(path);
+	}
+}
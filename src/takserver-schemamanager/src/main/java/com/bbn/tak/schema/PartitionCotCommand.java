@@ -0,0 +1,87 @@
+package com.bbn.tak.schema;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+import org.slf4j.LoggerFactory;
+
+import com.beust.jcommander.Parameter;
+import com.beust.jcommander.Parameters;
+
+@Parameters(commandDescription = "convert cot_router to a table range partitioned by servertime, so that retention can drop whole partitions. "
+		+ "Stop TAK server first; the conversion locks cot_router and indexes the existing rows. "
+		+ "Run again to change the interval or the number of future partitions.", separators = "=")
+public class PartitionCotCommand extends Command {
+	public static final String name = "partition-cot";
+
+	static final String PARTITIONING_SQL = "db/partition/cot_router_partitioning.sql";
+
+	PartitionCotCommand(SchemaManager manager) {
+		super(manager, LoggerFactory.getLogger(PartitionCotCommand.class));
+	}
+
+	@Parameter(names = {"-interval"}, description = "time covered by each partition: day, week or month")
+	private String interval = "day";
+
+	@Parameter(names = {"-premake"}, description = "number of future partitions to keep created")
+	private int premake = 7;
+
+	/**
+	 * Installs the partition management functions and converts cot_router, if it isn't partitioned already.
+	 * @return true if the command executed successfully
+	 */
+	@Override
+	public boolean execute() throws IllegalStateException {
+		if (!interval.equals("day") && !interval.equals("week") && !interval.equals("month")) {
+			logger.error("Invalid interval '" + interval + "'. Use day, week or month.");
+			return false;
+		}
+
+		if (premake < 0) {
+			logger.error("Invalid premake " + premake + ".");
+			return false;
+		}
+
+		String database = schemaManager.commonOptions.database;
+
+		try (Connection connection = schemaManager.getConnection()) {
+			String sql = loadPartitioningSql();
+
+			try (Statement installStatement = connection.createStatement()) {
+				logger.debug(sql);
+				installStatement.execute(sql);
+			}
+
+			logger.info("Partitioning cot_router in database '" + database + "' by " + interval + ". This may take a while for a large table.");
+
+			try (PreparedStatement convertStatement = connection.prepareStatement("SELECT cot_router_convert_to_partitioned(?, ?)")) {
+				convertStatement.setString(1, interval);
+				convertStatement.setInt(2, premake);
+				convertStatement.execute();
+			}
+
+			logger.info("cot_router in database '" + database + "' is partitioned by " + interval + ", with " + premake + " future partitions.");
+			return true;
+		} catch (IOException | SQLException ex) {
+			logger.error("Failure partitioning cot_router in database '" + database + "'. " + ex.getMessage());
+			if (logger.isDebugEnabled()) {
+				ex.printStackTrace();
+			}
+			return false;
+		}
+	}
+
+	private String loadPartitioningSql() throws IOException {
+		try (InputStream is = PartitionCotCommand.class.getClassLoader().getResourceAsStream(PARTITIONING_SQL)) {
+			if (is == null) {
+				throw new IOException(PARTITIONING_SQL + " not found");
+			}
+			return new String(is.readAllBytes(), StandardCharsets.UTF_8);
+		}
+	}
+}
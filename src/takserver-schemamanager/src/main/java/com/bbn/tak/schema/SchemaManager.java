@@ -54,6 +54,9 @@ public class SchemaManager {
     Flyway flyway;
     JCommander jcommander = null;
 
+    // CoreConfig.xml, if it could be read
+    Configuration configuration = null;
+
     private String dbNameOveride = null;
     private boolean isHelp = false;
 
@@ -107,6 +110,8 @@ public class SchemaManager {
 
         commandMap.put(CloneCommand.name, new CloneCommand(this));
         commandMap.put(HelpCommand.name, new HelpCommand(this));
+        commandMap.put(MigrateEsyncCommand.name, new MigrateEsyncCommand(this));
+        commandMap.put(PartitionCotCommand.name, new PartitionCotCommand(this));
         commandMap.put(PurgeCommand.name, new PurgeCommand(this));
         commandMap.put(UpgradeCommand.name, new UpgradeCommand(this));
         commandMap.put(ValidateCommand.name, new ValidateCommand(this));
@@ -337,7 +342,6 @@ public class SchemaManager {
      */
     private void readCoreConfig() {
 
-        Configuration configuration = null;
         com.bbn.marti.config.Connection connection = null;
 
         try {
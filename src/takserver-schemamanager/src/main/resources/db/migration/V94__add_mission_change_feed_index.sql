@@ -0,0 +1 @@
+CREATE INDEX mission_change_mission_id_idx ON mission_change USING btree (mission_id, id);
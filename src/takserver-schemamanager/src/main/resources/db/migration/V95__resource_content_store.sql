@@ -0,0 +1,33 @@
+-- length of content kept in the Enterprise Sync content store instead of the data column. Set only for those rows, whose data is null.
+ALTER TABLE resource ADD COLUMN content_length bigint;
+
+-- hashes of stored content that deleted resource rows referenced. TAK server deletes the content once no resource row references it.
+CREATE TABLE resource_content_orphan (
+    hash text PRIMARY KEY,
+    queued timestamp with time zone NOT NULL DEFAULT now()
+);
+
+CREATE OR REPLACE FUNCTION resource_content_orphan_trigger() RETURNS trigger AS $$
+BEGIN
+    INSERT INTO resource_content_orphan (hash) VALUES (OLD.hash) ON CONFLICT (hash) DO UPDATE SET queued = now();
+    RETURN NULL;
+END;
+$$ LANGUAGE plpgsql;
+
+-- covers every way resources are deleted, including by the retention service
+CREATE TRIGGER resource_content_orphan_trigger AFTER DELETE ON resource FOR EACH ROW
+    WHEN (OLD.content_length IS NOT NULL AND OLD.hash IS NOT NULL)
+    EXECUTE PROCEDURE resource_content_orphan_trigger();
+
+-- the view selects columns by name, so it needs content_length added for sizes of stored content
+CREATE OR REPLACE VIEW latestresource AS 
+    SELECT resource.id, resource.altitude, resource.data, resource.filename, resource.keywords,
+           resource.location, resource.mimetype, resource.name, resource.permissions, resource.remarks, 
+           resource.submissiontime, resource.submitter, resource.uid, resource.hash, resource.groups, resource.tool,
+           resource.content_length
+    FROM resource 
+    JOIN ( SELECT resource.uid, max(resource.submissiontime) AS latestupload 
+           FROM resource GROUP BY resource.uid) groupedresource 
+    ON resource.uid::text = groupedresource.uid::text 
+    AND resource.submissiontime = groupedresource.latestupload 
+    ORDER BY resource.id;
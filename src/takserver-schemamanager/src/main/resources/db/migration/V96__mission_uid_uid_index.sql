@@ -0,0 +1,3 @@
+-- cot retention keeps the messages whose uid is in a mission (not exists (select 1 from mission_uid mu where mu.uid = x.uid)),
+-- which the primary key on (mission_id, uid) doesn't index
+CREATE INDEX IF NOT EXISTS mission_uid_uid_idx ON mission_uid (uid);
@@ -0,0 +1,166 @@
+--
+-- Optional range partitioning of cot_router by servertime, installed by the SchemaManager partition-cot command.
+-- This is not a versioned migration, since the partitioned layout is opt-in. All statements are idempotent.
+--
+-- Partitions are named cot_router_pYYYYMMDD after the (UTC) start of the interval they cover. Rows archived
+-- before the conversion are copied into the partitions for their intervals, so that they expire with them, and
+-- cot_router_default catches any row outside the partitions created so far.
+--
+
+CREATE TABLE IF NOT EXISTS cot_router_partition_config (
+  partition_interval text NOT NULL CHECK (partition_interval IN ('day', 'week', 'month')),
+  premake integer NOT NULL CHECK (premake >= 0)
+);
+
+-- start of the interval containing ts, aligned to UTC
+CREATE OR REPLACE FUNCTION cot_router_partition_start(ts timestamp with time zone, unit text) RETURNS timestamp with time zone AS $$
+  SELECT date_trunc(unit, ts AT TIME ZONE 'UTC') AT TIME ZONE 'UTC';
+$$ LANGUAGE sql IMMUTABLE;
+
+-- start of the interval after the one starting at ts
+CREATE OR REPLACE FUNCTION cot_router_partition_next(ts timestamp with time zone, unit text) RETURNS timestamp with time zone AS $$
+  SELECT ((ts AT TIME ZONE 'UTC') + ('1 ' || unit)::interval) AT TIME ZONE 'UTC';
+$$ LANGUAGE sql IMMUTABLE;
+
+-- the range partitions of cot_router and their bounds
+CREATE OR REPLACE FUNCTION cot_router_partitions() RETURNS TABLE (partition_name text, lower_bound timestamp with time zone, upper_bound timestamp with time zone) AS $$
+  SELECT c.relname::text,
+         (regexp_match(pg_get_expr(c.relpartbound, c.oid), 'FROM \(''([^'']+)''\)'))[1]::timestamp with time zone,
+         (regexp_match(pg_get_expr(c.relpartbound, c.oid), 'TO \(''([^'']+)''\)'))[1]::timestamp with time zone
+  FROM pg_inherits i JOIN pg_class c ON c.oid = i.inhrelid
+  WHERE i.inhparent = 'cot_router'::regclass AND pg_get_expr(c.relpartbound, c.oid) <> 'DEFAULT'
+  ORDER BY 3;
+$$ LANGUAGE sql STABLE;
+
+-- create the partitions for the current interval and the next premake intervals that don't exist yet. Returns the number created.
+CREATE OR REPLACE FUNCTION cot_router_create_partitions() RETURNS integer AS $$
+DECLARE
+  cfg record;
+  covered_to timestamp with time zone;
+  part_start timestamp with time zone;
+  part_end timestamp with time zone;
+  part_name text;
+  created integer := 0;
+BEGIN
+  SELECT partition_interval, premake INTO cfg FROM cot_router_partition_config LIMIT 1;
+
+  IF NOT FOUND OR (SELECT relkind FROM pg_class WHERE oid = to_regclass('cot_router')) IS DISTINCT FROM 'p' THEN
+    RETURN 0;
+  END IF;
+
+  SELECT max(upper_bound) INTO covered_to FROM cot_router_partitions();
+
+  part_start := cot_router_partition_start(now(), cfg.partition_interval);
+
+  FOR i IN 0..cfg.premake LOOP
+    part_end := cot_router_partition_next(part_start, cfg.partition_interval);
+
+    -- partitions are contiguous, so anything starting before the end of the last one already exists
+    IF covered_to IS NULL OR part_start >= covered_to THEN
+      part_name := 'cot_router_p' || to_char(part_start AT TIME ZONE 'UTC', 'YYYYMMDD');
+
+      BEGIN
+        EXECUTE format('CREATE TABLE %I PARTITION OF cot_router FOR VALUES FROM (%L) TO (%L)', part_name, part_start, part_end);
+        created := created + 1;
+      EXCEPTION WHEN others THEN
+        -- typically rows for the interval in cot_router_default, left there when partitions weren't created in time
+        RAISE WARNING 'unable to create cot_router partition %: %', part_name, SQLERRM;
+        RETURN created;
+      END;
+    END IF;
+
+    part_start := part_end;
+  END LOOP;
+
+  RETURN created;
+END;
+$$ LANGUAGE plpgsql;
+
+-- convert cot_router to a table partitioned by servertime, or update the interval and premake of one that already is
+CREATE OR REPLACE FUNCTION cot_router_convert_to_partitioned(unit text, premake_count integer) RETURNS void AS $$
+DECLARE
+  boundary timestamp with time zone;
+  earliest timestamp with time zone;
+  latest timestamp with time zone;
+  part_start timestamp with time zone;
+  part_end timestamp with time zone;
+  had_latestcot boolean := to_regclass('latestcot') IS NOT NULL;
+  idx record;
+BEGIN
+  DELETE FROM cot_router_partition_config;
+  INSERT INTO cot_router_partition_config (partition_interval, premake) VALUES (unit, premake_count);
+
+  IF (SELECT relkind FROM pg_class WHERE oid = 'cot_router'::regclass) = 'p' THEN
+    PERFORM cot_router_create_partitions();
+    RETURN;
+  END IF;
+
+  -- views and foreign keys follow the table through the rename, so recreate the view afterwards and drop the
+  -- foreign keys from the unused image and link tables, which would otherwise keep partitions from being dropped
+  DROP VIEW IF EXISTS latestcot;
+  ALTER TABLE IF EXISTS cot_thumbnail DROP CONSTRAINT IF EXISTS cot_thumbnail_cot_id_fkey;
+  ALTER TABLE IF EXISTS cot_image DROP CONSTRAINT IF EXISTS cot_image_cot_id_fkey;
+  ALTER TABLE IF EXISTS cot_link DROP CONSTRAINT IF EXISTS cot_link_containing_event_fkey;
+
+  ALTER TABLE cot_router RENAME TO cot_router_legacy;
+
+  -- frees the names of the indexes and the primary key for the partitioned table
+  FOR idx IN SELECT c.relname FROM pg_index i JOIN pg_class c ON c.oid = i.indexrelid WHERE i.indrelid = 'cot_router_legacy'::regclass LOOP
+    EXECUTE format('ALTER INDEX %I RENAME TO %I', idx.relname, 'legacy_' || idx.relname);
+  END LOOP;
+
+  UPDATE cot_router_legacy SET servertime = coalesce(servertime_hour, "time", now()) WHERE servertime IS NULL;
+
+  SELECT min(servertime), max(servertime) INTO earliest, latest FROM cot_router_legacy;
+  boundary := cot_router_partition_next(cot_router_partition_start(greatest(now(), latest), unit), unit);
+
+  CREATE TABLE cot_router (LIKE cot_router_legacy INCLUDING DEFAULTS INCLUDING STORAGE) PARTITION BY RANGE (servertime);
+
+  -- unique constraints on a partitioned table have to include the partition key
+  ALTER TABLE cot_router ADD CONSTRAINT cot_router_pkey PRIMARY KEY (id, servertime);
+
+  IF to_regclass('cot_router_id_seq') IS NOT NULL THEN
+    ALTER SEQUENCE cot_router_id_seq OWNED BY cot_router.id;
+  END IF;
+
+  -- one partition per interval from the oldest row on, so that archived rows expire with their interval rather than
+  -- all at once with the newest of them. Partitions are contiguous, which cot_router_create_partitions relies on.
+  part_start := cot_router_partition_start(coalesce(earliest, now()), unit);
+
+  WHILE part_start < boundary LOOP
+    part_end := cot_router_partition_next(part_start, unit);
+    EXECUTE format('CREATE TABLE %I PARTITION OF cot_router FOR VALUES FROM (%L) TO (%L)',
+      'cot_router_p' || to_char(part_start AT TIME ZONE 'UTC', 'YYYYMMDD'), part_start, part_end);
+    part_start := part_end;
+  END LOOP;
+
+  INSERT INTO cot_router SELECT * FROM cot_router_legacy;
+
+  -- indexed after the copy, which is quicker than maintaining them row by row
+  CREATE INDEX cot_type_idx ON cot_router (cot_type);
+  CREATE INDEX time_idx ON cot_router("time");
+  CREATE INDEX uid_idx ON cot_router (uid);
+  CREATE INDEX event_pt_idx ON cot_router USING GIST (event_pt);
+  CREATE INDEX cot_type_servertime_idx ON cot_router(cot_type, servertime);
+  CREATE INDEX servertime_no_bts_idx ON cot_router(servertime) WHERE cot_type != 'b-t-f';
+  CREATE INDEX servertime_hour_idx ON cot_router(servertime_hour);
+  CREATE INDEX servertime_idx ON cot_router(servertime);
+  CREATE INDEX uid_servertime_idx ON cot_router(uid, servertime);
+
+  DROP TABLE cot_router_legacy;
+
+  CREATE TABLE cot_router_default PARTITION OF cot_router DEFAULT;
+
+  IF had_latestcot THEN
+    CREATE OR REPLACE VIEW latestcot AS
+     SELECT cot.id, cot.uid, cot.cot_type, cot.access, cot.qos, cot.opex, cot.start, cot."time", cot.stale, cot.how, cot.point_hae, cot.point_ce, cot.point_le, cot.detail, cot.servertime, cot.event_pt
+       FROM cot_router cot
+       JOIN ( SELECT cot_router.uid, max(cot_router.servertime) AS lastreceivetime
+               FROM cot_router
+              GROUP BY cot_router.uid) groupedcot ON cot.uid::text = groupedcot.uid::text AND cot.servertime = groupedcot.lastreceivetime
+      ORDER BY cot.id;
+  END IF;
+
+  PERFORM cot_router_create_partitions();
+END;
+$$ LANGUAGE plpgsql;
@@ -8,6 +8,8 @@ import time
 from botocore.exceptions import ClientError
 import multiprocessing
 
+import stats
+
 logger = logging.getLogger(__name__)
 
 class CloudWatchWrapper:
@@ -79,6 +81,8 @@ class CloudWatchWrapper:
             self.put_metric_data(namespace=namespace, uid = uid, name='ping_count', value=stats['ping_count'], unit='Count')
             self.put_metric_data(namespace=namespace, uid = uid, name='pong_count', value=stats['pong_count'], unit='Count')
             self.put_metric_data(namespace=namespace, uid = uid, name='time_between_ping_pong', value=stats['time_between_ping_pong'], unit='Milliseconds')
+            self.put_metric_data(namespace=namespace, uid = uid, name='brokered_latency_p50', value=stats['brokered_latency_p50'], unit='Milliseconds')
+            self.put_metric_data(namespace=namespace, uid = uid, name='brokered_latency_p99', value=stats['brokered_latency_p99'], unit='Milliseconds')
 
             logger.info("Done sending pyTAK stats data to namespace %s", namespace)
             # print(f"Done sending pyTAK stats data to namespace {namespace}")
@@ -103,7 +107,9 @@ def cloud_watch_process(uid, arr, metric_namespace, send_metrics_interval):
                 'disconnect_event_count': arr[3],
                 'ping_count': arr[4],
                 'pong_count': arr[5],
-                'time_between_ping_pong': arr[6]
+                'time_between_ping_pong': arr[6],
+                'brokered_latency_p50': stats.brokered_latency_percentile(arr, 50),
+                'brokered_latency_p99': stats.brokered_latency_percentile(arr, 99)
             }
 
             print(f"Putting pyTAK stat data for uid {uid} into metric namespace: {metric_namespace}, stats: {stats_for_uid}")
@@ -135,7 +141,9 @@ def print_info_without_sending_to_cloud_watch_process(uid, arr, send_metrics_int
                 'disconnect_event_count': arr[3],
                 'ping_count': arr[4],
                 'pong_count': arr[5],
-                'time_between_ping_pong': arr[6]
+                'time_between_ping_pong': arr[6],
+                'brokered_latency_p50': stats.brokered_latency_percentile(arr, 50),
+                'brokered_latency_p99': stats.brokered_latency_percentile(arr, 99)
             }
 
             print(f"Info that would be sent to CloudWatch if it was enabled, uid: {uid}, stats: {stats_for_uid}")
@@ -169,7 +177,9 @@ if __name__ == "__main__":
             'disconnect_event_count': 0,
             'ping_count': 6,
             'pong_count': 5,
-            'time_between_ping_pong': 40
+            'time_between_ping_pong': 40,
+            'brokered_latency_p50': 5,
+            'brokered_latency_p99': 20
         })
 
     print("-"*88)
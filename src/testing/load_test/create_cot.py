@@ -3,7 +3,7 @@ import string
 import time
 
 
-from datetime import datetime, timedelta
+from datetime import datetime, timedelta, timezone
 from lxml import etree
 
 
@@ -137,6 +137,17 @@ class CotMessage:
             return True
         return False
 
+    # the time attribute, set by the sender (see cot_time_string), in ms since the epoch, or None if it can't be read
+    def send_time_millis(self):
+        time_attr = self.event.attrib.get("time")
+        for time_format in ("%Y-%m-%dT%H:%M:%S.%fZ", "%Y-%m-%dT%H:%M:%SZ"):
+            try:
+                send_time = datetime.strptime(time_attr, time_format)
+                return int(send_time.replace(tzinfo=timezone.utc).timestamp() * 1000)
+            except (TypeError, ValueError):
+                pass
+        return None
+
     def mission_change(self):
         for c in self.detail:
             if c.tag == "mission":
@@ -34,7 +34,7 @@ class CotProtoMessage:
         now = int(datetime.now().timestamp()) * 1000
         event.staleTime = (now + 60) * 1000 # timestamp in seconds, so this adds a minute
         event.startTime = (now) * 1000
-        event.sendTime = now
+        event.sendTime = int(datetime.now().timestamp() * 1000) # to the ms, for the brokered latency (see stats.py)
         event.how = how
         event.uid = self.uid
 
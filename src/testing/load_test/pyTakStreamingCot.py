@@ -124,6 +124,11 @@ class PyTAKStreamingCot:
             elif self.mission_config.get("react_to_change_message", False):
                 await self.read_socket.send(data)
 
+            if self.arr is not None and cot_message.is_sa() and cot_message.uid != self.uid:
+                send_time = cot_message.send_time_millis()
+                if send_time is not None:
+                    stats.record_brokered_latency(self.arr, round(time.time()*1000) - send_time)
+
             connection_data = self.data_dict[self.uid]
             connection_data['read'] += 1
             #connection_data['bytes'] += len(data)
@@ -175,6 +175,9 @@ class PyTAKStreamingProto:
                     if self.mission_config.get("react_to_change_message", False):
                         await self.read_socket.send(next_msg)
 
+                    if self.arr is not None and proto_message.is_sa() and proto_message.uid != self.uid:
+                        stats.record_brokered_latency(self.arr, round(time.time()*1000) - proto_message.message.cotEvent.sendTime)
+
                 connection_data = self.data_dict[self.uid]
                 connection_data['read'] += 1
                 #connection_data['bytes'] += len(data)
@@ -26,6 +26,7 @@
 #     stats['ping_count'] = 0
 #     stats['pong_count'] = 0
 
+import bisect
 import threading
 from multiprocessing import Process, Value, Array
 
@@ -38,6 +39,35 @@ MESSAGES_PING_COUNT_INDEX = 4
 MESSAGES_PONG_COUNT_INDEX = 5
 TIME_BETWEEN_PING_PONG = 6 # in ms
 
+# histogram of the latency of brokered SA messages from other clients, from the sender's time to receipt, in ms. 1 ms buckets up
+# to 100 ms, 10 ms buckets up to 1 s and 100 ms buckets up to 10 s, followed by one bucket for anything slower. Compares the
+# brokering modes of the server (see README), since ping / pong is answered without brokering.
+BROKERED_LATENCY_INDEX = 7
+BROKERED_LATENCY_BOUNDS = list(range(1, 101)) + list(range(110, 1001, 10)) + list(range(1100, 10001, 100))
+
+STATS_SIZE = BROKERED_LATENCY_INDEX + len(BROKERED_LATENCY_BOUNDS) + 1
+
+
+def record_brokered_latency(arr, millis):
+    arr[BROKERED_LATENCY_INDEX + bisect.bisect_left(BROKERED_LATENCY_BOUNDS, max(millis, 0))] += 1
+
+
+# upper bound of the histogram bucket holding the given percentile (0 - 100), or 0 if nothing was recorded
+def brokered_latency_percentile(arr, percentile):
+    counts = arr[BROKERED_LATENCY_INDEX:STATS_SIZE]
+    total = sum(counts)
+    if total == 0:
+        return 0
+
+    rank = total * percentile / 100.0
+    seen = 0
+    for i, count in enumerate(counts):
+        seen += count
+        if seen >= rank:
+            return BROKERED_LATENCY_BOUNDS[min(i, len(BROKERED_LATENCY_BOUNDS) - 1)]
+
+    return BROKERED_LATENCY_BOUNDS[-1]
+
 class Stats:
 
     def __init__(self):
@@ -47,7 +77,7 @@ class Stats:
     def init_uid(self, uid):
         try:
             self.threadLock.acquire()
-            self.data[uid] = Array('i', range(7))
+            self.data[uid] = Array('i', range(STATS_SIZE))
             for i in range(len(self.data[uid])):
                 self.data[uid][i] = 0
             return self.data[uid]
@@ -62,3 +92,37 @@ class Stats:
             self.threadLock.release()
 
 
+if __name__ == "__main__":
+    # check the brokered latency histogram on a plain list, in place of the shared array
+    arr = [0] * STATS_SIZE
+
+    assert brokered_latency_percentile(arr, 99) == 0
+
+    # 1 ms buckets up to 100 ms
+    for millis in range(1, 101):
+        record_brokered_latency(arr, millis)
+
+    assert brokered_latency_percentile(arr, 50) == 50
+    assert brokered_latency_percentile(arr, 99) == 99
+    assert brokered_latency_percentile(arr, 100) == 100
+
+    # coarser buckets above that, reported by their upper bound. Clock skew between clients can make a latency negative.
+    arr = [0] * STATS_SIZE
+    for millis in [-5, 0, 101, 109, 110, 999, 1001, 9999, 10000, 60000]:
+        record_brokered_latency(arr, millis)
+
+    assert arr[BROKERED_LATENCY_INDEX] == 2
+    assert arr[BROKERED_LATENCY_INDEX + BROKERED_LATENCY_BOUNDS.index(110)] == 3
+    assert arr[BROKERED_LATENCY_INDEX + BROKERED_LATENCY_BOUNDS.index(1000)] == 1
+    assert arr[BROKERED_LATENCY_INDEX + BROKERED_LATENCY_BOUNDS.index(1100)] == 1
+    assert arr[BROKERED_LATENCY_INDEX + BROKERED_LATENCY_BOUNDS.index(10000)] == 2
+    assert arr[STATS_SIZE - 1] == 1
+
+    # anything over 10 s is reported as 10 s
+    assert brokered_latency_percentile(arr, 50) == 110
+    assert brokered_latency_percentile(arr, 100) == 10000
+
+    # the other stats are left alone
+    assert arr[:BROKERED_LATENCY_INDEX] == [0] * BROKERED_LATENCY_INDEX
+
+    print("brokered latency histogram OK")
@@ -0,0 +1,202 @@
+package tak.db.profiler;
+
+import java.io.StringReader;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.UUID;
+
+import org.apache.commons.cli.CommandLine;
+import org.apache.commons.cli.CommandLineParser;
+import org.apache.commons.cli.DefaultParser;
+import org.apache.commons.cli.Options;
+import org.apache.commons.cli.ParseException;
+import org.postgresql.PGConnection;
+import org.postgresql.copy.CopyManager;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/*
+ * Compares the rate at which synthetic messages can be archived into cot_router with batched INSERT statements, as
+ * RepositoryService does by default, and with COPY, as it does when repository copyInsert is enabled.
+ *
+ * Each run is made in a transaction that is rolled back, so the database is left unchanged.
+ */
+public class TakDBIngestBenchmark {
+	private static final Logger logger = LoggerFactory.getLogger(TakDBIngestBenchmark.class);
+	private static final TakDBProfilerParams profilerParams = new TakDBProfilerParams();
+
+	private static final String DETAIL = "<detail><contact callsign=\"BENCHMARK\"/><__group name=\"Cyan\" role=\"Team Member\"/>"
+			+ "<status battery=\"100\"/><track course=\"0.0\" speed=\"0.0\"/></detail>";
+
+	private static final String INSERT = "INSERT INTO cot_router (uid, event_pt, cot_type, "
+			+ "start, time, stale, detail, "
+			+ "access, qos, opex, "
+			+ "how, point_hae, point_ce, point_le, groups, "
+			+ "id, servertime, caveat, releaseableto) VALUES "
+			+ "(?,ST_GeometryFromText(?, 4326),?,?,?,?,?,?,?,?,?,?,?,?,(?)::bit(" + DatabaseImportProcedure.GROUPS_BIT_VECTOR_LEN
+			+ "), nextval('cot_router_seq'),?,?,?) ";
+
+	private static final String COPY = "COPY cot_router "
+			+ "(uid, event_pt, cot_type, start, time, stale, detail, access, qos, opex, how, point_hae, point_ce, point_le, groups, "
+			+ "id, servertime, caveat, releaseableto) FROM STDIN WITH (FORMAT csv)";
+
+	private static int rows = 100000;
+	private static int batchSize = 500;
+
+	public static void main(String[] args) throws Exception {
+		logger.info("INGEST BENCHMARK");
+
+		Options options = new Options();
+		options.addOption("username", true, "Database username");
+		options.addOption("password", true, "Database password");
+		options.addOption("host", true, "Database host");
+		options.addOption("port", true, "Database port");
+		options.addOption("rows", true, "Number of rows to archive with each method");
+		options.addOption("batchSize", true, "Rows per batch (repository insertionBatchSize)");
+
+		CommandLineParser parser = new DefaultParser();
+		try {
+			CommandLine cmd = parser.parse(options, args);
+
+			if (cmd.hasOption("username")) {
+				profilerParams.setUsername(cmd.getOptionValue("username"));
+			}
+			if (cmd.hasOption("password")) {
+				profilerParams.setPassword(cmd.getOptionValue("password"));
+			}
+			if (cmd.hasOption("host")) {
+				profilerParams.setHost(cmd.getOptionValue("host"));
+			}
+			if (cmd.hasOption("port")) {
+				profilerParams.setPort(Integer.parseInt(cmd.getOptionValue("port")));
+			}
+			if (cmd.hasOption("rows")) {
+				rows = Integer.parseInt(cmd.getOptionValue("rows"));
+			}
+			if (cmd.hasOption("batchSize")) {
+				batchSize = Integer.parseInt(cmd.getOptionValue("batchSize"));
+			}
+		} catch (ParseException e) {
+			System.err.println("Error parsing params: " + e.getMessage());
+			System.exit(1);
+		}
+
+		logger.info("Archiving " + rows + " rows in batches of " + batchSize);
+
+		char[] groups = new char[DatabaseImportProcedure.GROUPS_BIT_VECTOR_LEN];
+		Arrays.fill(groups, '0');
+		groups[groups.length - 1] = '1';
+		String groupsBits = new String(groups);
+
+		Connection connection = new DBConnection(profilerParams).getConnection();
+
+		// warm up both paths before measuring
+		run(connection, groupsBits, Math.min(rows, batchSize * 10), false);
+		run(connection, groupsBits, Math.min(rows, batchSize * 10), true);
+
+		double insertRate = run(connection, groupsBits, rows, false);
+		double copyRate = run(connection, groupsBits, rows, true);
+
+		logger.info(String.format("INSERT: %.0f rows/s", insertRate));
+		logger.info(String.format("COPY:   %.0f rows/s (%.1fx)", copyRate, copyRate / insertRate));
+
+		connection.close();
+	}
+
+	// archive count rows, and return the rate in rows/s
+	private static double run(Connection connection, String groupsBits, int count, boolean copy) throws Exception {
+		connection.setAutoCommit(false);
+
+		try {
+			long start = System.nanoTime();
+
+			for (int archived = 0; archived < count; archived += batchSize) {
+				int batch = Math.min(batchSize, count - archived);
+
+				if (copy) {
+					copyBatch(connection, groupsBits, batch);
+				} else {
+					insertBatch(connection, groupsBits, batch);
+				}
+			}
+
+			return count / ((System.nanoTime() - start) / 1e9);
+		} finally {
+			connection.rollback();
+			connection.setAutoCommit(true);
+		}
+	}
+
+	private static void insertBatch(Connection connection, String groupsBits, int batch) throws Exception {
+		try (PreparedStatement insert = connection.prepareStatement(INSERT)) {
+			for (int i = 0; i < batch; i++) {
+				Timestamp now = new Timestamp(System.currentTimeMillis());
+				Timestamp stale = new Timestamp(now.getTime() + 60000);
+				double lat = Math.random() * 180 - 90;
+				double lon = Math.random() * 360 - 180;
+
+				insert.setString(1, UUID.randomUUID().toString());
+				insert.setString(2, "POINT(" + lon + " " + lat + ")");
+				insert.setString(3, "a-f-G-U-C");
+				insert.setTimestamp(4, now);
+				insert.setTimestamp(5, now);
+				insert.setTimestamp(6, stale);
+				insert.setString(7, DETAIL);
+				insert.setString(8, null);
+				insert.setString(9, null);
+				insert.setString(10, null);
+				insert.setString(11, "m-g");
+				insert.setDouble(12, 9999999.0);
+				insert.setDouble(13, 9999999.0);
+				insert.setDouble(14, 9999999.0);
+				insert.setString(15, groupsBits);
+				insert.setTimestamp(16, now);
+				insert.setString(17, null);
+				insert.setString(18, null);
+				insert.addBatch();
+			}
+			insert.executeBatch();
+		}
+	}
+
+	private static void copyBatch(Connection connection, String groupsBits, int batch) throws Exception {
+		long[] ids = new long[batch];
+
+		// allocate the batch's ids up front, as RepositoryService does
+		try (PreparedStatement ps = connection.prepareStatement("SELECT nextval('cot_router_seq') FROM generate_series(1, ?)")) {
+			ps.setInt(1, batch);
+			try (ResultSet rs = ps.executeQuery()) {
+				for (int i = 0; i < batch && rs.next(); i++) {
+					ids[i] = rs.getLong(1);
+				}
+			}
+		}
+
+		StringBuilder csv = new StringBuilder(batch * (DatabaseImportProcedure.GROUPS_BIT_VECTOR_LEN + 512));
+
+		for (int i = 0; i < batch; i++) {
+			Instant now = Instant.now();
+			double lat = Math.random() * 180 - 90;
+			double lon = Math.random() * 360 - 180;
+
+			csv.append('"').append(UUID.randomUUID()).append("\",");
+			csv.append("\"SRID=4326;POINT(").append(lon).append(' ').append(lat).append(")\",");
+			csv.append("\"a-f-G-U-C\",");
+			csv.append(now).append(',').append(now).append(',').append(now.plusMillis(60000)).append(',');
+			csv.append('"').append(DETAIL.replace("\"", "\"\"")).append("\",");
+			csv.append(",,,");
+			csv.append("\"m-g\",");
+			csv.append("9999999.0,9999999.0,9999999.0,");
+			csv.append(groupsBits).append(',');
+			csv.append(ids[i]).append(',');
+			csv.append(now).append(",,\n");
+		}
+
+		CopyManager copyManager = connection.unwrap(PGConnection.class).getCopyAPI();
+		copyManager.copyIn(COPY, new StringReader(csv.toString()));
+	}
+}